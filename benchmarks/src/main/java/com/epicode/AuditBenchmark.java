@@ -0,0 +1,79 @@
+package com.epicode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caller-side latency of {@code BikeAuditRepository.record*} for each storage backend.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuditBenchmark {
+
+    @Param({"sync", "async", "mapped"})
+    public String backend;
+
+    private Path directory;
+    private BikeAuditRepository repository;
+    private Bike bike;
+    private BikeCatalog catalog;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchmarkFleet.quietLogging();
+        directory = Files.createTempDirectory("audit-bench");
+        String log = directory.resolve("rentals.log").toString();
+        repository = switch (backend) {
+            case "sync" -> new BikeAuditRepository(log);
+            case "async" -> new BikeAuditRepository(log, 65_536, AsyncAuditWriter.FsyncPolicy.NONE, 0);
+            default -> new MappedBikeAuditRepository(directory.resolve("segments").toString(), 64 << 20);
+        };
+        bike = new MountainBike(new BikeBuilder("123abc", "GT3", true));
+        catalog = new MountainBikeCatalog(new ArrayList<>());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        repository.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void recordRental() {
+        repository.recordRental(bike, "Maryam", "Abou El Lif");
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void recordRentalAllCores() {
+        repository.recordRental(bike, "Maryam", "Abou El Lif");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void recordCreation() {
+        repository.recordCreation(bike, catalog);
+    }
+}
@@ -0,0 +1,54 @@
+package com.epicode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning one rental into the bytes of an audit line: {@code String.format}
+ * with {@code LocalDateTime.now()} as the repository does, against {@link AuditEncoder}
+ * in both layouts. Run with {@code -prof gc}: {@code gc.alloc.rate.norm} is the
+ * allocation per record, which is 0 for the encoder once warmed up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AuditEncodingBenchmark {
+
+    @Param({"format", "text", "json"})
+    public String encoding;
+
+    private AuditEncoder encoder;
+    private Bike bike;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        encoder = new AuditEncoder(encoding.equals("json") ? AuditEncoder.Layout.JSON_LINES : AuditEncoder.Layout.TEXT);
+        bike = new MountainBike(new BikeBuilder("123abc", "GT3", true));
+    }
+
+    @Benchmark
+    public int encodeRental() {
+        if (encoding.equals("format")) {
+            return BikeAuditRepository.rentalLine(LocalDateTime.now(), bike.getId(), "Maryam", "Abou El Lif")
+                    .getBytes(StandardCharsets.UTF_8).length;
+        }
+        return encoder.clear().event(AuditEventType.RENTED, bike.getId(), "Maryam", "Abou El Lif").length();
+    }
+}
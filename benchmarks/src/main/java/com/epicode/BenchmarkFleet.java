@@ -0,0 +1,77 @@
+package com.epicode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared fixtures for the benchmarks: a fleet loaded without audit I/O.
+ */
+final class BenchmarkFleet {
+
+    private BenchmarkFleet() {
+    }
+
+    /**
+     * Audit repository that discards everything, so benchmarks measure the rental core only.
+     */
+    static final class DiscardingAuditRepository extends BikeAuditRepository {
+        @Override
+        public void recordCreation(Bike bike, BikeCatalog catalog) {
+        }
+
+        @Override
+        public void recordCreations(List<Bike> bikes, BikeCatalog catalog) {
+        }
+
+        @Override
+        public void recordRental(Bike bike, String firstName, String lastName) {
+        }
+
+        @Override
+        public void recordReturn(Bike bike, String firstName, String lastName) {
+        }
+    }
+
+    static void quietLogging() {
+        Logger.getLogger("").setLevel(Level.WARNING);
+        Logger.getLogger("com.epicode").setLevel(Level.WARNING);
+    }
+
+    static String bikeId(int index) {
+        return "bike" + index;
+    }
+
+    /**
+     * Creates a service holding {@code size} bikes spread over one catalog per type.
+     */
+    static BikeRentalService newService(int size) {
+        quietLogging();
+        BikeRentalService service = new BikeRentalService(new DiscardingAuditRepository(),
+                new DiscardingAuditRepository());
+        BikeType[] types = BikeType.values();
+        BikeCatalog[] catalogs = new BikeCatalog[types.length];
+        for (int i = 0; i < types.length; i++) {
+            catalogs[i] = service.newCatalog(types[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            BikeType type = types[i % types.length];
+            BikeBuilder builder = new BikeBuilder(bikeId(i), "M" + (i % 16), true)
+                    .setLights(i % 2 == 0)
+                    .setBasket(i % 3 == 0)
+                    .setGPS(i % 5 == 0);
+            service.restoreBike(BikeRentalService.factoryFor(type).createBike(builder), catalogs[type.ordinal()]);
+        }
+        return service;
+    }
+
+    static BikeCatalog newCatalog(int size) {
+        quietLogging();
+        BikeCatalog catalog = new RoadBikeCatalog(new ArrayList<>());
+        for (int i = 0; i < size; i++) {
+            catalog.addBike(new RoadBike(new BikeBuilder(bikeId(i), "TT", true)));
+        }
+        return catalog;
+    }
+}
@@ -0,0 +1,93 @@
+package com.epicode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random ID lookups in {@link BikeIdIndex} compared with the
+ * {@code ConcurrentHashMap<String, Integer>} it replaces, and the cost of
+ * mapping a written index back compared with rebuilding it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class BikeIdIndexBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    private String[] ids;
+    private BikeIdIndex index;
+    private Map<String, Integer> map;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ids = new String[size];
+        index = new BikeIdIndex(size);
+        map = new ConcurrentHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            // Fresh strings, as they would arrive from a request
+            ids[i] = new String(BenchmarkFleet.bikeId(i).toCharArray());
+            index.add(BenchmarkFleet.bikeId(i));
+            map.put(BenchmarkFleet.bikeId(i), i);
+        }
+        file = Files.createTempFile("bike-ids", ".idx");
+        index.writeTo(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int indexLookup() {
+        return index.slotOf(ids[ThreadLocalRandom.current().nextInt(size)]);
+    }
+
+    @Benchmark
+    public Integer mapLookup() {
+        return map.get(ids[ThreadLocalRandom.current().nextInt(size)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BikeIdIndex openMapped() {
+        return BikeIdIndex.open(file);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BikeIdIndex rebuild() {
+        BikeIdIndex rebuilt = new BikeIdIndex(size);
+        for (String id : ids) {
+            rebuilt.add(id);
+        }
+        return rebuilt;
+    }
+}
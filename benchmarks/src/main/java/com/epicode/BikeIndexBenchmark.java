@@ -0,0 +1,74 @@
+package com.epicode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * "Available electric bike with GPS and basket" through the bit set indexes,
+ * compared with the scan over {@code getBikes()} it replaces.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class BikeIndexBenchmark {
+
+    @Param({"100000", "5000000"})
+    public int size;
+
+    private BikeRentalService service;
+    private BikeCatalog electricCatalog;
+    private BikeQuery firstMatches;
+    private BikeQuery allMatches;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        service = BenchmarkFleet.newService(size);
+        electricCatalog = service.getBikeInventory().getElementAt(BikeType.electric.ordinal());
+        // Rent most bikes so matches are sparse
+        for (int i = 0; i < size; i++) {
+            if (i % 7 != 0) {
+                service.getBikeById(BenchmarkFleet.bikeId(i)).setAvailable(false);
+            }
+        }
+        firstMatches = new BikeQuery().setType(BikeType.electric).setAvailable(true)
+                .setGPS(true).setBasket(true).setLimit(10);
+        allMatches = new BikeQuery().setType(BikeType.electric).setAvailable(true).setGPS(true).setBasket(true);
+    }
+
+    @Benchmark
+    public List<Bike> indexFirstTen() {
+        return service.findBikes(firstMatches);
+    }
+
+    @Benchmark
+    public int indexCountAll() {
+        return electricCatalog.countBikes(allMatches);
+    }
+
+    @Benchmark
+    public int fullScanCountAll() {
+        int count = 0;
+        for (Bike bike : electricCatalog.getBikes()) {
+            if (bike.isAvailable() && bike.hasGPS() && bike.hasBasket()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,75 @@
+package com.epicode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traversal cost of {@link BikeCatalog#createIterator()} and snapshot cost of
+ * {@link BikeInventory#getCatalogs()}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class CatalogBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private BikeCatalog catalog;
+    private BikeInventory inventory;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        catalog = BenchmarkFleet.newCatalog(size);
+        inventory = new BikeInventory(new ArrayList<>());
+        // One catalog per thousand bikes keeps the inventory in proportion to the fleet
+        for (int i = 0; i < Math.max(1, size / 1000); i++) {
+            inventory.addCatalog(catalog);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void iterateCatalog(Blackhole blackhole) {
+        Iterator<Bike> bikes = catalog.createIterator();
+        while (bikes.hasNext()) {
+            blackhole.consume(bikes.next());
+        }
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void iterateCatalogAllCores(Blackhole blackhole) {
+        iterateCatalog(blackhole);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object getCatalogs() {
+        return inventory.getCatalogs();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Object getCatalogsAllCores() {
+        return inventory.getCatalogs();
+    }
+}
@@ -0,0 +1,104 @@
+package com.epicode;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Load-test client for {@link RentalHttpServer}.
+ *
+ * <p>Keeps {@code connections} requests in flight for {@code seconds}: 80% bike lookups,
+ * 10% rentals and 10% returns of random bikes (so many rentals and returns are answered
+ * 409), then prints throughput, status classes and latency percentiles. Without a base URL
+ * it first starts a server on a free local port, backed by a fleet of {@code bikes} bikes
+ * without audit I/O.</p>
+ *
+ * <pre>
+ * java -cp benchmarks.jar com.epicode.HttpLoadTest [connections] [seconds] [bikes] [baseUrl]
+ * </pre>
+ */
+public final class HttpLoadTest {
+    private static final int OK = 0;
+    private static final int CLIENT_ERROR = 1;
+    private static final int SERVER_ERROR = 2;
+    private static final int FAILED = 3;
+
+    private HttpLoadTest() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int bikes = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        RentalHttpServer server = null;
+        String baseUrl;
+        if (args.length > 3) {
+            baseUrl = args[3];
+        } else {
+            server = new RentalHttpServer(BenchmarkFleet.newService(bikes), null, new InetSocketAddress("127.0.0.1", 0));
+            server.start();
+            baseUrl = "http://127.0.0.1:" + server.getPort();
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        Semaphore inFlight = new Semaphore(connections);
+        LatencyHistogram latencies = new LatencyHistogram();
+        AtomicLongArray outcomes = new AtomicLongArray(4);
+        System.out.printf(Locale.ROOT, "Driving %s with %d connections for %ds%n", baseUrl, connections, seconds);
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < deadline) {
+            inFlight.acquire();
+            long sent = System.nanoTime();
+            client.sendAsync(nextRequest(baseUrl, bikes), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        latencies.record(System.nanoTime() - sent);
+                        int outcome = error != null ? FAILED
+                                : response.statusCode() >= 500 ? SERVER_ERROR
+                                : response.statusCode() >= 400 ? CLIENT_ERROR : OK;
+                        outcomes.incrementAndGet(outcome);
+                        inFlight.release();
+                    });
+        }
+        inFlight.acquire(connections);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long total = latencies.getCount();
+        System.out.printf(Locale.ROOT, "%d requests in %.1fs: %.0f req/s%n", total, elapsed, total / elapsed);
+        System.out.printf(Locale.ROOT, "2xx=%d 4xx=%d 5xx=%d failed=%d%n",
+                outcomes.get(OK), outcomes.get(CLIENT_ERROR), outcomes.get(SERVER_ERROR), outcomes.get(FAILED));
+        if (total > 0) {
+            System.out.printf(Locale.ROOT, "latency p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms%n",
+                    latencies.getValueAtPercentile(50) / 1e6, latencies.getValueAtPercentile(90) / 1e6,
+                    latencies.getValueAtPercentile(99) / 1e6, latencies.getMax() / 1e6);
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private static HttpRequest nextRequest(String baseUrl, int bikes) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String bike = baseUrl + "/bikes/" + BenchmarkFleet.bikeId(random.nextInt(bikes));
+        int roll = random.nextInt(10);
+        if (roll < 8) {
+            return HttpRequest.newBuilder(URI.create(bike)).GET().build();
+        }
+        return HttpRequest.newBuilder(URI.create(bike + (roll == 8 ? "/rent" : "/return")))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString("firstName=Load&lastName=Test"))
+                .build();
+    }
+}
@@ -0,0 +1,139 @@
+package com.epicode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of the {@link InputValidator} methods every kiosk request goes through.
+ * The {@code legacy} benchmarks run the former regular-expression implementation as a baseline;
+ * run with {@code -prof gc} to compare allocation per call as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InputValidatorBenchmark {
+
+    private final String cleanName = "Maryam";
+    private final String paddedName = "  Abou El Lif  ";
+    private final String cleanId = "123abc";
+    private final String dirtyId = "12-3a_bc!";
+    private final ByteBuffer paddedNameBytes = ByteBuffer.wrap(paddedName.getBytes(StandardCharsets.US_ASCII));
+    private final ByteBuffer dirtyIdBytes = ByteBuffer.wrap(dirtyId.getBytes(StandardCharsets.US_ASCII));
+
+    static String legacySanitizeName(String input) {
+        if (input == null) {
+            throw new InputValidationException("Name cannot be null");
+        }
+        input = input.trim();
+        if (!input.matches("[a-zA-Z ]{2,}")) {
+            throw new InputValidationException("Name must be at least 2 letters and contain only letters");
+        }
+        return input;
+    }
+
+    static String legacySanitizeId(String input) {
+        if (input == null || input.isBlank()) {
+            throw new InputValidationException("Bike ID cannot be null or blank");
+        }
+        return input.replaceAll("[^a-zA-Z0-9]", "").trim();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String legacySanitizeCleanName() {
+        return legacySanitizeName(cleanName);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String legacySanitizePaddedName() {
+        return legacySanitizeName(paddedName);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String legacySanitizeCleanId() {
+        return legacySanitizeId(cleanId);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String legacySanitizeDirtyId() {
+        return legacySanitizeId(dirtyId);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String sanitizePaddedNameBytes() {
+        return InputValidator.sanitizeNameBytes(paddedNameBytes);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String sanitizeDirtyIdBytes() {
+        return InputValidator.sanitizeIdBytes(dirtyIdBytes);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String sanitizeCleanName() {
+        return InputValidator.sanitizeName(cleanName);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String sanitizePaddedName() {
+        return InputValidator.sanitizeName(paddedName);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String sanitizeCleanId() {
+        return InputValidator.sanitizeId(cleanId);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String sanitizeDirtyId() {
+        return InputValidator.sanitizeId(dirtyId);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String sanitizeNameAllCores() {
+        return InputValidator.sanitizeName(paddedName);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String sanitizeIdAllCores() {
+        return InputValidator.sanitizeId(dirtyId);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String legacySanitizeNameAllCores() {
+        return legacySanitizeName(paddedName);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String legacySanitizeIdAllCores() {
+        return legacySanitizeId(dirtyId);
+    }
+}
@@ -0,0 +1,115 @@
+package com.epicode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Startup recovery time from the audit logs: full replay of the whole history
+ * versus loading a snapshot and replaying a 1% tail.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+    private static final int FLEET_SIZE = 100_000;
+
+    @Param({"1000000", "10000000"})
+    public long events;
+
+    private Path directory;
+    private RentalStateRecovery fullReplay;
+    private RentalStateRecovery snapshotReplay;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchmarkFleet.quietLogging();
+        directory = Files.createTempDirectory("recovery-bench");
+        Path bikesLog = directory.resolve("bikes.log");
+        Path rentalsLog = directory.resolve("rentals.log");
+        writeLogs(bikesLog, rentalsLog);
+
+        fullReplay = new RentalStateRecovery(bikesLog, rentalsLog, directory.resolve("absent.snapshot"));
+        snapshotReplay = new RentalStateRecovery(bikesLog, rentalsLog, directory.resolve("state.snapshot"));
+        BikeRentalService service = newService();
+        snapshotReplay.recover(service, new BikeInventory(new ArrayList<>()));
+        snapshotReplay.writeSnapshot(service);
+        try (BufferedWriter out = Files.newBufferedWriter(rentalsLog, StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND)) {
+            writeEvents(out, events / 100);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public RecoveryResult fullReplay() {
+        return fullReplay.recover(newService(), new BikeInventory(new ArrayList<>()));
+    }
+
+    @Benchmark
+    public RecoveryResult snapshotPlusTail() {
+        return snapshotReplay.recover(newService(), new BikeInventory(new ArrayList<>()));
+    }
+
+    private static BikeRentalService newService() {
+        return new BikeRentalService(new BenchmarkFleet.DiscardingAuditRepository(),
+                new BenchmarkFleet.DiscardingAuditRepository());
+    }
+
+    private void writeLogs(Path bikesLog, Path rentalsLog) throws IOException {
+        LocalDateTime now = LocalDateTime.now();
+        try (BufferedWriter out = Files.newBufferedWriter(bikesLog, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < FLEET_SIZE; i++) {
+                out.write(BikeAuditRepository.creationLine(now, BenchmarkFleet.bikeId(i), BikeType.road,
+                        "Road Bike Catalog", "TT", true, false, false, true));
+                out.newLine();
+            }
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(rentalsLog, StandardCharsets.UTF_8)) {
+            writeEvents(out, events);
+        }
+    }
+
+    private static void writeEvents(BufferedWriter out, long count) throws IOException {
+        String timestamp = "[" + LocalDateTime.now() + "] ";
+        for (long i = 0; i < count; i++) {
+            out.write(timestamp);
+            out.write(i % 2 == 0 ? "RENTED" : "RETURNED");
+            out.write(" | Bike=" + BenchmarkFleet.bikeId((int) (i / 2 % FLEET_SIZE)) + " | First Name=John | Last Name=Doe");
+            out.newLine();
+        }
+    }
+}
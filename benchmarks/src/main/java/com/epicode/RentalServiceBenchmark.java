@@ -0,0 +1,120 @@
+package com.epicode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rent/return and lookup throughput of {@link BikeRentalService} across fleet sizes,
+ * single-threaded and with all cores. Each thread works on its own stripe of bikes,
+ * so the multi-threaded numbers show scaling rather than contention on one bike.
+ * The {@code Instrumented} variants go through the {@link Instrumentation} proxy and
+ * show the cost of timing every {@code @Logged} call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class RentalServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Fleet {
+        @Param({"1000", "100000", "1000000", "10000000"})
+        public int size;
+
+        BikeRentalService service;
+        RentalService instrumented;
+        String[] ids;
+        final AtomicInteger threads = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setup() {
+            service = BenchmarkFleet.newService(size);
+            instrumented = Instrumentation.instrument(RentalService.class, service, new MetricsRegistry());
+            ids = new String[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = BenchmarkFleet.bikeId(i);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int stride;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setup(Fleet fleet) {
+            int thread = fleet.threads.getAndIncrement();
+            stride = Runtime.getRuntime().availableProcessors();
+            next = thread % fleet.size;
+        }
+
+        String nextId(Fleet fleet) {
+            String id = fleet.ids[next];
+            next += stride;
+            if (next >= fleet.size) {
+                next %= stride;
+            }
+            return id;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void rentAndReturn(Fleet fleet, Cursor cursor) {
+        String id = cursor.nextId(fleet);
+        fleet.service.rentingBike(id, "John", "Doe");
+        fleet.service.returningBike(id, "John", "Doe");
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void rentAndReturnAllCores(Fleet fleet, Cursor cursor) {
+        String id = cursor.nextId(fleet);
+        fleet.service.rentingBike(id, "John", "Doe");
+        fleet.service.returningBike(id, "John", "Doe");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void rentAndReturnInstrumented(Fleet fleet, Cursor cursor) {
+        String id = cursor.nextId(fleet);
+        fleet.instrumented.rentingBike(id, "John", "Doe");
+        fleet.instrumented.returningBike(id, "John", "Doe");
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void rentAndReturnInstrumentedAllCores(Fleet fleet, Cursor cursor) {
+        String id = cursor.nextId(fleet);
+        fleet.instrumented.rentingBike(id, "John", "Doe");
+        fleet.instrumented.returningBike(id, "John", "Doe");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Bike getBikeById(Fleet fleet, Cursor cursor) {
+        return fleet.service.getBikeById(cursor.nextId(fleet));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Bike getBikeByIdAllCores(Fleet fleet, Cursor cursor) {
+        return fleet.service.getBikeById(cursor.nextId(fleet));
+    }
+}
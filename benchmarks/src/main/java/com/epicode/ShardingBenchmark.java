@@ -0,0 +1,119 @@
+package com.epicode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Rent/return throughput of a {@link ShardedRentalService} as shards are added, with a
+ * fixed number of client threads. Every shard writes its rentals to its own synchronous
+ * audit log, the resource a single service serializes on, so throughput should grow with
+ * the shard count until the cores run out. Each thread works on its own stripe of bikes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardingBenchmark {
+    private static final int THREADS = 8;
+    private static final int FLEET = 100_000;
+
+    @State(Scope.Benchmark)
+    public static class Fleet {
+        @Param({"1", "2", "4", "8"})
+        public int shards;
+
+        Path directory;
+        List<BikeAuditRepository> logs = new ArrayList<>();
+        ShardedRentalService service;
+        String[] ids;
+        final AtomicInteger threads = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            BenchmarkFleet.quietLogging();
+            directory = Files.createTempDirectory("sharding-bench");
+            CustomerRegistry customers = new CustomerRegistry();
+            service = new ShardedRentalService(customers);
+            for (int i = 0; i < shards; i++) {
+                BikeAuditRepository rentals = new BikeAuditRepository(
+                        directory.resolve("rentals-" + i + ".log").toString());
+                logs.add(rentals);
+                service.addShard("shard" + i, new BikeRentalService(
+                        new BenchmarkFleet.DiscardingAuditRepository(), rentals,
+                        new BikeRentalService.Options().setCustomers(customers)));
+            }
+            ids = IntStream.range(0, FLEET).mapToObj(BenchmarkFleet::bikeId).toArray(String[]::new);
+            Stream<BikeBuilder> builders = Stream.of(ids).map(id -> new BikeBuilder(id, "TT", true));
+            service.bikeCreationBatch(builders, service.newCatalog(BikeType.road), BikeType.road);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            for (BikeAuditRepository log : logs) {
+                log.close();
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup(Level.Trial)
+        public void setup(Fleet fleet) {
+            next = fleet.threads.getAndIncrement() % THREADS;
+        }
+
+        String nextId(Fleet fleet) {
+            String id = fleet.ids[next];
+            next += THREADS;
+            if (next >= fleet.ids.length) {
+                next %= THREADS;
+            }
+            return id;
+        }
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public void rentAndReturn(Fleet fleet, Cursor cursor) {
+        String id = cursor.nextId(fleet);
+        fleet.service.rentingBike(id, "John", "Doe");
+        fleet.service.returningBike(id, "John", "Doe");
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public Bike getBikeById(Fleet fleet, Cursor cursor) {
+        return fleet.service.getBikeById(cursor.nextId(fleet));
+    }
+}
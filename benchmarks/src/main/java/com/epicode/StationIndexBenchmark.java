@@ -0,0 +1,88 @@
+package com.epicode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nearest-bike and radius queries over 1M bikes docked at 50K stations spread across a
+ * region of about 110 x 120 km, from random points in it. Most bikes are rented, so a
+ * query for an available electric bike with GPS (one in 60 bikes) has to look past the
+ * stations around the point.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class StationIndexBenchmark {
+    private static final int POINTS = 1024;
+
+    @Param({"1000000"})
+    public int bikes;
+
+    @Param({"50000"})
+    public int stations;
+
+    private BikeRentalService service;
+    private final double[] latitudes = new double[POINTS];
+    private final double[] longitudes = new double[POINTS];
+    private final BikeQuery nearestFive = new BikeQuery().setLimit(5);
+    private final BikeQuery electricWithGps = new BikeQuery().setType(BikeType.electric).setGPS(true).setLimit(5);
+    private final BikeQuery all = new BikeQuery().setLimit(10_000);
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        service = BenchmarkFleet.newService(bikes);
+        Random random = new Random(42);
+        int capacity = bikes / stations * 2;
+        for (int s = 0; s < stations; s++) {
+            service.addStation(new Station("st" + s, null, 45.0 + random.nextDouble(),
+                    8.5 + random.nextDouble() * 1.5, capacity));
+        }
+        for (int i = 0; i < bikes; i++) {
+            String id = BenchmarkFleet.bikeId(i);
+            service.dockingBike(id, "st" + (i % stations));
+            if (i % 3 != 0) {
+                service.getBikeById(id).setAvailable(false);
+            }
+        }
+        for (int p = 0; p < POINTS; p++) {
+            latitudes[p] = 45.0 + random.nextDouble();
+            longitudes[p] = 8.5 + random.nextDouble() * 1.5;
+        }
+    }
+
+    @Benchmark
+    public List<StationIndex.NearbyBike> nearestFive() {
+        int p = next++ & (POINTS - 1);
+        return service.findNearestBikes(latitudes[p], longitudes[p], nearestFive);
+    }
+
+    @Benchmark
+    public List<StationIndex.NearbyBike> nearestElectricWithGps() {
+        int p = next++ & (POINTS - 1);
+        return service.findNearestBikes(latitudes[p], longitudes[p], electricWithGps);
+    }
+
+    @Benchmark
+    public List<StationIndex.NearbyBike> within500Meters() {
+        int p = next++ & (POINTS - 1);
+        return service.findBikesWithin(latitudes[p], longitudes[p], 500, all);
+    }
+}
@@ -0,0 +1,66 @@
+package com.epicode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Battery readings ingested per second, in batches of 1000 spread over the e-bikes of
+ * the fleet, with a reading per bike every 5 seconds of simulated time. The score is
+ * readings per second; run with {@code -prof gc} to see that ingestion allocates nothing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class TelemetryBenchmark {
+    private static final int BATCH = 1000;
+
+    /** Fleet size; a quarter of it is electric. */
+    @Param({"400000"})
+    public int size;
+
+    private BikeRentalService service;
+    private String[] electricIds;
+    private final BatteryTelemetry.Batch batch = new BatteryTelemetry.Batch(BATCH);
+    private int next;
+    private long time;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        service = BenchmarkFleet.newService(size);
+        electricIds = new String[size / 4];
+        for (int i = 0; i < electricIds.length; i++) {
+            electricIds[i] = BenchmarkFleet.bikeId(i * 4 + BikeType.electric.ordinal());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int ingest() {
+        batch.clear();
+        for (int i = 0; i < BATCH; i++) {
+            if (next == electricIds.length) {
+                next = 0;
+                time += 5_000;
+            }
+            int bike = next++;
+            batch.add(electricIds[bike], time, (int) (100 - (time / 60_000 + bike) % 100), (int) (time / 1000));
+        }
+        return service.ingestTelemetry(batch);
+    }
+}
@@ -0,0 +1,93 @@
+package com.epicode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per hold of scheduling, then expiring or cancelling, a batch of reservation
+ * timeouts in a {@link TimingWheel}, compared with one task per hold on a
+ * {@link ScheduledThreadPoolExecutor}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class TimingWheelBenchmark {
+    private static final int HOLDS = 1_000_000;
+    private static final long TICK = TimeUnit.SECONDS.toNanos(1);
+    private static final long HOLD = TimeUnit.MINUTES.toNanos(10);
+
+    @Param({"0", "50"})
+    public int cancelPercent;
+
+    private ScheduledThreadPoolExecutor executor;
+    private ScheduledFuture<?>[] futures;
+    private TimingWheel.Timeout<?>[] timeouts;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        futures = new ScheduledFuture<?>[HOLDS];
+        timeouts = new TimingWheel.Timeout<?>[HOLDS];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HOLDS)
+    public int timingWheel() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK, 1024, 0);
+        for (int i = 0; i < HOLDS; i++) {
+            // Holds start over one minute, as they would with steady traffic
+            timeouts[i] = wheel.schedule(i, (i % 60) * TICK + HOLD);
+        }
+        for (int i = 0; i < HOLDS; i++) {
+            if (i % 100 < cancelPercent) {
+                timeouts[i].cancel();
+            }
+        }
+        int[] expired = {0};
+        wheel.advance(HOLD + 62 * TICK, value -> expired[0]++);
+        return expired[0];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HOLDS)
+    public int scheduledExecutor() {
+        Runnable expire = () -> { };
+        for (int i = 0; i < HOLDS; i++) {
+            futures[i] = executor.schedule(expire, (i % 60) * TICK + HOLD, TimeUnit.NANOSECONDS);
+        }
+        int cancelled = 0;
+        for (int i = 0; i < HOLDS; i++) {
+            // Holds that are not cancelled here would fire later; cancel them too so the queue drains
+            futures[i].cancel(false);
+            if (i % 100 < cancelPercent) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+}
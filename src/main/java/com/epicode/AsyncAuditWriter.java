@@ -0,0 +1,409 @@
+package com.epicode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+
+/**
+ * Asynchronous, group-committing writer for audit log lines.
+ * Callers enqueue entries into a bounded queue; a single writer thread keeps
+ * the file channel open, drains whatever is queued and appends it with one
+ * write per batch. Durability is controlled by the {@link FsyncPolicy}.
+ *
+ * <p>When the queue is full, {@link #append(String)} blocks, so memory use
+ * stays bounded under sustained overload.</p>
+ *
+ * <p>With an {@link AuditRotation}, the writer thread closes the file between two
+ * batches once it is due, moves it aside as a segment and opens a fresh one; the
+ * segment is compressed, indexed and eventually deleted by {@link AuditSegments}
+ * in the background, so callers never wait on it.</p>
+ */
+@Secured("Audit writer failures are shielded and surfaced as StorageException")
+@RoleType("Repository")
+public class AsyncAuditWriter implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(AsyncAuditWriter.class.getName());
+    private static final int MAX_BATCH = 1024;
+    // How often a caller blocked on the queue or a barrier checks that the writer thread is still alive
+    private static final long LIVENESS_CHECK_MILLIS = 100;
+    private static final byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * When the writer forces written data to the storage device.
+     */
+    public enum FsyncPolicy {
+        /** fsync after every group commit */
+        PER_BATCH,
+        /** fsync at most once per configured interval */
+        INTERVAL,
+        /** leave it to the operating system */
+        NONE
+    }
+
+    private final BlockingQueue<Object> queue;
+    private final Path path;
+    private final AuditRotation rotation;
+    private final AuditSegments segments;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final Thread writerThread;
+    private final ArrayList<Object> batch = new ArrayList<>(MAX_BATCH);
+    // Held shared while enqueueing and exclusively while closing, so the closing barrier comes after every entry
+    private final ReadWriteLock closing = new ReentrantReadWriteLock();
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    private volatile boolean closed = false;
+    private volatile IOException failure;
+    private FileChannel channel;
+    private long lastFsync = System.nanoTime();
+    private boolean dirty = false;
+    private long activeBytes;
+    private long openedAt;
+
+    /**
+     * Marker placed in the queue by {@link #flush()}; released once every entry before it is written.
+     */
+    private static final class Barrier {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final boolean last;
+
+        private Barrier(boolean last) {
+            this.last = last;
+        }
+    }
+
+
+    /**
+     * Opens the audit file for appending and starts the writer thread.
+     * @param file audit file
+     * @param queueCapacity maximum number of pending entries
+     * @param fsyncPolicy durability policy
+     * @param fsyncIntervalMillis interval used by {@link FsyncPolicy#INTERVAL}
+     * @throws StorageException if the file cannot be opened
+     */
+    public AsyncAuditWriter(File file, int queueCapacity, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis) {
+        this(file, queueCapacity, fsyncPolicy, fsyncIntervalMillis, null);
+    }
+
+    /**
+     * Opens the audit file for appending, rotating it as configured, and starts the writer thread.
+     * @param file audit file
+     * @param queueCapacity maximum number of pending entries
+     * @param fsyncPolicy durability policy
+     * @param fsyncIntervalMillis interval used by {@link FsyncPolicy#INTERVAL}
+     * @param rotation when the file is rotated and how long segments are kept, or null to never rotate
+     * @throws StorageException if the file cannot be opened
+     */
+    @Sanitized
+    public AsyncAuditWriter(File file, int queueCapacity, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis,
+                            AuditRotation rotation) {
+        if (file == null || queueCapacity <= 0 || fsyncPolicy == null || fsyncIntervalMillis < 0
+                || (fsyncPolicy == FsyncPolicy.INTERVAL && fsyncIntervalMillis == 0)) {
+            throw new StorageException("Invalid audit writer configuration", null);
+        }
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+        this.path = file.toPath();
+        this.rotation = rotation;
+        try {
+            openChannel();
+        } catch (IOException e) {
+            logger.severe("Failed to open audit file: " + e.getMessage());
+            throw new StorageException("System storage unavailable", e);
+        }
+        this.segments = rotation == null ? null : new AuditSegments(path, rotation);
+        this.writerThread = new Thread(this::run, "audit-writer-" + file.getName());
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * @return the rotated segments of the file, or null if it is never rotated
+     */
+    public AuditSegments getSegments() {
+        return segments;
+    }
+
+    /**
+     * Enqueues one audit line. Blocks while the queue is full.
+     * @param entry line without trailing newline
+     * @throws StorageException if the writer is closed or has failed
+     */
+    @Logged
+    public void append(String entry) {
+        closing.readLock().lock();
+        try {
+            checkUsable();
+            enqueue(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while recording operation", e);
+        } finally {
+            closing.readLock().unlock();
+        }
+    }
+
+    /**
+     * Enqueues several audit lines, in order.
+     * @param entries lines without trailing newline
+     * @throws StorageException if the writer is closed or has failed
+     */
+    @Logged
+    public void appendAll(List<String> entries) {
+        for (String entry : entries) {
+            append(entry);
+        }
+    }
+
+    /**
+     * Blocks until every entry appended before this call has been written
+     * (and forced to disk, unless the policy is {@link FsyncPolicy#NONE}).
+     * @throws StorageException if writing failed, or the writer thread has stopped
+     */
+    public void flush() {
+        Barrier barrier = new Barrier(false);
+        closing.readLock().lock();
+        try {
+            checkUsable();
+            enqueue(barrier);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while flushing audit log", e);
+        } finally {
+            closing.readLock().unlock();
+        }
+        awaitBarrier(barrier);
+    }
+
+    /**
+     * Flushes pending entries, stops the writer thread and closes the file.
+     * Appends already under way are written first; further appends are rejected.
+     * Calling close twice is harmless.
+     * @throws StorageException if pending entries could not be written, or the writer thread has stopped
+     */
+    @Override
+    public void close() {
+        closing.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closing.writeLock().unlock();
+        }
+        Barrier last = new Barrier(true);
+        try {
+            enqueue(last);
+            awaitBarrier(last);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while flushing audit log", e);
+        } finally {
+            try {
+                writerThread.join();
+                channel.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                logger.warning("Failed to close audit file: " + e.getMessage());
+            }
+            if (segments != null) {
+                segments.close();
+            }
+        }
+    }
+
+    /**
+     * Puts an item in the queue, waiting while it is full as long as the writer thread is alive.
+     */
+    private void enqueue(Object item) throws InterruptedException {
+        while (!queue.offer(item, LIVENESS_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkWriterAlive();
+        }
+    }
+
+    private void awaitBarrier(Barrier barrier) {
+        try {
+            while (!barrier.done.await(LIVENESS_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                // A thread that ended after releasing the barrier is fine; the closing barrier is released that way
+                if (!writerThread.isAlive() && barrier.done.getCount() > 0) {
+                    checkWriterAlive();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while flushing audit log", e);
+        }
+        if (failure != null) {
+            throw new StorageException("Unable to record operation", failure);
+        }
+    }
+
+    private void checkWriterAlive() {
+        if (!writerThread.isAlive()) {
+            logger.severe("Audit writer thread of " + path.getFileName() + " has stopped");
+            throw new StorageException("Audit writer has stopped", failure);
+        }
+    }
+
+    private void checkUsable() {
+        if (closed) {
+            throw new StorageException("Audit writer is closed", null);
+        }
+        if (failure != null) {
+            throw new StorageException("Unable to record operation", failure);
+        }
+    }
+
+    private void run() {
+        boolean running = true;
+        while (running) {
+            try {
+                Object first = fsyncPolicy == FsyncPolicy.INTERVAL && dirty
+                        ? queue.poll(fsyncIntervalNanos, TimeUnit.NANOSECONDS)
+                        : queue.take();
+                if (first == null) {
+                    forceIfDue();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                running = writeBatch();
+            } catch (InterruptedException e) {
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes the current batch as one group commit and releases any barriers in it.
+     * @return false once the closing barrier has been processed
+     */
+    private boolean writeBatch() {
+        boolean keepRunning = true;
+        int start = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Object item = batch.get(i);
+            if (item instanceof Barrier) {
+                Barrier barrier = (Barrier) item;
+                commit(start, i, fsyncPolicy != FsyncPolicy.NONE);
+                start = i + 1;
+                barrier.done.countDown();
+                if (barrier.last) {
+                    keepRunning = false;
+                }
+            }
+        }
+        commit(start, batch.size(), fsyncPolicy == FsyncPolicy.PER_BATCH);
+        forceIfDue();
+        if (keepRunning) {
+            rotateIfDue();
+        }
+        return keepRunning;
+    }
+
+    /**
+     * Closes the file as a segment and opens a fresh one, if the rotation policy says so.
+     * A file that cannot be moved aside is kept and written on.
+     */
+    private void rotateIfDue() {
+        if (rotation == null || failure != null || !rotation.isDue(activeBytes, System.nanoTime() - openedAt)) {
+            return;
+        }
+        try {
+            if (dirty && fsyncPolicy != FsyncPolicy.NONE) {
+                force();
+            }
+            channel.close();
+            try {
+                segments.rotate();
+            } catch (IOException e) {
+                logger.warning("Failed to rotate audit file, writing on: " + e.getMessage());
+            }
+            openChannel();
+            dirty = false;
+        } catch (IOException e) {
+            logger.severe("Failed to reopen audit file after rotation: " + e.getMessage());
+            failure = e;
+        }
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeBytes = channel.size();
+        openedAt = System.nanoTime();
+    }
+
+    private void commit(int from, int to, boolean force) {
+        if (failure != null) {
+            return;
+        }
+        try {
+            buffer.clear();
+            for (int i = from; i < to; i++) {
+                byte[] bytes = ((String) batch.get(i)).getBytes(StandardCharsets.UTF_8);
+                ensureCapacity(bytes.length + NEW_LINE.length);
+                buffer.put(bytes).put(NEW_LINE);
+            }
+            buffer.flip();
+            activeBytes += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            dirty |= to > from;
+            if (force && dirty) {
+                force();
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to write audit batch: " + e.getMessage());
+            failure = e;
+        }
+    }
+
+    private void forceIfDue() {
+        if (fsyncPolicy != FsyncPolicy.INTERVAL || !dirty || failure != null) {
+            return;
+        }
+        if (System.nanoTime() - lastFsync >= fsyncIntervalNanos) {
+            try {
+                force();
+            } catch (IOException e) {
+                logger.severe("Failed to sync audit file: " + e.getMessage());
+                failure = e;
+            }
+        }
+    }
+
+    private void force() throws IOException {
+        channel.force(false);
+        dirty = false;
+        lastFsync = System.nanoTime();
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer.remaining() >= extra) {
+            return;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + extra));
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+}
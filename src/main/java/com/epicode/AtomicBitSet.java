@@ -0,0 +1,143 @@
+package com.epicode;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Growable bit set whose bits can be set and cleared concurrently without locks.
+ * Words live in fixed-size chunks that are allocated on first use and never move,
+ * so growing the set never blocks or loses a concurrent update.
+ *
+ * <p>Readers see each word atomically; a scan over many words is weakly consistent.</p>
+ */
+@Secured("Lock-free bit storage")
+@RoleType("Index")
+public class AtomicBitSet {
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_WORDS = 1 << CHUNK_SHIFT;
+    private static final int MAX_CHUNKS = (Integer.MAX_VALUE >>> 6 >>> CHUNK_SHIFT) + 1;
+
+    private final AtomicReferenceArray<AtomicLongArray> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final AtomicInteger wordsInUse = new AtomicInteger();
+
+    public boolean get(int bit) {
+        AtomicLongArray chunk = chunks.get((bit >>> 6) >>> CHUNK_SHIFT);
+        return chunk != null && (chunk.get((bit >>> 6) & (CHUNK_WORDS - 1)) & (1L << bit)) != 0;
+    }
+
+    public void set(int bit, boolean value) {
+        if (value) {
+            set(bit);
+        } else {
+            clear(bit);
+        }
+    }
+
+    public void set(int bit) {
+        int word = bit >>> 6;
+        AtomicLongArray chunk = chunkFor(word);
+        int index = word & (CHUNK_WORDS - 1);
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = chunk.get(index);
+            if ((current & mask) != 0) {
+                return;
+            }
+        } while (!chunk.compareAndSet(index, current, current | mask));
+    }
+
+    public void clear(int bit) {
+        AtomicLongArray chunk = chunks.get((bit >>> 6) >>> CHUNK_SHIFT);
+        if (chunk == null) {
+            return;
+        }
+        int index = (bit >>> 6) & (CHUNK_WORDS - 1);
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = chunk.get(index);
+            if ((current & mask) == 0) {
+                return;
+            }
+        } while (!chunk.compareAndSet(index, current, current & ~mask));
+    }
+
+    /**
+     * Atomically changes a bit if it currently has the expected value.
+     * @return true if the bit was changed
+     */
+    public boolean compareAndSet(int bit, boolean expect, boolean update) {
+        int word = bit >>> 6;
+        AtomicLongArray chunk = chunkFor(word);
+        int index = word & (CHUNK_WORDS - 1);
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = chunk.get(index);
+            if (((current & mask) != 0) != expect) {
+                return false;
+            }
+        } while (!chunk.compareAndSet(index, current, update ? current | mask : current & ~mask));
+        return true;
+    }
+
+    /**
+     * @param from first bit to look at
+     * @return index of the first set bit at or after {@code from}, or -1 if there is none
+     */
+    public int nextSetBit(int from) {
+        int words = wordsInUse();
+        int word = from >>> 6;
+        if (word >= words) {
+            return -1;
+        }
+        long bits = word(word) & (-1L << from);
+        while (bits == 0) {
+            if (++word >= words) {
+                return -1;
+            }
+            bits = word(word);
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * @param word word index
+     * @return the 64 bits starting at {@code word * 64}
+     */
+    public long word(int word) {
+        AtomicLongArray chunk = chunks.get(word >>> CHUNK_SHIFT);
+        return chunk == null ? 0L : chunk.get(word & (CHUNK_WORDS - 1));
+    }
+
+    /**
+     * @return number of words that may hold set bits
+     */
+    public int wordsInUse() {
+        return wordsInUse.get();
+    }
+
+    public int cardinality() {
+        int count = 0;
+        int words = wordsInUse();
+        for (int i = 0; i < words; i++) {
+            count += Long.bitCount(word(i));
+        }
+        return count;
+    }
+
+    private AtomicLongArray chunkFor(int word) {
+        int chunkIndex = word >>> CHUNK_SHIFT;
+        AtomicLongArray chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            chunks.compareAndSet(chunkIndex, null, new AtomicLongArray(CHUNK_WORDS));
+            chunk = chunks.get(chunkIndex);
+        }
+        if (word >= wordsInUse.get()) {
+            wordsInUse.accumulateAndGet(word + 1, Math::max);
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,662 @@
+package com.epicode;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+
+/**
+ * Parallel reports over the text audit logs written by {@link BikeAuditRepository}.
+ *
+ * <p>A log is cut into chunks that end on line boundaries, and a fork/join task per
+ * chunk maps it read-only and scans its bytes in place: timestamps, event names and
+ * bike IDs are decoded from the mapped bytes, and IDs are resolved through a
+ * {@link BikeIdIndex} built from the creation log, so no {@code String} is created per
+ * line. Chunk results are merged pairwise as the tasks join.</p>
+ *
+ * <p>Usage: {@code AuditAnalytics <bikes-log> <rentals-log> summary|hourly|top [args]}:</p>
+ * <pre>
+ * summary                    events per type and bikes known
+ * hourly [from [to]]         rentals per bike type per hour, ISO dates or date-times
+ * top [n]                    the n most rented bikes (default 100)
+ * </pre>
+ */
+@Secured("Read-only analytics tool")
+@RoleType("Tool")
+public final class AuditAnalytics {
+    private static final Logger logger = Logger.getLogger(AuditAnalytics.class.getName());
+    private static final int MIN_CHUNK = 1 << 20;
+    private static final int MAX_CHUNK = 64 << 20;
+    private static final int CHUNKS_PER_THREAD = 8;
+    private static final long NEW_LINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final BikeType[] TYPES = BikeType.values();
+    private static final AuditEventType[] EVENTS = AuditEventType.values();
+    private static final byte[][] EVENT_NAMES = new byte[EVENTS.length][];
+    private static final byte[] BIKE_FIELD = "Bike=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TYPE_FIELD = "Type=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[][] TYPE_NAMES = new byte[TYPES.length][];
+
+    static {
+        for (AuditEventType event : EVENTS) {
+            EVENT_NAMES[event.ordinal()] = event.name().getBytes(StandardCharsets.US_ASCII);
+        }
+        for (BikeType type : TYPES) {
+            TYPE_NAMES[type.ordinal()] = type.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private AuditAnalytics() {
+    }
+
+    /**
+     * Analyzes a creation log and a rental log on the common fork/join pool.
+     * @param bikesLog creation audit log
+     * @param rentalsLog rental audit log
+     * @return aggregated statistics
+     * @throws StorageException if a log cannot be read
+     */
+    public static AuditStats analyze(Path bikesLog, Path rentalsLog) {
+        return analyze(bikesLog, rentalsLog, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param bikesLog creation audit log, used to resolve bike types
+     * @param rentalsLog rental audit log
+     * @param pool pool running the chunk tasks
+     * @return aggregated statistics
+     * @throws StorageException if a log cannot be read
+     */
+    @Logged
+    public static AuditStats analyze(Path bikesLog, Path rentalsLog, ForkJoinPool pool) {
+        return analyze(bikesLog, rentalsLog, pool, MIN_CHUNK);
+    }
+
+    /**
+     * @param minChunk smallest chunk in bytes; smaller files are scanned as one chunk
+     */
+    static AuditStats analyze(Path bikesLog, Path rentalsLog, ForkJoinPool pool, int minChunk) {
+        long start = System.nanoTime();
+        Creations creations = scan(bikesLog, pool, minChunk, Creations::new);
+        BikeIdIndex ids = new BikeIdIndex((int) Math.min(creations.count, 1 << 26));
+        byte[] types = new byte[16];
+        for (Creations.Chunk chunk : creations.chunks) {
+            ByteSpan span = new ByteSpan(chunk.buffer);
+            for (int i = 0; i < chunk.size; i++) {
+                int slot;
+                try {
+                    slot = ids.add(span.at(chunk.starts[i], chunk.lengths[i]));
+                } catch (InvalidBikeException e) {
+                    continue;
+                }
+                if (slot >= 0) {
+                    if (slot >= types.length) {
+                        types = Arrays.copyOf(types, types.length * 2);
+                    }
+                    types[slot] = chunk.types[i];
+                }
+            }
+        }
+        byte[] bikeTypes = types;
+        Rentals rentals = scan(rentalsLog, pool, minChunk, () -> new Rentals(ids, bikeTypes));
+        long[] events = creations.events.clone();
+        for (int i = 0; i < events.length; i++) {
+            events[i] += rentals.events[i];
+        }
+        long bytes = sizeOf(bikesLog) + sizeOf(rentalsLog);
+        AuditStats stats = new AuditStats(events, creations.skipped + rentals.skipped, ids, bikeTypes,
+                rentals.byHour, rentals.byBike, bytes, System.nanoTime() - start);
+        logger.info(stats.toString());
+        return stats;
+    }
+
+    // ------------------------------------------------------------------ chunking
+
+    private static <P extends Partial<P>> P scan(Path log, ForkJoinPool pool, int minChunk, Supplier<P> factory) {
+        if (!Files.exists(log)) {
+            return factory.get();
+        }
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel, pool.getParallelism() * CHUNKS_PER_THREAD, minChunk);
+            return pool.invoke(new ChunkTask<>(channel, bounds, 0, bounds.length - 1, factory));
+        } catch (IOException e) {
+            logger.severe("Failed to analyze audit log " + log + ": " + e.getMessage());
+            throw new StorageException("Unable to read audit log", e);
+        }
+    }
+
+    /**
+     * Cuts a file into about {@code chunks} ranges, each ending just after a line break or at the end of the file.
+     * @return ascending offsets, first 0 and last the file size
+     */
+    static long[] chunkBounds(FileChannel channel, int chunks, int minChunk) throws IOException {
+        long size = channel.size();
+        long target = Math.max(minChunk, Math.min(MAX_CHUNK, size / Math.max(1, chunks)));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = target;
+        while (position < size) {
+            position = nextLineStart(channel, position, probe);
+            if (position >= size) {
+                break;
+            }
+            bounds.add(position);
+            position += target;
+        }
+        bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+        long size = channel.size();
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Splits its chunk range in two until a single chunk is left, which it maps and scans.
+     */
+    private static final class ChunkTask<P extends Partial<P>> extends RecursiveTask<P> {
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final int from;
+        private final int to;
+        private final Supplier<P> factory;
+
+        private ChunkTask(FileChannel channel, long[] bounds, int from, int to, Supplier<P> factory) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.factory = factory;
+        }
+
+        @Override
+        protected P compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                ChunkTask<P> right = new ChunkTask<>(channel, bounds, middle, to, factory);
+                right.fork();
+                P result = new ChunkTask<>(channel, bounds, from, middle, factory).compute();
+                result.merge(right.join());
+                return result;
+            }
+            P result = factory.get();
+            long start = bounds[from];
+            long length = bounds[to] - start;
+            if (length == 0) {
+                return result;
+            }
+            ByteBuffer chunk;
+            try {
+                chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            } catch (IOException e) {
+                throw new StorageException("Unable to map audit log chunk at " + start, e);
+            }
+            result.scan(chunk);
+            return result;
+        }
+    }
+
+    // ------------------------------------------------------------------ line parsing
+
+    /**
+     * Aggregation over the lines of one or more chunks.
+     */
+    private abstract static class Partial<P extends Partial<P>> {
+        final long[] events = new long[EVENTS.length];
+        long skipped;
+
+        void scan(ByteBuffer chunk) {
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+            int limit = chunk.limit();
+            int start = 0;
+            while (start < limit) {
+                int end = nextLineBreak(chunk, start, limit);
+                int lineEnd = end > start && chunk.get(end - 1) == '\r' ? end - 1 : end;
+                if (lineEnd > start) {
+                    line(chunk, start, lineEnd);
+                }
+                start = end + 1;
+            }
+        }
+
+        private void line(ByteBuffer chunk, int start, int end) {
+            int close = indexOf(chunk, start, Math.min(end, start + 48), (byte) ']');
+            if (chunk.get(start) != '[' || close < 0 || close + 2 >= end) {
+                skipped++;
+                return;
+            }
+            int nameStart = close + 2;
+            for (AuditEventType event : EVENTS) {
+                byte[] name = EVENT_NAMES[event.ordinal()];
+                if (startsWith(chunk, nameStart, end, name)) {
+                    // The bike is the first field, right after " | "; search further only for odd lines
+                    int bikeStart = startsWith(chunk, nameStart + name.length + 3, end, BIKE_FIELD)
+                            ? nameStart + name.length + 3 : find(chunk, nameStart + name.length, end, BIKE_FIELD);
+                    if (bikeStart < 0 || !event(event, chunk, start, end, bikeStart + BIKE_FIELD.length)) {
+                        skipped++;
+                        return;
+                    }
+                    events[event.ordinal()]++;
+                    return;
+                }
+            }
+            skipped++;
+        }
+
+        /**
+         * @param idStart offset of the bike ID in the line
+         * @return false if the line is malformed
+         */
+        abstract boolean event(AuditEventType event, ByteBuffer chunk, int lineStart, int lineEnd, int idStart);
+
+        void merge(P other) {
+            for (int i = 0; i < events.length; i++) {
+                events[i] += other.events[i];
+            }
+            skipped += other.skipped;
+        }
+    }
+
+    /**
+     * Bike IDs and types of CREATED lines, kept as offsets into their mapped chunks.
+     */
+    private static final class Creations extends Partial<Creations> {
+        private final List<Chunk> chunks = new ArrayList<>();
+        private Chunk current;
+        private long count;
+
+        private static final class Chunk {
+            private final ByteBuffer buffer;
+            private int[] starts = new int[64];
+            private int[] lengths = new int[64];
+            private byte[] types = new byte[64];
+            private int size;
+
+            private Chunk(ByteBuffer buffer) {
+                this.buffer = buffer;
+            }
+        }
+
+        @Override
+        void scan(ByteBuffer chunk) {
+            current = new Chunk(chunk);
+            chunks.add(current);
+            super.scan(chunk);
+        }
+
+        @Override
+        boolean event(AuditEventType event, ByteBuffer chunk, int lineStart, int lineEnd, int idStart) {
+            if (event != AuditEventType.CREATED) {
+                return true;
+            }
+            int typeStart = find(chunk, idStart, lineEnd, TYPE_FIELD);
+            int type = typeStart < 0 ? -1 : typeOf(chunk, typeStart + TYPE_FIELD.length, lineEnd);
+            if (type < 0) {
+                return false;
+            }
+            Chunk target = current;
+            if (target.size == target.starts.length) {
+                int capacity = target.size * 2;
+                target.starts = Arrays.copyOf(target.starts, capacity);
+                target.lengths = Arrays.copyOf(target.lengths, capacity);
+                target.types = Arrays.copyOf(target.types, capacity);
+            }
+            target.starts[target.size] = idStart;
+            target.lengths[target.size] = fieldEnd(chunk, idStart, lineEnd) - idStart;
+            target.types[target.size] = (byte) type;
+            target.size++;
+            count++;
+            return true;
+        }
+
+        @Override
+        void merge(Creations other) {
+            super.merge(other);
+            chunks.addAll(other.chunks);
+            count += other.count;
+        }
+    }
+
+    /**
+     * Rentals per hour and type, and per bike.
+     */
+    private static final class Rentals extends Partial<Rentals> {
+        private final BikeIdIndex ids;
+        private final byte[] types;
+        private final Map<Long, long[]> byHour = new HashMap<>();
+        private final int[] byBike;
+        private ByteSpan span;
+        private long lastHour = Long.MIN_VALUE;
+        private long[] lastCounts;
+
+        private Rentals(BikeIdIndex ids, byte[] types) {
+            this.ids = ids;
+            this.types = types;
+            this.byBike = new int[ids.size()];
+        }
+
+        @Override
+        void scan(ByteBuffer chunk) {
+            span = new ByteSpan(chunk);
+            super.scan(chunk);
+        }
+
+        @Override
+        boolean event(AuditEventType event, ByteBuffer chunk, int lineStart, int lineEnd, int idStart) {
+            if (event != AuditEventType.RENTED) {
+                return true;
+            }
+            long hour = epochHour(chunk, lineStart + 1, lineEnd);
+            if (hour == Long.MIN_VALUE) {
+                return false;
+            }
+            int slot = ids.slotOf(span.at(idStart, fieldEnd(chunk, idStart, lineEnd) - idStart));
+            if (hour != lastHour) {
+                lastHour = hour;
+                lastCounts = byHour.computeIfAbsent(hour, h -> new long[TYPES.length + 1]);
+            }
+            if (slot < 0) {
+                lastCounts[TYPES.length]++;
+            } else {
+                byBike[slot]++;
+                lastCounts[types[slot]]++;
+            }
+            return true;
+        }
+
+        @Override
+        void merge(Rentals other) {
+            super.merge(other);
+            for (int i = 0; i < byBike.length; i++) {
+                byBike[i] += other.byBike[i];
+            }
+            other.byHour.forEach((hour, counts) -> {
+                long[] mine = byHour.putIfAbsent(hour, counts);
+                if (mine != null) {
+                    for (int i = 0; i < mine.length; i++) {
+                        mine[i] += counts[i];
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Finds the next line break eight bytes at a time: a byte of {@code word ^ NEW_LINES} is zero
+     * where the text has a line break, and the lowest such byte is the first one in the text.
+     * @return offset of the next {@code '\n'} at or after from, or limit
+     */
+    static int nextLineBreak(ByteBuffer chunk, int from, int limit) {
+        int i = from;
+        for (; i + 8 <= limit; i += 8) {
+            long word = chunk.getLong(i) ^ NEW_LINES;
+            long zeros = (word - 0x0101010101010101L) & ~word & 0x8080808080808080L;
+            if (zeros != 0) {
+                return i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+            }
+        }
+        for (; i < limit; i++) {
+            if (chunk.get(i) == '\n') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Parses the hour of a {@code yyyy-MM-ddTHH} timestamp to hours since 1970-01-01T00, without time zone.
+     * @return the hour, or {@link Long#MIN_VALUE} if the bytes are not a timestamp
+     */
+    static long epochHour(ByteBuffer chunk, int start, int end) {
+        if (end - start < 13 || chunk.get(start + 4) != '-' || chunk.get(start + 7) != '-'
+                || chunk.get(start + 10) != 'T') {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(chunk, start, 4);
+        int month = digits(chunk, start + 5, 2);
+        int day = digits(chunk, start + 8, 2);
+        int hour = digits(chunk, start + 11, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23) {
+            return Long.MIN_VALUE;
+        }
+        return daysFromCivil(year, month, day) * 24 + hour;
+    }
+
+    private static int digits(ByteBuffer chunk, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = chunk.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date (H. Hinnant's algorithm).
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static int typeOf(ByteBuffer chunk, int start, int end) {
+        int fieldEnd = fieldEnd(chunk, start, end);
+        for (int t = 0; t < TYPE_NAMES.length; t++) {
+            if (fieldEnd - start == TYPE_NAMES[t].length && startsWith(chunk, start, fieldEnd, TYPE_NAMES[t])) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return offset of the {@code " | "} separator ending the field at start, or end
+     */
+    private static int fieldEnd(ByteBuffer chunk, int start, int end) {
+        for (int i = start; i < end - 1; i++) {
+            if (chunk.get(i) == ' ' && chunk.get(i + 1) == '|') {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static int indexOf(ByteBuffer chunk, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (chunk.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int find(ByteBuffer chunk, int start, int end, byte[] pattern) {
+        for (int i = start; i <= end - pattern.length; i++) {
+            if (startsWith(chunk, i, end, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(ByteBuffer chunk, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (chunk.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.exists(path) ? Files.size(path) : 0;
+        } catch (IOException e) {
+            throw new StorageException("System storage unavailable", e);
+        }
+    }
+
+    /**
+     * Reusable {@link CharSequence} over a range of single-byte characters, for index lookups without copying.
+     */
+    private static final class ByteSpan implements CharSequence {
+        private final ByteBuffer buffer;
+        private int start;
+        private int length;
+
+        private ByteSpan(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private ByteSpan at(int start, int length) {
+            this.start = start;
+            this.length = length;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(start + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[length];
+            buffer.get(start, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    // ------------------------------------------------------------------ command line
+
+    /**
+     * Prints one report.
+     * @param stats analyzed logs
+     * @param report report name and arguments
+     * @param out destination
+     * @throws InputValidationException if the report or an argument is not understood
+     */
+    static void printReport(AuditStats stats, String[] report, PrintStream out) {
+        switch (report[0]) {
+            case "summary" -> {
+                for (AuditEventType event : EVENTS) {
+                    out.println(event + "\t" + stats.getEventCount(event));
+                }
+                out.println("SKIPPED\t" + stats.getSkippedLines());
+                out.println("BIKES\t" + stats.getBikeCount());
+            }
+            case "hourly" -> {
+                LocalDateTime from = report.length > 1 ? parseTime(report[1]) : LocalDateTime.MIN;
+                LocalDateTime to = report.length > 2 ? parseTime(report[2]) : LocalDateTime.MAX;
+                StringBuilder header = new StringBuilder("hour");
+                for (BikeType type : TYPES) {
+                    header.append('\t').append(type);
+                }
+                out.println(header.append("\tunknown\ttotal"));
+                for (AuditStats.HourlyRentals hour : stats.rentalsByHour(from, to)) {
+                    StringBuilder row = new StringBuilder(hour.getHour().toString());
+                    for (BikeType type : TYPES) {
+                        row.append('\t').append(hour.getRentals(type));
+                    }
+                    out.println(row.append('\t').append(hour.getUnknownType()).append('\t').append(hour.getTotal()));
+                }
+            }
+            case "top" -> {
+                int limit = report.length > 1 ? parseLimit(report[1]) : 100;
+                int rank = 1;
+                for (AuditStats.BikeRentals bike : stats.topBikes(limit)) {
+                    out.println(rank++ + "\t" + bike.getBikeId() + "\t" + bike.getType() + "\t" + bike.getRentals());
+                }
+            }
+            default -> throw new InputValidationException("Unknown report: " + report[0]);
+        }
+    }
+
+    private static LocalDateTime parseTime(String value) {
+        try {
+            return value.contains("T") ? LocalDateTime.parse(value) : LocalDate.parse(value).atStartOfDay();
+        } catch (DateTimeParseException e) {
+            throw new InputValidationException("Invalid date: " + value);
+        }
+    }
+
+    private static int parseLimit(String value) {
+        try {
+            int limit = Integer.parseInt(value);
+            if (limit > 0) {
+                return limit;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new InputValidationException("Invalid number of bikes: " + value);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: AuditAnalytics <bikes-log> <rentals-log> summary|hourly [from [to]]|top [n]");
+            System.exit(2);
+        }
+        String[] report = Arrays.copyOfRange(args, 2, args.length);
+        AuditStats stats = analyze(Paths.get(args[0]), Paths.get(args[1]));
+        try {
+            printReport(stats, report, System.out);
+        } catch (InputValidationException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package com.epicode;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+
+/**
+ * Encodes audit entries straight into a reusable byte buffer, one line per entry.
+ * Field values are copied character by character as UTF-8 and the timestamp is rendered
+ * from a cached clock: the date, hour and minute are formatted once per minute, only the
+ * seconds and milliseconds per entry. Once the buffer has grown to the largest batch,
+ * encoding allocates nothing.
+ *
+ * <p>{@link Layout#TEXT} produces the lines of {@link BikeAuditRepository#creationLine}
+ * and friends, with millisecond timestamps, so recovery and the log tools read them as
+ * before. {@link Layout#JSON_LINES} produces one JSON object per line for log shippers.</p>
+ *
+ * <p>An encoder is not thread-safe; callers serialize access to it.</p>
+ */
+@Secured("Garbage-free audit encoding")
+@RoleType("Repository")
+public class AuditEncoder {
+    private static final byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TRUE = bytesOf("true");
+    private static final byte[] FALSE = bytesOf("false");
+    private static final byte[] NULL = bytesOf("null");
+    private static final byte[][] EVENT_NAMES = new byte[AuditEventType.values().length][];
+    private static final byte[][] TYPE_NAMES = new byte[BikeType.values().length][];
+    private static final byte[] HEX = bytesOf("0123456789abcdef");
+
+    static {
+        for (AuditEventType type : AuditEventType.values()) {
+            EVENT_NAMES[type.ordinal()] = bytesOf(type.name());
+        }
+        for (BikeType type : BikeType.values()) {
+            TYPE_NAMES[type.ordinal()] = bytesOf(type.name());
+        }
+    }
+
+    /**
+     * Line layout of encoded entries.
+     */
+    public enum Layout {
+        /** the bracketed, pipe-separated layout of the text audit logs */
+        TEXT,
+        /** one JSON object per line */
+        JSON_LINES
+    }
+
+    private final Layout layout;
+    private final ZoneId zone;
+    private final LongSupplier clock;
+    private byte[] bytes = new byte[512];
+    private ByteBuffer view = ByteBuffer.wrap(bytes);
+    private int length = 0;
+    private long cachedMinute = Long.MIN_VALUE;
+    private byte[] minutePrefix = new byte[0];
+
+
+    /**
+     * Creates an encoder stamping entries with the system clock in the default time zone.
+     * @param layout line layout
+     * @throws StorageException if layout is null
+     */
+    public AuditEncoder(Layout layout) {
+        this(layout, ZoneId.systemDefault(), System::currentTimeMillis);
+    }
+
+    /**
+     * @param layout line layout
+     * @param zone time zone of the rendered timestamps
+     * @param clock current time in milliseconds since the epoch
+     * @throws StorageException if an argument is null
+     */
+    @Sanitized
+    AuditEncoder(Layout layout, ZoneId zone, LongSupplier clock) {
+        if (layout == null || zone == null || clock == null) {
+            throw new StorageException("Invalid audit encoder configuration", null);
+        }
+        this.layout = layout;
+        this.zone = zone;
+        this.clock = clock;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Appends a bike creation entry.
+     * @return this encoder
+     */
+    public AuditEncoder creation(String bikeId, BikeType type, String catalog, String model,
+                                 boolean available, boolean lights, boolean basket, boolean gps) {
+        long now = clock.getAsLong();
+        if (layout == Layout.TEXT) {
+            textHeader(now, AuditEventType.CREATED, bikeId);
+            ascii(" | Type=").put(type == null ? NULL : TYPE_NAMES[type.ordinal()]);
+            ascii(" | Catalog=").text(catalog);
+            ascii(" | Model=").text(model);
+            ascii(" | Available=").put(available ? TRUE : FALSE);
+            ascii(" | Lights=").put(lights ? TRUE : FALSE);
+            ascii(" | Basket=").put(basket ? TRUE : FALSE);
+            ascii(" | GPS=").put(gps ? TRUE : FALSE);
+        } else {
+            jsonHeader(now, AuditEventType.CREATED, bikeId);
+            ascii(",\"type\":");
+            if (type == null) {
+                put(NULL);
+            } else {
+                put((byte) '"').put(TYPE_NAMES[type.ordinal()]).put((byte) '"');
+            }
+            ascii(",\"catalog\":").json(catalog);
+            ascii(",\"model\":").json(model);
+            ascii(",\"available\":").put(available ? TRUE : FALSE);
+            ascii(",\"lights\":").put(lights ? TRUE : FALSE);
+            ascii(",\"basket\":").put(basket ? TRUE : FALSE);
+            ascii(",\"gps\":").put(gps ? TRUE : FALSE);
+            put((byte) '}');
+        }
+        return put(NEW_LINE);
+    }
+
+    /**
+     * Appends the entry of a bike leaving the fleet.
+     * @return this encoder
+     */
+    public AuditEncoder removal(String bikeId, String catalog) {
+        long now = clock.getAsLong();
+        if (layout == Layout.TEXT) {
+            textHeader(now, AuditEventType.REMOVED, bikeId);
+            ascii(" | Catalog=").text(catalog);
+        } else {
+            jsonHeader(now, AuditEventType.REMOVED, bikeId);
+            ascii(",\"catalog\":").json(catalog);
+            put((byte) '}');
+        }
+        return put(NEW_LINE);
+    }
+
+    /**
+     * Appends a rental, return or expiry entry.
+     * @param eventType RENTED, RETURNED or EXPIRED
+     * @return this encoder
+     * @throws InvalidSelectionException if eventType is null, CREATED or REMOVED
+     */
+    public AuditEncoder event(AuditEventType eventType, String bikeId, String firstName, String lastName) {
+        if (eventType == null || eventType == AuditEventType.CREATED || eventType == AuditEventType.REMOVED) {
+            throw new InvalidSelectionException("Not a customer event: " + eventType);
+        }
+        long now = clock.getAsLong();
+        if (layout == Layout.TEXT) {
+            textHeader(now, eventType, bikeId);
+            ascii(" | First Name=").text(firstName);
+            ascii(" | Last Name=").text(lastName);
+        } else {
+            jsonHeader(now, eventType, bikeId);
+            ascii(",\"firstName\":").json(firstName);
+            ascii(",\"lastName\":").json(lastName);
+            put((byte) '}');
+        }
+        return put(NEW_LINE);
+    }
+
+    /**
+     * Appends a rental, return or expiry entry naming the customer by registry ID.
+     * @param eventType RENTED, RETURNED or EXPIRED
+     * @param customerId ID given by a {@link CustomerRegistry}
+     * @return this encoder
+     * @throws InvalidSelectionException if eventType is null, CREATED or REMOVED
+     */
+    public AuditEncoder event(AuditEventType eventType, String bikeId, int customerId) {
+        if (eventType == null || eventType == AuditEventType.CREATED || eventType == AuditEventType.REMOVED) {
+            throw new InvalidSelectionException("Not a customer event: " + eventType);
+        }
+        long now = clock.getAsLong();
+        if (layout == Layout.TEXT) {
+            textHeader(now, eventType, bikeId);
+            ascii(" | Customer=").number(customerId);
+        } else {
+            jsonHeader(now, eventType, bikeId);
+            ascii(",\"customer\":").number(customerId);
+            put((byte) '}');
+        }
+        return put(NEW_LINE);
+    }
+
+    /**
+     * Drops the encoded entries, keeping the buffer.
+     * @return this encoder
+     */
+    public AuditEncoder clear() {
+        length = 0;
+        return this;
+    }
+
+    /**
+     * @return number of encoded bytes
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the encoded bytes as a buffer positioned at 0; valid until the next append or clear
+     */
+    public ByteBuffer buffer() {
+        view.limit(length).position(0);
+        return view;
+    }
+
+    /**
+     * @return a copy of the encoded entries, decoded; for tests and diagnostics
+     */
+    @Override
+    public String toString() {
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void textHeader(long now, AuditEventType eventType, String bikeId) {
+        put((byte) '[');
+        timestamp(now);
+        ascii("] ").put(EVENT_NAMES[eventType.ordinal()]);
+        ascii(" | Bike=").text(bikeId);
+    }
+
+    private void jsonHeader(long now, AuditEventType eventType, String bikeId) {
+        ascii("{\"time\":\"");
+        timestamp(now);
+        ascii("\",\"event\":\"").put(EVENT_NAMES[eventType.ordinal()]);
+        ascii("\",\"bike\":").json(bikeId);
+    }
+
+    /**
+     * Renders epoch milliseconds like {@link LocalDateTime#toString()}: seconds only if
+     * the time is not on the minute, milliseconds only if it is not on the second.
+     */
+    private void timestamp(long epochMillis) {
+        long minute = Math.floorDiv(epochMillis, 60_000L);
+        if (minute != cachedMinute) {
+            LocalDateTime start = LocalDateTime.ofInstant(Instant.ofEpochMilli(minute * 60_000L), zone);
+            minutePrefix = bytesOf(start.toString());
+            cachedMinute = minute;
+        }
+        put(minutePrefix);
+        int millis = (int) Math.floorMod(epochMillis, 60_000L);
+        if (millis == 0) {
+            return;
+        }
+        ensure(7);
+        bytes[length++] = ':';
+        twoDigits(millis / 1000);
+        int fraction = millis % 1000;
+        if (fraction != 0) {
+            bytes[length++] = '.';
+            bytes[length++] = (byte) ('0' + fraction / 100);
+            twoDigits(fraction % 100);
+        }
+    }
+
+    private void twoDigits(int value) {
+        bytes[length++] = (byte) ('0' + value / 10);
+        bytes[length++] = (byte) ('0' + value % 10);
+    }
+
+    /**
+     * Appends a number in decimal, like {@code String.format("%d")} would.
+     */
+    private AuditEncoder number(int value) {
+        ensure(11);
+        long remaining = value;
+        if (remaining < 0) {
+            bytes[length++] = '-';
+            remaining = -remaining;
+        }
+        int digits = 1;
+        for (long scale = 10; scale <= remaining; scale *= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            bytes[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        length += digits;
+        return this;
+    }
+
+    /**
+     * Appends a field value as UTF-8, like {@code String.format("%s")} would.
+     */
+    private AuditEncoder text(String value) {
+        if (value == null) {
+            return put(NULL);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            i = utf8(value, i);
+        }
+        return this;
+    }
+
+    /**
+     * Appends a JSON string literal, or null.
+     */
+    private AuditEncoder json(String value) {
+        if (value == null) {
+            return put(NULL);
+        }
+        put((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                ensure(2);
+                bytes[length++] = '\\';
+                bytes[length++] = (byte) c;
+            } else if (c < 0x20) {
+                ensure(6);
+                bytes[length++] = '\\';
+                bytes[length++] = 'u';
+                bytes[length++] = '0';
+                bytes[length++] = '0';
+                bytes[length++] = HEX[c >> 4];
+                bytes[length++] = HEX[c & 0xF];
+            } else {
+                i = utf8(value, i);
+            }
+        }
+        return put((byte) '"');
+    }
+
+    /**
+     * Appends the character at {@code i} as UTF-8; an unpaired surrogate becomes '?'.
+     * @return index of the last char consumed
+     */
+    private int utf8(String value, int i) {
+        ensure(4);
+        char c = value.charAt(i);
+        if (c < 0x80) {
+            bytes[length++] = (byte) c;
+        } else if (c < 0x800) {
+            bytes[length++] = (byte) (0xC0 | c >> 6);
+            bytes[length++] = (byte) (0x80 | c & 0x3F);
+        } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(++i));
+            bytes[length++] = (byte) (0xF0 | codePoint >> 18);
+            bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+        } else if (Character.isSurrogate(c)) {
+            bytes[length++] = '?';
+        } else {
+            bytes[length++] = (byte) (0xE0 | c >> 12);
+            bytes[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+            bytes[length++] = (byte) (0x80 | c & 0x3F);
+        }
+        return i;
+    }
+
+    /**
+     * Appends an ASCII literal.
+     */
+    private AuditEncoder ascii(String literal) {
+        ensure(literal.length());
+        for (int i = 0; i < literal.length(); i++) {
+            bytes[length++] = (byte) literal.charAt(i);
+        }
+        return this;
+    }
+
+    private AuditEncoder put(byte[] value) {
+        ensure(value.length);
+        System.arraycopy(value, 0, bytes, length, value.length);
+        length += value.length;
+        return this;
+    }
+
+    private AuditEncoder put(byte value) {
+        ensure(1);
+        bytes[length++] = value;
+        return this;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            view = ByteBuffer.wrap(bytes);
+        }
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,12 @@
+package com.epicode;
+
+/**
+ * Kinds of events written to the audit log.
+ */
+public enum AuditEventType {
+    CREATED,
+    RENTED,
+    RETURNED,
+    EXPIRED,
+    REMOVED
+}
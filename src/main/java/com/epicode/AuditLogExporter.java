@@ -0,0 +1,96 @@
+package com.epicode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.logging.Logger;
+
+
+/**
+ * Command line tool that converts a binary audit log back into the text layout
+ * written by {@link BikeAuditRepository}.
+ *
+ * <p>Usage: {@code AuditLogExporter <segment-directory> [output-file]}.
+ * Without an output file the text goes to standard output.</p>
+ */
+@Secured("Export tool shielding and logging verified")
+@RoleType("Tool")
+public final class AuditLogExporter {
+    private static final Logger logger = Logger.getLogger(AuditLogExporter.class.getName());
+
+    private AuditLogExporter() {
+    }
+
+    /**
+     * Writes every record of the log as one text line.
+     * @param directory segment directory
+     * @param out destination
+     * @return number of records exported
+     * @throws StorageException if the log cannot be read or the output written
+     */
+    public static long export(Path directory, Writer out) {
+        ZoneId zone = ZoneId.systemDefault();
+        long[] count = {0};
+        MappedAuditLog.read(directory, record -> {
+            try {
+                out.write(toText(record, zone));
+                out.write(System.lineSeparator());
+                count[0]++;
+            } catch (IOException e) {
+                throw new StorageException("Unable to export audit log", e);
+            }
+        });
+        return count[0];
+    }
+
+    static String toText(AuditRecord record, ZoneId zone) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochSecond(0, record.getEpochNanos()), zone);
+        switch (record.getEventType()) {
+            case CREATED:
+                int flags = record.getFlags();
+                return BikeAuditRepository.creationLine(time, record.getBikeId(), record.getBikeType(),
+                        record.getFirstSubject(), record.getSecondSubject(),
+                        (flags & MappedAuditLog.FLAG_AVAILABLE) != 0, (flags & MappedAuditLog.FLAG_LIGHTS) != 0,
+                        (flags & MappedAuditLog.FLAG_BASKET) != 0, (flags & MappedAuditLog.FLAG_GPS) != 0);
+            case RENTED:
+                return BikeAuditRepository.rentalLine(time, record.getBikeId(),
+                        record.getFirstSubject(), record.getSecondSubject());
+            case EXPIRED:
+                return BikeAuditRepository.expiryLine(time, record.getBikeId(),
+                        record.getFirstSubject(), record.getSecondSubject());
+            case REMOVED:
+                return BikeAuditRepository.removalLine(time, record.getBikeId(), record.getFirstSubject());
+            default:
+                return BikeAuditRepository.returnLine(time, record.getBikeId(),
+                        record.getFirstSubject(), record.getSecondSubject());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: AuditLogExporter <segment-directory> [output-file]");
+            System.exit(2);
+        }
+        Path directory = Paths.get(args[0]);
+        Writer out = args.length == 2
+                ? Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        try {
+            long exported = export(directory, out);
+            logger.info("Exported " + exported + " audit records from " + directory);
+        } finally {
+            out.flush();
+            if (args.length == 2) {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.epicode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+
+/**
+ * Follows the text logs written by {@link BikeAuditRepository} and feeds every newly
+ * appended entry to {@link LiveCounters}, like {@code tail -F}.
+ *
+ * <p>Each log is read from the byte offset the previous poll stopped at, so a poll only
+ * parses what was appended since. A trailing entry without its line break is held back
+ * until the rest arrives. When the path is replaced by a new file (rotation), the old
+ * file is read to its end before the new one is followed from its start (until the new
+ * file appears, a partial entry at the end of the old one is held back); when a log
+ * shrinks below the offset (truncation), it is followed again from its start and the
+ * rentals in progress are forgotten.</p>
+ *
+ * <p>The creation log is only read to learn bike types. The first poll reads both logs
+ * from the beginning, which restores the rentals in progress.</p>
+ */
+@Secured("Read-only log tailing with shielded I/O")
+@RoleType("Metrics")
+public class AuditLogTailer implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(AuditLogTailer.class.getName());
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final TailedFile bikesLog;
+    private final TailedFile rentalsLog;
+    private final LiveCounters counters;
+    private final Map<String, BikeType> types = new HashMap<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long entriesApplied = 0;
+    private long entriesSkipped = 0;
+
+
+    /**
+     * @param bikesLog creation audit log
+     * @param rentalsLog rental audit log
+     * @param counters counters to update
+     * @throws StorageException if an argument is null
+     */
+    @Sanitized
+    public AuditLogTailer(Path bikesLog, Path rentalsLog, LiveCounters counters) {
+        if (bikesLog == null || rentalsLog == null || counters == null) {
+            throw new StorageException("Tailer paths and counters cannot be null", null);
+        }
+        this.bikesLog = new TailedFile(bikesLog);
+        this.rentalsLog = new TailedFile(rentalsLog);
+        this.counters = counters;
+    }
+
+    /**
+     * Reads what was appended to both logs since the last poll. A log that does not exist yet is skipped.
+     * @return number of entries applied
+     * @throws StorageException if a log cannot be read
+     */
+    @Logged
+    public synchronized long poll() {
+        long before = entriesApplied;
+        follow(bikesLog);
+        follow(rentalsLog);
+        return entriesApplied - before;
+    }
+
+    /**
+     * Polls periodically on the given scheduler. Failures are logged and retried next period.
+     * @param scheduler scheduler owned by the caller
+     * @param period time between polls
+     * @param unit unit of period
+     * @return handle to cancel the schedule
+     */
+    public ScheduledFuture<?> scheduleTailing(ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+        return scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (RuntimeException e) {
+                logger.severe("Audit log tailing failed: " + e.getMessage());
+            }
+        }, 0, period, unit);
+    }
+
+    public synchronized long getEntriesApplied() {
+        return entriesApplied;
+    }
+
+    /**
+     * @return entries that could not be parsed or were of no interest
+     */
+    public synchronized long getEntriesSkipped() {
+        return entriesSkipped;
+    }
+
+    /**
+     * @return the offset the rental log has been read up to
+     */
+    public synchronized long getRentalsOffset() {
+        return rentalsLog.offset;
+    }
+
+    @Override
+    public synchronized void close() {
+        bikesLog.closeChannel();
+        rentalsLog.closeChannel();
+    }
+
+    /**
+     * Reads a log up to its end, switching to a new file if it was rotated.
+     */
+    private void follow(TailedFile log) {
+        try {
+            Object key = fileKey(log.path);
+            if (log.channel == null) {
+                if (key == null) {
+                    return;
+                }
+                log.open(key);
+            }
+            if (log.channel.size() < log.offset) {
+                logger.warning("Audit log " + log.path + " was truncated, following it from the start");
+                log.offset = 0;
+                log.pendingLength = 0;
+                if (log == rentalsLog) {
+                    // The rentals read so far may be gone with the truncated part
+                    counters.clearActive();
+                }
+            }
+            drain(log);
+            if (key != null && !key.equals(log.fileKey)) {
+                // Rotated: the old file is complete, so its last entry is too
+                flushPending(log);
+                log.closeChannel();
+                log.open(key);
+                drain(log);
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to tail audit log " + log.path + ": " + e.getMessage());
+            throw new StorageException("Unable to read audit log", e);
+        }
+    }
+
+    private void drain(TailedFile log) throws IOException {
+        while (true) {
+            buffer.clear();
+            int read = log.channel.read(buffer, log.offset);
+            if (read <= 0) {
+                return;
+            }
+            log.offset += read;
+            byte[] bytes = buffer.array();
+            int start = 0;
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] != '\n') {
+                    continue;
+                }
+                if (log.pendingLength > 0) {
+                    log.keep(bytes, start, i - start);
+                    line(log, new String(log.pending, 0, log.pendingLength, StandardCharsets.UTF_8));
+                    log.pendingLength = 0;
+                } else {
+                    line(log, new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                }
+                start = i + 1;
+            }
+            log.keep(bytes, start, read - start);
+        }
+    }
+
+    private void flushPending(TailedFile log) {
+        if (log.pendingLength > 0) {
+            line(log, new String(log.pending, 0, log.pendingLength, StandardCharsets.UTF_8));
+            log.pendingLength = 0;
+        }
+    }
+
+    private void line(TailedFile log, String line) {
+        if (line.endsWith("\r")) {
+            line = line.substring(0, line.length() - 1);
+        }
+        int close = line.indexOf("] ");
+        if (!line.startsWith("[") || close < 0) {
+            entriesSkipped++;
+            return;
+        }
+        String[] parts = line.substring(close + 2).split(" \\| ");
+        String bikeId = field(parts, "Bike=");
+        LocalDateTime time;
+        try {
+            time = LocalDateTime.parse(line.substring(1, close));
+        } catch (DateTimeParseException e) {
+            time = null;
+        }
+        if (bikeId == null || time == null) {
+            entriesSkipped++;
+            return;
+        }
+        if (log == bikesLog) {
+            created(parts, bikeId);
+            return;
+        }
+        switch (parts[0]) {
+            case "RENTED" -> counters.rented(bikeId, types.get(bikeId), time);
+            case "RETURNED" -> counters.returned(bikeId, time);
+            default -> {
+                entriesSkipped++;
+                return;
+            }
+        }
+        entriesApplied++;
+    }
+
+    private void created(String[] parts, String bikeId) {
+        String type = field(parts, "Type=");
+        try {
+            types.put(bikeId, BikeType.valueOf(type));
+            entriesApplied++;
+        } catch (IllegalArgumentException | NullPointerException e) {
+            entriesSkipped++;
+        }
+    }
+
+    private static String field(String[] parts, String key) {
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].startsWith(key)) {
+                return parts[i].substring(key.length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return identity of the file currently at the path, or null if there is none
+     */
+    private static Object fileKey(Path path) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            // Without file keys, rotation is only noticed as truncation
+            return attributes.fileKey() != null ? attributes.fileKey() : path;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read position in one log.
+     */
+    private static final class TailedFile {
+        private final Path path;
+        private FileChannel channel;
+        private Object fileKey;
+        private long offset;
+        private byte[] pending = new byte[256];
+        private int pendingLength;
+
+        private TailedFile(Path path) {
+            this.path = path;
+        }
+
+        private void open(Object key) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            fileKey = key;
+            offset = 0;
+        }
+
+        private void keep(byte[] bytes, int from, int length) {
+            if (pendingLength + length > pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + length));
+            }
+            System.arraycopy(bytes, from, pending, pendingLength, length);
+            pendingLength += length;
+        }
+
+        private void closeChannel() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close audit log " + path + ": " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+}
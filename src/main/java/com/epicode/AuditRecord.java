@@ -0,0 +1,37 @@
+package com.epicode;
+
+/**
+ * One decoded event from a binary audit log.
+ * For {@link AuditEventType#CREATED} the subject fields hold the catalog and model,
+ * for rentals and returns they hold the customer's first and last name.
+ */
+@Secured("Read-only audit record")
+@RoleType("Audit Record")
+public class AuditRecord {
+    private final AuditEventType eventType;
+    private final long epochNanos;
+    private final String bikeId;
+    private final BikeType bikeType;
+    private final String firstSubject;
+    private final String secondSubject;
+    private final int flags;
+
+    public AuditRecord(AuditEventType eventType, long epochNanos, String bikeId, BikeType bikeType,
+                       String firstSubject, String secondSubject, int flags) {
+        this.eventType = eventType;
+        this.epochNanos = epochNanos;
+        this.bikeId = bikeId;
+        this.bikeType = bikeType;
+        this.firstSubject = firstSubject;
+        this.secondSubject = secondSubject;
+        this.flags = flags;
+    }
+
+    public AuditEventType getEventType() { return eventType; }
+    public long getEpochNanos() { return epochNanos; }
+    public String getBikeId() { return bikeId; }
+    public BikeType getBikeType() { return bikeType; }
+    public String getFirstSubject() { return firstSubject; }
+    public String getSecondSubject() { return secondSubject; }
+    public int getFlags() { return flags; }
+}
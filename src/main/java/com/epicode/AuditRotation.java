@@ -0,0 +1,94 @@
+package com.epicode;
+
+import java.time.Duration;
+
+/**
+ * When an {@link AsyncAuditWriter} closes its file as a segment, and how long
+ * {@link AuditSegments} keep closed segments. Every criterion left unset never
+ * triggers; setters are fluent.
+ */
+@Secured("Rotation settings holder")
+@RoleType("Repository")
+public class AuditRotation {
+    private long maxBytes = 0;
+    private Duration maxAge;
+    private boolean compress = true;
+    private int retainedSegments = 0;
+    private Duration retention;
+
+    public long getMaxBytes() { return maxBytes; }
+
+    /**
+     * @param maxBytes size at which the active file is rotated
+     * @throws InvalidSelectionException if maxBytes is not positive
+     */
+    public AuditRotation setMaxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new InvalidSelectionException("Rotation size must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    public Duration getMaxAge() { return maxAge; }
+
+    /**
+     * @param maxAge age at which the active file is rotated, checked when an entry is written
+     * @throws InvalidSelectionException if maxAge is null or not positive
+     */
+    public AuditRotation setMaxAge(Duration maxAge) {
+        if (maxAge == null || maxAge.isNegative() || maxAge.isZero()) {
+            throw new InvalidSelectionException("Rotation age must be positive: " + maxAge);
+        }
+        this.maxAge = maxAge;
+        return this;
+    }
+
+    public boolean isCompress() { return compress; }
+
+    /**
+     * @param compress whether closed segments are gzipped; on by default
+     */
+    public AuditRotation setCompress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
+    public int getRetainedSegments() { return retainedSegments; }
+
+    /**
+     * @param retainedSegments number of newest closed segments to keep
+     * @throws InvalidSelectionException if retainedSegments is not positive
+     */
+    public AuditRotation setRetainedSegments(int retainedSegments) {
+        if (retainedSegments <= 0) {
+            throw new InvalidSelectionException("Retained segments must be positive: " + retainedSegments);
+        }
+        this.retainedSegments = retainedSegments;
+        return this;
+    }
+
+    public Duration getRetention() { return retention; }
+
+    /**
+     * @param retention how long a closed segment is kept after its last entry
+     * @throws InvalidSelectionException if retention is null or not positive
+     */
+    public AuditRotation setRetention(Duration retention) {
+        if (retention == null || retention.isNegative() || retention.isZero()) {
+            throw new InvalidSelectionException("Retention must be positive: " + retention);
+        }
+        this.retention = retention;
+        return this;
+    }
+
+    /**
+     * @param bytes bytes in the active file
+     * @param ageNanos time since the active file was opened
+     * @return true if the active file should be closed as a segment
+     */
+    boolean isDue(long bytes, long ageNanos) {
+        return bytes > 0 && ((maxBytes > 0 && bytes >= maxBytes)
+                || (maxAge != null && ageNanos >= maxAge.toNanos()));
+    }
+}
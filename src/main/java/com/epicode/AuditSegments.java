@@ -0,0 +1,459 @@
+package com.epicode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Closed segments of a rotated text audit log. The writer renames the active file to
+ * {@code <log>.<number>} and carries on with a fresh one; everything else happens on a
+ * background thread: the segment is gzipped to {@code <log>.<number>.gz}, the time range
+ * of its entries is added to the index file {@code <log>.index}, and segments beyond the
+ * {@link AuditRotation} retention are deleted.
+ *
+ * <p>{@link #read(Path, LocalDateTime, LocalDateTime, Consumer)} uses the index to open
+ * only the segments whose entries can fall in the requested range. Segments left
+ * uncompressed or unindexed by a crash are sealed again when the log is next opened.</p>
+ */
+@Secured("Background segment sealing with shielded I/O")
+@RoleType("Repository")
+public class AuditSegments implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(AuditSegments.class.getName());
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final String INDEX_SUFFIX = ".index";
+    private static final String NO_TIME = "-";
+
+    private final Path log;
+    private final AuditRotation rotation;
+    private final ExecutorService worker;
+    private final AtomicInteger nextNumber = new AtomicInteger(1);
+    // Only touched by the worker thread once the constructor returned
+    private final List<Segment> index;
+
+
+    /**
+     * Describes one closed segment.
+     */
+    public static final class Segment {
+        private final int number;
+        private final Path path;
+        private final LocalDateTime first;
+        private final LocalDateTime last;
+        private final long entries;
+
+        private Segment(int number, Path path, LocalDateTime first, LocalDateTime last, long entries) {
+            this.number = number;
+            this.path = path;
+            this.first = first;
+            this.last = last;
+            this.entries = entries;
+        }
+
+        public int getNumber() { return number; }
+        public Path getPath() { return path; }
+
+        /**
+         * @return oldest entry timestamp, or null if no entry had one
+         */
+        public LocalDateTime getFirst() { return first; }
+
+        /**
+         * @return newest entry timestamp, or null if no entry had one
+         */
+        public LocalDateTime getLast() { return last; }
+
+        public long getEntries() { return entries; }
+
+        private boolean overlaps(LocalDateTime from, LocalDateTime to) {
+            return first == null || (first.isBefore(to) && !last.isBefore(from));
+        }
+
+        @Override
+        public String toString() {
+            return path.getFileName() + " [" + first + " .. " + last + "] " + entries + " entries";
+        }
+    }
+
+    /**
+     * Opens the segments of a log and starts the background thread.
+     * @param log active audit file
+     * @param rotation compression and retention settings
+     * @throws StorageException if an argument is null or the index cannot be read
+     */
+    @Sanitized
+    public AuditSegments(Path log, AuditRotation rotation) {
+        if (log == null || rotation == null) {
+            throw new StorageException("Segment log and rotation cannot be null", null);
+        }
+        this.log = log.toAbsolutePath();
+        this.rotation = rotation;
+        this.index = readIndex(this.log);
+        Set<Integer> indexed = new HashSet<>();
+        int highest = 0;
+        for (Segment segment : index) {
+            indexed.add(segment.number);
+            highest = Math.max(highest, segment.number);
+        }
+        List<Path> unsealed = new ArrayList<>();
+        List<Path> leftovers = new ArrayList<>();
+        for (Path path : listSegmentFiles(this.log)) {
+            int number = numberOf(this.log, path);
+            highest = Math.max(highest, number);
+            if (!indexed.contains(number)) {
+                unsealed.add(path);
+            } else if (index.stream().noneMatch(segment -> segment.path.equals(path))) {
+                // Compressed and indexed, but the crash came before the original was deleted
+                leftovers.add(path);
+            }
+        }
+        nextNumber.set(highest + 1);
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "audit-segments-" + this.log.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Path path : leftovers) {
+            worker.execute(() -> delete(path));
+        }
+        for (Path path : unsealed) {
+            worker.execute(() -> seal(path));
+        }
+        worker.execute(this::applyRetention);
+    }
+
+    /**
+     * Moves the active file aside as the next segment and seals it in the background.
+     * Called by the writer once it closed the file.
+     * @return the segment the file was moved to
+     * @throws IOException if the file cannot be moved; it is then still the active file
+     */
+    Path rotate() throws IOException {
+        Path segment = log.resolveSibling(log.getFileName() + "." + nextNumber.getAndIncrement());
+        Files.move(log, segment, StandardCopyOption.ATOMIC_MOVE);
+        worker.execute(() -> seal(segment));
+        return segment;
+    }
+
+    /**
+     * Waits until the segments rotated so far are sealed and retention has been applied.
+     */
+    public void awaitPending() {
+        try {
+            worker.submit(this::applyRetention).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.severe("Audit segment retention failed: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Finishes pending background work and stops the thread.
+     */
+    @Override
+    public void close() {
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warning("Audit segments of " + log.getFileName() + " still sealing at close");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Compresses a segment if configured, and indexes its time range.
+     * On failure the segment stays as it is, to be sealed again on the next start.
+     */
+    private void seal(Path path) {
+        int number = numberOf(log, path);
+        LocalDateTime first = null;
+        LocalDateTime last = null;
+        long entries = 0;
+        boolean compress = rotation.isCompress() && !path.toString().endsWith(GZIP_SUFFIX);
+        Path target = compress ? path.resolveSibling(path.getFileName() + GZIP_SUFFIX) : path;
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (BufferedReader reader = open(path);
+             BufferedWriter writer = compress ? new BufferedWriter(new OutputStreamWriter(
+                     new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024), StandardCharsets.UTF_8)) : null) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                entries++;
+                LocalDateTime time = timestampOf(line);
+                if (time != null) {
+                    first = first == null || time.isBefore(first) ? time : first;
+                    last = last == null || time.isAfter(last) ? time : last;
+                }
+                if (writer != null) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to seal audit segment " + path.getFileName() + ": " + e.getMessage());
+            return;
+        }
+        try {
+            if (compress) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            index.removeIf(segment -> segment.number == number);
+            index.add(new Segment(number, target, first, last, entries));
+            index.sort(Comparator.comparingInt(segment -> segment.number));
+            writeIndex();
+            if (compress) {
+                Files.delete(path);
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to publish audit segment " + target.getFileName() + ": " + e.getMessage());
+            return;
+        }
+        logger.info("Sealed audit segment " + index.get(index.size() - 1));
+        applyRetention();
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warning("Failed to delete audit segment " + path.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    private void applyRetention() {
+        List<Segment> expired = new ArrayList<>();
+        int excess = rotation.getRetainedSegments() > 0 ? index.size() - rotation.getRetainedSegments() : 0;
+        LocalDateTime horizon = rotation.getRetention() == null ? null
+                : LocalDateTime.now().minus(rotation.getRetention());
+        for (int i = 0; i < index.size(); i++) {
+            Segment segment = index.get(i);
+            if (i < excess || (horizon != null && segment.last != null && segment.last.isBefore(horizon))) {
+                expired.add(segment);
+            }
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        index.removeAll(expired);
+        try {
+            writeIndex();
+            for (Segment segment : expired) {
+                Files.deleteIfExists(segment.path);
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to apply audit retention: " + e.getMessage());
+            return;
+        }
+        logger.info("Deleted " + expired.size() + " expired audit segments of " + log.getFileName());
+    }
+
+    private void writeIndex() throws IOException {
+        Path indexFile = indexOf(log);
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        List<String> lines = new ArrayList<>(index.size());
+        for (Segment segment : index) {
+            lines.add(segment.number + "\t" + segment.path.getFileName() + "\t"
+                    + (segment.first == null ? NO_TIME : segment.first) + "\t"
+                    + (segment.last == null ? NO_TIME : segment.last) + "\t" + segment.entries);
+        }
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param log active audit file
+     * @return the indexed segments of the log, oldest first
+     * @throws StorageException if the index cannot be read
+     */
+    public static List<Segment> segments(Path log) {
+        return readIndex(log.toAbsolutePath());
+    }
+
+    /**
+     * Reads the entries of a log and its segments whose timestamp lies in a range, oldest
+     * segment first and the active file last. Indexed segments whose time range misses the
+     * range are not opened; segments not indexed yet are read in full.
+     * @param log active audit file
+     * @param from first instant of interest, inclusive
+     * @param to end of the range, exclusive
+     * @param consumer receives every matching entry
+     * @return number of files opened
+     * @throws StorageException if a file cannot be read
+     */
+    @Logged
+    public static int read(Path log, LocalDateTime from, LocalDateTime to, Consumer<String> consumer) {
+        Path absolute = log.toAbsolutePath();
+        List<Segment> indexed = readIndex(absolute);
+        Set<Integer> numbers = indexed.stream().map(Segment::getNumber).collect(Collectors.toSet());
+        List<Path> files = new ArrayList<>();
+        for (Segment segment : indexed) {
+            if (segment.overlaps(from, to)) {
+                files.add(segment.path);
+            }
+        }
+        for (Path path : listSegmentFiles(absolute)) {
+            if (!numbers.contains(numberOf(absolute, path))) {
+                files.add(path);
+            }
+        }
+        files.add(absolute);
+        int opened = 0;
+        for (Path path : files) {
+            try (BufferedReader reader = open(path)) {
+                opened++;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    LocalDateTime time = timestampOf(line);
+                    if (time != null && !time.isBefore(from) && time.isBefore(to)) {
+                        consumer.accept(line);
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // Sealed or expired since the index was read
+                logger.fine("Audit segment " + path.getFileName() + " is gone");
+            } catch (IOException e) {
+                logger.severe("Failed to read audit segment " + path.getFileName() + ": " + e.getMessage());
+                throw new StorageException("Unable to read audit log", e);
+            }
+        }
+        return opened;
+    }
+
+    private static BufferedReader open(Path path) throws IOException {
+        return new BufferedReader(new InputStreamReader(openStream(path), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    /**
+     * @return the uncompressed bytes of a segment or of the active file
+     */
+    static InputStream openStream(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        if (path.toString().endsWith(GZIP_SUFFIX)) {
+            in = new GZIPInputStream(in, 64 * 1024);
+        }
+        return in;
+    }
+
+    /**
+     * @param log active audit file
+     * @return one file per segment of the log still on disk, oldest first, sealed or not
+     * @throws StorageException if the directory cannot be listed
+     */
+    static List<Path> segmentFiles(Path log) {
+        Path absolute = log.toAbsolutePath();
+        Set<Integer> numbers = new HashSet<>();
+        List<Path> files = new ArrayList<>();
+        for (Path path : listSegmentFiles(absolute)) {
+            // A crash while sealing can leave both copies of a segment behind
+            if (numbers.add(numberOf(absolute, path))) {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    private static LocalDateTime timestampOf(String line) {
+        int close = line.indexOf(']');
+        if (!line.startsWith("[") || close < 0) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(line.substring(1, close));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static Path indexOf(Path log) {
+        return log.resolveSibling(log.getFileName() + INDEX_SUFFIX);
+    }
+
+    private static List<Segment> readIndex(Path log) {
+        Path indexFile = indexOf(log);
+        List<Segment> segments = new ArrayList<>();
+        if (!Files.exists(indexFile)) {
+            return segments;
+        }
+        try {
+            for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+                if (fields.length != 5) {
+                    continue;
+                }
+                segments.add(new Segment(Integer.parseInt(fields[0]), log.resolveSibling(fields[1]),
+                        fields[2].equals(NO_TIME) ? null : LocalDateTime.parse(fields[2]),
+                        fields[3].equals(NO_TIME) ? null : LocalDateTime.parse(fields[3]),
+                        Long.parseLong(fields[4])));
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.severe("Failed to read audit segment index " + indexFile + ": " + e.getMessage());
+            throw new StorageException("Unable to read audit segment index", e);
+        }
+        return segments;
+    }
+
+    /**
+     * @return segment files of the log on disk, compressed or not, in number order
+     */
+    private static List<Path> listSegmentFiles(Path log) {
+        Path directory = log.getParent();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> numberOf(log, path) > 0)
+                    .sorted(Comparator.comparingInt(path -> numberOf(log, path)))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            logger.severe("Failed to list audit segments: " + e.getMessage());
+            throw new StorageException("Unable to read audit log", e);
+        }
+    }
+
+    /**
+     * @return the segment number of {@code <log>.<number>} or {@code <log>.<number>.gz}, or -1
+     */
+    private static int numberOf(Path log, Path path) {
+        String prefix = log.getFileName() + ".";
+        String name = path.getFileName().toString();
+        if (!name.startsWith(prefix)) {
+            return -1;
+        }
+        String number = name.substring(prefix.length());
+        if (number.endsWith(GZIP_SUFFIX)) {
+            number = number.substring(0, number.length() - GZIP_SUFFIX.length());
+        }
+        if (number.isEmpty() || number.length() > 9 || !number.chars().allMatch(Character::isDigit)) {
+            return -1;
+        }
+        return Integer.parseInt(number);
+    }
+}
@@ -0,0 +1,154 @@
+package com.epicode;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Aggregates computed by {@link AuditAnalytics} over a pair of audit logs.
+ * Hours are those of the log timestamps, which are local times.
+ */
+@Secured("Read-only analytics result")
+@RoleType("Analytics Result")
+public class AuditStats {
+    private static final BikeType[] TYPES = BikeType.values();
+
+    private final long[] events;
+    private final long skippedLines;
+    private final BikeIdIndex ids;
+    private final byte[] types;
+    private final TreeMap<Long, long[]> byHour;
+    private final int[] byBike;
+    private final long bytesScanned;
+    private final long elapsedNanos;
+
+    AuditStats(long[] events, long skippedLines, BikeIdIndex ids, byte[] types, Map<Long, long[]> byHour,
+               int[] byBike, long bytesScanned, long elapsedNanos) {
+        this.events = events;
+        this.skippedLines = skippedLines;
+        this.ids = ids;
+        this.types = types;
+        this.byHour = new TreeMap<>(byHour);
+        this.byBike = byBike;
+        this.bytesScanned = bytesScanned;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getEventCount(AuditEventType eventType) { return events[eventType.ordinal()]; }
+    public long getSkippedLines() { return skippedLines; }
+    public int getBikeCount() { return ids.size(); }
+    public long getBytesScanned() { return bytesScanned; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    /**
+     * @param from first hour of interest, inclusive
+     * @param to end of the range, exclusive
+     * @return rentals per bike type for every hour in the range that saw rentals, oldest first
+     */
+    public List<HourlyRentals> rentalsByHour(LocalDateTime from, LocalDateTime to) {
+        List<HourlyRentals> hours = new ArrayList<>();
+        for (Map.Entry<Long, long[]> entry : byHour.subMap(hourOf(from), true, hourOf(to), false).entrySet()) {
+            hours.add(new HourlyRentals(LocalDateTime.ofEpochSecond(entry.getKey() * 3600, 0, ZoneOffset.UTC),
+                    entry.getValue()));
+        }
+        return hours;
+    }
+
+    private static long hourOf(LocalDateTime time) {
+        if (time.equals(LocalDateTime.MIN)) return Long.MIN_VALUE;
+        if (time.equals(LocalDateTime.MAX)) return Long.MAX_VALUE;
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 3600);
+    }
+
+    /**
+     * @param limit maximum number of bikes
+     * @return the most rented bikes, most rented first; ties in index order
+     */
+    public List<BikeRentals> topBikes(int limit) {
+        PriorityQueue<Integer> top = new PriorityQueue<>((a, b) -> byBike[a] != byBike[b]
+                ? Integer.compare(byBike[a], byBike[b]) : Integer.compare(b, a));
+        for (int slot = 0; slot < byBike.length; slot++) {
+            if (byBike[slot] == 0) {
+                continue;
+            }
+            if (top.size() < limit) {
+                top.add(slot);
+            } else if (byBike[slot] > byBike[top.peek()]) {
+                top.poll();
+                top.add(slot);
+            }
+        }
+        List<BikeRentals> bikes = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            int slot = top.poll();
+            bikes.add(new BikeRentals(ids.idOf(slot), TYPES[types[slot]], byBike[slot]));
+        }
+        Collections.reverse(bikes);
+        return bikes;
+    }
+
+    @Override
+    public String toString() {
+        double seconds = elapsedNanos / 1e9;
+        return String.format("Analyzed %d MB of audit log in %.2f s (%.0f MB/s): %d bikes, %d rentals, %d lines skipped",
+                bytesScanned >> 20, seconds, (bytesScanned >> 20) / Math.max(seconds, 1e-9), ids.size(),
+                getEventCount(AuditEventType.RENTED), skippedLines);
+    }
+
+    /**
+     * Rentals of one hour, per bike type.
+     */
+    public static final class HourlyRentals {
+        private final LocalDateTime hour;
+        private final long[] counts;
+
+        private HourlyRentals(LocalDateTime hour, long[] counts) {
+            this.hour = hour;
+            this.counts = counts;
+        }
+
+        public LocalDateTime getHour() { return hour; }
+
+        public long getRentals(BikeType type) { return counts[type.ordinal()]; }
+
+        /**
+         * @return rentals of bikes missing from the creation log
+         */
+        public long getUnknownType() { return counts[TYPES.length]; }
+
+        public long getTotal() {
+            long total = 0;
+            for (long count : counts) total += count;
+            return total;
+        }
+    }
+
+    /**
+     * Number of rentals of one bike.
+     */
+    public static final class BikeRentals {
+        private final String bikeId;
+        private final BikeType type;
+        private final long rentals;
+
+        private BikeRentals(String bikeId, BikeType type, long rentals) {
+            this.bikeId = bikeId;
+            this.type = type;
+            this.rentals = rentals;
+        }
+
+        public String getBikeId() { return bikeId; }
+        public BikeType getType() { return type; }
+        public long getRentals() { return rentals; }
+
+        @Override
+        public String toString() {
+            return bikeId + " (" + type + "): " + rentals;
+        }
+    }
+}
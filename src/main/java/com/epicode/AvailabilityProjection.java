@@ -0,0 +1,68 @@
+package com.epicode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Which bikes are free to rent, according to the ledger: created available or
+ * returned since their last rental. Reservations are holds, not rentals, and do
+ * not show here.
+ */
+@Secured("Ledger availability projection")
+@RoleType("Projection")
+public class AvailabilityProjection implements LedgerProjection<AvailabilityProjection> {
+    private final Map<String, Boolean> available = new ConcurrentHashMap<>();
+    private final AtomicInteger availableCount = new AtomicInteger();
+
+    @Override
+    public void apply(LedgerEvent event) {
+        switch (event.getEventType()) {
+            case CREATED -> set(event.getBikeId(), (event.getFlags() & MappedAuditLog.FLAG_AVAILABLE) != 0);
+            case RENTED -> set(event.getBikeId(), false);
+            case RETURNED -> set(event.getBikeId(), true);
+            case REMOVED -> remove(event.getBikeId());
+            default -> { }
+        }
+    }
+
+    private void remove(String bikeId) {
+        if (Boolean.TRUE.equals(available.remove(bikeId))) {
+            availableCount.decrementAndGet();
+        }
+    }
+
+    private void set(String bikeId, boolean isAvailable) {
+        Boolean previous = available.put(bikeId, isAvailable);
+        boolean was = previous != null && previous;
+        if (was != isAvailable) {
+            availableCount.addAndGet(isAvailable ? 1 : -1);
+        }
+    }
+
+    @Override
+    public void merge(AvailabilityProjection partition) {
+        available.putAll(partition.available);
+        availableCount.addAndGet(partition.availableCount.get());
+    }
+
+    /**
+     * @param bikeId bike ID
+     * @return true if the bike is known and not rented
+     */
+    public boolean isAvailable(String bikeId) {
+        return bikeId != null && Boolean.TRUE.equals(available.get(bikeId));
+    }
+
+    public boolean contains(String bikeId) {
+        return bikeId != null && available.containsKey(bikeId);
+    }
+
+    public int getBikeCount() {
+        return available.size();
+    }
+
+    public int getAvailableCount() {
+        return availableCount.get();
+    }
+}
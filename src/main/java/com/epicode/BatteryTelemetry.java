@@ -0,0 +1,437 @@
+package com.epicode;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+
+/**
+ * Battery and odometer readings of the e-bikes, ingested in batches.
+ *
+ * <p>Each e-bike gets a track of primitive arrays the first time it reports: a ring of
+ * its most recent readings, and a ring of rollups (minimum, maximum and mean charge and
+ * distance ridden per interval) that older readings are folded into as they arrive. A
+ * reading costs a map lookup and a few array stores under the track's lock; nothing is
+ * allocated per reading.</p>
+ *
+ * <p>The latest charge of a bike is a field of its track. When it crosses the low
+ * charge threshold, the bike's {@link Bike#isLowBattery()} flag is flipped, so the
+ * indexes answer {@code BikeQuery.setLowBattery(false)} from a bit set.</p>
+ *
+ * <p>Readings older than the latest one of their bike are dropped: the rollups are built
+ * in time order. Readings for unknown bikes or bikes without a battery are dropped too.</p>
+ */
+@Secured("Batched telemetry ingestion with validated readings")
+@RoleType("Telemetry")
+public class BatteryTelemetry {
+    private static final Logger logger = Logger.getLogger(BatteryTelemetry.class.getName());
+    /** Readings kept per bike: a few minutes at one reading every few seconds. */
+    public static final int DEFAULT_RECENT_READINGS = 32;
+    public static final Duration DEFAULT_ROLLUP_INTERVAL = Duration.ofMinutes(15);
+    /** Rollups kept per bike: one day of 15-minute intervals. */
+    public static final int DEFAULT_ROLLUPS = 96;
+    public static final int DEFAULT_LOW_CHARGE_PERCENT = 20;
+    /** Returned for bikes that never reported. */
+    public static final int UNKNOWN = -1;
+
+    private final Function<String, Bike> bikes;
+    private final int recentReadings;
+    private final long rollupMillis;
+    private final int rollups;
+    private final Map<String, Track> tracks = new ConcurrentHashMap<>();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile int lowChargePercent = DEFAULT_LOW_CHARGE_PERCENT;
+
+
+    /**
+     * Readings of one bike. Every field is guarded by the track itself.
+     */
+    private static final class Track {
+        private final Bike bike;
+        private final long[] times;
+        private final byte[] charges;
+        private final int[] odometers;
+        private int next;
+        private int count;
+        private volatile int latestCharge = UNKNOWN;
+        private long latestTime = Long.MIN_VALUE;
+        private int latestOdometer;
+        private boolean low;
+
+        // Rollups: interval number, charge statistics and meters ridden
+        private final long[] rollupIntervals;
+        private final byte[] rollupMin;
+        private final byte[] rollupMax;
+        private final byte[] rollupMean;
+        private final int[] rollupMeters;
+        private int nextRollup;
+        private int rollupCount;
+
+        // The interval readings are currently folded into
+        private long interval = Long.MIN_VALUE;
+        private int min;
+        private int max;
+        private long sum;
+        private int samples;
+        private int firstOdometer;
+
+        private Track(Bike bike, int recentReadings, int rollups) {
+            this.bike = bike;
+            this.times = new long[recentReadings];
+            this.charges = new byte[recentReadings];
+            this.odometers = new int[recentReadings];
+            this.rollupIntervals = new long[rollups];
+            this.rollupMin = new byte[rollups];
+            this.rollupMax = new byte[rollups];
+            this.rollupMean = new byte[rollups];
+            this.rollupMeters = new int[rollups];
+        }
+    }
+
+    /**
+     * Rolled-up readings of one interval.
+     */
+    public static final class Rollup {
+        private final long startMillis;
+        private final int minCharge;
+        private final int maxCharge;
+        private final int meanCharge;
+        private final int meters;
+
+        private Rollup(long startMillis, int minCharge, int maxCharge, int meanCharge, int meters) {
+            this.startMillis = startMillis;
+            this.minCharge = minCharge;
+            this.maxCharge = maxCharge;
+            this.meanCharge = meanCharge;
+            this.meters = meters;
+        }
+
+        public long getStartMillis() { return startMillis; }
+        public int getMinCharge() { return minCharge; }
+        public int getMaxCharge() { return maxCharge; }
+        public int getMeanCharge() { return meanCharge; }
+        /** @return odometer increase over the interval */
+        public int getMeters() { return meters; }
+
+        @Override
+        public String toString() {
+            return startMillis + ": " + minCharge + "-" + maxCharge + "% (mean " + meanCharge + "%), " + meters + " m";
+        }
+    }
+
+    /**
+     * Readings to ingest, in parallel primitive arrays. A batch is reused by clearing it.
+     */
+    public static final class Batch {
+        private String[] bikeIds;
+        private long[] times;
+        private byte[] charges;
+        private int[] odometers;
+        private int size;
+
+        /**
+         * @param capacity initial number of readings; the batch grows beyond it as needed
+         */
+        public Batch(int capacity) {
+            int initial = Math.max(1, capacity);
+            bikeIds = new String[initial];
+            times = new long[initial];
+            charges = new byte[initial];
+            odometers = new int[initial];
+        }
+
+        /**
+         * @param bikeId reporting bike
+         * @param timeMillis time of the reading, in milliseconds since the epoch
+         * @param chargePercent battery charge, 0 to 100
+         * @param odometerMeters total distance ridden
+         * @return this batch
+         * @throws InputValidationException if the ID is null or a value is out of range
+         */
+        public Batch add(String bikeId, long timeMillis, int chargePercent, int odometerMeters) {
+            if (bikeId == null || chargePercent < 0 || chargePercent > 100 || odometerMeters < 0) {
+                throw new InputValidationException("Invalid reading for bike " + bikeId + ": "
+                        + chargePercent + "%, " + odometerMeters + " m");
+            }
+            if (size == bikeIds.length) {
+                int capacity = size * 2;
+                bikeIds = Arrays.copyOf(bikeIds, capacity);
+                times = Arrays.copyOf(times, capacity);
+                charges = Arrays.copyOf(charges, capacity);
+                odometers = Arrays.copyOf(odometers, capacity);
+            }
+            bikeIds[size] = bikeId;
+            times[size] = timeMillis;
+            charges[size] = (byte) chargePercent;
+            odometers[size] = odometerMeters;
+            size++;
+            return this;
+        }
+
+        /**
+         * Appends one reading of another batch.
+         * @return this batch
+         */
+        Batch addFrom(Batch source, int index) {
+            return add(source.bikeIds[index], source.times[index], source.charges[index], source.odometers[index]);
+        }
+
+        String bikeIdAt(int index) {
+            return bikeIds[index];
+        }
+
+        /**
+         * @return this batch, emptied
+         */
+        public Batch clear() {
+            Arrays.fill(bikeIds, 0, size, null);
+            size = 0;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Keeps the default number of readings and rollups per bike.
+     * @param bikes looks a bike up by ID; null for unknown IDs
+     */
+    public BatteryTelemetry(Function<String, Bike> bikes) {
+        this(bikes, DEFAULT_RECENT_READINGS, DEFAULT_ROLLUP_INTERVAL, DEFAULT_ROLLUPS);
+    }
+
+    /**
+     * @param bikes looks a bike up by ID; null for unknown IDs
+     * @param recentReadings readings kept per bike before they only survive in rollups
+     * @param rollupInterval time covered by one rollup
+     * @param rollups rollups kept per bike
+     * @throws InvalidSelectionException if bikes is null or a size or the interval is not positive
+     */
+    @Sanitized
+    public BatteryTelemetry(Function<String, Bike> bikes, int recentReadings, Duration rollupInterval, int rollups) {
+        if (bikes == null || recentReadings <= 0 || rollups <= 0
+                || rollupInterval == null || rollupInterval.toMillis() <= 0) {
+            throw new InvalidSelectionException("Invalid telemetry configuration");
+        }
+        this.bikes = bikes;
+        this.recentReadings = recentReadings;
+        this.rollupMillis = rollupInterval.toMillis();
+        this.rollups = rollups;
+    }
+
+    public int getLowChargePercent() {
+        return lowChargePercent;
+    }
+
+    /**
+     * Changes the low charge threshold and re-flags the bikes that already reported.
+     * @param percent bikes whose latest charge is below it are low; 0 flags none
+     * @throws InvalidSelectionException if percent is not between 0 and 100
+     */
+    @Logged
+    public synchronized void setLowChargePercent(int percent) {
+        if (percent < 0 || percent > 100) {
+            throw new InvalidSelectionException("Invalid low charge threshold: " + percent);
+        }
+        lowChargePercent = percent;
+        for (Track track : tracks.values()) {
+            synchronized (track) {
+                flag(track);
+            }
+        }
+        logger.info("Low charge threshold set to " + percent + "%");
+    }
+
+    /**
+     * Stores a batch of readings.
+     * @param batch readings; left untouched
+     * @return number of readings stored; the others were late or for unknown bikes
+     * @throws InvalidSelectionException if batch is null
+     */
+    public int ingest(Batch batch) {
+        if (batch == null) {
+            throw new InvalidSelectionException("Batch cannot be null");
+        }
+        int stored = 0;
+        for (int i = 0; i < batch.size; i++) {
+            Track track = trackOf(batch.bikeIds[i]);
+            if (track != null && record(track, batch.times[i], batch.charges[i], batch.odometers[i])) {
+                stored++;
+            }
+        }
+        accepted.addAndGet(stored);
+        dropped.addAndGet(batch.size - stored);
+        return stored;
+    }
+
+    /**
+     * @return the latest charge of the bike in percent, or {@link #UNKNOWN}
+     */
+    public int getCharge(String bikeId) {
+        Track track = bikeId == null ? null : tracks.get(bikeId);
+        return track == null ? UNKNOWN : track.latestCharge;
+    }
+
+    /**
+     * @return the latest odometer reading of the bike in meters, or {@link #UNKNOWN}
+     */
+    public int getOdometer(String bikeId) {
+        Track track = bikeId == null ? null : tracks.get(bikeId);
+        if (track == null) {
+            return UNKNOWN;
+        }
+        synchronized (track) {
+            return track.count == 0 ? UNKNOWN : track.latestOdometer;
+        }
+    }
+
+    /**
+     * Copies the most recent readings of a bike, oldest first.
+     * @param times receives the reading times; its length is the maximum number of readings copied
+     * @param charges receives the charges, at least as long as times
+     * @param odometers receives the odometer readings, at least as long as times
+     * @return number of readings copied
+     */
+    public int copyRecentReadings(String bikeId, long[] times, int[] charges, int[] odometers) {
+        Track track = bikeId == null ? null : tracks.get(bikeId);
+        if (track == null) {
+            return 0;
+        }
+        synchronized (track) {
+            int copied = Math.min(times.length, track.count);
+            int first = Math.floorMod(track.next - copied, track.times.length);
+            for (int i = 0; i < copied; i++) {
+                int index = (first + i) % track.times.length;
+                times[i] = track.times[index];
+                charges[i] = track.charges[index];
+                odometers[i] = track.odometers[index];
+            }
+            return copied;
+        }
+    }
+
+    /**
+     * @return the rollups of a bike, oldest first, the interval still being filled last
+     */
+    public List<Rollup> getRollups(String bikeId) {
+        Track track = bikeId == null ? null : tracks.get(bikeId);
+        List<Rollup> result = new ArrayList<>();
+        if (track == null) {
+            return result;
+        }
+        synchronized (track) {
+            int first = Math.floorMod(track.nextRollup - track.rollupCount, rollups);
+            for (int i = 0; i < track.rollupCount; i++) {
+                int index = (first + i) % rollups;
+                result.add(new Rollup(track.rollupIntervals[index] * rollupMillis, track.rollupMin[index],
+                        track.rollupMax[index], track.rollupMean[index], track.rollupMeters[index]));
+            }
+            if (track.samples > 0) {
+                result.add(new Rollup(track.interval * rollupMillis, track.min, track.max,
+                        (int) Math.round((double) track.sum / track.samples), track.latestOdometer - track.firstOdometer));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of bikes that reported at least once
+     */
+    public int getTrackedBikes() {
+        return tracks.size();
+    }
+
+    public long getReadingsAccepted() {
+        return accepted.get();
+    }
+
+    public long getReadingsDropped() {
+        return dropped.get();
+    }
+
+    private Track trackOf(String bikeId) {
+        Track track = tracks.get(bikeId);
+        if (track != null) {
+            return track;
+        }
+        Bike bike = bikes.apply(bikeId);
+        if (bike == null || bike.getType() != BikeType.electric) {
+            return null;
+        }
+        return tracks.computeIfAbsent(bike.getId(), id -> new Track(bike, recentReadings, rollups));
+    }
+
+    private boolean record(Track track, long time, int charge, int odometer) {
+        synchronized (track) {
+            if (time < track.latestTime) {
+                return false;
+            }
+            int slot = track.next;
+            track.times[slot] = time;
+            track.charges[slot] = (byte) charge;
+            track.odometers[slot] = odometer;
+            track.next = slot + 1 == track.times.length ? 0 : slot + 1;
+            if (track.count < track.times.length) {
+                track.count++;
+            }
+
+            long interval = Math.floorDiv(time, rollupMillis);
+            if (interval != track.interval) {
+                closeInterval(track);
+                track.interval = interval;
+                track.min = charge;
+                track.max = charge;
+                // Distance ridden between two intervals counts towards the later one
+                track.firstOdometer = track.latestTime == Long.MIN_VALUE ? odometer : track.latestOdometer;
+            }
+            track.min = Math.min(track.min, charge);
+            track.max = Math.max(track.max, charge);
+            track.sum += charge;
+            track.samples++;
+
+            track.latestTime = time;
+            track.latestOdometer = odometer;
+            track.latestCharge = charge;
+            flag(track);
+            return true;
+        }
+    }
+
+    /**
+     * Moves the interval being filled into the rollup ring.
+     */
+    private void closeInterval(Track track) {
+        if (track.samples == 0) {
+            return;
+        }
+        int index = track.nextRollup;
+        track.rollupIntervals[index] = track.interval;
+        track.rollupMin[index] = (byte) track.min;
+        track.rollupMax[index] = (byte) track.max;
+        track.rollupMean[index] = (byte) Math.round((double) track.sum / track.samples);
+        track.rollupMeters[index] = track.latestOdometer - track.firstOdometer;
+        track.nextRollup = index + 1 == rollups ? 0 : index + 1;
+        if (track.rollupCount < rollups) {
+            track.rollupCount++;
+        }
+        track.sum = 0;
+        track.samples = 0;
+    }
+
+    private void flag(Track track) {
+        boolean low = track.latestCharge != UNKNOWN && track.latestCharge < lowChargePercent;
+        if (low != track.low) {
+            track.low = low;
+            track.bike.setLowBattery(low);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.epicode;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 /**
@@ -9,17 +12,31 @@ import java.util.logging.Logger;
  *
  * <p>All business operations are logged, and invalid operations
  * throw custom exceptions.</p>
+ *
+ * <p>Availability is flipped with a compare-and-set, so concurrent
+ * rent/return calls on the same bike never both succeed.</p>
  */
 @Secured("Shielding, logging, validation verified")
 @RoleType("Bike")
 public abstract class Bike implements BikeComponent {
     private String id;
     private String model;
-    private boolean available;
+    private volatile boolean available;
     private boolean lights;
     private boolean basket;
     private boolean GPS;
     private static final Logger logger = Logger.getLogger(Bike.class.getName());
+    private static final VarHandle AVAILABLE;
+    private static final BikeListener[] NO_LISTENERS = new BikeListener[0];
+    private volatile BikeListener[] listeners = NO_LISTENERS;
+
+    static {
+        try {
+            AVAILABLE = MethodHandles.lookup().findVarHandle(Bike.class, "available", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     /**
      * Setters and getters for private fields.
@@ -46,6 +63,7 @@ public abstract class Bike implements BikeComponent {
 
     public void setAvailable(boolean available) {
         this.available = available;
+        notifyListeners();
     }
 
     public boolean hasLights() {
@@ -54,6 +72,7 @@ public abstract class Bike implements BikeComponent {
 
     public void setLights(boolean lights) {
         this.lights = lights;
+        notifyListeners();
     }
 
     public boolean hasBasket() {
@@ -62,6 +81,7 @@ public abstract class Bike implements BikeComponent {
 
     public void setBasket(boolean basket) {
         this.basket = basket;
+        notifyListeners();
     }
 
     public boolean hasGPS() {
@@ -70,6 +90,22 @@ public abstract class Bike implements BikeComponent {
 
     public void setGPS(boolean GPS) {
         this.GPS = GPS;
+        notifyListeners();
+    }
+
+    /**
+     * @return true if the bike reported a charge below the telemetry threshold; bikes without a battery never do
+     */
+    public boolean isLowBattery() {
+        return false;
+    }
+
+    /**
+     * Set by {@link BatteryTelemetry} when a reading crosses its threshold.
+     * @throws InvalidBikeException if the bike has no battery
+     */
+    void setLowBattery(boolean lowBattery) {
+        throw new InvalidBikeException("Bike " + id + " has no battery");
     }
 
 
@@ -107,30 +143,63 @@ public abstract class Bike implements BikeComponent {
 
 
     /**
-     * Marks this bike as rented if available.
+     * Atomically marks this bike as rented if available.
      * @throws BikeUnavailableException if the bike is already rented
      */
     @Logged
     public void rentBike(){
-        if(!isAvailable()){
+        if(!AVAILABLE.compareAndSet(this, true, false)){
             logger.warning("Attempt to rent unavailable bike: " + id);
             throw new BikeUnavailableException("Bike " + getId() + " is not available for rent");
         }
-        setAvailable(false);
+        notifyListeners();
     }
 
 
     /**
-     * Marks this bike as returned if it was rented.
+     * Atomically marks this bike as returned if it was rented.
      * @throws BikeNotRentedException if the bike is already available
      */
     @Logged
     public void returnBike(){
-        if(isAvailable()) {
+        if(!AVAILABLE.compareAndSet(this, false, true)) {
             logger.warning("Bike is already available: " + id);
             throw new BikeNotRentedException("Bike " + getId() + " is not currently rented");
         }
-        setAvailable(true);
+        notifyListeners();
+    }
+
+    /**
+     * Registers a listener notified after availability or feature changes.
+     * @param listener listener to add
+     */
+    public synchronized void addListener(BikeListener listener) {
+        BikeListener[] current = listeners;
+        BikeListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * @param listener listener to remove; unknown listeners are ignored
+     */
+    public synchronized void removeListener(BikeListener listener) {
+        BikeListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                BikeListener[] updated = new BikeListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    void notifyListeners() {
+        for (BikeListener listener : listeners) {
+            listener.bikeChanged(this);
+        }
     }
 
     @Override
@@ -1,24 +1,108 @@
 package com.epicode;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 
 /**
  * Responsible for recording bike creation, rentals, and returns to a log file.
  * All file I/O is safely shielded and errors are logged.
+ *
+ * <p>By default every entry is appended synchronously. The asynchronous
+ * constructor hands entries to an {@link AsyncAuditWriter} instead, so the
+ * caller never waits on the disk; use {@link #flush()} and {@link #close()}
+ * as barriers.</p>
+ *
+ * <p>The encoding constructor keeps the file open and writes entries through an
+ * {@link AuditEncoder}, which formats them into a reused buffer instead of building
+ * strings, so recording an entry allocates nothing.</p>
  */
 @Secured("Audit repository with file storage")
 @RoleType("Repository")
 public class BikeAuditRepository {
     private static final Logger logger = Logger.getLogger(BikeAuditRepository.class.getName());
     private final File file;
+    private final AsyncAuditWriter asyncWriter;
+    private final AuditEncoder encoder;
+    private final FileChannel channel;
 
     public BikeAuditRepository(String filePath) {
         this.file = new File(filePath);
         initialize();
+        this.asyncWriter = null;
+        this.encoder = null;
+        this.channel = null;
     }
+
+    /**
+     * For subclasses that store entries somewhere other than a text file.
+     */
+    protected BikeAuditRepository() {
+        this.file = null;
+        this.asyncWriter = null;
+        this.encoder = null;
+        this.channel = null;
+    }
+
+    /**
+     * Creates a repository that encodes entries into a reused buffer and appends them
+     * synchronously to a file kept open.
+     * @param filePath audit file path
+     * @param layout line layout; only {@link AuditEncoder.Layout#TEXT} can be recovered from
+     * @throws StorageException if the audit file cannot be opened
+     */
+    public BikeAuditRepository(String filePath, AuditEncoder.Layout layout) {
+        this.file = new File(filePath);
+        initialize();
+        this.asyncWriter = null;
+        this.encoder = new AuditEncoder(layout);
+        try {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.severe("Failed to open audit file: " + e.getMessage());
+            throw new StorageException("System storage unavailable", e);
+        }
+    }
+
+    /**
+     * Creates a repository that records entries asynchronously with group commits.
+     * @param filePath audit file path
+     * @param queueCapacity maximum number of entries waiting to be written
+     * @param fsyncPolicy when written entries are forced to disk
+     * @param fsyncIntervalMillis interval for {@link AsyncAuditWriter.FsyncPolicy#INTERVAL}
+     * @throws StorageException if the audit file cannot be opened
+     */
+    public BikeAuditRepository(String filePath, int queueCapacity,
+                               AsyncAuditWriter.FsyncPolicy fsyncPolicy, long fsyncIntervalMillis) {
+        this(filePath, queueCapacity, fsyncPolicy, fsyncIntervalMillis, null);
+    }
+
+    /**
+     * Creates a repository that records entries asynchronously and rotates its file into
+     * compressed, indexed segments. Only the asynchronous writer rotates: it owns the file
+     * between batches, so rotation never holds up a caller.
+     * @param filePath audit file path
+     * @param queueCapacity maximum number of entries waiting to be written
+     * @param fsyncPolicy when written entries are forced to disk
+     * @param fsyncIntervalMillis interval for {@link AsyncAuditWriter.FsyncPolicy#INTERVAL}
+     * @param rotation rotation and retention settings, or null to never rotate
+     * @throws StorageException if the audit file cannot be opened
+     */
+    public BikeAuditRepository(String filePath, int queueCapacity, AsyncAuditWriter.FsyncPolicy fsyncPolicy,
+                               long fsyncIntervalMillis, AuditRotation rotation) {
+        this.file = new File(filePath);
+        initialize();
+        this.asyncWriter = new AsyncAuditWriter(file, queueCapacity, fsyncPolicy, fsyncIntervalMillis, rotation);
+        this.encoder = null;
+        this.channel = null;
+    }
+
     @Sanitized
     @Logged
     private void initialize() {
@@ -32,19 +116,160 @@ public class BikeAuditRepository {
     }
 
     public void recordCreation(Bike bike, BikeCatalog catalog) {
+        if (encoder != null) {
+            writeEncodedCreation(bike, catalog);
+            return;
+        }
         writeToFile(formatCreationEntry(bike, catalog));
     }
 
+    /**
+     * Records the creation of several bikes as one grouped write.
+     * @param bikes created bikes
+     * @param catalog catalog they were placed in
+     * @throws StorageException if the entries cannot be written
+     */
+    public void recordCreations(List<Bike> bikes, BikeCatalog catalog) {
+        if (encoder != null) {
+            writeEncodedCreations(bikes, catalog);
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<String> entries = new ArrayList<>(bikes.size());
+        for (Bike bike : bikes) {
+            entries.add(creationLine(now, bike.getId(), bike.getType(), String.valueOf(catalog),
+                    bike.getModel(), bike.isAvailable(), bike.hasLights(), bike.hasBasket(), bike.hasGPS()));
+        }
+        writeAllToFile(entries);
+    }
+
     public void recordRental(Bike bike, String firstName, String lastName) {
+        if (encoder != null) {
+            writeEncodedEvent(AuditEventType.RENTED, bike.getId(), firstName, lastName);
+            return;
+        }
         writeToFile(formatRentalEntry(bike, firstName, lastName));
     }
 
     public void recordReturn(Bike bike, String firstName, String lastName) {
+        if (encoder != null) {
+            writeEncodedEvent(AuditEventType.RETURNED, bike.getId(), firstName, lastName);
+            return;
+        }
         writeToFile(formatReturnEntry(bike, firstName, lastName));
     }
 
+    /**
+     * Records a rental naming the customer by registry ID instead of by name. Repositories
+     * that do not write text lines record the names instead.
+     * @param bike rented bike
+     * @param customer customer from a durable {@link CustomerRegistry}
+     * @throws StorageException if the entry cannot be written
+     */
+    public void recordRental(Bike bike, Customer customer) {
+        recordCustomerEvent(AuditEventType.RENTED, bike, customer);
+    }
+
+    /**
+     * Records a return naming the customer by registry ID instead of by name.
+     * @param bike returned bike
+     * @param customer customer from a durable {@link CustomerRegistry}
+     * @throws StorageException if the entry cannot be written
+     */
+    public void recordReturn(Bike bike, Customer customer) {
+        recordCustomerEvent(AuditEventType.RETURNED, bike, customer);
+    }
+
+    private void recordCustomerEvent(AuditEventType eventType, Bike bike, Customer customer) {
+        if (file == null) {
+            // Subclasses store entries their own way and only know the named form
+            if (eventType == AuditEventType.RENTED) {
+                recordRental(bike, customer.getFirstName(), customer.getLastName());
+            } else {
+                recordReturn(bike, customer.getFirstName(), customer.getLastName());
+            }
+            return;
+        }
+        if (encoder != null) {
+            writeEncodedEvent(eventType, bike.getId(), customer.getId());
+            return;
+        }
+        writeToFile(customerLine(LocalDateTime.now(), eventType, bike.getId(), customer.getId()));
+    }
+
+    /**
+     * Records that a bike left this service's fleet, so that a replay of the log drops it.
+     * @param bike removed bike
+     * @param catalog catalog it was taken out of
+     * @throws StorageException if the entry cannot be written
+     */
+    public void recordRemoval(Bike bike, BikeCatalog catalog) {
+        if (encoder != null) {
+            writeEncodedRemoval(bike.getId(), String.valueOf(catalog));
+            return;
+        }
+        writeToFile(removalLine(LocalDateTime.now(), bike.getId(), String.valueOf(catalog)));
+    }
+
+    /**
+     * Records reservations that ran out without the bike being rented, as one grouped write.
+     * @param expired reservations that expired
+     * @throws StorageException if the entries cannot be written
+     */
+    public void recordExpirations(List<Reservation> expired) {
+        if (encoder != null) {
+            writeEncodedExpirations(expired);
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<String> entries = new ArrayList<>(expired.size());
+        for (Reservation reservation : expired) {
+            entries.add(expiryLine(now, reservation.getBikeId(), reservation.getFirstName(),
+                    reservation.getLastName()));
+        }
+        writeAllToFile(entries);
+    }
+
+    /**
+     * @return the rotated segments of the audit file, or null if it is not rotated
+     */
+    public AuditSegments getSegments() {
+        return asyncWriter == null ? null : asyncWriter.getSegments();
+    }
+
+    /**
+     * Waits until every entry recorded so far has been written. No-op in synchronous mode.
+     * @throws StorageException if a pending entry could not be written
+     */
+    public void flush() {
+        if (asyncWriter != null) {
+            asyncWriter.flush();
+        }
+    }
+
+    /**
+     * Flushes pending entries and releases the asynchronous writer or the open file.
+     * No-op in plain synchronous mode.
+     */
+    public void close() {
+        if (asyncWriter != null) {
+            asyncWriter.close();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close audit file: " + e.getMessage());
+            }
+        }
+    }
+
     @Logged
     private void writeToFile(String entry) {
+        if (asyncWriter != null) {
+            asyncWriter.append(entry);
+            return;
+        }
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
             writer.write(entry);
             writer.newLine();
@@ -54,18 +279,127 @@ public class BikeAuditRepository {
         }
     }
 
+    @Logged
+    private void writeAllToFile(List<String> entries) {
+        if (asyncWriter != null) {
+            asyncWriter.appendAll(entries);
+            return;
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true), 64 * 1024)) {
+            for (String entry : entries) {
+                writer.write(entry);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to write audit entries: " + e.getMessage());
+            throw new StorageException("Unable to record operation", e);
+        }
+    }
+
+    private synchronized void writeEncodedCreation(Bike bike, BikeCatalog catalog) {
+        encoder.clear();
+        encodeCreation(bike, catalog);
+        writeEncoded();
+    }
+
+    private synchronized void writeEncodedCreations(List<Bike> bikes, BikeCatalog catalog) {
+        encoder.clear();
+        for (Bike bike : bikes) {
+            encodeCreation(bike, catalog);
+        }
+        writeEncoded();
+    }
+
+    private void encodeCreation(Bike bike, BikeCatalog catalog) {
+        encoder.creation(bike.getId(), bike.getType(), String.valueOf(catalog), bike.getModel(),
+                bike.isAvailable(), bike.hasLights(), bike.hasBasket(), bike.hasGPS());
+    }
+
+    private synchronized void writeEncodedEvent(AuditEventType eventType, String bikeId,
+                                                String firstName, String lastName) {
+        encoder.clear().event(eventType, bikeId, firstName, lastName);
+        writeEncoded();
+    }
+
+    private synchronized void writeEncodedEvent(AuditEventType eventType, String bikeId, int customerId) {
+        encoder.clear().event(eventType, bikeId, customerId);
+        writeEncoded();
+    }
+
+    private synchronized void writeEncodedRemoval(String bikeId, String catalog) {
+        encoder.clear().removal(bikeId, catalog);
+        writeEncoded();
+    }
+
+    private synchronized void writeEncodedExpirations(List<Reservation> expired) {
+        encoder.clear();
+        for (Reservation reservation : expired) {
+            encoder.event(AuditEventType.EXPIRED, reservation.getBikeId(), reservation.getFirstName(),
+                    reservation.getLastName());
+        }
+        writeEncoded();
+    }
+
+    @Logged
+    private void writeEncoded() {
+        ByteBuffer buffer = encoder.buffer();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to write audit entry: " + e.getMessage());
+            throw new StorageException("Unable to record operation", e);
+        }
+    }
+
     private String formatCreationEntry(Bike bike, BikeCatalog catalog) {
-        return String.format("[%s] CREATED | Bike=%s | Type=%s | Catalog=%s",
-                LocalDateTime.now(), bike.getId(), bike.getType(), catalog);
+        return creationLine(LocalDateTime.now(), bike.getId(), bike.getType(), String.valueOf(catalog),
+                bike.getModel(), bike.isAvailable(), bike.hasLights(), bike.hasBasket(), bike.hasGPS());
     }
 
     private String formatRentalEntry(Bike bike, String firstName, String lastName) {
-        return String.format("[%s] RENTED | Bike=%s | First Name=%s | Last Name=%s",
-                LocalDateTime.now(), bike.getId(), firstName, lastName);
+        return rentalLine(LocalDateTime.now(), bike.getId(), firstName, lastName);
     }
 
     private String formatReturnEntry(Bike bike, String firstName, String lastName) {
+        return returnLine(LocalDateTime.now(), bike.getId(), firstName, lastName);
+    }
+
+    /**
+     * Text layout of audit lines, shared with tools that convert other formats to text.
+     * Creation lines carry the full bike configuration so state can be rebuilt from the log.
+     */
+    static String creationLine(LocalDateTime time, String bikeId, BikeType type, String catalog, String model,
+                               boolean available, boolean lights, boolean basket, boolean gps) {
+        return String.format("[%s] CREATED | Bike=%s | Type=%s | Catalog=%s | Model=%s"
+                        + " | Available=%s | Lights=%s | Basket=%s | GPS=%s",
+                time, bikeId, type, catalog, model, available, lights, basket, gps);
+    }
+
+    static String rentalLine(LocalDateTime time, String bikeId, String firstName, String lastName) {
+        return String.format("[%s] RENTED | Bike=%s | First Name=%s | Last Name=%s",
+                time, bikeId, firstName, lastName);
+    }
+
+    static String returnLine(LocalDateTime time, String bikeId, String firstName, String lastName) {
         return String.format("[%s] RETURNED | Bike=%s | First Name=%s | Last Name=%s",
-                LocalDateTime.now(), bike.getId(), firstName, lastName);
+                time, bikeId, firstName, lastName);
+    }
+
+    /**
+     * Rental, return or expiry line naming the customer by registry ID.
+     */
+    static String customerLine(LocalDateTime time, AuditEventType eventType, String bikeId, int customerId) {
+        return String.format("[%s] %s | Bike=%s | Customer=%d", time, eventType, bikeId, customerId);
+    }
+
+    static String expiryLine(LocalDateTime time, String bikeId, String firstName, String lastName) {
+        return String.format("[%s] EXPIRED | Bike=%s | First Name=%s | Last Name=%s",
+                time, bikeId, firstName, lastName);
+    }
+
+    static String removalLine(LocalDateTime time, String bikeId, String catalog) {
+        return String.format("[%s] REMOVED | Bike=%s | Catalog=%s", time, bikeId, catalog);
     }
 }
\ No newline at end of file
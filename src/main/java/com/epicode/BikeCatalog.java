@@ -1,23 +1,30 @@
 package com.epicode;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
  * Abstract class representing a collection of bikes (catalog).
  * Provides methods to add, remove, and list bikes safely.
  * Implements BikeComponent and iterable interface via custom Iterator.
+ *
+ * <p>By default bikes are kept in a {@link VersionedList}: listing and iterating work on an
+ * immutable snapshot obtained without copying, so they are safe while other
+ * threads add or remove bikes. A catalog created on a {@link FleetStore} keeps no
+ * bike objects at all, only the slots of its members, and hands out views.</p>
  */
 @Secured("BikeCatalog shielding and logging applied")
 @RoleType("Catalog")
 public abstract class BikeCatalog implements BikeComponent, BikeCollection<Bike> {
     private static final Logger logger = Logger.getLogger(BikeCatalog.class.getName());
-    private final ArrayList<Bike> bikes;
+    private final CatalogStorage bikes;
 
 
     /**
      * Constructor with an initial list of bikes.
-     * @param bikes initial bike list
+     * @param bikes initial bike list, copied into the catalog
      * @throws InvalidCatalogException if bikes list is null
      */
     @Sanitized
@@ -25,17 +32,43 @@ public abstract class BikeCatalog implements BikeComponent, BikeCollection<Bike>
         if (bikes == null) {
             throw new InvalidCatalogException("Bike list cannot be null");
         }
-        this.bikes = bikes;
+        this.bikes = new ObjectCatalogStorage(bikes);
     }
 
-    public ArrayList<Bike> getBikes() {
-        return new ArrayList<>(bikes);
+    /**
+     * Constructor for a catalog whose bikes live in a fleet store.
+     * Only views of that store's bikes can be added.
+     * @param store fleet store holding the bikes
+     * @throws InvalidCatalogException if store is null
+     */
+    @Sanitized
+    public BikeCatalog(FleetStore store) {
+        if (store == null) {
+            throw new InvalidCatalogException("Fleet store cannot be null");
+        }
+        this.bikes = new StoredCatalogStorage(store);
+    }
+
+    /**
+     * @return read-only snapshot of the bikes, taken without copying;
+     * for a catalog on a fleet store, a list of freshly materialized views
+     */
+    public List<Bike> getBikes() {
+        return bikes.snapshot();
+    }
+
+    /**
+     * @param store fleet store, or null to ask whether the catalog keeps bike objects
+     * @return true if this catalog keeps its bikes in the given store
+     */
+    public boolean isBackedBy(FleetStore store) {
+        return bikes.isBackedBy(store);
     }
 
     /**
      * Adds a bike to the catalog safely.
      * @param bike the bike to add
-     * @throws InvalidBikeException if bike is null
+     * @throws InvalidBikeException if bike is null, or not held by the catalog's fleet store
      */
     @Logged
     public void addBike(Bike bike) {
@@ -46,6 +79,26 @@ public abstract class BikeCatalog implements BikeComponent, BikeCollection<Bike>
         bikes.add(bike);
     }
 
+    /**
+     * Adds several bikes at once, publishing them to readers in a single step.
+     * @param added bikes to add
+     * @throws InvalidBikeException if the collection or one of the bikes is null,
+     * or a bike is not held by the catalog's fleet store
+     */
+    @Logged
+    public void addBikes(Collection<Bike> added) {
+        if (added == null) {
+            throw new InvalidBikeException("Cannot add null bikes to catalog");
+        }
+        for (Bike bike : added) {
+            if (bike == null) {
+                logger.warning("Attempted to add null bike to catalog");
+                throw new InvalidBikeException("Cannot add null bike to catalog");
+            }
+        }
+        bikes.addAll(added);
+    }
+
     /**
      * Removes a bike from the catalog safely.
      * @param bike the bike to remove
@@ -66,16 +119,40 @@ public abstract class BikeCatalog implements BikeComponent, BikeCollection<Bike>
         }
     }
 
+    /**
+     * Finds bikes of this catalog through its secondary indexes, without scanning the list.
+     * @param query criteria
+     * @return matching bikes, at most the query limit
+     */
+    public List<Bike> findBikes(BikeQuery query) {
+        if (query == null) {
+            throw new InvalidSelectionException("Query cannot be null");
+        }
+        return bikes.find(query);
+    }
+
+    /**
+     * @param query criteria; the limit is ignored
+     * @return number of matching bikes
+     */
+    public int countBikes(BikeQuery query) {
+        if (query == null) {
+            throw new InvalidSelectionException("Query cannot be null");
+        }
+        return bikes.count(query);
+    }
+
     @Override
     public void showDetails() {
-        for (Bike bike : bikes) {
-            bike.showDetails();  // Already safe, no try-catch needed
+        Iterator<Bike> iterator = bikes.iterator();
+        while (iterator.hasNext()) {
+            iterator.next().showDetails();  // Already safe, no try-catch needed
         }
     }
 
     @Override
     public Iterator<Bike> createIterator() {
-        return new BikeIterator(bikes);
+        return bikes.iterator();
     }
 
     @Override
@@ -86,11 +163,12 @@ public abstract class BikeCatalog implements BikeComponent, BikeCollection<Bike>
     @Logged
     @Override
     public Bike getElementAt(int index) {
-        if (index < 0 || index >= bikes.size()) {
+        try {
+            return bikes.get(index);
+        } catch (IndexOutOfBoundsException e) {
             logger.warning("Selection attempt with invalid index: " + index);
             throw new InvalidSelectionException("Invalid bike index: " + index);
         }
-        return bikes.get(index);
     }
 
     /**
@@ -105,7 +183,7 @@ public abstract class BikeCatalog implements BikeComponent, BikeCollection<Bike>
             return;
         }
 
-        if (bikes.isEmpty()) {
+        if (bikes.size() == 0) {
             System.out.println("No bikes available.");
             return;
         }
@@ -0,0 +1,9 @@
+package com.epicode;
+
+/**
+ * Anything that turns a builder into a bike; implemented by every {@link BikeFactory}
+ * so factories can be wrapped by {@link Instrumentation}.
+ */
+public interface BikeCreator {
+    Bike createBike(BikeBuilder bikeBuilder);
+}
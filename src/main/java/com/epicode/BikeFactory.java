@@ -6,7 +6,8 @@ package com.epicode;
  */
 @Secured("Exception shielding")
 @RoleType("Factory")
-public abstract class BikeFactory {
+public abstract class BikeFactory implements BikeCreator {
+    @Override
     public abstract Bike createBike(BikeBuilder bikeBuilder);
 
     /**
@@ -0,0 +1,332 @@
+package com.epicode;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+
+/**
+ * Hash index from bike ID to {@link FleetStore} slot, kept off the Java heap.
+ *
+ * <p>IDs are handed dense slots in insertion order. Their ASCII bytes are appended to one
+ * byte arena, with an offset table giving where each slot's ID starts, and lookups go
+ * through an open-addressing table of {@code hash(4) slot+1(4)} entries with linear
+ * probing. All three live in direct buffers, so there is no object per entry and the
+ * collector never scans them.</p>
+ *
+ * <p>Adds are serialized. Lookups take no lock: an entry is published with a release
+ * store after its ID bytes, and a lookup reads it with an acquire load.</p>
+ *
+ * <p>{@link #writeTo(Path)} saves the index as one file (a 32 byte header, then the
+ * table, offsets and arena) and {@link #open(Path)} maps it back copy-on-write, so a
+ * restart neither rehashes nor copies the IDs.</p>
+ */
+@Secured("Off-heap ID storage: validation and logging applied")
+@RoleType("Index")
+public class BikeIdIndex {
+    private static final Logger logger = Logger.getLogger(BikeIdIndex.class.getName());
+
+    static final int MAGIC = 0x424B4958;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 8;
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 28;
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private volatile ByteBuffer table;
+    private volatile ByteBuffer offsets;
+    private volatile ByteBuffer ids;
+    private volatile int size;
+
+
+    /**
+     * @param expectedIds initial capacity; the index grows beyond it as needed
+     */
+    public BikeIdIndex(int expectedIds) {
+        int expected = Math.max(MIN_CAPACITY, Math.min(MAX_CAPACITY / 2, expectedIds));
+        int entries = Integer.highestOneBit(expected * 2 - 1) << 1;
+        this.table = allocate(entries * ENTRY_SIZE);
+        this.offsets = allocate((expected + 1) * 4);
+        // Most IDs are a few letters and digits
+        this.ids = allocate(expected * 8);
+    }
+
+    private BikeIdIndex(ByteBuffer table, ByteBuffer offsets, ByteBuffer ids, int size) {
+        this.table = table;
+        this.offsets = offsets;
+        this.ids = ids;
+        this.size = size;
+    }
+
+    /**
+     * @param id bike ID, compared character by character
+     * @return the ID's slot, or -1 if unknown
+     */
+    public int slotOf(CharSequence id) {
+        if (id == null) {
+            return -1;
+        }
+        int hash = hash(id);
+        ByteBuffer entries = table;
+        int mask = entries.capacity() / ENTRY_SIZE - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int entry = (int) INT.getAcquire(entries, i * ENTRY_SIZE + 4);
+            if (entry == 0) {
+                return -1;
+            }
+            if (entries.getInt(i * ENTRY_SIZE) == hash && matches(entry - 1, id)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Adds an ID under the next free slot.
+     * @param id bike ID made of ASCII characters
+     * @return the new slot, or -1 if the ID is already indexed
+     * @throws InvalidBikeException if the ID is null, empty or not ASCII
+     * @throws StorageException if the index cannot hold more IDs
+     */
+    @Sanitized
+    public synchronized int add(CharSequence id) {
+        checkId(id);
+        int hash = hash(id);
+        if (slotOf(id) >= 0) {
+            return -1;
+        }
+        int slot = size;
+        if (slot + 1 > MAX_CAPACITY / 2) {
+            logger.severe("Bike ID index is full at " + slot + " IDs");
+            throw new StorageException("Bike ID index is full", null);
+        }
+        ByteBuffer offsetBuffer = ensure(offsets, (slot + 2) * 4);
+        int start = offsetBuffer.getInt(slot * 4);
+        long end = (long) start + id.length();
+        if (end > Integer.MAX_VALUE - 8) {
+            logger.severe("Bike ID arena is full at " + slot + " IDs");
+            throw new StorageException("Bike ID index is full", null);
+        }
+        ByteBuffer idBuffer = ensure(ids, (int) end);
+        for (int i = 0; i < id.length(); i++) {
+            idBuffer.put(start + i, (byte) id.charAt(i));
+        }
+        offsetBuffer.putInt((slot + 1) * 4, (int) end);
+        ids = idBuffer;
+        offsets = offsetBuffer;
+
+        ByteBuffer entries = table;
+        if ((slot + 1) * 2 > entries.capacity() / ENTRY_SIZE) {
+            entries = rehash(entries);
+            table = entries;
+        }
+        // Counting the slot first means any ID a lookup finds can also be read back
+        size = slot + 1;
+        insert(entries, hash, slot);
+        return slot;
+    }
+
+    /**
+     * @param slot slot of an indexed ID
+     * @return the ID stored under the slot
+     * @throws InvalidSelectionException if the slot is not in use
+     */
+    public String idOf(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new InvalidSelectionException("Invalid ID slot: " + slot);
+        }
+        ByteBuffer offsetBuffer = offsets;
+        int start = offsetBuffer.getInt(slot * 4);
+        byte[] bytes = new byte[offsetBuffer.getInt(slot * 4 + 4) - start];
+        ids.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return number of indexed IDs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks that an ID can be indexed.
+     * @throws InvalidBikeException if the ID is null, empty or not ASCII
+     */
+    static void checkId(CharSequence id) {
+        if (id == null || id.length() == 0) {
+            throw new InvalidBikeException("Bike ID cannot be null or blank");
+        }
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) > 0x7F) {
+                throw new InvalidBikeException("Bike ID must be ASCII: " + id);
+            }
+        }
+    }
+
+    /**
+     * Writes the index to a file, replacing it atomically.
+     * @param file destination
+     * @throws StorageException if the file cannot be written
+     */
+    @Logged
+    public synchronized void writeTo(Path file) {
+        int count = size;
+        ByteBuffer entries = table.duplicate();
+        ByteBuffer offsetBuffer = offsets.duplicate();
+        offsetBuffer.clear().limit((count + 1) * 4);
+        ByteBuffer idBuffer = ids.duplicate();
+        idBuffer.clear().limit(offsets.getInt(count * 4));
+        entries.clear();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(count)
+                .putInt(entries.capacity() / ENTRY_SIZE).putInt(idBuffer.limit()).clear();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (ByteBuffer region : new ByteBuffer[]{header, entries, offsetBuffer, idBuffer}) {
+                while (region.hasRemaining()) {
+                    channel.write(region);
+                }
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            logger.severe("Failed to write bike ID index: " + e.getMessage());
+            throw new StorageException("Unable to write bike ID index", e);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.severe("Failed to publish bike ID index: " + e.getMessage());
+            throw new StorageException("Unable to write bike ID index", e);
+        }
+        logger.info("Bike ID index written with " + count + " IDs");
+    }
+
+    /**
+     * Maps an index written by {@link #writeTo(Path)}. The mapping is private:
+     * IDs added afterwards stay in memory until the index is written again.
+     * @param file index file
+     * @return the mapped index
+     * @throws StorageException if the file cannot be read or is not a valid index
+     */
+    @Logged
+    public static BikeIdIndex open(Path file) {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            mapped = channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            logger.severe("Failed to map bike ID index: " + e.getMessage());
+            throw new StorageException("Unable to read bike ID index", e);
+        }
+        if (mapped.capacity() < HEADER_SIZE || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+            throw new StorageException("Unsupported bike ID index: " + file, null);
+        }
+        int count = mapped.getInt(8);
+        int entries = mapped.getInt(12);
+        int arena = mapped.getInt(16);
+        long tableEnd = HEADER_SIZE + (long) entries * ENTRY_SIZE;
+        long offsetsEnd = tableEnd + (count + 1L) * 4;
+        if (entries < MIN_CAPACITY || entries > MAX_CAPACITY || Integer.bitCount(entries) != 1
+                || count < 0 || count * 2L > entries || arena < 0 || offsetsEnd + arena != mapped.capacity()) {
+            throw new StorageException("Corrupted bike ID index: " + file, null);
+        }
+        BikeIdIndex index = new BikeIdIndex(region(mapped, HEADER_SIZE, (int) tableEnd),
+                region(mapped, (int) tableEnd, (int) offsetsEnd), region(mapped, (int) offsetsEnd, mapped.capacity()),
+                count);
+        logger.info("Bike ID index mapped with " + count + " IDs from " + file);
+        return index;
+    }
+
+    private boolean matches(int slot, CharSequence id) {
+        ByteBuffer offsetBuffer = offsets;
+        ByteBuffer idBuffer = ids;
+        int start = offsetBuffer.getInt(slot * 4);
+        int length = offsetBuffer.getInt(slot * 4 + 4) - start;
+        if (length != id.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((idBuffer.get(start + i) & 0xFF) != id.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer rehash(ByteBuffer entries) {
+        int capacity = entries.capacity() / ENTRY_SIZE;
+        ByteBuffer bigger = allocate(capacity * 2 * ENTRY_SIZE);
+        for (int i = 0; i < capacity; i++) {
+            int entry = entries.getInt(i * ENTRY_SIZE + 4);
+            if (entry != 0) {
+                insert(bigger, entries.getInt(i * ENTRY_SIZE), entry - 1);
+            }
+        }
+        return bigger;
+    }
+
+    private static void insert(ByteBuffer entries, int hash, int slot) {
+        int mask = entries.capacity() / ENTRY_SIZE - 1;
+        int i = hash & mask;
+        while (entries.getInt(i * ENTRY_SIZE + 4) != 0) {
+            i = (i + 1) & mask;
+        }
+        entries.putInt(i * ENTRY_SIZE, hash);
+        INT.setRelease(entries, i * ENTRY_SIZE + 4, slot + 1);
+    }
+
+    /**
+     * Spreads the ID's string hash. For a String the hash is cached, and for any other
+     * sequence of the same characters it comes out the same.
+     */
+    private static int hash(CharSequence id) {
+        int h;
+        if (id instanceof String) {
+            h = id.hashCode();
+        } else {
+            h = 0;
+            for (int i = 0; i < id.length(); i++) {
+                h = 31 * h + id.charAt(i);
+            }
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buffer, int needed) {
+        if (needed <= buffer.capacity()) {
+            return buffer;
+        }
+        ByteBuffer bigger = allocate((int) Math.min(Integer.MAX_VALUE - 8L,
+                Math.max(needed, buffer.capacity() * 2L)));
+        ByteBuffer source = buffer.duplicate();
+        source.clear();
+        bigger.put(source).clear();
+        return bigger;
+    }
+
+    private static ByteBuffer region(ByteBuffer mapped, int from, int to) {
+        ByteBuffer slice = mapped.duplicate();
+        slice.limit(to).position(from);
+        return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,197 @@
+package com.epicode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Secondary indexes over a set of bikes: one bit set per {@link BikeType}, plus
+ * availability, lights, basket, GPS and low battery. Each bike owns a slot (bit position);
+ * a {@link BikeQuery} is answered by AND-ing the relevant bit sets 64 bikes at a
+ * time and stops as soon as the limit is reached.
+ *
+ * <p>The index listens to its bikes, so renting or returning a bike updates the
+ * availability bit without going through the catalog. Adding and removing bikes
+ * is serialized; bit updates and queries are lock-free.</p>
+ */
+@Secured("Index maintenance shielding verified")
+@RoleType("Index")
+public class BikeIndex implements BikeListener {
+    private final Map<Bike, Integer> slotsByBike = new ConcurrentHashMap<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private volatile Bike[] bikes = new Bike[64];
+    private int nextSlot = 0;
+
+    private final AtomicBitSet live = new AtomicBitSet();
+    private final AtomicBitSet available = new AtomicBitSet();
+    private final AtomicBitSet lights = new AtomicBitSet();
+    private final AtomicBitSet basket = new AtomicBitSet();
+    private final AtomicBitSet GPS = new AtomicBitSet();
+    private final AtomicBitSet lowBattery = new AtomicBitSet();
+    private final AtomicBitSet[] byType = new AtomicBitSet[BikeType.values().length];
+    private final int[] typeCounts = new int[BikeType.values().length];
+
+    public BikeIndex() {
+        for (int i = 0; i < byType.length; i++) {
+            byType[i] = new AtomicBitSet();
+        }
+    }
+
+    /**
+     * Indexes a bike and starts listening to its changes. Adding a bike twice has no effect.
+     * @param bike bike to index
+     * @throws InvalidBikeException if bike is null
+     */
+    @Logged
+    public synchronized void add(Bike bike) {
+        if (bike == null) {
+            throw new InvalidBikeException("Cannot index null bike");
+        }
+        if (slotsByBike.containsKey(bike)) {
+            return;
+        }
+        int slot = freeSlots.isEmpty() ? nextSlot++ : freeSlots.pop();
+        if (slot >= bikes.length) {
+            bikes = Arrays.copyOf(bikes, Math.max(slot + 1, bikes.length * 2));
+        }
+        bikes[slot] = bike;
+        slotsByBike.put(bike, slot);
+        byType[bike.getType().ordinal()].set(slot);
+        typeCounts[bike.getType().ordinal()]++;
+        refresh(slot, bike);
+        bike.addListener(this);
+        live.set(slot);
+    }
+
+    /**
+     * Drops a bike from the index.
+     * @param bike bike to drop
+     * @return true if the bike was indexed
+     */
+    @Logged
+    public synchronized boolean remove(Bike bike) {
+        Integer slot = bike == null ? null : slotsByBike.remove(bike);
+        if (slot == null) {
+            return false;
+        }
+        bike.removeListener(this);
+        live.clear(slot);
+        byType[bike.getType().ordinal()].clear(slot);
+        typeCounts[bike.getType().ordinal()]--;
+        available.clear(slot);
+        lights.clear(slot);
+        basket.clear(slot);
+        GPS.clear(slot);
+        lowBattery.clear(slot);
+        bikes[slot] = null;
+        freeSlots.push(slot);
+        return true;
+    }
+
+    @Override
+    public void bikeChanged(Bike bike) {
+        Integer slot = slotsByBike.get(bike);
+        if (slot != null) {
+            refresh(slot, bike);
+        }
+    }
+
+    /**
+     * @param query criteria
+     * @return matching bikes, at most {@code query.getLimit()}
+     */
+    public List<Bike> find(BikeQuery query) {
+        List<Bike> result = new ArrayList<>();
+        if (excludesAll(query)) {
+            return result;
+        }
+        Bike[] snapshot = bikes;
+        int limit = query.getLimit();
+        int words = live.wordsInUse();
+        for (int word = 0; word < words; word++) {
+            long bits = match(query, word);
+            while (bits != 0) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                Bike bike = slot < snapshot.length ? snapshot[slot] : null;
+                if (bike != null) {
+                    result.add(bike);
+                    if (result.size() >= limit) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param query criteria; the limit is ignored
+     * @return number of matching bikes
+     */
+    public int count(BikeQuery query) {
+        int count = 0;
+        if (excludesAll(query)) {
+            return 0;
+        }
+        int words = live.wordsInUse();
+        for (int word = 0; word < words; word++) {
+            count += Long.bitCount(match(query, word));
+        }
+        return count;
+    }
+
+    public int size() {
+        return slotsByBike.size();
+    }
+
+    /**
+     * Lets a query for a type this index does not hold skip the scan entirely,
+     * which is the common case for single-type catalogs.
+     */
+    private boolean excludesAll(BikeQuery query) {
+        if (query.getType() == null) {
+            return false;
+        }
+        synchronized (this) {
+            return typeCounts[query.getType().ordinal()] == 0;
+        }
+    }
+
+    private long match(BikeQuery query, int word) {
+        long bits = live.word(word);
+        if (bits != 0 && query.getType() != null) {
+            bits &= byType[query.getType().ordinal()].word(word);
+        }
+        bits = filter(bits, available, query.getAvailable(), word);
+        bits = filter(bits, lights, query.getLights(), word);
+        bits = filter(bits, basket, query.getBasket(), word);
+        bits = filter(bits, GPS, query.getGPS(), word);
+        return filter(bits, lowBattery, query.getLowBattery(), word);
+    }
+
+    private static long filter(long bits, AtomicBitSet set, Boolean wanted, int word) {
+        if (bits == 0 || wanted == null) {
+            return bits;
+        }
+        long setWord = set.word(word);
+        return wanted ? bits & setWord : bits & ~setWord;
+    }
+
+    private void refresh(int slot, Bike bike) {
+        // Re-read after writing: a concurrent change may have published an older value over ours
+        boolean isAvailable;
+        do {
+            isAvailable = bike.isAvailable();
+            available.set(slot, isAvailable);
+        } while (bike.isAvailable() != isAvailable);
+        lights.set(slot, bike.hasLights());
+        basket.set(slot, bike.hasBasket());
+        GPS.set(slot, bike.hasGPS());
+        lowBattery.set(slot, bike.isLowBattery());
+    }
+}
@@ -1,22 +1,25 @@
 package com.epicode;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
  * Class representing a collection of BikeCatalogs.
  * Supports adding, removing, listing, and selecting catalogs safely.
+ * Catalogs are kept in a {@link VersionedList}, so listing works on a snapshot taken without copying.
  */
 @Secured("Inventory handling: shielding and logging")
 @RoleType("Inventory")
 public class BikeInventory implements BikeCollection<BikeCatalog> {
     private static final Logger logger = Logger.getLogger(BikeInventory.class.getName());
-    private final ArrayList<BikeCatalog> catalogs;
+    private final VersionedList<BikeCatalog> catalogs;
 
 
     /**
      * Constructor with initial catalog list.
-     * @param catalogs initial catalogs
+     * @param catalogs initial catalogs, copied into the inventory
      * @throws InvalidCatalogException if catalogs is null
      */
     @Sanitized
@@ -24,11 +27,14 @@ public class BikeInventory implements BikeCollection<BikeCatalog> {
         if (catalogs == null) {
             throw new InvalidCatalogException("Catalog list cannot be null");
         }
-        this.catalogs = catalogs;
+        this.catalogs = new VersionedList<>(catalogs);
     }
 
-    public ArrayList<BikeCatalog> getCatalogs() {
-        return new ArrayList<>(catalogs);
+    /**
+     * @return read-only snapshot of the catalogs, taken without copying
+     */
+    public List<BikeCatalog> getCatalogs() {
+        return catalogs.snapshot();
     }
 
 
@@ -48,6 +54,63 @@ public class BikeInventory implements BikeCollection<BikeCatalog> {
         logger.info("Catalog added successfully: " + catalog);
     }
 
+    /**
+     * Adds a catalog unless it is already part of the inventory.
+     * @param catalog catalog to add
+     * @return true if the catalog was added
+     * @throws InvalidCatalogException if catalog is null
+     */
+    @Sanitized
+    @Logged
+    public boolean addCatalogIfAbsent(BikeCatalog catalog) {
+        if (catalog == null) {
+            logger.warning("Attempted to add null catalog");
+            throw new InvalidCatalogException("Catalog cannot be null");
+        }
+        return catalogs.addIfAbsent(catalog);
+    }
+
+    /**
+     * Finds bikes across all catalogs through their secondary indexes.
+     * A catalog registered more than once is only searched once.
+     * @param query criteria
+     * @return matching bikes, at most the query limit
+     * @throws InvalidSelectionException if query is null
+     */
+    public List<Bike> findBikes(BikeQuery query) {
+        if (query == null) {
+            throw new InvalidSelectionException("Query cannot be null");
+        }
+        List<Bike> result = new ArrayList<>();
+        IdentityHashMap<BikeCatalog, Boolean> searched = new IdentityHashMap<>();
+        for (BikeCatalog catalog : catalogs.snapshot()) {
+            if (searched.put(catalog, Boolean.TRUE) != null) {
+                continue;
+            }
+            for (Bike bike : catalog.findBikes(query)) {
+                result.add(bike);
+                if (result.size() >= query.getLimit()) {
+                    return result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether this exact catalog instance is already part of the inventory.
+     * @param catalog catalog to look for
+     * @return true if present
+     */
+    public boolean containsCatalog(BikeCatalog catalog) {
+        for (BikeCatalog existing : catalogs.snapshot()) {
+            if (existing == catalog) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Removes catalog at index safely.
      * @param index index to remove
@@ -56,33 +119,36 @@ public class BikeInventory implements BikeCollection<BikeCatalog> {
     @Sanitized
     @Logged
     public void removeCatalog(int index) {
-        if (index < 0 || index >= catalogs.size()) {
+        BikeCatalog removed;
+        try {
+            removed = catalogs.removeAt(index);
+        } catch (IndexOutOfBoundsException e) {
             logger.warning("Attempted to remove invalid catalog");
             throw new InvalidSelectionException("Invalid catalog index: " + index);
         }
-        BikeCatalog removed = catalogs.remove(index);
         logger.info("Catalog removed successfully: " + removed);
     }
 
     @Override
     public Iterator<BikeCatalog> createIterator() {
-        return new CatalogIterator(catalogs);
+        return new CatalogIterator(catalogs.snapshot());
     }
 
     @Override
     public int getSize() {
-        return catalogs.size();
+        return catalogs.snapshot().size();
     }
 
     @Sanitized
     @Logged
     @Override
     public BikeCatalog getElementAt(int index) {
-        if (index < 0 || index >= catalogs.size()) {
+        List<BikeCatalog> snapshot = catalogs.snapshot();
+        if (index < 0 || index >= snapshot.size()) {
             logger.warning("Attempted to select with invalid index: " + index);
             throw new InvalidSelectionException("Invalid catalog index: " + index);
         }
-        return catalogs.get(index);
+        return snapshot.get(index);
     }
 
     /**
@@ -98,7 +164,7 @@ public class BikeInventory implements BikeCollection<BikeCatalog> {
             return;
         }
 
-        if (catalogs.isEmpty()) {
+        if (catalogs.snapshot().isEmpty()) {
             System.out.println("No catalogs available.");
             return;
         }
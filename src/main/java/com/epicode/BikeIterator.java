@@ -1,20 +1,22 @@
 package com.epicode;
 
-import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
 
 /**
  * Iterator over a list of bikes.
  * Implements hasNext() and next() according to Iterator interface.
+ * Catalogs hand it an immutable snapshot, so iteration never sees concurrent changes.
  */
 @Secured("Bike iterator shielding and logging verified")
 @RoleType("Iterator")
 public class BikeIterator implements Iterator<Bike> {
     private int index = 0;
-    private final ArrayList<Bike> bikes;
+    private final List<Bike> bikes;
 
     @Sanitized
-    public BikeIterator(ArrayList<Bike> bikes) {
+    public BikeIterator(List<Bike> bikes) {
         if (bikes == null) {
             throw new InvalidCatalogException("Bike list cannot be null");
         }
@@ -42,4 +44,14 @@ public class BikeIterator implements Iterator<Bike> {
         }
         return bikes.get(index++);
     }
-}
\ No newline at end of file
+
+    /**
+     * @return sized, splittable spliterator over the remaining elements
+     */
+    @Override
+    public Spliterator<Bike> spliterator() {
+        Spliterator<Bike> remaining = bikes.subList(index, bikes.size()).spliterator();
+        index = bikes.size();
+        return remaining;
+    }
+}
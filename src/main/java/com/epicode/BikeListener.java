@@ -0,0 +1,8 @@
+package com.epicode;
+
+/**
+ * Observer notified after a bike's availability or features change.
+ */
+public interface BikeListener {
+    void bikeChanged(Bike bike);
+}
@@ -0,0 +1,71 @@
+package com.epicode;
+
+/**
+ * Criteria for looking bikes up through a {@link BikeIndex}.
+ * Every criterion left unset matches all bikes; setters are fluent.
+ */
+@Secured("Query criteria holder")
+@RoleType("Query")
+public class BikeQuery {
+    private BikeType type;
+    private Boolean available;
+    private Boolean lights;
+    private Boolean basket;
+    private Boolean GPS;
+    private Boolean lowBattery;
+    private int limit = Integer.MAX_VALUE;
+
+    public BikeType getType() { return type; }
+    public BikeQuery setType(BikeType type) {
+        this.type = type;
+        return this;
+    }
+
+    public Boolean getAvailable() { return available; }
+    public BikeQuery setAvailable(boolean available) {
+        this.available = available;
+        return this;
+    }
+
+    public Boolean getLights() { return lights; }
+    public BikeQuery setLights(boolean lights) {
+        this.lights = lights;
+        return this;
+    }
+
+    public Boolean getBasket() { return basket; }
+    public BikeQuery setBasket(boolean basket) {
+        this.basket = basket;
+        return this;
+    }
+
+    public Boolean getGPS() { return GPS; }
+    public BikeQuery setGPS(boolean GPS) {
+        this.GPS = GPS;
+        return this;
+    }
+
+    public Boolean getLowBattery() { return lowBattery; }
+
+    /**
+     * @param lowBattery false to skip e-bikes whose last reading was below the {@link BatteryTelemetry} threshold
+     */
+    public BikeQuery setLowBattery(boolean lowBattery) {
+        this.lowBattery = lowBattery;
+        return this;
+    }
+
+    public int getLimit() { return limit; }
+
+    /**
+     * @param limit maximum number of bikes to return
+     * @throws InvalidSelectionException if limit is not positive
+     */
+    public BikeQuery setLimit(int limit) {
+        if (limit <= 0) {
+            throw new InvalidSelectionException("Query limit must be positive: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+}
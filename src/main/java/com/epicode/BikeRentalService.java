@@ -1,25 +1,186 @@
 package com.epicode;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 
 /**
  * Service class to manage bike rentals, returns, and creation.
  * Supports logging, input validation, and shielding for unexpected exceptions.
+ *
+ * <p>Rent and return are safe to call from many threads: bikes are held in a
+ * concurrent map and each bike guards its own availability with a
+ * compare-and-set, so there is no service-wide lock and no double rental.</p>
+ *
+ * <p>Given a {@link FleetStore}, the service keeps no bike objects: bikes are stored
+ * in the store's columns, catalogs must be created on the same store (see
+ * {@link #newCatalog(BikeType)}), and lookups return lightweight views.</p>
+ *
+ * <p>A bike can also be reserved: it is held, unavailable to others, until its holder
+ * rents it, cancels, or the hold runs out. Holds wait in a {@link TimingWheel} that
+ * {@link #expireReservations(long)} advances, so expiry costs O(1) per hold however
+ * many there are, and expired holds are audited in one batch per pass.</p>
+ *
+ * <p>Every rental opens a {@link RentalSession}, kept until the bike comes back. The
+ * return closes it, bills it with the {@link Tariff} of the bike type and adds the
+ * charge to a per-minute {@link RevenueAggregator}, so billing costs the same however
+ * long the rental history is.</p>
+ *
+ * <p>A rental or return counts once its record is written: the bike's flag is flipped
+ * together with the append and flipped back if the append fails, so the flags never get
+ * ahead of the record. Given a {@link RentalLedger}, the ledger is that record and the
+ * audit logs are a copy of it; without one, the rental audit log is.</p>
+ *
+ * <p>Rent and return also come in a form keyed by a client-chosen request ID, for
+ * clients that retry on timeouts: an {@link IdempotencyCache} remembers recent outcomes,
+ * so a retry gets the original outcome and touches neither the bike nor the audit log.</p>
  */
 @Secured("Rental service shielding, logging, input validation verified")
 @RoleType("Service System")
-public class BikeRentalService {
+public class BikeRentalService implements RentalService {
     private static final Logger logger = Logger.getLogger(BikeRentalService.class.getName());
+    // Factories are stateless, so one instance per type is shared by every call
+    private static final Map<BikeType, BikeFactory> factories = new EnumMap<>(BikeType.class);
 
-    private final Map<String, Bike> bikesHash = new HashMap<>();
-    private final BikeAuditRepository bikeAuditCreation = new BikeAuditRepository("data/bikes.log");
-    private final BikeAuditRepository bikeAuditRental = new BikeAuditRepository("data/rentals.log");
+    static {
+        for (BikeType bikeType : BikeType.values()) {
+            factories.put(bikeType, newFactory(bikeType));
+        }
+    }
+
+    /** How long {@link #reservingBike(String, String, String)} holds a bike. */
+    public static final Duration DEFAULT_HOLD = Duration.ofMinutes(10);
+    private static final long RESERVATION_TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int RESERVATION_WHEEL_SIZE = 1024;
+    /** Minutes of revenue kept minute by minute: one day. */
+    private static final int REVENUE_RETAINED_MINUTES = 24 * 60;
+
+    private final Map<String, Bike> bikesHash = new ConcurrentHashMap<>();
+    private final Map<String, Reservation> reservations = new ConcurrentHashMap<>();
+    private final TimingWheel<Reservation> reservationExpiry =
+            new TimingWheel<>(RESERVATION_TICK_NANOS, RESERVATION_WHEEL_SIZE, System.nanoTime());
+    private final Map<String, RentalSession> openSessions = new ConcurrentHashMap<>();
+    private final AtomicLong sessionIds = new AtomicLong();
+    private final RevenueAggregator revenue = new RevenueAggregator(REVENUE_RETAINED_MINUTES);
+    // Copied on write, so billing reads the tariffs without a lock
+    private volatile Map<BikeType, Tariff> tariffs = Tariff.defaults();
+    private final FleetStore fleetStore;
+    private final RentalLedger ledger;
+    private final BikeAuditRepository bikeAuditCreation;
+    private final BikeAuditRepository bikeAuditRental;
+    private final CustomerRegistry customers;
     private final ArrayList<BikeCatalog> catalogs = new ArrayList<>();
     private final BikeInventory bikeInventory = new BikeInventory(catalogs);
+    private final StationIndex stations = new StationIndex();
+    private final BatteryTelemetry telemetry = new BatteryTelemetry(this::lookup);
+    private final IdempotencyCache requests = new IdempotencyCache();
+
+
+    /**
+     * Creates a service recording synchronously to the default audit files.
+     */
+    public BikeRentalService() {
+        this(new BikeAuditRepository("data/bikes.log"), new BikeAuditRepository("data/rentals.log"));
+    }
+
+    /**
+     * Optional parts of a service. Setters are fluent; a part left unset is not used,
+     * except the customer registry, which defaults to a fresh in-memory one.
+     */
+    public static final class Options {
+        private FleetStore fleetStore;
+        private RentalLedger ledger;
+        private CustomerRegistry customers;
+
+        public FleetStore getFleetStore() { return fleetStore; }
+
+        /**
+         * @param fleetStore columnar store to keep the bikes in instead of bike objects
+         * @throws InvalidSelectionException if fleetStore is null
+         */
+        public Options setFleetStore(FleetStore fleetStore) {
+            if (fleetStore == null) {
+                throw new InvalidSelectionException("Fleet store cannot be null");
+            }
+            this.fleetStore = fleetStore;
+            return this;
+        }
+
+        public RentalLedger getLedger() { return ledger; }
+
+        /**
+         * @param ledger ledger every creation, rental and return must reach
+         * @throws InvalidSelectionException if ledger is null
+         */
+        public Options setLedger(RentalLedger ledger) {
+            if (ledger == null) {
+                throw new InvalidSelectionException("Ledger cannot be null");
+            }
+            this.ledger = ledger;
+            return this;
+        }
+
+        public CustomerRegistry getCustomers() { return customers; }
+
+        /**
+         * @param customers registry of the customers, e.g. one shared by several services;
+         * with a durable registry, rental and return entries name the customer by ID instead of by name
+         * @throws InvalidSelectionException if customers is null
+         */
+        public Options setCustomers(CustomerRegistry customers) {
+            if (customers == null) {
+                throw new InvalidSelectionException("Customer registry cannot be null");
+            }
+            this.customers = customers;
+            return this;
+        }
+    }
+
+    /**
+     * Creates a service recording to the given audit repositories.
+     * The caller owns the repositories and is responsible for closing them.
+     * @param bikeAuditCreation repository for bike creation entries
+     * @param bikeAuditRental repository for rental and return entries
+     * @throws StorageException if a repository is null
+     */
+    public BikeRentalService(BikeAuditRepository bikeAuditCreation, BikeAuditRepository bikeAuditRental) {
+        this(bikeAuditCreation, bikeAuditRental, new Options());
+    }
+
+    /**
+     * Creates a service recording to the given audit repositories, with optional parts.
+     * The caller owns the repositories, the fleet store and the ledger.
+     * @param bikeAuditCreation repository for bike creation entries
+     * @param bikeAuditRental repository for rental and return entries
+     * @param options fleet store, ledger and customer registry to use
+     * @throws StorageException if a repository or the options are null
+     */
+    @Sanitized
+    public BikeRentalService(BikeAuditRepository bikeAuditCreation, BikeAuditRepository bikeAuditRental,
+                             Options options) {
+        if (bikeAuditCreation == null || bikeAuditRental == null || options == null) {
+            throw new StorageException("Audit repositories and options cannot be null", null);
+        }
+        this.bikeAuditCreation = bikeAuditCreation;
+        this.bikeAuditRental = bikeAuditRental;
+        this.fleetStore = options.fleetStore;
+        this.ledger = options.ledger;
+        this.customers = options.customers == null ? new CustomerRegistry() : options.customers;
+    }
 
 
     /**
@@ -28,10 +189,12 @@ public class BikeRentalService {
      * @param bikeCatalog catalog to add bike
      * @param bikeType type of bike
      * @return created bike
+     * @throws InputValidationException if the bike ID is not purely letters and digits
      * @throws RentalException if any unexpected error occurs
      */
     @Sanitized
     @Logged
+    @Override
     public Bike bikeCreation(BikeBuilder bikeBuilder, BikeCatalog bikeCatalog, BikeType bikeType) {
 
         if (bikeCatalog == null) {
@@ -47,20 +210,29 @@ public class BikeRentalService {
             throw new InvalidBikeTypeException("Bike type cannot be null");
         }
 
-        BikeFactory bikeFactory;
-        switch (bikeType) {
-            case mountain -> bikeFactory = new MountainBikeFactory();
-            case electric -> bikeFactory = new ElectricBikeFactory();
-            case road -> bikeFactory = new RoadBikeFactory();
-            case folding -> bikeFactory = new FoldingBikeFactory();
-            default -> throw new InvalidBikeTypeException("Unknown bike type: " + bikeType);
+        InputValidator.validateBikeId(bikeBuilder.getId());
+        checkCatalog(bikeCatalog);
+        if (lookup(bikeBuilder.getId()) != null) {
+            throw new InvalidBikeException("Bike ID already exists: " + bikeBuilder.getId());
         }
 
+        BikeFactory bikeFactory = factoryFor(bikeType);
+
         try {
-            Bike bike = bikeFactory.createBike(bikeBuilder);
-            bikesHash.put(bike.getId(), bike);
+            Bike bike = register(bikeFactory.createBike(bikeBuilder));
+            if (bike == null) {
+                throw new InvalidBikeException("Bike ID already exists: " + bikeBuilder.getId());
+            }
+            if (ledger != null) {
+                try {
+                    ledger.recordCreation(bike, bikeCatalog);
+                } catch (RuntimeException e) {
+                    unregister(List.of(bike));
+                    throw e;
+                }
+            }
             bikeCatalog.addBike(bike);
-            bikeInventory.addCatalog(bikeCatalog);
+            bikeInventory.addCatalogIfAbsent(bikeCatalog);
             bikeAuditCreation.recordCreation(bike, bikeCatalog);
             logger.info("Bike created: " + bike.getId() + " in catalog: " + bikeCatalog);
             return bike;
@@ -72,6 +244,179 @@ public class BikeRentalService {
     }
 
 
+    /**
+     * Creates many bikes of one type in a catalog.
+     * Rows are validated and built in parallel, registered in input order, added to the
+     * catalog in one step and recorded as one grouped audit write. A row that fails
+     * (invalid builder, ID that is not purely letters and digits, ID already in use) is
+     * reported and skipped without aborting the rest of the batch.
+     * @param bikeBuilders builders, one per row
+     * @param bikeCatalog catalog to add the bikes to
+     * @param bikeType type of every bike in the batch
+     * @return created bikes and rejected rows, indexed by stream position
+     * @throws RentalException if any argument is null or the batch cannot be stored
+     */
+    @Sanitized
+    @Logged
+    @Override
+    public ImportReport bikeCreationBatch(Stream<BikeBuilder> bikeBuilders, BikeCatalog bikeCatalog,
+                                          BikeType bikeType) {
+        if (bikeCatalog == null) {
+            throw new CatalogNotFoundException("Catalog not found");
+        }
+        if (bikeBuilders == null) {
+            throw new InvalidBuilderException("Bike builders cannot be null");
+        }
+        if (bikeType == null) {
+            logger.warning("Bike type is null");
+            throw new InvalidBikeTypeException("Bike type cannot be null");
+        }
+        checkCatalog(bikeCatalog);
+
+        long start = System.nanoTime();
+        List<BikeBuilder> rows = bikeBuilders.collect(Collectors.toList());
+        BikeFactory bikeFactory = factoryFor(bikeType);
+        Bike[] bikes = new Bike[rows.size()];
+        String[] errors = new String[rows.size()];
+        IntStream.range(0, rows.size()).parallel().forEach(i -> {
+            try {
+                BikeBuilder row = rows.get(i);
+                if (row != null) {
+                    InputValidator.validateBikeId(row.getId());
+                }
+                bikes[i] = bikeFactory.createBike(row);
+            } catch (RentalException e) {
+                errors[i] = e.getCause() == null ? e.getMessage() : e.getMessage() + ": " + e.getCause().getMessage();
+            }
+        });
+
+        // Register sequentially so that of several rows with one ID the first wins
+        List<Bike> created = new ArrayList<>(rows.size());
+        List<ImportReport.RowFailure> failures = new ArrayList<>();
+        for (int i = 0; i < bikes.length; i++) {
+            BikeBuilder row = rows.get(i);
+            String id = row == null ? null : row.getId();
+            Bike registered = bikes[i] == null ? null : register(bikes[i]);
+            if (bikes[i] == null) {
+                failures.add(new ImportReport.RowFailure(i, id, errors[i]));
+            } else if (registered == null) {
+                failures.add(new ImportReport.RowFailure(i, id, "Bike ID already exists"));
+            } else {
+                created.add(registered);
+            }
+        }
+
+        try {
+            if (!created.isEmpty()) {
+                if (ledger != null) {
+                    try {
+                        ledger.recordCreations(created, bikeCatalog);
+                    } catch (RuntimeException e) {
+                        unregister(created);
+                        throw e;
+                    }
+                }
+                bikeCatalog.addBikes(created);
+                bikeInventory.addCatalogIfAbsent(bikeCatalog);
+                bikeAuditCreation.recordCreations(created, bikeCatalog);
+            }
+        } catch (RuntimeException e) {
+            logger.severe("Unexpected error during batch bike creation: " + e.getMessage());
+            throw new RentalException("Internal error occurred during batch bike creation");
+        }
+        ImportReport report = new ImportReport(created, failures, System.nanoTime() - start);
+        logger.info(report + " (catalog: " + bikeCatalog + ")");
+        return report;
+    }
+
+
+    /**
+     * Selects the factory responsible for a bike type.
+     * @param bikeType type of bike
+     * @return matching factory, shared between calls
+     */
+    static BikeFactory factoryFor(BikeType bikeType) {
+        return factories.get(bikeType);
+    }
+
+    /**
+     * Creates an empty catalog of the standard kind for a bike type,
+     * on this service's fleet store if it has one.
+     * @param bikeType bike type
+     * @return new catalog, not yet part of the inventory
+     * @throws InvalidBikeTypeException if bikeType is null
+     */
+    @Override
+    public BikeCatalog newCatalog(BikeType bikeType) {
+        if (bikeType == null) {
+            throw new InvalidBikeTypeException("Bike type cannot be null");
+        }
+        if (fleetStore != null) {
+            return switch (bikeType) {
+                case mountain -> new MountainBikeCatalog(fleetStore);
+                case electric -> new ElectricBikeCatalog(fleetStore);
+                case road -> new RoadBikeCatalog(fleetStore);
+                case folding -> new FoldingBikeCatalog(fleetStore);
+            };
+        }
+        return switch (bikeType) {
+            case mountain -> new MountainBikeCatalog(new ArrayList<>());
+            case electric -> new ElectricBikeCatalog(new ArrayList<>());
+            case road -> new RoadBikeCatalog(new ArrayList<>());
+            case folding -> new FoldingBikeCatalog(new ArrayList<>());
+        };
+    }
+
+    private Bike lookup(String id) {
+        return fleetStore == null ? bikesHash.get(id) : fleetStore.get(id);
+    }
+
+    /**
+     * Registers a new bike under its ID.
+     * @return the instance to use from now on (the bike itself, or its view in the fleet store),
+     * or null if the ID is taken
+     */
+    private Bike register(Bike bike) {
+        if (fleetStore == null) {
+            return bikesHash.putIfAbsent(bike.getId(), bike) == null ? bike : null;
+        }
+        int slot = fleetStore.add(bike);
+        return slot < 0 ? null : fleetStore.view(slot);
+    }
+
+    /**
+     * Takes back IDs registered for bikes whose creation could not be recorded.
+     * A fleet store cannot drop bikes, so there the IDs stay taken by bikes in no catalog.
+     */
+    private void unregister(List<Bike> bikes) {
+        if (fleetStore != null) {
+            logger.warning(bikes.size() + " bikes stay in the fleet store without a catalog");
+            return;
+        }
+        for (Bike bike : bikes) {
+            bikesHash.remove(bike.getId(), bike);
+        }
+    }
+
+    private void checkCatalog(BikeCatalog bikeCatalog) {
+        if (!bikeCatalog.isBackedBy(fleetStore)) {
+            logger.warning("Catalog storage does not match the service: " + bikeCatalog);
+            throw new InvalidCatalogException(fleetStore == null
+                    ? "Catalog keeps its bikes in a fleet store this service does not use"
+                    : "Catalog is not backed by this service's fleet store");
+        }
+    }
+
+    private static BikeFactory newFactory(BikeType bikeType) {
+        return switch (bikeType) {
+            case mountain -> new MountainBikeFactory();
+            case electric -> new ElectricBikeFactory();
+            case road -> new RoadBikeFactory();
+            case folding -> new FoldingBikeFactory();
+        };
+    }
+
+
     /**
      * Rents a bike by ID to a user.
      * @param id bike ID
@@ -81,19 +426,56 @@ public class BikeRentalService {
      */
     @Sanitized
     @Logged
+    @Override
     public void rentingBike(String id, String safeFirstName, String safeLastName) {
-        Bike bike = bikesHash.get(id);
+        Bike bike = lookup(id);
         if (bike == null) {
             throw new BikeNotFoundException("Bike ID not found: " + id);
         }
+        // Registered only once the bike is taken, so failed requests leave the registry alone
+        Supplier<Customer> renter = () -> customers.register(safeFirstName, safeLastName);
+
+        Reservation reservation = reservations.get(id);
+        if (reservation != null && reservation.isOpen()) {
+            if (!reservation.isHeldBy(safeFirstName, safeLastName)) {
+                throw new BikeUnavailableException("Bike is reserved by another customer");
+            }
+            // The holder takes over the held bike; if the hold expired meanwhile, rent it normally
+            Customer taken = openSession(bike, () -> {
+                if (!reservation.close()) {
+                    return null;
+                }
+                reservations.remove(id, reservation);
+                try {
+                    // The hold already took the bike, so there is no flag left to flip. The hold
+                    // is gone either way: if the rental is not recorded, release the bike as if
+                    // it had been cancelled
+                    return commit(AuditEventType.RENTED, bike, renter, safeFirstName, safeLastName,
+                            () -> { }, () -> release(reservation));
+                } catch (RuntimeException e) {
+                    logger.severe("Rental of reserved bike " + id + " not recorded: " + e.getMessage());
+                    throw new RentalException("Internal error occurred during bike rental");
+                }
+            });
+            if (taken != null) {
+                stations.undock(bike);
+                logger.info("Reserved bike rented: " + id + " by " + safeFirstName + " " + safeLastName);
+                return;
+            }
+        }
 
         if (!bike.isAvailable()) {
             throw new BikeUnavailableException("Bike already rented");
         }
+        if (bike.isLowBattery()) {
+            throw new BikeUnavailableException("Bike battery is below " + telemetry.getLowChargePercent() + "%");
+        }
 
         try {
-            bike.rentBike();
-            bikeAuditRental.recordRental(bike, safeFirstName, safeLastName);
+            // The fast check above is only a hint; the CAS inside rentBike() decides the winner
+            openSession(bike, () -> commit(AuditEventType.RENTED, bike, renter, safeFirstName, safeLastName,
+                    bike::rentBike, () -> bike.setAvailable(true)));
+            stations.undock(bike);
             logger.info("Bike rented: " + id + " by " + safeFirstName + " " + safeLastName);
         } catch (BikeUnavailableException e) {
             // Controlled business exception
@@ -106,6 +488,417 @@ public class BikeRentalService {
     }
 
 
+    /**
+     * Rents a bike at most once per request ID. A retry with the same ID gets the outcome
+     * of the first attempt: it returns if the bike was rented and throws what the first
+     * attempt threw otherwise.
+     * @param requestId client-chosen ID of the request
+     * @param id bike ID
+     * @param safeFirstName user's first name
+     * @param safeLastName user's last name
+     * @throws InputValidationException if the request ID is invalid or was used for another request
+     * @throws RentalException if rental fails
+     */
+    @Sanitized
+    @Logged
+    @Override
+    public void rentingBikeOnce(String requestId, String id, String safeFirstName, String safeLastName) {
+        requests.execute(requestId, new RequestKey(AuditEventType.RENTED, id, safeFirstName, safeLastName, null),
+                () -> rentingBike(id, safeFirstName, safeLastName));
+    }
+
+
+    /**
+     * Holds an available bike for a customer for {@link #DEFAULT_HOLD}.
+     * @param id bike ID
+     * @param safeFirstName holder's first name
+     * @param safeLastName holder's last name
+     * @return the reservation
+     * @throws RentalException if the bike is unknown or not available
+     */
+    @Sanitized
+    @Logged
+    @Override
+    public Reservation reservingBike(String id, String safeFirstName, String safeLastName) {
+        return reservingBike(id, safeFirstName, safeLastName, DEFAULT_HOLD);
+    }
+
+    /**
+     * Holds an available bike for a customer. Only the holder can rent it until the hold
+     * is cancelled or runs out, which makes the bike available again.
+     * @param id bike ID
+     * @param safeFirstName holder's first name
+     * @param safeLastName holder's last name
+     * @param holdTime how long the bike is held
+     * @return the reservation
+     * @throws RentalException if the bike is unknown or not available, or holdTime is not positive
+     */
+    @Sanitized
+    @Logged
+    public Reservation reservingBike(String id, String safeFirstName, String safeLastName, Duration holdTime) {
+        if (holdTime == null || holdTime.isNegative() || holdTime.isZero()) {
+            throw new InputValidationException("Hold time must be positive");
+        }
+        Bike bike = lookup(id);
+        if (bike == null) {
+            throw new BikeNotFoundException("Bike ID not found: " + id);
+        }
+        Reservation[] held = new Reservation[1];
+        // Taken and published as one step, so a return never sees a held bike without its hold,
+        // and published before it is scheduled, so an expiry always finds it. The holder is
+        // registered only once the bike is taken
+        openSessions.compute(id, (bikeId, open) -> {
+            try {
+                bike.rentBike();
+            } catch (BikeUnavailableException e) {
+                throw new RentalException("Bike is not available to reserve");
+            }
+            Customer holder;
+            try {
+                holder = customers.register(safeFirstName, safeLastName);
+            } catch (RuntimeException e) {
+                bike.setAvailable(true);
+                throw e;
+            }
+            held[0] = new Reservation(bikeId, holder.getFirstName(), holder.getLastName(),
+                    Instant.now().plus(holdTime));
+            reservations.put(bikeId, held[0]);
+            return open;
+        });
+        Reservation reservation = held[0];
+        reservation.setTimeout(reservationExpiry.schedule(reservation, System.nanoTime() + holdTime.toNanos()));
+        logger.info("Bike reserved: " + id + " by " + safeFirstName + " " + safeLastName
+                + " until " + reservation.getExpiresAt());
+        return reservation;
+    }
+
+
+    /**
+     * Ends a reservation early and makes the bike available again.
+     * @param id bike ID
+     * @param safeFirstName holder's first name
+     * @param safeLastName holder's last name
+     * @throws RentalException if the bike has no open reservation by this customer
+     */
+    @Sanitized
+    @Logged
+    @Override
+    public void cancellingReservation(String id, String safeFirstName, String safeLastName) {
+        Reservation reservation = reservations.get(id);
+        if (reservation == null || !reservation.isHeldBy(safeFirstName, safeLastName)) {
+            throw new RentalException("No reservation of bike " + id + " by " + safeFirstName + " " + safeLastName);
+        }
+        if (!reservation.close()) {
+            throw new RentalException("Reservation of bike " + id + " has already ended");
+        }
+        reservations.remove(id, reservation);
+        release(reservation);
+        logger.info("Reservation cancelled: " + id + " by " + safeFirstName + " " + safeLastName);
+    }
+
+
+    /**
+     * @param id bike ID
+     * @return the bike's open reservation, or null
+     */
+    public Reservation getReservation(String id) {
+        Reservation reservation = id == null ? null : reservations.get(id);
+        return reservation != null && reservation.isOpen() ? reservation : null;
+    }
+
+
+    /**
+     * Releases every reservation whose hold has run out and records them as one audit batch.
+     * @param nowNanos current {@link System#nanoTime()} reading
+     * @return number of reservations that expired
+     * @throws StorageException if the batch cannot be recorded; the bikes are released regardless
+     */
+    @Logged
+    public int expireReservations(long nowNanos) {
+        List<Reservation> expired = new ArrayList<>();
+        reservationExpiry.advance(nowNanos, reservation -> {
+            if (reservation.close()) {
+                reservations.remove(reservation.getBikeId(), reservation);
+                release(reservation);
+                expired.add(reservation);
+            }
+        });
+        if (!expired.isEmpty()) {
+            bikeAuditRental.recordExpirations(expired);
+            logger.info("Reservations expired: " + expired.size());
+        }
+        return expired.size();
+    }
+
+
+    /**
+     * Expires reservations once per wheel tick on the given scheduler. Failures are logged and retried next tick.
+     * @param scheduler scheduler owned by the caller
+     * @return handle to cancel the schedule
+     */
+    public ScheduledFuture<?> scheduleReservationExpiry(ScheduledExecutorService scheduler) {
+        return scheduler.scheduleAtFixedRate(() -> {
+            try {
+                expireReservations(System.nanoTime());
+            } catch (RuntimeException e) {
+                logger.severe("Reservation expiry failed: " + e.getMessage());
+            }
+        }, RESERVATION_TICK_NANOS, RESERVATION_TICK_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the ledger every change is appended to, or null if the service has none
+     */
+    public RentalLedger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * Takes a bike and opens its session as one step. The bike's entry in the session map stays
+     * locked meanwhile, so a return of the same bike sees both the taken bike and its session
+     * or neither. The record of the rental is written under that lock too (see {@link #commit}),
+     * so each bike's entries are in the order its flag changed.
+     * @param take takes the bike and returns the renter, or returns null if it must be rented
+     * the normal way instead
+     * @return the renter, or null if the bike was not taken
+     */
+    private Customer openSession(Bike bike, Supplier<Customer> take) {
+        Customer[] renter = new Customer[1];
+        openSessions.compute(bike.getId(), (id, stale) -> {
+            Customer customer = take.get();
+            if (customer == null) {
+                return stale;
+            }
+            customers.rented(customer, id);
+            renter[0] = customer;
+            return new RentalSession(sessionIds.incrementAndGet(), id, bike.getType(),
+                    customer.getFirstName(), customer.getLastName(), Instant.now());
+        });
+        return renter[0];
+    }
+
+    /**
+     * Applies a rental or return and writes its record as one step. With a ledger, the ledger
+     * append decides: the change is undone if it fails, and the audit entry written after it
+     * is a copy whose failure is only logged. Without one, the audit entry is the record and
+     * the change is undone if it cannot be written.
+     * @param eventType RENTED or RETURNED
+     * @param customer looks up or registers the customer once the change is applied; may give null
+     * if the names are not registered
+     * @param change applies the change; an exception thrown here vetoes the event
+     * @param undo reverts the change
+     * @return the customer
+     * @throws StorageException if the record cannot be written
+     */
+    private Customer commit(AuditEventType eventType, Bike bike, Supplier<Customer> customer, String safeFirstName,
+                            String safeLastName, Runnable change, Runnable undo) {
+        Customer[] resolved = new Customer[1];
+        Runnable apply = () -> {
+            change.run();
+            try {
+                resolved[0] = customer.get();
+            } catch (RuntimeException e) {
+                undo.run();
+                throw e;
+            }
+        };
+        if (ledger != null) {
+            ledger.commit(eventType, bike, safeFirstName, safeLastName, apply, undo);
+            try {
+                audit(eventType, bike, resolved[0], safeFirstName, safeLastName);
+            } catch (RuntimeException e) {
+                logger.severe(eventType + " of bike " + bike.getId() + " is in the ledger but not in the audit log: "
+                        + e.getMessage());
+            }
+            return resolved[0];
+        }
+        apply.run();
+        try {
+            audit(eventType, bike, resolved[0], safeFirstName, safeLastName);
+        } catch (RuntimeException e) {
+            undo.run();
+            throw e;
+        }
+        return resolved[0];
+    }
+
+    private void audit(AuditEventType eventType, Bike bike, Customer customer, String safeFirstName,
+                       String safeLastName) {
+        if (eventType == AuditEventType.RENTED) {
+            recordRental(bike, customer, safeFirstName, safeLastName);
+        } else {
+            recordReturn(bike, customer, safeFirstName, safeLastName);
+        }
+    }
+
+    private void recordRental(Bike bike, Customer customer, String safeFirstName, String safeLastName) {
+        if (customer != null && customers.isDurable()) {
+            bikeAuditRental.recordRental(bike, customer);
+        } else {
+            bikeAuditRental.recordRental(bike, safeFirstName, safeLastName);
+        }
+    }
+
+    private void recordReturn(Bike bike, Customer customer, String safeFirstName, String safeLastName) {
+        if (customer != null && customers.isDurable()) {
+            bikeAuditRental.recordReturn(bike, customer);
+        } else {
+            bikeAuditRental.recordReturn(bike, safeFirstName, safeLastName);
+        }
+    }
+
+    /**
+     * Gives a bike back and ends its open session as one step, under the same lock as
+     * {@link #openSession(Bike, Supplier)}. Only the customer of the open
+     * session can return the bike; a bike rented before this service was started has none,
+     * so anybody can.
+     * @param give gives the bike back
+     * @return the session that was open, or null
+     * @throws BikeNotRentedException if the bike is held or rented by another customer
+     */
+    private RentalSession closeSession(Bike bike, String safeFirstName, String safeLastName, Runnable give) {
+        RentalSession[] closed = new RentalSession[1];
+        openSessions.compute(bike.getId(), (id, open) -> {
+            Reservation reservation = reservations.get(id);
+            if (reservation != null && reservation.isOpen()) {
+                throw new BikeNotRentedException("Bike " + id + " is reserved, not rented");
+            }
+            if (open != null && !(open.getFirstName().equals(safeFirstName)
+                    && open.getLastName().equals(safeLastName))) {
+                throw new BikeNotRentedException("Bike " + id + " is not rented by "
+                        + safeFirstName + " " + safeLastName);
+            }
+            give.run();
+            customers.returned(id);
+            closed[0] = open;
+            return null;
+        });
+        return closed[0];
+    }
+
+    /**
+     * Bills a session ended by a return.
+     * @return the billed session, or null if the rental began before this service was started
+     */
+    private RentalSession bill(Bike bike, RentalSession open) {
+        if (open == null) {
+            logger.warning("No open session for bike " + bike.getId() + ", return is not billed");
+            return null;
+        }
+        RentalSession closed = open.close(Instant.now(), tariffs.get(open.getBikeType()));
+        revenue.record(closed);
+        return closed;
+    }
+
+
+    /**
+     * @return the customers of this service
+     */
+    public CustomerRegistry getCustomers() {
+        return customers;
+    }
+
+
+    /**
+     * @param safeFirstName customer's first name
+     * @param safeLastName customer's last name
+     * @return the customer, or null if they never rented, reserved or returned a bike
+     */
+    @Override
+    public Customer findCustomer(String safeFirstName, String safeLastName) {
+        return customers.find(safeFirstName, safeLastName);
+    }
+
+
+    /**
+     * @param safeFirstName customer's first name
+     * @param safeLastName customer's last name
+     * @return the bikes the customer has out, empty for unknown customers
+     */
+    @Override
+    public List<Bike> getActiveRentals(String safeFirstName, String safeLastName) {
+        Customer customer = customers.find(safeFirstName, safeLastName);
+        List<Bike> rented = new ArrayList<>();
+        if (customer != null) {
+            for (String bikeId : customer.getActiveRentals()) {
+                Bike bike = lookup(bikeId);
+                if (bike != null) {
+                    rented.add(bike);
+                }
+            }
+        }
+        return rented;
+    }
+
+
+    /**
+     * @param id bike ID
+     * @return the session of the bike's current rental, or null if it is not rented through this service
+     */
+    public RentalSession getOpenSession(String id) {
+        return id == null ? null : openSessions.get(id);
+    }
+
+
+    /**
+     * @return number of rentals currently open
+     */
+    public int getOpenSessionCount() {
+        return openSessions.size();
+    }
+
+
+    /**
+     * @return revenue billed by returns, per bike type and minute
+     */
+    public RevenueAggregator getRevenue() {
+        return revenue;
+    }
+
+
+    /**
+     * @param bikeType bike type
+     * @return tariff billed for rentals of the type
+     * @throws InvalidBikeTypeException if bikeType is null
+     */
+    public Tariff getTariff(BikeType bikeType) {
+        if (bikeType == null) {
+            throw new InvalidBikeTypeException("Bike type cannot be null");
+        }
+        return tariffs.get(bikeType);
+    }
+
+
+    /**
+     * Changes the tariff of a bike type. Applies to every return from now on, including
+     * rentals already open.
+     * @param bikeType bike type
+     * @param tariff new tariff
+     * @throws RentalException if an argument is null
+     */
+    @Sanitized
+    @Logged
+    public synchronized void setTariff(BikeType bikeType, Tariff tariff) {
+        if (bikeType == null) {
+            throw new InvalidBikeTypeException("Bike type cannot be null");
+        }
+        if (tariff == null) {
+            throw new InputValidationException("Tariff cannot be null");
+        }
+        Map<BikeType, Tariff> updated = new EnumMap<>(tariffs);
+        updated.put(bikeType, tariff);
+        tariffs = updated;
+        logger.info("Tariff of " + bikeType + " set to " + tariff);
+    }
+
+    private void release(Reservation reservation) {
+        Bike bike = lookup(reservation.getBikeId());
+        if (bike != null) {
+            bike.setAvailable(true);
+        }
+    }
+
+
     /**
      * Retrieves a bike from the internal map by its ID.
      * Trims input and returns null if the ID is invalid.
@@ -114,9 +907,238 @@ public class BikeRentalService {
      * @return the Bike object if found, or null if not found or ID invalid
      */
     @Sanitized
+    @Override
     public Bike getBikeById(String id) {
         if (id == null || id.isBlank()) return null;
-        return bikesHash.get(id.trim());
+        return lookup(id.trim());
+    }
+
+
+    /**
+     * Finds bikes matching type, availability and feature criteria using the catalogs' indexes,
+     * e.g. an available electric bike with GPS and a basket.
+     * @param query criteria
+     * @return matching bikes, at most the query limit
+     * @throws InvalidSelectionException if query is null
+     */
+    @Override
+    public List<Bike> findBikes(BikeQuery query) {
+        return bikeInventory.findBikes(query);
+    }
+
+
+    /**
+     * Finds the available bikes docked closest to a point, e.g. the three nearest electric bikes with GPS.
+     * @param latitude degrees north
+     * @param longitude degrees east
+     * @param query type and feature criteria; its limit is the number of bikes wanted
+     * @return matching bikes with their station and distance, closest first
+     * @throws InvalidSelectionException if the query is null or the point is invalid
+     */
+    @Override
+    public List<StationIndex.NearbyBike> findNearestBikes(double latitude, double longitude, BikeQuery query) {
+        return stations.nearest(latitude, longitude, query);
+    }
+
+
+    /**
+     * Finds the available bikes docked within a distance of a point.
+     * @param latitude degrees north
+     * @param longitude degrees east
+     * @param radiusMeters maximum distance
+     * @param query type and feature criteria, and the maximum number of bikes
+     * @return matching bikes with their station and distance, closest first
+     * @throws InvalidSelectionException if the query is null, the point is invalid or the radius negative
+     */
+    @Override
+    public List<StationIndex.NearbyBike> findBikesWithin(double latitude, double longitude, double radiusMeters,
+                                                         BikeQuery query) {
+        return stations.within(latitude, longitude, radiusMeters, query);
+    }
+
+
+    /**
+     * Stores battery readings of e-bikes. A bike whose latest charge is below the
+     * telemetry threshold is not rented out and can be left out of queries with
+     * {@link BikeQuery#setLowBattery(boolean)}.
+     * @param batch readings
+     * @return number of readings stored; late readings and readings for unknown or non-electric bikes are dropped
+     * @throws InvalidSelectionException if batch is null
+     */
+    @Override
+    public int ingestTelemetry(BatteryTelemetry.Batch batch) {
+        return telemetry.ingest(batch);
+    }
+
+
+    /**
+     * @return battery readings of the e-bikes
+     */
+    public BatteryTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+
+    /**
+     * @return the docking stations and the bikes docked at them
+     */
+    public StationIndex getStations() {
+        return stations;
+    }
+
+
+    /**
+     * Adds a docking station.
+     * @param station station to add
+     * @throws InvalidSelectionException if the station is null or its ID is taken
+     */
+    @Logged
+    @Override
+    public void addStation(Station station) {
+        stations.addStation(station);
+        logger.info("Station added: " + station);
+    }
+
+
+    /**
+     * Places a bike that is not rented at a station, e.g. when stocking the stations or rebalancing.
+     * @param id bike ID
+     * @param stationId station to dock it at
+     * @throws BikeNotFoundException if the bike is unknown
+     * @throws BikeUnavailableException if the bike is rented
+     * @throws StationNotFoundException if the station is unknown
+     * @throws StationFullException if the station has no free dock
+     */
+    @Sanitized
+    @Logged
+    @Override
+    public void dockingBike(String id, String stationId) {
+        Bike bike = getBikeById(id);
+        if (bike == null) {
+            throw new BikeNotFoundException("Bike ID " + id + " not found");
+        }
+        if (openSessions.containsKey(bike.getId())) {
+            throw new BikeUnavailableException("Bike " + id + " is rented; return it to a station instead");
+        }
+        stations.dock(bike, stationId);
+    }
+
+
+    /**
+     * @return the inventory holding every catalog this service has placed bikes in
+     */
+    @Override
+    public BikeInventory getBikeInventory() {
+        return bikeInventory;
+    }
+
+
+    /**
+     * Puts an already existing bike back under management without writing an audit entry.
+     * Used when rebuilding state from the audit logs; a bike whose ID is already known is kept as is.
+     * In a fleet store it is still placed in the catalog, which is how a store loaded with
+     * {@link FleetStore#open(java.nio.file.Path)} gets its catalogs back.
+     * @param bike recovered bike
+     * @param bikeCatalog catalog the bike belongs to
+     * @return the bike now registered under the ID
+     * @throws InvalidBikeException if bike is null
+     * @throws CatalogNotFoundException if catalog is null
+     */
+    @Sanitized
+    Bike restoreBike(Bike bike, BikeCatalog bikeCatalog) {
+        if (bike == null) {
+            throw new InvalidBikeException("Cannot restore null bike");
+        }
+        if (bikeCatalog == null) {
+            throw new CatalogNotFoundException("Catalog not found");
+        }
+        checkCatalog(bikeCatalog);
+        Bike registered = register(bike);
+        if (registered == null) {
+            registered = lookup(bike.getId());
+            if (fleetStore == null) {
+                return registered;
+            }
+        }
+        bikeCatalog.addBike(registered);
+        bikeInventory.addCatalogIfAbsent(bikeCatalog);
+        return registered;
+    }
+
+    /**
+     * Takes an idle bike out of this service so that another one can adopt it: out of
+     * the bike map, its catalog and its station. A bike that is rented, reserved or
+     * has an open session stays. The removal is recorded in the ledger and the creation
+     * log before the bike goes, so a replay of this service's logs drops it too.
+     * @param id bike ID
+     * @param bikeCatalog catalog the bike is in
+     * @return the bike, or null if it is unknown or not idle
+     * @throws InvalidCatalogException if the service keeps its bikes in a fleet store, which cannot drop them
+     * @throws StorageException if the removal cannot be recorded; the bike stays then
+     */
+    Bike releaseBike(String id, BikeCatalog bikeCatalog) {
+        if (fleetStore != null) {
+            throw new InvalidCatalogException("Bikes cannot leave a fleet store");
+        }
+        Bike bike = bikesHash.get(id);
+        Reservation reservation = reservations.get(id);
+        if (bike == null || !bike.isAvailable() || (reservation != null && reservation.isOpen())
+                || openSessions.containsKey(id)) {
+            return null;
+        }
+        if (ledger != null) {
+            ledger.recordRemoval(bike, bikeCatalog);
+        }
+        bikeAuditCreation.recordRemoval(bike, bikeCatalog);
+        return dropBike(id, bikeCatalog);
+    }
+
+    /**
+     * Takes a bike out of the bike map, its catalog and its station without recording
+     * anything. Used by {@link #releaseBike} and when replaying a removal from the audit logs.
+     * @param id bike ID
+     * @param bikeCatalog catalog the bike is in, or null to leave the catalogs alone
+     * @return the bike, or null if it is unknown
+     * @throws BikeNotFoundException if the bike is not in the given catalog
+     */
+    Bike dropBike(String id, BikeCatalog bikeCatalog) {
+        Bike bike = bikesHash.get(id);
+        if (bike == null) {
+            return null;
+        }
+        if (bikeCatalog != null) {
+            bikeCatalog.removeBike(bike);
+        }
+        bikesHash.remove(id, bike);
+        stations.undock(bike);
+        return bike;
+    }
+
+    /**
+     * Takes over a bike released by another service, recording its creation here so
+     * that this service's audit logs are enough to rebuild it.
+     * @param bike released bike
+     * @param bikeCatalog catalog to put it in
+     * @return the bike now registered under the ID
+     * @throws InvalidBikeException if the ID is already in use here
+     */
+    Bike adoptBike(Bike bike, BikeCatalog bikeCatalog) {
+        if (bike == null || lookup(bike.getId()) != null) {
+            throw new InvalidBikeException("Cannot adopt bike " + (bike == null ? null : bike.getId()));
+        }
+        Bike adopted = restoreBike(bike, bikeCatalog);
+        if (ledger != null) {
+            ledger.recordCreation(adopted, bikeCatalog);
+        }
+        bikeAuditCreation.recordCreation(adopted, bikeCatalog);
+        return adopted;
+    }
+
+    /**
+     * @return true if the bikes are kept in a {@link FleetStore}
+     */
+    boolean usesFleetStore() {
+        return fleetStore != null;
     }
 
 
@@ -129,21 +1151,88 @@ public class BikeRentalService {
      */
     @Sanitized
     @Logged
+    @Override
     public void returningBike(String id, String safeFirstName, String safeLastName) {
+        returningBike(id, safeFirstName, safeLastName, null);
+    }
+
+
+    /**
+     * Returns a bike by ID from a user, docking it at a station.
+     * The dock is taken before the return is recorded and given back if the return fails.
+     * Only the customer who rented the bike can return it.
+     * @param id bike ID
+     * @param safeFirstName user's first name
+     * @param safeLastName user's last name
+     * @param stationId station the bike is returned to, or null if it is left outside any station
+     * @throws StationNotFoundException if the station is unknown
+     * @throws StationFullException if the station has no free dock
+     * @throws BikeNotRentedException if the bike is reserved or rented by another customer
+     * @throws RentalException if return fails
+     */
+    @Sanitized
+    @Logged
+    @Override
+    public void returningBike(String id, String safeFirstName, String safeLastName, String stationId) {
         Bike foundBike = getBikeById(id);
         if (foundBike == null) {
             throw new BikeNotFoundException("Bike ID " + id + " not found");
         }
+        Station previous = stationId == null ? null : stations.dock(foundBike, stationId);
 
         try {
-            foundBike.returnBike();
-            bikeAuditRental.recordReturn(foundBike, safeFirstName, safeLastName);
-            logger.info("Bike returned: " + id + " by " + safeFirstName + " " + safeLastName);
+            // The renter, or nobody known if the bike was rented before this service started
+            Supplier<Customer> renter = () -> customers.find(safeFirstName, safeLastName);
+            RentalSession session = bill(foundBike, closeSession(foundBike, safeFirstName, safeLastName,
+                    () -> commit(AuditEventType.RETURNED, foundBike, renter, safeFirstName, safeLastName,
+                            foundBike::returnBike, () -> foundBike.setAvailable(false))));
+            logger.info("Bike returned: " + id + " by " + safeFirstName + " " + safeLastName
+                    + (session == null ? "" : ", session " + session.getSessionId()
+                    + " charged " + session.getChargeCents() + "c"));
         } catch (BikeNotRentedException e) {
-            throw new RentalException(e.getMessage());
+            undock(foundBike, stationId, previous);
+            throw e;
         } catch (Exception e) {
+            if (!foundBike.isAvailable()) {
+                // The return did not go through: the bike is still out, so its dock is free again
+                undock(foundBike, stationId, previous);
+            }
             logger.severe("Unexpected error during return of bike " + id + ": " + e.getMessage());
             throw new RentalException("Internal error occurred during bike return");
         }
     }
+
+    /**
+     * Returns a bike at most once per request ID. A retry with the same ID gets the outcome
+     * of the first attempt instead of failing because the bike is no longer rented.
+     * @param requestId client-chosen ID of the request
+     * @param id bike ID
+     * @param safeFirstName user's first name
+     * @param safeLastName user's last name
+     * @param stationId station the bike is returned to, or null if it is left outside any station
+     * @throws InputValidationException if the request ID is invalid or was used for another request
+     * @throws RentalException if return fails
+     */
+    @Sanitized
+    @Logged
+    @Override
+    public void returningBikeOnce(String requestId, String id, String safeFirstName, String safeLastName,
+                                  String stationId) {
+        requests.execute(requestId,
+                new RequestKey(AuditEventType.RETURNED, id, safeFirstName, safeLastName, stationId),
+                () -> returningBike(id, safeFirstName, safeLastName, stationId));
+    }
+
+    /**
+     * @return outcomes of recent rent and return requests, by request ID
+     */
+    public IdempotencyCache getRequests() {
+        return requests;
+    }
+
+    private void undock(Bike bike, String stationId, Station previous) {
+        if (stationId != null) {
+            stations.restore(bike, previous);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+package com.epicode;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Number of bikes and of available bikes per catalog, according to the ledger.
+ * Catalogs are identified by name, as in the audit logs.
+ */
+@Secured("Ledger catalog projection")
+@RoleType("Projection")
+public class CatalogCountsProjection implements LedgerProjection<CatalogCountsProjection> {
+    private final Map<String, BikeEntry> bikes = new ConcurrentHashMap<>();
+    private final Map<String, Counts> catalogs = new ConcurrentHashMap<>();
+
+    private static final class BikeEntry {
+        private final String catalog;
+        private boolean available;
+
+        private BikeEntry(String catalog, boolean available) {
+            this.catalog = catalog;
+            this.available = available;
+        }
+    }
+
+    private static final class Counts {
+        private final AtomicInteger bikes = new AtomicInteger();
+        private final AtomicInteger available = new AtomicInteger();
+    }
+
+    @Override
+    public void apply(LedgerEvent event) {
+        switch (event.getEventType()) {
+            case CREATED -> created(event);
+            case RENTED -> availability(event.getBikeId(), false);
+            case RETURNED -> availability(event.getBikeId(), true);
+            case REMOVED -> removed(event.getBikeId());
+            default -> { }
+        }
+    }
+
+    private void removed(String bikeId) {
+        BikeEntry entry = bikes.remove(bikeId);
+        if (entry == null) {
+            return;
+        }
+        Counts counts = catalogs.get(entry.catalog);
+        counts.bikes.decrementAndGet();
+        if (entry.available) {
+            counts.available.decrementAndGet();
+        }
+    }
+
+    private void created(LedgerEvent event) {
+        if (bikes.containsKey(event.getBikeId())) {
+            return;
+        }
+        String catalog = String.valueOf(event.getFirstSubject());
+        Counts counts = catalogs.computeIfAbsent(catalog, name -> new Counts());
+        boolean available = (event.getFlags() & MappedAuditLog.FLAG_AVAILABLE) != 0;
+        bikes.put(event.getBikeId(), new BikeEntry(catalog, available));
+        counts.bikes.incrementAndGet();
+        if (available) {
+            counts.available.incrementAndGet();
+        }
+    }
+
+    private void availability(String bikeId, boolean available) {
+        BikeEntry entry = bikes.get(bikeId);
+        if (entry == null || entry.available == available) {
+            return;
+        }
+        entry.available = available;
+        catalogs.get(entry.catalog).available.addAndGet(available ? 1 : -1);
+    }
+
+    @Override
+    public void merge(CatalogCountsProjection partition) {
+        bikes.putAll(partition.bikes);
+        for (Map.Entry<String, Counts> catalog : partition.catalogs.entrySet()) {
+            Counts counts = catalogs.computeIfAbsent(catalog.getKey(), name -> new Counts());
+            counts.bikes.addAndGet(catalog.getValue().bikes.get());
+            counts.available.addAndGet(catalog.getValue().available.get());
+        }
+    }
+
+    /**
+     * @param catalog catalog name
+     * @return bikes created in the catalog and not removed since
+     */
+    public int getBikeCount(String catalog) {
+        Counts counts = catalogs.get(catalog);
+        return counts == null ? 0 : counts.bikes.get();
+    }
+
+    /**
+     * @param catalog catalog name
+     * @return bikes of the catalog that are not rented
+     */
+    public int getAvailableCount(String catalog) {
+        Counts counts = catalogs.get(catalog);
+        return counts == null ? 0 : counts.available.get();
+    }
+
+    /**
+     * @return available bikes per catalog name, sorted by name
+     */
+    public Map<String, Integer> availableByCatalog() {
+        Map<String, Integer> result = new TreeMap<>();
+        catalogs.forEach((name, counts) -> result.put(name, counts.available.get()));
+        return result;
+    }
+}
@@ -1,16 +1,17 @@
 package com.epicode;
 
-import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
 
 @Secured("Catalog iterator shielding and logging verified")
 @RoleType("Iterator")
 public class CatalogIterator implements Iterator<BikeCatalog> {
     private int index = 0;
-    private final ArrayList<BikeCatalog> catalogs;
+    private final List<BikeCatalog> catalogs;
 
     @Sanitized
-    public CatalogIterator(ArrayList<BikeCatalog> catalogs) {
+    public CatalogIterator(List<BikeCatalog> catalogs) {
         if (catalogs == null) {
             throw new InvalidCatalogException("Catalog list cannot be null");
         }
@@ -38,4 +39,14 @@ public class CatalogIterator implements Iterator<BikeCatalog> {
         }
         return catalogs.get(index++);
     }
-}
\ No newline at end of file
+
+    /**
+     * @return sized, splittable spliterator over the remaining elements
+     */
+    @Override
+    public Spliterator<BikeCatalog> spliterator() {
+        Spliterator<BikeCatalog> remaining = catalogs.subList(index, catalogs.size()).spliterator();
+        index = catalogs.size();
+        return remaining;
+    }
+}
@@ -0,0 +1,33 @@
+package com.epicode;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Where a {@link BikeCatalog} keeps its bikes: as objects, or as slots of a {@link FleetStore}.
+ * Arguments are validated by the catalog before they reach the storage.
+ */
+interface CatalogStorage {
+    void add(Bike bike);
+
+    void addAll(Collection<Bike> bikes);
+
+    boolean remove(Bike bike);
+
+    /**
+     * @throws IndexOutOfBoundsException if index is invalid
+     */
+    Bike get(int index);
+
+    int size();
+
+    List<Bike> snapshot();
+
+    Iterator<Bike> iterator();
+
+    List<Bike> find(BikeQuery query);
+
+    int count(BikeQuery query);
+
+    boolean isBackedBy(FleetStore store);
+}
@@ -0,0 +1,145 @@
+package com.epicode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Consistent hashing of keys onto named nodes. Each node is placed at many points of a
+ * 64-bit ring and a key belongs to the first point at or after its own hash, so adding
+ * a node takes over about 1/n of the keys, all from the nodes already there, and moves
+ * no other key.
+ *
+ * <p>A ring is immutable: {@link #withNode(String, Object)} returns a new ring, and
+ * {@link #ownerOf(String)} is a binary search over sorted primitive arrays.</p>
+ *
+ * @param <T> node type
+ */
+@Secured("Immutable key placement")
+@RoleType("Router")
+public class ConsistentHashRing<T> {
+    /** Points per node; enough to keep every node within a few percent of its share. */
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final int virtualNodes;
+    private final List<String> names;
+    private final List<T> nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    /**
+     * Creates an empty ring.
+     * @param virtualNodes points per node
+     * @throws InvalidSelectionException if virtualNodes is not positive
+     */
+    public ConsistentHashRing(int virtualNodes) {
+        this(virtualNodes, List.of(), List.of(), new long[0], new int[0]);
+        if (virtualNodes <= 0) {
+            throw new InvalidSelectionException("Virtual nodes must be positive: " + virtualNodes);
+        }
+    }
+
+    private ConsistentHashRing(int virtualNodes, List<String> names, List<T> nodes, long[] points, int[] owners) {
+        this.virtualNodes = virtualNodes;
+        this.names = names;
+        this.nodes = nodes;
+        this.points = points;
+        this.owners = owners;
+    }
+
+    /**
+     * @param name unique node name; its hash places the node on the ring
+     * @param node the node
+     * @return a ring with the node added
+     * @throws InvalidSelectionException if the name is null, blank or taken, or node is null
+     */
+    public ConsistentHashRing<T> withNode(String name, T node) {
+        if (name == null || name.isBlank() || node == null || names.contains(name)) {
+            throw new InvalidSelectionException("Invalid or duplicate ring node: " + name);
+        }
+        List<String> newNames = new ArrayList<>(names);
+        List<T> newNodes = new ArrayList<>(nodes);
+        newNames.add(name);
+        newNodes.add(node);
+
+        int total = newNames.size() * virtualNodes;
+        long[] keyed = new long[total];
+        long[] hashes = new long[total];
+        for (int n = 0, p = 0; n < newNames.size(); n++) {
+            for (int v = 0; v < virtualNodes; v++, p++) {
+                hashes[p] = hash(newNames.get(n) + "#" + v);
+            }
+        }
+        // Sort point indexes by hash; ties go to the node added first
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> hashes[a] != hashes[b] ? Long.compareUnsigned(hashes[a], hashes[b]) : a - b);
+        int[] newOwners = new int[total];
+        for (int i = 0; i < total; i++) {
+            keyed[i] = hashes[order[i]];
+            newOwners[i] = order[i] / virtualNodes;
+        }
+        return new ConsistentHashRing<>(virtualNodes, Collections.unmodifiableList(newNames),
+                Collections.unmodifiableList(newNodes), keyed, newOwners);
+    }
+
+    /**
+     * @param key key to place
+     * @return the node owning the key, or null if the ring is empty
+     */
+    public T ownerOf(String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        long hash = hash(key);
+        int low = 0;
+        int high = points.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(points[mid], hash) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return nodes.get(owners[low == points.length ? 0 : low]);
+    }
+
+    /**
+     * @return the nodes, in the order they were added
+     */
+    public List<T> getNodes() {
+        return nodes;
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 mixer so that
+     * keys differing in their last character still land far apart.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
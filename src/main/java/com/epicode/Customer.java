@@ -0,0 +1,63 @@
+package com.epicode;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A customer of the rental service, known by a compact numeric ID.
+ * Created by {@link CustomerRegistry}, which interns the names: every session,
+ * reservation and audit entry of the customer shares these two strings.
+ */
+@Secured("Customer identity with interned names")
+@RoleType("Customer")
+public final class Customer {
+    private final int id;
+    private final String firstName;
+    private final String lastName;
+    private final Set<String> activeRentals = ConcurrentHashMap.newKeySet();
+    private final AtomicLong totalRentals = new AtomicLong();
+    private final AtomicLong totalReturns = new AtomicLong();
+
+    Customer(int id, String firstName, String lastName) {
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+
+    public int getId() { return id; }
+    public String getFirstName() { return firstName; }
+    public String getLastName() { return lastName; }
+
+    /**
+     * @return IDs of the bikes the customer has out; a live, read-only view
+     */
+    public Set<String> getActiveRentals() {
+        return Collections.unmodifiableSet(activeRentals);
+    }
+
+    public long getTotalRentals() {
+        return totalRentals.get();
+    }
+
+    public long getTotalReturns() {
+        return totalReturns.get();
+    }
+
+    void rented(String bikeId) {
+        activeRentals.add(bikeId);
+        totalRentals.incrementAndGet();
+    }
+
+    void returned(String bikeId) {
+        if (activeRentals.remove(bikeId)) {
+            totalReturns.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return firstName + " " + lastName + " (#" + id + ")";
+    }
+}
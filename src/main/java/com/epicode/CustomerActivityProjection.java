@@ -0,0 +1,82 @@
+package com.epicode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rentals and returns per customer, according to the ledger. Customers are
+ * identified by first and last name, as in the audit logs.
+ */
+@Secured("Ledger customer projection")
+@RoleType("Projection")
+public class CustomerActivityProjection implements LedgerProjection<CustomerActivityProjection> {
+    private final Map<String, Activity> customers = new ConcurrentHashMap<>();
+
+    /**
+     * Activity of one customer. Replaced, never modified, so a reader always sees a consistent value.
+     */
+    public static final class Activity {
+        private final long rentals;
+        private final long returns;
+        private final long lastEventNanos;
+
+        private Activity(long rentals, long returns, long lastEventNanos) {
+            this.rentals = rentals;
+            this.returns = returns;
+            this.lastEventNanos = lastEventNanos;
+        }
+
+        public long getRentals() { return rentals; }
+        public long getReturns() { return returns; }
+
+        /**
+         * @return time of the customer's latest rental or return, in nanoseconds since the epoch
+         */
+        public long getLastEventNanos() { return lastEventNanos; }
+
+        private Activity plus(Activity other) {
+            return new Activity(rentals + other.rentals, returns + other.returns,
+                    Math.max(lastEventNanos, other.lastEventNanos));
+        }
+
+        @Override
+        public String toString() {
+            return "Activity{rentals=" + rentals + ", returns=" + returns + "}";
+        }
+    }
+
+    @Override
+    public void apply(LedgerEvent event) {
+        switch (event.getEventType()) {
+            case RENTED -> add(event, new Activity(1, 0, event.getEpochNanos()));
+            case RETURNED -> add(event, new Activity(0, 1, event.getEpochNanos()));
+            default -> { }
+        }
+    }
+
+    private void add(LedgerEvent event, Activity delta) {
+        customers.merge(key(event.getFirstSubject(), event.getSecondSubject()), delta, Activity::plus);
+    }
+
+    @Override
+    public void merge(CustomerActivityProjection partition) {
+        partition.customers.forEach((customer, activity) -> customers.merge(customer, activity, Activity::plus));
+    }
+
+    /**
+     * @param firstName customer's first name
+     * @param lastName customer's last name
+     * @return the customer's activity, or null if they never rented or returned a bike
+     */
+    public Activity getActivity(String firstName, String lastName) {
+        return customers.get(key(firstName, lastName));
+    }
+
+    public int getCustomerCount() {
+        return customers.size();
+    }
+
+    private static String key(String firstName, String lastName) {
+        return firstName + " " + lastName;
+    }
+}
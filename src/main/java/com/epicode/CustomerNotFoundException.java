@@ -0,0 +1,7 @@
+package com.epicode;
+
+public class CustomerNotFoundException extends RentalException {
+    public CustomerNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,229 @@
+package com.epicode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+
+/**
+ * Every customer who rented or returned a bike, by name and by numeric ID, and the
+ * customer holding each rented bike. Looking a customer up by name, by ID or by bike
+ * is a hash or array lookup; registering a new customer is serialized.
+ *
+ * <p>Given a log file, the registry appends one {@code REGISTERED} line per new
+ * customer and reads them back on startup, so IDs survive restarts and audit entries
+ * can carry the ID instead of the names. Without one, IDs last as long as the
+ * process. Active rentals are not persisted: like open sessions, they start empty.</p>
+ */
+@Secured("Customer registry with validated names")
+@RoleType("Registry")
+public class CustomerRegistry {
+    private static final Logger logger = Logger.getLogger(CustomerRegistry.class.getName());
+
+    private final Path log;
+    // By last name, then first name, so a lookup builds no key
+    private final Map<String, Map<String, Customer>> byName = new ConcurrentHashMap<>();
+    private final Map<String, Customer> holders = new ConcurrentHashMap<>();
+    private volatile Customer[] byId = new Customer[64];
+    private volatile int size = 0;
+
+
+    /**
+     * Creates a registry kept in memory only.
+     */
+    public CustomerRegistry() {
+        this.log = null;
+    }
+
+    /**
+     * Creates a registry that records new customers to a log and loads the ones already in it.
+     * @param log registration log, created if missing
+     * @throws StorageException if the log cannot be read or created
+     */
+    @Sanitized
+    public CustomerRegistry(Path log) {
+        if (log == null) {
+            throw new StorageException("Customer log path cannot be null", null);
+        }
+        this.log = log;
+        try {
+            if (log.getParent() != null) {
+                Files.createDirectories(log.getParent());
+            }
+            if (Files.exists(log)) {
+                load();
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to load customers: " + e.getMessage());
+            throw new StorageException("Customer registry unavailable", e);
+        }
+    }
+
+    /**
+     * @return true if customer IDs are recorded to a log and survive restarts
+     */
+    public boolean isDurable() {
+        return log != null;
+    }
+
+    /**
+     * Returns the customer with the given names, registering them on first sight.
+     * @param firstName sanitized first name
+     * @param lastName sanitized last name
+     * @return the customer
+     * @throws InputValidationException if a name is null
+     * @throws StorageException if a new customer cannot be recorded
+     */
+    public Customer register(String firstName, String lastName) {
+        Customer customer = find(firstName, lastName);
+        if (customer != null) {
+            return customer;
+        }
+        if (firstName == null || lastName == null) {
+            throw new InputValidationException("Customer names cannot be null");
+        }
+        synchronized (this) {
+            customer = find(firstName, lastName);
+            if (customer == null) {
+                customer = new Customer(size + 1, firstName, lastName);
+                if (log != null) {
+                    append(customer);
+                }
+                add(customer);
+                logger.info("Customer registered: " + customer);
+            }
+            return customer;
+        }
+    }
+
+    /**
+     * @return the customer with the given names, or null if unknown
+     */
+    public Customer find(String firstName, String lastName) {
+        if (firstName == null || lastName == null) {
+            return null;
+        }
+        Map<String, Customer> sameLastName = byName.get(lastName);
+        return sameLastName == null ? null : sameLastName.get(firstName);
+    }
+
+    /**
+     * @return the customer with the given ID, or null if unknown
+     */
+    public Customer get(int id) {
+        Customer[] snapshot = byId;
+        return id > 0 && id < snapshot.length ? snapshot[id] : null;
+    }
+
+    /**
+     * @return the customer who has the bike out, or null
+     */
+    public Customer holderOf(String bikeId) {
+        return bikeId == null ? null : holders.get(bikeId);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Records that a customer took a bike out.
+     */
+    void rented(Customer customer, String bikeId) {
+        Customer previous = holders.put(bikeId, customer);
+        if (previous != null && previous != customer) {
+            previous.returned(bikeId);
+        }
+        customer.rented(bikeId);
+    }
+
+    /**
+     * Records that a bike came back.
+     * @return the customer who had it out, or null
+     */
+    Customer returned(String bikeId) {
+        Customer holder = holders.remove(bikeId);
+        if (holder != null) {
+            holder.returned(bikeId);
+        }
+        return holder;
+    }
+
+    private void add(Customer customer) {
+        Customer[] current = byId;
+        if (customer.getId() >= current.length) {
+            current = Arrays.copyOf(current, Math.max(customer.getId() + 1, current.length * 2));
+        }
+        current[customer.getId()] = customer;
+        byId = current;
+        byName.computeIfAbsent(customer.getLastName(), name -> new ConcurrentHashMap<>())
+                .put(customer.getFirstName(), customer);
+        size = Math.max(size, customer.getId());
+    }
+
+    private void append(Customer customer) {
+        String line = registrationLine(LocalDateTime.now(), customer) + System.lineSeparator();
+        try {
+            Files.write(log, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.severe("Failed to record customer: " + e.getMessage());
+            throw new StorageException("Unable to record operation", e);
+        }
+    }
+
+    private void load() throws IOException {
+        int loaded = 0;
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int close = line.indexOf("] ");
+                String[] parts = close < 0 ? new String[0] : line.substring(close + 2).split(" \\| ");
+                String id = field(parts, "Customer=");
+                String firstName = field(parts, "First Name=");
+                String lastName = field(parts, "Last Name=");
+                if (parts.length == 0 || !parts[0].equals("REGISTERED") || id == null
+                        || firstName == null || lastName == null) {
+                    skipped++;
+                    continue;
+                }
+                int number;
+                try {
+                    number = Integer.parseInt(id);
+                } catch (NumberFormatException e) {
+                    number = 0;
+                }
+                if (number <= 0 || get(number) != null) {
+                    skipped++;
+                    continue;
+                }
+                add(new Customer(number, firstName, lastName));
+                loaded++;
+            }
+        }
+        logger.info("Loaded " + loaded + " customers from " + log + (skipped > 0 ? ", skipped " + skipped : ""));
+    }
+
+    private static String field(String[] parts, String key) {
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].startsWith(key)) {
+                return parts[i].substring(key.length());
+            }
+        }
+        return null;
+    }
+
+    static String registrationLine(LocalDateTime time, Customer customer) {
+        return String.format("[%s] REGISTERED | Customer=%d | First Name=%s | Last Name=%s",
+                time, customer.getId(), customer.getFirstName(), customer.getLastName());
+    }
+}
@@ -3,14 +3,29 @@ package com.epicode;
 /**
  * Represents a specific type of bike.
  * Extends abstract Bike class and defines getType().
+ * Its battery readings are kept by {@link BatteryTelemetry}; the bike itself only
+ * carries whether the last one was low, so indexes can filter on it.
  */
 @Secured("Shielding, logging, validation verified")
 @RoleType("Bike")
 public class ElectricBike extends Bike {
+    private volatile boolean lowBattery;
+
     public ElectricBike(BikeBuilder builder) {
         super(builder);
     }
 
+    @Override
+    public boolean isLowBattery() {
+        return lowBattery;
+    }
+
+    @Override
+    void setLowBattery(boolean lowBattery) {
+        this.lowBattery = lowBattery;
+        notifyListeners();
+    }
+
     @Override
     public BikeType getType() {
         return BikeType.electric;
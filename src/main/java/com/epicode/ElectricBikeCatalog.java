@@ -13,6 +13,10 @@ public class ElectricBikeCatalog extends BikeCatalog {
         super(bikes);
     }
 
+    public ElectricBikeCatalog(FleetStore store) {
+        super(store);
+    }
+
     @Override
     public String toString() {
         return "Electric Bike Catalog";
@@ -28,7 +28,7 @@ public class ElectricBikeFactory extends BikeFactory {
             return new ElectricBike(bikeBuilder);
         } catch (RuntimeException e) {
             logger.severe("Failed to create electric bike: " + e.getMessage());
-            throw new RentalException("Unable to create electric bike");
+            throw new RentalException("Unable to create electric bike", e);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package com.epicode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+
+/**
+ * Imports a fleet from a CSV file through {@link RentalService#bikeCreationBatch}.
+ *
+ * <p>One bike per line: {@code id,model,type[,available[,lights[,basket[,gps]]]]}.
+ * Booleans default to available and no features. Blank lines, lines starting with
+ * {@code #} and an {@code id,...} header are ignored. Lines are parsed in parallel and
+ * each bike type becomes one batch, placed in the inventory's catalog of that type
+ * (created if the inventory has none). Rejected lines are reported by line number.</p>
+ */
+@Secured("Import rows are validated and failures reported per line")
+@RoleType("Importer")
+public class FleetImporter {
+    private static final Logger logger = Logger.getLogger(FleetImporter.class.getName());
+
+    private final RentalService rentalService;
+
+    @Sanitized
+    public FleetImporter(RentalService rentalService) {
+        if (rentalService == null) {
+            throw new RentalException("Rental service cannot be null");
+        }
+        this.rentalService = rentalService;
+    }
+
+    /**
+     * Imports every bike listed in a CSV file.
+     * @param csvFile file to read
+     * @return created bikes and rejected lines, by 1-based line number
+     * @throws StorageException if the file cannot be read
+     */
+    @Logged
+    public ImportReport importCsv(Path csvFile) {
+        long start = System.nanoTime();
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(csvFile, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.severe("Failed to read fleet file: " + e.getMessage());
+            throw new StorageException("Unable to read fleet file", e);
+        }
+
+        Object[] parsed = new Object[lines.size()];
+        IntStream.range(0, lines.size()).parallel().forEach(i -> parsed[i] = parseLine(lines.get(i)));
+
+        Map<BikeType, List<BikeBuilder>> builders = new EnumMap<>(BikeType.class);
+        Map<BikeType, List<Integer>> lineNumbers = new EnumMap<>(BikeType.class);
+        List<ImportReport.RowFailure> failures = new ArrayList<>();
+        for (int i = 0; i < parsed.length; i++) {
+            if (parsed[i] instanceof ParsedRow) {
+                ParsedRow row = (ParsedRow) parsed[i];
+                builders.computeIfAbsent(row.type, type -> new ArrayList<>()).add(row.builder);
+                lineNumbers.computeIfAbsent(row.type, type -> new ArrayList<>()).add(i + 1);
+            } else if (parsed[i] != null) {
+                failures.add(new ImportReport.RowFailure(i + 1, idOf(lines.get(i)), (String) parsed[i]));
+            }
+        }
+
+        List<Bike> created = new ArrayList<>();
+        for (Map.Entry<BikeType, List<BikeBuilder>> batch : builders.entrySet()) {
+            ImportReport report = rentalService.bikeCreationBatch(batch.getValue().stream(),
+                    catalogFor(batch.getKey()), batch.getKey());
+            created.addAll(report.getCreated());
+            List<Integer> numbers = lineNumbers.get(batch.getKey());
+            for (ImportReport.RowFailure failure : report.getFailures()) {
+                failures.add(new ImportReport.RowFailure(numbers.get(failure.getRow()),
+                        failure.getBikeId(), failure.getMessage()));
+            }
+        }
+        failures.sort(Comparator.comparingInt(ImportReport.RowFailure::getRow));
+        ImportReport report = new ImportReport(created, failures, System.nanoTime() - start);
+        logger.info(report + " from " + csvFile);
+        return report;
+    }
+
+    /**
+     * @return a {@link ParsedRow}, an error message, or null for a line to ignore
+     */
+    private static Object parseLine(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.regionMatches(true, 0, "id,", 0, 3)) {
+            return null;
+        }
+        String[] fields = trimmed.split(",", -1);
+        if (fields.length < 3 || fields.length > 7) {
+            return "Expected 3 to 7 fields but found " + fields.length;
+        }
+        try {
+            BikeType type = BikeType.valueOf(fields[2].trim().toLowerCase());
+            BikeBuilder builder = new BikeBuilder(fields[0].trim(), fields[1].trim(), flag(fields, 3, true))
+                    .setLights(flag(fields, 4, false))
+                    .setBasket(flag(fields, 5, false))
+                    .setGPS(flag(fields, 6, false));
+            return new ParsedRow(type, builder);
+        } catch (IllegalArgumentException e) {
+            return "Unknown bike type: " + fields[2].trim();
+        } catch (RentalException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static boolean flag(String[] fields, int index, boolean defaultValue) {
+        if (index >= fields.length || fields[index].isBlank()) {
+            return defaultValue;
+        }
+        String value = fields[index].trim();
+        if (value.equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new InputValidationException("Expected true or false but found " + value);
+    }
+
+    private static String idOf(String line) {
+        int comma = line.indexOf(',');
+        String id = (comma < 0 ? line : line.substring(0, comma)).trim();
+        return id.isEmpty() ? null : id;
+    }
+
+    private BikeCatalog catalogFor(BikeType bikeType) {
+        BikeCatalog fresh = rentalService.newCatalog(bikeType);
+        for (BikeCatalog catalog : rentalService.getBikeInventory().getCatalogs()) {
+            if (catalog.getClass() == fresh.getClass()) {
+                return catalog;
+            }
+        }
+        return fresh;
+    }
+
+    private static final class ParsedRow {
+        private final BikeType type;
+        private final BikeBuilder builder;
+
+        private ParsedRow(BikeType type, BikeBuilder builder) {
+            this.type = type;
+            this.builder = builder;
+        }
+    }
+}
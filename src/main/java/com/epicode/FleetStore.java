@@ -0,0 +1,404 @@
+package com.epicode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+
+/**
+ * Columnar storage for a whole fleet, as an alternative to one {@link Bike} object per bike.
+ *
+ * <p>Each bike gets an int slot. IDs are kept off-heap in a {@link BikeIdIndex}, which
+ * also maps them back to slots. Type and model live in parallel arrays (models are
+ * interned into a small table and stored as ints), and availability and
+ * features are bits in {@link AtomicBitSet}s, which also answer {@link BikeQuery}s
+ * word by word. {@link #view(int)} materializes a lightweight {@link Bike} that reads
+ * and writes through to the columns; views are created on demand and never stored.</p>
+ *
+ * <p>Bikes are only ever added. Adds are serialized; reads, availability changes and
+ * queries take no lock, and availability is flipped with a compare-and-set on its bit.</p>
+ *
+ * <p>{@link #writeTo(Path)} saves the store to a directory and {@link #open(Path)} loads it
+ * back, mapping the ID index instead of rebuilding it. Catalog membership is not part of
+ * the store; replaying the audit logs puts the stored bikes back in their catalogs. Low
+ * battery bits are not saved either: they come back with the next telemetry readings.</p>
+ */
+@Secured("Columnar fleet storage with lock-free availability")
+@RoleType("Storage")
+public class FleetStore {
+    private static final Logger logger = Logger.getLogger(FleetStore.class.getName());
+    private static final BikeType[] TYPES = BikeType.values();
+    static final int MAGIC = 0x424B4653;
+    static final int VERSION = 1;
+    static final String ID_INDEX_FILE = "ids.idx";
+    static final String COLUMNS_FILE = "columns.bin";
+
+    private final BikeIdIndex ids;
+    private final Map<String, Integer> modelRefs = new HashMap<>();
+    private volatile Columns columns;
+    private volatile String[] models = new String[16];
+    private volatile int size = 0;
+
+    private final AtomicBitSet available = new AtomicBitSet();
+    private final AtomicBitSet lights = new AtomicBitSet();
+    private final AtomicBitSet basket = new AtomicBitSet();
+    private final AtomicBitSet GPS = new AtomicBitSet();
+    private final AtomicBitSet lowBattery = new AtomicBitSet();
+    private final AtomicBitSet[] byType = new AtomicBitSet[TYPES.length];
+
+    /**
+     * Immutable-once-written per-slot values. Replaced as a whole when it grows.
+     */
+    private static final class Columns {
+        private final byte[] types;
+        private final int[] models;
+
+        private Columns(int capacity) {
+            this.types = new byte[capacity];
+            this.models = new int[capacity];
+        }
+
+        private Columns grow(int size) {
+            Columns bigger = new Columns(types.length * 2);
+            System.arraycopy(types, 0, bigger.types, 0, size);
+            System.arraycopy(models, 0, bigger.models, 0, size);
+            return bigger;
+        }
+    }
+
+    /**
+     * @param expectedBikes initial capacity; the store grows beyond it as needed
+     */
+    public FleetStore(int expectedBikes) {
+        this(new BikeIdIndex(expectedBikes), Math.max(16, expectedBikes));
+    }
+
+    private FleetStore(BikeIdIndex ids, int capacity) {
+        this.ids = ids;
+        this.columns = new Columns(capacity);
+        for (int i = 0; i < byType.length; i++) {
+            byType[i] = new AtomicBitSet();
+        }
+    }
+
+    /**
+     * Copies a bike into the columns.
+     * @param bike bike to store; only its current values are kept
+     * @return the new slot, or -1 if a bike with the same ID is already stored
+     * @throws InvalidBikeException if bike is null or its ID is not ASCII
+     * @throws StorageException if the ID index is full
+     */
+    @Sanitized
+    public synchronized int add(Bike bike) {
+        if (bike == null) {
+            throw new InvalidBikeException("Cannot store null bike");
+        }
+        BikeIdIndex.checkId(bike.getId());
+        if (ids.slotOf(bike.getId()) >= 0) {
+            return -1;
+        }
+        int slot = size;
+        Columns current = columns;
+        if (slot == current.types.length) {
+            current = current.grow(slot);
+            columns = current;
+        }
+        current.types[slot] = (byte) bike.getType().ordinal();
+        current.models[slot] = modelRef(bike.getModel());
+        available.set(slot, bike.isAvailable());
+        lights.set(slot, bike.hasLights());
+        basket.set(slot, bike.hasBasket());
+        GPS.set(slot, bike.hasGPS());
+        lowBattery.set(slot, bike.isLowBattery());
+        byType[bike.getType().ordinal()].set(slot);
+        // Indexing the ID last makes the slot visible only once every column is written
+        ids.add(bike.getId());
+        size = slot + 1;
+        return slot;
+    }
+
+    /**
+     * @param id bike ID
+     * @return the slot holding the bike, or -1 if unknown
+     */
+    public int slotOf(String id) {
+        return ids.slotOf(id);
+    }
+
+    /**
+     * @param id bike ID
+     * @return a view of the bike, or null if unknown
+     */
+    public Bike get(String id) {
+        int slot = slotOf(id);
+        // An indexed slot is fully written even before size counts it
+        return slot < 0 ? null : new StoredBike(this, slot);
+    }
+
+    /**
+     * Materializes a bike backed by the columns. Two views of one slot are equal.
+     * @param slot slot of a stored bike
+     * @return view reading and writing through to the store
+     * @throws InvalidSelectionException if the slot is not in use
+     */
+    public Bike view(int slot) {
+        if (slot < 0 || slot >= size) {
+            logger.warning("Attempted to view invalid slot: " + slot);
+            throw new InvalidSelectionException("Invalid fleet slot: " + slot);
+        }
+        return new StoredBike(this, slot);
+    }
+
+    /**
+     * @return number of stored bikes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the bike's ID, decoded from the ID index on every call
+     */
+    public String getId(int slot) {
+        return ids.idOf(slot);
+    }
+
+    public BikeType getType(int slot) {
+        return TYPES[columns.types[slot]];
+    }
+
+    public String getModel(int slot) {
+        return models[columns.models[slot]];
+    }
+
+    public boolean isAvailable(int slot) {
+        return available.get(slot);
+    }
+
+    public void setAvailable(int slot, boolean value) {
+        available.set(slot, value);
+    }
+
+    /**
+     * @return true if availability had the expected value and was changed
+     */
+    public boolean compareAndSetAvailable(int slot, boolean expect, boolean update) {
+        return available.compareAndSet(slot, expect, update);
+    }
+
+    public boolean hasLights(int slot) {
+        return lights.get(slot);
+    }
+
+    public void setLights(int slot, boolean value) {
+        lights.set(slot, value);
+    }
+
+    public boolean hasBasket(int slot) {
+        return basket.get(slot);
+    }
+
+    public void setBasket(int slot, boolean value) {
+        basket.set(slot, value);
+    }
+
+    public boolean hasGPS(int slot) {
+        return GPS.get(slot);
+    }
+
+    public void setGPS(int slot, boolean value) {
+        GPS.set(slot, value);
+    }
+
+    public boolean isLowBattery(int slot) {
+        return lowBattery.get(slot);
+    }
+
+    public void setLowBattery(int slot, boolean value) {
+        lowBattery.set(slot, value);
+    }
+
+    /**
+     * @param query criteria
+     * @param scope bikes to consider, by slot, or null for the whole store
+     * @return views of the matching bikes, at most {@code query.getLimit()}
+     */
+    public List<Bike> find(BikeQuery query, AtomicBitSet scope) {
+        List<Bike> result = new ArrayList<>();
+        int limit = query.getLimit();
+        int words = wordCount();
+        for (int word = 0; word < words; word++) {
+            long bits = match(query, scope, word);
+            while (bits != 0) {
+                result.add(new StoredBike(this, (word << 6) + Long.numberOfTrailingZeros(bits)));
+                if (result.size() >= limit) {
+                    return result;
+                }
+                bits &= bits - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param query criteria; the limit is ignored
+     * @param scope bikes to consider, by slot, or null for the whole store
+     * @return number of matching bikes
+     */
+    public int count(BikeQuery query, AtomicBitSet scope) {
+        int count = 0;
+        int words = wordCount();
+        for (int word = 0; word < words; word++) {
+            count += Long.bitCount(match(query, scope, word));
+        }
+        return count;
+    }
+
+    /**
+     * Writes the store to a directory: the ID index and a file with the other columns.
+     * Adds wait until it is done; availability changes made meanwhile may or may not be included.
+     * @param directory destination, created if missing
+     * @throws StorageException if the files cannot be written
+     */
+    @Logged
+    public synchronized void writeTo(Path directory) {
+        Path columnsFile = directory.resolve(COLUMNS_FILE);
+        Path temp = directory.resolve(COLUMNS_FILE + ".tmp");
+        int count = size;
+        Columns current = columns;
+        try {
+            Files.createDirectories(directory);
+            ids.writeTo(directory.resolve(ID_INDEX_FILE));
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temp), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                out.writeInt(modelRefs.size());
+                for (int i = 0; i < modelRefs.size(); i++) {
+                    out.writeUTF(models[i]);
+                }
+                out.write(current.types, 0, count);
+                for (int slot = 0; slot < count; slot++) {
+                    out.writeInt(current.models[slot]);
+                }
+                int words = wordCount();
+                for (AtomicBitSet column : new AtomicBitSet[]{available, lights, basket, GPS}) {
+                    for (int word = 0; word < words; word++) {
+                        out.writeLong(column.word(word));
+                    }
+                }
+            }
+            Files.move(temp, columnsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.severe("Failed to write fleet store: " + e.getMessage());
+            throw new StorageException("Unable to write fleet store", e);
+        }
+        logger.info("Fleet store written with " + count + " bikes to " + directory);
+    }
+
+    /**
+     * Loads a store written by {@link #writeTo(Path)}. The ID index is mapped, not rebuilt.
+     * @param directory directory holding the store files
+     * @return the loaded store
+     * @throws StorageException if the files cannot be read or do not belong together
+     */
+    @Logged
+    public static FleetStore open(Path directory) {
+        Path columnsFile = directory.resolve(COLUMNS_FILE);
+        BikeIdIndex ids = BikeIdIndex.open(directory.resolve(ID_INDEX_FILE));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(columnsFile), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new StorageException("Unsupported fleet store: " + columnsFile, null);
+            }
+            int count = in.readInt();
+            if (count != ids.size()) {
+                throw new StorageException("Fleet store columns do not match its ID index: " + directory, null);
+            }
+            FleetStore store = new FleetStore(ids, Math.max(16, count));
+            int modelCount = in.readInt();
+            for (int i = 0; i < modelCount; i++) {
+                store.modelRef(in.readUTF());
+            }
+            in.readFully(store.columns.types, 0, count);
+            for (int slot = 0; slot < count; slot++) {
+                store.byType[store.columns.types[slot]].set(slot);
+                int model = in.readInt();
+                if (model < 0 || model >= modelCount) {
+                    throw new StorageException("Corrupted fleet store: " + columnsFile, null);
+                }
+                store.columns.models[slot] = model;
+            }
+            int words = (count + 63) >>> 6;
+            for (AtomicBitSet column : new AtomicBitSet[]{store.available, store.lights, store.basket, store.GPS}) {
+                for (int word = 0; word < words; word++) {
+                    for (long bits = in.readLong(); bits != 0; bits &= bits - 1) {
+                        column.set((word << 6) + Long.numberOfTrailingZeros(bits));
+                    }
+                }
+            }
+            store.size = count;
+            logger.info("Fleet store loaded with " + count + " bikes from " + directory);
+            return store;
+        } catch (IOException | IndexOutOfBoundsException e) {
+            logger.severe("Failed to read fleet store: " + e.getMessage());
+            throw new StorageException("Unable to read fleet store", e);
+        }
+    }
+
+    private int wordCount() {
+        return (size + 63) >>> 6;
+    }
+
+    private long match(BikeQuery query, AtomicBitSet scope, int word) {
+        int live = size - (word << 6);
+        long bits = live >= 64 ? -1L : (1L << live) - 1;
+        if (scope != null) {
+            bits &= scope.word(word);
+        }
+        if (bits != 0 && query.getType() != null) {
+            bits &= byType[query.getType().ordinal()].word(word);
+        }
+        bits = filter(bits, available, query.getAvailable(), word);
+        bits = filter(bits, lights, query.getLights(), word);
+        bits = filter(bits, basket, query.getBasket(), word);
+        bits = filter(bits, GPS, query.getGPS(), word);
+        return filter(bits, lowBattery, query.getLowBattery(), word);
+    }
+
+    private static long filter(long bits, AtomicBitSet set, Boolean wanted, int word) {
+        if (bits == 0 || wanted == null) {
+            return bits;
+        }
+        long setWord = set.word(word);
+        return wanted ? bits & setWord : bits & ~setWord;
+    }
+
+    private int modelRef(String model) {
+        Integer ref = modelRefs.get(model);
+        if (ref != null) {
+            return ref;
+        }
+        int next = modelRefs.size();
+        String[] table = models;
+        if (next == table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        table[next] = model;
+        models = table;
+        modelRefs.put(model, next);
+        return next;
+    }
+}
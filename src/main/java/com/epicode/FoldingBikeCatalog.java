@@ -13,6 +13,10 @@ public class FoldingBikeCatalog extends BikeCatalog {
         super(bikes);
     }
 
+    public FoldingBikeCatalog(FleetStore store) {
+        super(store);
+    }
+
     @Override
     public String toString() {
         return "Folding Bike Catalog";
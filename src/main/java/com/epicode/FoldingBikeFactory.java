@@ -28,7 +28,7 @@ public class FoldingBikeFactory extends BikeFactory {
             return new FoldingBike(bikeBuilder);
         } catch (RuntimeException e) {
             logger.severe("Failed to create folding bike: " + e.getMessage());
-            throw new RentalException("Unable to create folding bike");
+            throw new RentalException("Unable to create folding bike", e);
         }
     }
 }
\ No newline at end of file
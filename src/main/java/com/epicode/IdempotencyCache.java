@@ -0,0 +1,246 @@
+package com.epicode;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+
+/**
+ * Remembers the outcome of recent requests by their client-chosen ID, so a retried
+ * request gets the original outcome instead of running twice. The first request with
+ * an ID runs; a duplicate waits for it if it is still running, then returns normally
+ * if it succeeded or throws a fresh exception of the type and message it failed with.
+ *
+ * <p>Outcomes are kept for a fixed time to live and the cache holds at most a fixed
+ * number of them, so its memory is bounded up front: about 400 bytes per entry with
+ * 36-character IDs and short names, half of it the {@link RequestKey} a duplicate is
+ * checked against. A failed outcome adds only its exception's message: the exception
+ * itself, with its stack trace and cause, is not kept. Entries sit in a ring in the order they were added, which is also
+ * the order they expire in, so expired entries are dropped from the head as new ones
+ * come in. When the ring is full, the oldest entry is dropped before its time.</p>
+ *
+ * <p>Duplicates are answered from a concurrent map without a lock; only adding an
+ * entry is serialized.</p>
+ */
+@Secured("Request IDs validated, memory bounded")
+@RoleType("Cache")
+public class IdempotencyCache {
+    private static final Logger logger = Logger.getLogger(IdempotencyCache.class.getName());
+    /** Five minutes of rent and return requests at about 200 per second. */
+    public static final int DEFAULT_CAPACITY = 65_536;
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+    public static final int MAX_REQUEST_ID_LENGTH = 128;
+
+    private final Map<String, Entry> entries;
+    private final Entry[] ring;
+    private final long timeToLiveNanos;
+    private final LongSupplier clock;
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong evictedEarly = new AtomicLong();
+    // Guarded by this
+    private int head = 0;
+    private int count = 0;
+
+    private static final class Entry {
+        private final String requestId;
+        private final RequestKey key;
+        private final long expiresAt;
+        private boolean done;
+        private Class<? extends RuntimeException> failureType;
+        private String failureMessage;
+
+        private Entry(String requestId, RequestKey key, long expiresAt) {
+            this.requestId = requestId;
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+
+        private synchronized void complete(RuntimeException failure) {
+            if (failure != null) {
+                this.failureType = failure.getClass();
+                this.failureMessage = failure.getMessage();
+            }
+            this.done = true;
+            notifyAll();
+        }
+
+        private void replay() {
+            Class<? extends RuntimeException> type;
+            String message;
+            synchronized (this) {
+                boolean interrupted = false;
+                while (!done) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        break;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new RentalException("Interrupted while waiting for request " + requestId);
+                }
+                type = failureType;
+                message = failureMessage;
+            }
+            if (type != null) {
+                throw recreate(type, message);
+            }
+        }
+
+        /**
+         * @return a new exception of the given type, or a {@link RentalException} if the type
+         * has no public (message) or (message, cause) constructor
+         */
+        private static RuntimeException recreate(Class<? extends RuntimeException> type, String message) {
+            try {
+                return type.getConstructor(String.class).newInstance(message);
+            } catch (ReflectiveOperationException e) {
+                try {
+                    return type.getConstructor(String.class, Throwable.class).newInstance(message, null);
+                } catch (ReflectiveOperationException again) {
+                    return new RentalException(message);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Creates a cache with {@link #DEFAULT_CAPACITY} entries kept for {@link #DEFAULT_TIME_TO_LIVE}.
+     */
+    public IdempotencyCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * @param capacity most outcomes kept at once
+     * @param timeToLive how long an outcome is kept
+     * @throws InvalidSelectionException if capacity or time to live is not positive
+     */
+    @Sanitized
+    public IdempotencyCache(int capacity, Duration timeToLive) {
+        this(capacity, timeToLive, System::nanoTime);
+    }
+
+    IdempotencyCache(int capacity, Duration timeToLive, LongSupplier clock) {
+        if (capacity <= 0 || timeToLive == null || timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new InvalidSelectionException("Invalid idempotency cache: capacity " + capacity
+                    + ", time to live " + timeToLive);
+        }
+        this.entries = new ConcurrentHashMap<>(capacity);
+        this.ring = new Entry[capacity];
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.clock = clock;
+    }
+
+    /**
+     * Runs an action once per request ID. A duplicate gets the first run's outcome
+     * without running the action.
+     * @param requestId client-chosen ID of the request
+     * @param key what the request asks for; a duplicate must carry an equal one
+     * @param action the request
+     * @throws InputValidationException if the ID is invalid (see {@link InputValidator#validateRequestId(String)})
+     * or was used for another request
+     * @throws RuntimeException whatever the action threw the first time, and a fresh exception
+     * of the same type and message on a replay
+     */
+    public void execute(String requestId, RequestKey key, Runnable action) {
+        InputValidator.validateRequestId(requestId);
+        long now = clock.getAsLong();
+        Entry entry = entries.get(requestId);
+        if (entry == null || entry.isExpired(now)) {
+            Entry created = new Entry(requestId, key, now + timeToLiveNanos);
+            entry = admit(created, now);
+            if (entry == created) {
+                run(created, action);
+                return;
+            }
+        }
+        if (!entry.key.equals(key)) {
+            throw new InputValidationException("Request ID " + requestId + " was already used for another request");
+        }
+        duplicates.incrementAndGet();
+        entry.replay();
+    }
+
+    private static void run(Entry entry, Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            entry.complete(e);
+            throw e;
+        } catch (Error e) {
+            entry.complete(new RentalException("Internal error occurred during request " + entry.requestId));
+            throw e;
+        }
+        entry.complete(null);
+    }
+
+    /**
+     * @return the entry now registered under the ID: the given one, or one a concurrent request added first
+     */
+    private synchronized Entry admit(Entry entry, long now) {
+        while (count > 0 && ring[head].isExpired(now)) {
+            dropHead();
+        }
+        Entry existing = entries.putIfAbsent(entry.requestId, entry);
+        if (existing != null) {
+            if (!existing.isExpired(now)) {
+                return existing;
+            }
+            // Expired but still behind a younger head; its ring slot is dropped in turn
+            entries.put(entry.requestId, entry);
+        }
+        if (count == ring.length) {
+            dropHead();
+            if (evictedEarly.incrementAndGet() == 1) {
+                logger.warning("Idempotency cache full: outcomes are dropped before they expire");
+            }
+        }
+        ring[(head + count) % ring.length] = entry;
+        count++;
+        return entry;
+    }
+
+    private void dropHead() {
+        Entry oldest = ring[head];
+        entries.remove(oldest.requestId, oldest);
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        count--;
+    }
+
+    /**
+     * @return number of outcomes kept, expired ones included until they are dropped
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * @return requests answered with an earlier outcome
+     */
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * @return outcomes dropped before their time to live because the cache was full
+     */
+    public long getEvictedEarly() {
+        return evictedEarly.get();
+    }
+}
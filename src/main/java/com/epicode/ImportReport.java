@@ -0,0 +1,62 @@
+package com.epicode;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a batch bike import: the bikes created and the rows that were rejected.
+ */
+@Secured("Read-only import summary")
+@RoleType("Import Result")
+public class ImportReport {
+    private final List<Bike> created;
+    private final List<RowFailure> failures;
+    private final long elapsedNanos;
+
+    public ImportReport(List<Bike> created, List<RowFailure> failures, long elapsedNanos) {
+        this.created = Collections.unmodifiableList(created);
+        this.failures = Collections.unmodifiableList(failures);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public List<Bike> getCreated() { return created; }
+    public List<RowFailure> getFailures() { return failures; }
+    public int getCreatedCount() { return created.size(); }
+    public int getFailedCount() { return failures.size(); }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    @Override
+    public String toString() {
+        return "Imported " + created.size() + " bikes, " + failures.size() + " rows rejected in "
+                + (elapsedNanos / 1_000_000) + " ms";
+    }
+
+    /**
+     * A rejected row.
+     */
+    public static final class RowFailure {
+        private final int row;
+        private final String bikeId;
+        private final String message;
+
+        /**
+         * @param row position of the row: its index in a stream, or its line number in a file
+         * @param bikeId ID of the rejected bike, or null if unknown
+         * @param message reason for the rejection
+         */
+        public RowFailure(int row, String bikeId, String message) {
+            this.row = row;
+            this.bikeId = bikeId;
+            this.message = message;
+        }
+
+        public int getRow() { return row; }
+        public String getBikeId() { return bikeId; }
+        public String getMessage() { return message; }
+
+        @Override
+        public String toString() {
+            return "Row " + row + (bikeId == null ? "" : " (" + bikeId + ")") + ": " + message;
+        }
+    }
+}
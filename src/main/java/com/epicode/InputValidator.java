@@ -1,13 +1,24 @@
 package com.epicode;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Utility class for input validation and sanitization.
  * Static methods to sanitize names and bike IDs according to rules.
+ *
+ * <p>Validation is a single hand-rolled scan over the characters: no regular
+ * expression is compiled or run, and input that is already clean is returned
+ * as is, without allocating. Besides {@link String}, any {@link CharSequence}
+ * and raw network bytes in a {@link ByteBuffer} are accepted.</p>
  */
 @Secured("Validates and sanitizes all user input")
 @RoleType("Validator")
 public final class InputValidator {
 
+    private InputValidator() {
+    }
+
     /**
      * Sanitizes and validates a name.
      * @param input name string
@@ -16,14 +27,55 @@ public final class InputValidator {
      */
     @Sanitized
     public static String sanitizeName(String input) {
+        return sanitizeName((CharSequence) input);
+    }
+
+    /**
+     * Sanitizes and validates a name: after trimming it must be at least
+     * 2 characters long and contain only ASCII letters and spaces.
+     * @param input name characters
+     * @return sanitized name; the input itself if it is a String that needs no trimming
+     * @throws InputValidationException if name is invalid
+     */
+    @Sanitized
+    public static String sanitizeName(CharSequence input) {
         if (input == null) {
             throw new InputValidationException("Name cannot be null");
         }
-        input = input.trim();
-        if (!input.matches("[a-zA-Z ]{2,}")) {
+        // Same bounds as String.trim()
+        int start = 0;
+        int end = input.length();
+        while (start < end && input.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && input.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (end - start < 2) {
             throw new InputValidationException("Name must be at least 2 letters and contain only letters");
         }
-        return input;
+        for (int i = start; i < end; i++) {
+            if (!isNameChar(input.charAt(i))) {
+                throw new InputValidationException("Name must be at least 2 letters and contain only letters");
+            }
+        }
+        if (start == 0 && end == input.length() && input instanceof String) {
+            return (String) input;
+        }
+        return input.subSequence(start, end).toString();
+    }
+
+    /**
+     * Sanitizes and validates a name received as bytes, e.g. from a network request.
+     * Bytes from the buffer's position to its limit are read without moving the position;
+     * any non-ASCII byte makes the name invalid.
+     * @param input name bytes
+     * @return sanitized name
+     * @throws InputValidationException if name is invalid
+     */
+    @Sanitized
+    public static String sanitizeNameBytes(ByteBuffer input) {
+        return sanitizeName(input == null ? null : new AsciiSequence(input, input.position(), input.limit()));
     }
 
     /**
@@ -34,9 +86,153 @@ public final class InputValidator {
      */
     @Sanitized
     public static String sanitizeId(String input) {
+        return sanitizeId((CharSequence) input);
+    }
+
+    /**
+     * Sanitizes and validates a bike ID by dropping every character that is not an ASCII letter or digit.
+     * @param input bike ID characters
+     * @return sanitized bike ID; the input itself if it is a String that is already clean
+     * @throws InputValidationException if ID is null or blank
+     */
+    @Sanitized
+    public static String sanitizeId(CharSequence input) {
+        if (input == null) {
+            throw new InputValidationException("Bike ID cannot be null or blank");
+        }
+        int length = input.length();
+        int kept = 0;
+        boolean blank = true;
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            if (isIdChar(c)) {
+                kept++;
+                blank = false;
+            } else if (blank && !Character.isWhitespace(c)) {
+                blank = false;
+            }
+        }
+        if (blank) {
+            throw new InputValidationException("Bike ID cannot be null or blank");
+        }
+        if (kept == length) {
+            return input.toString();
+        }
+        char[] id = new char[kept];
+        int next = 0;
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            if (isIdChar(c)) {
+                id[next++] = c;
+            }
+        }
+        return new String(id);
+    }
+
+    /**
+     * Sanitizes and validates a bike ID received as bytes, e.g. from a network request.
+     * Bytes from the buffer's position to its limit are read without moving the position;
+     * non-ASCII bytes are dropped like any other invalid character.
+     * @param input bike ID bytes
+     * @return sanitized bike ID
+     * @throws InputValidationException if ID is null or blank
+     */
+    @Sanitized
+    public static String sanitizeIdBytes(ByteBuffer input) {
+        return sanitizeId(input == null ? null : new AsciiSequence(input, input.position(), input.limit()));
+    }
+
+    /**
+     * Validates the ID of a bike being created without changing it: it must be non-blank
+     * and contain only ASCII letters and digits, so that it survives {@link #sanitizeId(String)}
+     * on every later lookup.
+     * @param input bike ID
+     * @return the input itself
+     * @throws InputValidationException if the ID is invalid
+     */
+    @Sanitized
+    public static String validateBikeId(String input) {
         if (input == null || input.isBlank()) {
             throw new InputValidationException("Bike ID cannot be null or blank");
         }
-        return input.replaceAll("[^a-zA-Z0-9]", "").trim();
+        for (int i = 0; i < input.length(); i++) {
+            if (!isIdChar(input.charAt(i))) {
+                throw new InputValidationException("Bike ID must contain only letters and digits");
+            }
+        }
+        return input;
+    }
+
+    /**
+     * Validates a client-chosen request ID without changing it, so that two different IDs
+     * can never end up as the same one: it must have 1 to
+     * {@link IdempotencyCache#MAX_REQUEST_ID_LENGTH} characters, each an ASCII letter or
+     * digit, '-' or '_'. UUIDs pass as they are.
+     * @param input request ID
+     * @return the input itself
+     * @throws InputValidationException if the ID is invalid
+     */
+    @Sanitized
+    public static String validateRequestId(String input) {
+        if (input == null || input.isEmpty() || input.length() > IdempotencyCache.MAX_REQUEST_ID_LENGTH) {
+            throw new InputValidationException("Request ID must have 1 to "
+                    + IdempotencyCache.MAX_REQUEST_ID_LENGTH + " characters");
+        }
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (!isIdChar(c) && c != '-' && c != '_') {
+                throw new InputValidationException("Request ID must contain only letters, digits, '-' and '_'");
+            }
+        }
+        return input;
+    }
+
+    private static boolean isNameChar(char c) {
+        int lower = c | 0x20;
+        return c == ' ' || (lower >= 'a' && lower <= 'z');
+    }
+
+    private static boolean isIdChar(char c) {
+        int lower = c | 0x20;
+        return (c >= '0' && c <= '9') || (lower >= 'a' && lower <= 'z');
+    }
+
+    /**
+     * Read-only character view of a byte range, one char per byte.
+     * Bytes of multi-byte UTF-8 characters show up as chars above 0x7F,
+     * which are never valid in names or IDs.
+     */
+    private static final class AsciiSequence implements CharSequence {
+        private final ByteBuffer bytes;
+        private final int from;
+        private final int to;
+
+        private AsciiSequence(ByteBuffer bytes, int from, int to) {
+            this.bytes = bytes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int length() {
+            return to - from;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(from + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new AsciiSequence(bytes, from + start, from + end);
+        }
+
+        @Override
+        public String toString() {
+            byte[] copy = new byte[length()];
+            bytes.get(from, copy);
+            return new String(copy, StandardCharsets.ISO_8859_1);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,151 @@
+package com.epicode;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.logging.Logger;
+
+
+/**
+ * Builds dynamic proxies that give the {@link Logged} and {@link Sanitized} annotations runtime meaning.
+ *
+ * <ul>
+ *     <li>{@code @Logged} methods become timed call sites: every call is recorded in
+ *     the {@link MethodMetrics} named {@code SimpleClassName.method}, failures included.</li>
+ *     <li>{@code @Sanitized} methods are shielded: a runtime exception that is neither a
+ *     {@link RentalException} nor a {@link StorageException} is logged and replaced by a
+ *     {@link RentalException}, so internal details never reach the caller.</li>
+ * </ul>
+ *
+ * <p>Annotations are read from the target's implementation of each interface method,
+ * once, when the proxy is built.</p>
+ */
+@Secured("Exception shielding and call metrics through annotations")
+@RoleType("Instrumentation")
+public final class Instrumentation {
+    private static final Logger logger = Logger.getLogger(Instrumentation.class.getName());
+
+    private Instrumentation() {
+    }
+
+    /**
+     * Wraps a target in a proxy implementing the given interface.
+     * @param type interface to expose
+     * @param target object to delegate to
+     * @param registry registry receiving the call metrics
+     * @param <T> interface type
+     * @return instrumented proxy
+     * @throws RentalException if type is not an interface or an argument is null
+     */
+    @Sanitized
+    public static <T> T instrument(Class<T> type, T target, MetricsRegistry registry) {
+        if (type == null || target == null || registry == null) {
+            throw new RentalException("Cannot instrument without type, target and registry");
+        }
+        if (!type.isInterface()) {
+            throw new RentalException("Only interfaces can be instrumented: " + type.getName());
+        }
+        Method[] methods = type.getMethods();
+        CallSite[] callSites = new CallSite[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            Method method = methods[i];
+            Method implementation = implementationOf(target.getClass(), method);
+            MethodMetrics metrics = implementation.isAnnotationPresent(Logged.class)
+                    ? registry.metricsFor(target.getClass().getSimpleName() + "." + method.getName())
+                    : null;
+            callSites[i] = new CallSite(method, metrics, implementation.isAnnotationPresent(Sanitized.class));
+        }
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new Handler(target, callSites));
+        return type.cast(proxy);
+    }
+
+    private static Method implementationOf(Class<?> targetClass, Method method) {
+        try {
+            return targetClass.getMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            return method;
+        }
+    }
+
+    /**
+     * What to do around calls to one method.
+     */
+    private static final class CallSite {
+        private final Method method;
+        private final MethodMetrics metrics;
+        private final boolean shielded;
+
+        private CallSite(Method method, MethodMetrics metrics, boolean shielded) {
+            this.method = method;
+            this.metrics = metrics;
+            this.shielded = shielded;
+        }
+    }
+
+    private static final class Handler implements InvocationHandler {
+        private static final CallSite PLAIN = new CallSite(null, null, false);
+
+        private final Object target;
+        private final CallSite[] callSites;
+        // The proxy class passes the same Method instance on every call, so lookups usually end at an identity match
+        private volatile Method[] seen;
+
+        private Handler(Object target, CallSite[] callSites) {
+            this.target = target;
+            this.callSites = callSites;
+            this.seen = new Method[callSites.length];
+        }
+
+        private CallSite callSiteFor(Method method) {
+            Method[] known = seen;
+            for (int i = 0; i < known.length; i++) {
+                if (known[i] == method) {
+                    return callSites[i];
+                }
+            }
+            for (int i = 0; i < callSites.length; i++) {
+                if (callSites[i].method.equals(method)) {
+                    Method[] updated = known.clone();
+                    updated[i] = method;
+                    seen = updated;
+                    return callSites[i];
+                }
+            }
+            return PLAIN;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            // equals, hashCode and toString are not interface methods and fall back to PLAIN
+            CallSite callSite = callSiteFor(method);
+            if (callSite.metrics == null) {
+                return invokeTarget(method, args, callSite);
+            }
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = invokeTarget(method, args, callSite);
+                failed = false;
+                return result;
+            } finally {
+                callSite.metrics.record(System.nanoTime() - start, failed);
+            }
+        }
+
+        private Object invokeTarget(Method method, Object[] args, CallSite callSite) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (callSite.shielded && cause instanceof RuntimeException
+                        && !(cause instanceof RentalException) && !(cause instanceof StorageException)) {
+                    logger.severe("Unexpected error in " + method.getName() + ": " + cause.getMessage());
+                    throw new RentalException("Internal error occurred during " + method.getName());
+                }
+                throw cause;
+            }
+        }
+    }
+}
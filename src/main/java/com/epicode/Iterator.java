@@ -1,6 +1,41 @@
 package com.epicode;
 
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 public interface Iterator<T> {
     boolean hasNext();
     T next();
+
+    /**
+     * Bridges the remaining elements to the streams API. The iterator should not be used afterwards.
+     * Implementations backed by indexed storage override this with a sized, splittable spliterator.
+     * @return spliterator over the remaining elements
+     */
+    default Spliterator<T> spliterator() {
+        return Spliterators.spliteratorUnknownSize(new java.util.Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return Iterator.this.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!Iterator.this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return Iterator.this.next();
+            }
+        }, Spliterator.ORDERED);
+    }
+
+    /**
+     * @return sequential stream over the remaining elements
+     */
+    default Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
 }
@@ -0,0 +1,24 @@
+package com.epicode;
+
+/**
+ * One event of a {@link RentalLedger}: an audit record plus its position in the ledger.
+ * Sequence numbers start at 0 and have no gaps.
+ */
+@Secured("Read-only ledger event")
+@RoleType("Ledger Event")
+public class LedgerEvent extends AuditRecord {
+    private final int sequence;
+
+    public LedgerEvent(int sequence, AuditEventType eventType, long epochNanos, String bikeId, BikeType bikeType,
+                       String firstSubject, String secondSubject, int flags) {
+        super(eventType, epochNanos, bikeId, bikeType, firstSubject, secondSubject, flags);
+        this.sequence = sequence;
+    }
+
+    public int getSequence() { return sequence; }
+
+    @Override
+    public String toString() {
+        return "LedgerEvent{#" + sequence + " " + getEventType() + " " + getBikeId() + "}";
+    }
+}
@@ -0,0 +1,22 @@
+package com.epicode;
+
+/**
+ * Read model kept up to date from the events of a {@link RentalLedger}.
+ *
+ * <p>A live projection receives every event once, in ledger order, on the appending
+ * thread, while other threads may read it. For a parallel rebuild the ledger is split
+ * by bike: each partition applies the events of its own bikes, in order, to a fresh
+ * projection, and the partitions are then merged. Projections must therefore only
+ * depend on the order of events of the same bike.</p>
+ *
+ * @param <P> the projection's own type
+ */
+public interface LedgerProjection<P extends LedgerProjection<P>> {
+    void apply(LedgerEvent event);
+
+    /**
+     * Folds in a projection built from a disjoint set of bikes.
+     * @param partition projection of other bikes, not used afterwards
+     */
+    void merge(P partition);
+}
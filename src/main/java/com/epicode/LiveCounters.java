@@ -0,0 +1,156 @@
+package com.epicode;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * Live rental counters fed by an {@link AuditLogTailer}: rentals in progress, and rentals
+ * per {@link BikeType} and returns per minute for the last hour. Minutes are those of the
+ * audit timestamps, which are local times.
+ *
+ * <p>Every update and read is O(1) or O(types), so a dashboard poll costs nothing
+ * proportional to the history behind the counters. Updates and reads are synchronized;
+ * they are far apart enough in practice for the lock to stay uncontended.</p>
+ */
+@Secured("Synchronized live counters")
+@RoleType("Metrics")
+public class LiveCounters {
+    private static final BikeType[] TYPES = BikeType.values();
+    private static final int UNKNOWN = TYPES.length;
+    private static final int MINUTES = 60;
+
+    private final Set<String> rented = new HashSet<>();
+    private final long[] minuteOf = new long[MINUTES];
+    private final long[][] rentalsByMinute = new long[MINUTES][TYPES.length + 1];
+    private final long[] returnsByMinute = new long[MINUTES];
+    private long rentals;
+    private long returns;
+
+    public LiveCounters() {
+        Arrays.fill(minuteOf, Long.MIN_VALUE);
+    }
+
+    /**
+     * @param bikeId rented bike
+     * @param type its type, or null if unknown
+     * @param time audit timestamp
+     */
+    public synchronized void rented(String bikeId, BikeType type, LocalDateTime time) {
+        rented.add(bikeId);
+        rentals++;
+        int slot = slotFor(minuteOf(time));
+        if (slot >= 0) {
+            rentalsByMinute[slot][type == null ? UNKNOWN : type.ordinal()]++;
+        }
+    }
+
+    /**
+     * @param bikeId returned bike
+     * @param time audit timestamp
+     */
+    public synchronized void returned(String bikeId, LocalDateTime time) {
+        rented.remove(bikeId);
+        returns++;
+        int slot = slotFor(minuteOf(time));
+        if (slot >= 0) {
+            returnsByMinute[slot]++;
+        }
+    }
+
+    /**
+     * Forgets the rentals in progress, e.g. when the log they came from was truncated.
+     */
+    public synchronized void clearActive() {
+        rented.clear();
+    }
+
+    /**
+     * @return the ring slot of a minute, reset if it held an older minute, or -1 if the minute is too old
+     */
+    private int slotFor(long minute) {
+        int slot = (int) Math.floorMod(minute, (long) MINUTES);
+        if (minuteOf[slot] > minute) {
+            return -1;
+        }
+        if (minuteOf[slot] < minute) {
+            minuteOf[slot] = minute;
+            Arrays.fill(rentalsByMinute[slot], 0);
+            returnsByMinute[slot] = 0;
+        }
+        return slot;
+    }
+
+    private static long minuteOf(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    /**
+     * @return bikes rented and not yet returned
+     */
+    public synchronized int getActiveRentals() {
+        return rented.size();
+    }
+
+    public synchronized long getTotalRentals() {
+        return rentals;
+    }
+
+    public synchronized long getTotalReturns() {
+        return returns;
+    }
+
+    /**
+     * @param minute any time within the minute
+     * @param type bike type, or null for bikes of unknown type
+     * @return rentals in that minute, 0 if it is older than an hour
+     */
+    public synchronized long getRentals(LocalDateTime minute, BikeType type) {
+        int slot = slotOf(minuteOf(minute));
+        return slot < 0 ? 0 : rentalsByMinute[slot][type == null ? UNKNOWN : type.ordinal()];
+    }
+
+    /**
+     * @param minute any time within the minute
+     * @return returns in that minute, 0 if it is older than an hour
+     */
+    public synchronized long getReturns(LocalDateTime minute) {
+        int slot = slotOf(minuteOf(minute));
+        return slot < 0 ? 0 : returnsByMinute[slot];
+    }
+
+    private int slotOf(long minute) {
+        int slot = (int) Math.floorMod(minute, (long) MINUTES);
+        return minuteOf[slot] == minute ? slot : -1;
+    }
+
+    /**
+     * @param now current local time; the last full minute is the one before it
+     * @return the counters as JSON, with the last full and the current minute
+     */
+    public synchronized String toJson(LocalDateTime now) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"activeRentals\":").append(rented.size())
+                .append(",\"rentals\":").append(rentals)
+                .append(",\"returns\":").append(returns)
+                .append(",\"lastMinute\":");
+        appendMinute(json, now.minusMinutes(1));
+        json.append(",\"currentMinute\":");
+        appendMinute(json, now);
+        return json.append('}').toString();
+    }
+
+    private void appendMinute(StringBuilder json, LocalDateTime time) {
+        LocalDateTime minute = time.withSecond(0).withNano(0);
+        json.append("{\"minute\":\"").append(minute).append("\",\"rentals\":{");
+        for (BikeType type : TYPES) {
+            json.append('"').append(type).append("\":")
+                    .append(getRentals(minute, type)).append(',');
+        }
+        json.append("\"unknown\":").append(getRentals(minute, null))
+                .append("},\"returns\":").append(getReturns(minute)).append('}');
+    }
+}
@@ -0,0 +1,416 @@
+package com.epicode;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * Append-only binary audit log stored in memory-mapped, size-capped segment files.
+ *
+ * <p>Each segment starts with an 8 byte header (magic, version) followed by records.
+ * A record starts with a tag byte: {@code 0} marks the end of data, {@link #TAG_DICT}
+ * declares an interned string, and tags {@code 1..3}, {@code 5} and {@code 6} are events of fixed layout
+ * (see {@link #tagOf(AuditEventType)}):</p>
+ * <pre>
+ * tag(1) bikeType(1) flags(1) epochNanos(8) bikeRef(4) firstRef(4) secondRef(4)
+ * </pre>
+ * <p>Strings are interned per segment, so every segment can be read on its own and
+ * old segments can be compacted or dropped independently.</p>
+ */
+@Secured("Binary audit storage: shielding and logging applied")
+@RoleType("Repository")
+public class MappedAuditLog implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(MappedAuditLog.class.getName());
+
+    static final int MAGIC = 0x424B414C;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final byte TAG_END = 0;
+    static final byte TAG_DICT = 4;
+    static final int EVENT_SIZE = 23;
+    private static final int NO_REF = -1;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+
+    public static final int FLAG_AVAILABLE = 1;
+    public static final int FLAG_LIGHTS = 2;
+    public static final int FLAG_BASKET = 4;
+    public static final int FLAG_GPS = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Map<String, Integer> refs = new HashMap<>();
+    private int segmentIndex;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private boolean closed = false;
+
+
+    /**
+     * Opens a log in the given directory and starts a fresh segment after any existing ones.
+     * @param directory directory holding the segment files
+     * @param segmentSize maximum size of one segment in bytes
+     * @throws StorageException if the directory or segment cannot be created
+     */
+    @Sanitized
+    public MappedAuditLog(Path directory, int segmentSize) {
+        if (directory == null || segmentSize < HEADER_SIZE + 256) {
+            throw new StorageException("Invalid audit log configuration", null);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+            List<Path> existing = listSegments(directory);
+            segmentIndex = existing.isEmpty() ? 0 : segmentNumber(existing.get(existing.size() - 1)) + 1;
+            openSegment();
+        } catch (IOException e) {
+            logger.severe("Failed to initialize audit log: " + e.getMessage());
+            throw new StorageException("System storage unavailable", e);
+        }
+    }
+
+    /**
+     * Appends one event, rolling over to a new segment when the current one is full.
+     * @param eventType kind of event
+     * @param epochNanos event time in nanoseconds since the epoch
+     * @param bikeId bike ID
+     * @param bikeType bike type, may be null
+     * @param firstSubject catalog (creation) or first name (rental/return), may be null
+     * @param secondSubject model (creation) or last name (rental/return), may be null
+     * @param flags feature flags, see the FLAG constants
+     * @throws StorageException if the log is closed or a segment cannot be written
+     */
+    public synchronized void append(AuditEventType eventType, long epochNanos, String bikeId, BikeType bikeType,
+                                    String firstSubject, String secondSubject, int flags) {
+        if (closed) {
+            throw new StorageException("Audit log is closed", null);
+        }
+        if (requiredBytes(bikeId, firstSubject, secondSubject) > segment.remaining()) {
+            rollSegment();
+            if (requiredBytes(bikeId, firstSubject, secondSubject) > segment.remaining()) {
+                throw new StorageException("Audit record larger than segment size", null);
+            }
+        }
+        int bikeRef = intern(bikeId);
+        int firstRef = intern(firstSubject);
+        int secondRef = intern(secondSubject);
+        writeEvent(segment, eventType, epochNanos, bikeType, flags, bikeRef, firstRef, secondRef);
+    }
+
+    /**
+     * Forces written records of the active segment to disk.
+     */
+    public synchronized void force() {
+        if (!closed) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Merges all closed segments into one, keeping a single declaration per distinct string.
+     * The active segment is left untouched.
+     * @return number of segments that were merged
+     * @throws StorageException if the merged segment cannot be written
+     */
+    @Logged
+    public synchronized int compact() {
+        List<Path> closedSegments = listSegments(directory).stream()
+                .filter(path -> segmentNumber(path) < segmentIndex)
+                .collect(Collectors.toList());
+        if (closedSegments.size() < 2) {
+            return 0;
+        }
+        Path target = closedSegments.get(0);
+        Path temp = directory.resolve("compact.tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            SegmentWriter writer = new SegmentWriter(out);
+            for (Path path : closedSegments) {
+                readSegment(path, writer::write);
+            }
+            writer.finish();
+        } catch (IOException e) {
+            logger.severe("Failed to compact audit log: " + e.getMessage());
+            throw new StorageException("Unable to compact audit log", e);
+        }
+        try {
+            // Replace first so a crash leaves duplicated history rather than lost history
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            for (Path path : closedSegments.subList(1, closedSegments.size())) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to replace compacted segments: " + e.getMessage());
+            throw new StorageException("Unable to compact audit log", e);
+        }
+        logger.info("Compacted " + closedSegments.size() + " audit segments into " + target.getFileName());
+        return closedSegments.size();
+    }
+
+    /**
+     * Trims the active segment to its used size and closes it.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeSegment();
+    }
+
+    /**
+     * Reads every record of every segment in the directory, oldest first.
+     * @param directory directory holding the segment files
+     * @param consumer receives the decoded records
+     * @throws StorageException if a segment cannot be read or is corrupt
+     */
+    public static void read(Path directory, Consumer<AuditRecord> consumer) {
+        for (Path path : listSegments(directory)) {
+            readSegment(path, consumer);
+        }
+    }
+
+    /**
+     * Packs a bike's availability and features into the flag bits used by the binary formats.
+     * @param bike bike to describe
+     * @return flag bits
+     */
+    static int flagsOf(Bike bike) {
+        int flags = 0;
+        if (bike.isAvailable()) flags |= FLAG_AVAILABLE;
+        if (bike.hasLights()) flags |= FLAG_LIGHTS;
+        if (bike.hasBasket()) flags |= FLAG_BASKET;
+        if (bike.hasGPS()) flags |= FLAG_GPS;
+        return flags;
+    }
+
+    static List<Path> listSegments(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(MappedAuditLog::isSegment)
+                    .sorted((a, b) -> Integer.compare(segmentNumber(a), segmentNumber(b)))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            logger.severe("Failed to list audit segments: " + e.getMessage());
+            throw new StorageException("System storage unavailable", e);
+        }
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static int segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void readSegment(Path path, Consumer<AuditRecord> consumer) {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC || data.getInt() != VERSION) {
+                throw new StorageException("Corrupt audit segment: " + path.getFileName(), null);
+            }
+            ArrayList<String> names = new ArrayList<>();
+            AuditEventType[] eventTypes = AuditEventType.values();
+            BikeType[] bikeTypes = BikeType.values();
+            while (data.hasRemaining()) {
+                byte tag = data.get();
+                if (tag == TAG_END) {
+                    break;
+                }
+                if (tag == TAG_DICT) {
+                    data.getInt();
+                    byte[] bytes = new byte[data.getShort() & 0xFFFF];
+                    data.get(bytes);
+                    names.add(new String(bytes, StandardCharsets.UTF_8));
+                    continue;
+                }
+                byte type = data.get();
+                int flags = data.get();
+                long nanos = data.getLong();
+                String bikeId = lookup(names, data.getInt());
+                String first = lookup(names, data.getInt());
+                String second = lookup(names, data.getInt());
+                consumer.accept(new AuditRecord(eventTypes[tag < TAG_DICT ? tag - 1 : tag - 2], nanos, bikeId,
+                        type < 0 ? null : bikeTypes[type], first, second, flags));
+            }
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException e) {
+            logger.severe("Failed to read audit segment " + path.getFileName() + ": " + e.getMessage());
+            throw new StorageException("Unable to read audit log", e);
+        }
+    }
+
+    private static String lookup(List<String> names, int ref) {
+        return ref == NO_REF ? null : names.get(ref);
+    }
+
+    private static void writeEvent(ByteBuffer out, AuditEventType eventType, long epochNanos, BikeType bikeType,
+                                   int flags, int bikeRef, int firstRef, int secondRef) {
+        out.put(tagOf(eventType))
+                .put(bikeType == null ? (byte) -1 : (byte) bikeType.ordinal())
+                .put((byte) flags)
+                .putLong(epochNanos)
+                .putInt(bikeRef)
+                .putInt(firstRef)
+                .putInt(secondRef);
+    }
+
+    /**
+     * Events are tagged by ordinal + 1, skipping {@link #TAG_DICT}, which predates
+     * {@link AuditEventType#EXPIRED}.
+     */
+    static byte tagOf(AuditEventType eventType) {
+        int tag = eventType.ordinal() + 1;
+        return (byte) (tag < TAG_DICT ? tag : tag + 1);
+    }
+
+    private static int dictionarySize(byte[] bytes) {
+        return 1 + 4 + 2 + bytes.length;
+    }
+
+    private int requiredBytes(String... values) {
+        int size = EVENT_SIZE;
+        for (String value : values) {
+            if (value != null && !refs.containsKey(value)) {
+                size += dictionarySize(value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return size;
+    }
+
+    private int intern(String value) {
+        if (value == null) {
+            return NO_REF;
+        }
+        Integer ref = refs.get(value);
+        if (ref != null) {
+            return ref;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new StorageException("Audit value too long", null);
+        }
+        int newRef = refs.size();
+        refs.put(value, newRef);
+        segment.put(TAG_DICT).putInt(newRef).putShort((short) bytes.length).put(bytes);
+        return newRef;
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private void openSegment() throws IOException {
+        channel = FileChannel.open(segmentPath(segmentIndex),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.putInt(MAGIC).putInt(VERSION);
+        refs.clear();
+    }
+
+    private void rollSegment() {
+        closeSegment();
+        segmentIndex++;
+        try {
+            openSegment();
+        } catch (IOException e) {
+            closed = true;
+            logger.severe("Failed to roll audit segment: " + e.getMessage());
+            throw new StorageException("System storage unavailable", e);
+        }
+    }
+
+    private void closeSegment() {
+        try {
+            segment.force();
+            channel.truncate(segment.position());
+            channel.close();
+        } catch (IOException e) {
+            logger.warning("Failed to close audit segment: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams records into a plain (non-mapped) segment file, used by compaction.
+     */
+    private static final class SegmentWriter {
+        private final FileChannel out;
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private final Map<String, Integer> refs = new HashMap<>();
+
+        private SegmentWriter(FileChannel out) {
+            this.out = out;
+            buffer.putInt(MAGIC).putInt(VERSION);
+        }
+
+        private void write(AuditRecord record) {
+            int bikeRef = intern(record.getBikeId());
+            int firstRef = intern(record.getFirstSubject());
+            int secondRef = intern(record.getSecondSubject());
+            ensure(EVENT_SIZE);
+            writeEvent(buffer, record.getEventType(), record.getEpochNanos(), record.getBikeType(),
+                    record.getFlags(), bikeRef, firstRef, secondRef);
+        }
+
+        private int intern(String value) {
+            if (value == null) {
+                return NO_REF;
+            }
+            Integer ref = refs.get(value);
+            if (ref != null) {
+                return ref;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            int newRef = refs.size();
+            refs.put(value, newRef);
+            ensure(dictionarySize(bytes));
+            buffer.put(TAG_DICT).putInt(newRef).putShort((short) bytes.length).put(bytes);
+            return newRef;
+        }
+
+        private void ensure(int size) {
+            if (buffer.remaining() < size) {
+                drain();
+            }
+        }
+
+        private void drain() {
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new StorageException("Unable to write compacted segment", e);
+            }
+            buffer.clear();
+        }
+
+        private void finish() throws IOException {
+            drain();
+            out.force(false);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.epicode;
+
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.logging.Logger;
+
+
+/**
+ * Audit repository that stores compact binary records in a {@link MappedAuditLog}
+ * instead of formatted text lines. Use {@link AuditLogExporter} to turn the
+ * segments back into the text layout for operations.
+ */
+@Secured("Binary audit repository with mapped segment storage")
+@RoleType("Repository")
+public class MappedBikeAuditRepository extends BikeAuditRepository {
+    private static final Logger logger = Logger.getLogger(MappedBikeAuditRepository.class.getName());
+    private final MappedAuditLog log;
+
+
+    /**
+     * @param directoryPath directory for the segment files
+     * @param segmentSize maximum size of one segment in bytes
+     * @throws StorageException if the log cannot be opened
+     */
+    @Sanitized
+    public MappedBikeAuditRepository(String directoryPath, int segmentSize) {
+        this.log = new MappedAuditLog(Paths.get(directoryPath), segmentSize);
+        logger.info("Binary audit log opened in " + directoryPath);
+    }
+
+    @Override
+    public void recordCreation(Bike bike, BikeCatalog catalog) {
+        log.append(AuditEventType.CREATED, now(), bike.getId(), bike.getType(),
+                String.valueOf(catalog), bike.getModel(), MappedAuditLog.flagsOf(bike));
+    }
+
+    @Override
+    public void recordCreations(List<Bike> bikes, BikeCatalog catalog) {
+        long now = now();
+        String catalogName = String.valueOf(catalog);
+        for (Bike bike : bikes) {
+            log.append(AuditEventType.CREATED, now, bike.getId(), bike.getType(),
+                    catalogName, bike.getModel(), MappedAuditLog.flagsOf(bike));
+        }
+    }
+
+    @Override
+    public void recordRental(Bike bike, String firstName, String lastName) {
+        log.append(AuditEventType.RENTED, now(), bike.getId(), bike.getType(), firstName, lastName, 0);
+    }
+
+    @Override
+    public void recordReturn(Bike bike, String firstName, String lastName) {
+        log.append(AuditEventType.RETURNED, now(), bike.getId(), bike.getType(), firstName, lastName, 0);
+    }
+
+    @Override
+    public void recordRemoval(Bike bike, BikeCatalog catalog) {
+        log.append(AuditEventType.REMOVED, now(), bike.getId(), bike.getType(), String.valueOf(catalog), null, 0);
+    }
+
+    @Override
+    public void recordExpirations(List<Reservation> expired) {
+        long now = now();
+        for (Reservation reservation : expired) {
+            log.append(AuditEventType.EXPIRED, now, reservation.getBikeId(), null,
+                    reservation.getFirstName(), reservation.getLastName(), 0);
+        }
+    }
+
+    @Override
+    public void flush() {
+        log.force();
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+
+    /**
+     * Merges closed segments. See {@link MappedAuditLog#compact()}.
+     * @return number of segments merged
+     */
+    public int compact() {
+        return log.compact();
+    }
+
+    private static long now() {
+        Instant instant = Instant.now();
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+}
@@ -0,0 +1,47 @@
+package com.epicode;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Call counters and latency histogram of one instrumented method.
+ */
+@Secured("Allocation-free recording")
+@RoleType("Metrics")
+public class MethodMetrics {
+    private final String name;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * @param name method name as reported, e.g. {@code BikeRentalService.rentingBike}
+     */
+    public MethodMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records one completed call.
+     * @param elapsedNanos call duration
+     * @param failed true if the call threw
+     */
+    public void record(long elapsedNanos, boolean failed) {
+        latencies.record(elapsedNanos);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return point-in-time statistics of this method
+     */
+    public MetricsSnapshot.MethodStats snapshot() {
+        return new MetricsSnapshot.MethodStats(name, latencies.getCount(), errors.sum(), latencies.getMean(),
+                latencies.getValueAtPercentile(50), latencies.getValueAtPercentile(90),
+                latencies.getValueAtPercentile(99), latencies.getMax());
+    }
+}
@@ -0,0 +1,39 @@
+package com.epicode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Holds the {@link MethodMetrics} of every instrumented method.
+ * Lookups happen once, when a proxy is built; the hot path only touches the metrics themselves.
+ */
+@Secured("Thread-safe metrics registry")
+@RoleType("Metrics")
+public class MetricsRegistry {
+    private final Map<String, MethodMetrics> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * @param name method name, e.g. {@code BikeRentalService.rentingBike}
+     * @return the metrics registered under the name, created on first use
+     */
+    public MethodMetrics metricsFor(String name) {
+        return metrics.computeIfAbsent(name, MethodMetrics::new);
+    }
+
+    /**
+     * @return statistics of every registered method that has been called at least once
+     */
+    public MetricsSnapshot snapshot() {
+        List<MetricsSnapshot.MethodStats> stats = new ArrayList<>();
+        for (MethodMetrics method : metrics.values()) {
+            MetricsSnapshot.MethodStats methodStats = method.snapshot();
+            if (methodStats.getCount() > 0) {
+                stats.add(methodStats);
+            }
+        }
+        return new MetricsSnapshot(stats);
+    }
+}
@@ -0,0 +1,142 @@
+package com.epicode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * Immutable export of the metrics of every instrumented method, sorted by name.
+ * Latencies are in nanoseconds.
+ */
+@Secured("Read-only metrics export")
+@RoleType("Metrics")
+public class MetricsSnapshot {
+    private final List<MethodStats> methods;
+
+    public MetricsSnapshot(List<MethodStats> methods) {
+        ArrayList<MethodStats> sorted = new ArrayList<>(methods);
+        sorted.sort(Comparator.comparing(MethodStats::getName));
+        this.methods = Collections.unmodifiableList(sorted);
+    }
+
+    public List<MethodStats> getMethods() {
+        return methods;
+    }
+
+    /**
+     * @param name method name, e.g. {@code BikeRentalService.rentingBike}
+     * @return the statistics of that method, or null if it was never called
+     */
+    public MethodStats get(String name) {
+        for (MethodStats stats : methods) {
+            if (stats.getName().equals(name)) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the snapshot as a JSON array with one object per method
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < methods.size(); i++) {
+            MethodStats stats = methods.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.ROOT,
+                    "{\"method\":\"%s\",\"count\":%d,\"errors\":%d,\"errorRate\":%.4f,"
+                            + "\"meanNanos\":%.1f,\"p50Nanos\":%d,\"p90Nanos\":%d,\"p99Nanos\":%d,\"maxNanos\":%d}",
+                    stats.getName(), stats.getCount(), stats.getErrors(), stats.getErrorRate(),
+                    stats.getMeanNanos(), stats.getP50Nanos(), stats.getP90Nanos(), stats.getP99Nanos(),
+                    stats.getMaxNanos()));
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * @return one line per method with counts, error rate and latency percentiles in microseconds
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (MethodStats stats : methods) {
+            text.append(String.format(Locale.ROOT,
+                    "%s: calls=%d errors=%d (%.2f%%) p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus%n",
+                    stats.getName(), stats.getCount(), stats.getErrors(), stats.getErrorRate() * 100,
+                    stats.getP50Nanos() / 1000.0, stats.getP90Nanos() / 1000.0,
+                    stats.getP99Nanos() / 1000.0, stats.getMaxNanos() / 1000.0));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Statistics of one method.
+     */
+    public static final class MethodStats {
+        private final String name;
+        private final long count;
+        private final long errors;
+        private final double meanNanos;
+        private final long p50Nanos;
+        private final long p90Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+
+        public MethodStats(String name, long count, long errors, double meanNanos,
+                           long p50Nanos, long p90Nanos, long p99Nanos, long maxNanos) {
+            this.name = name;
+            this.count = count;
+            this.errors = errors;
+            this.meanNanos = meanNanos;
+            this.p50Nanos = p50Nanos;
+            this.p90Nanos = p90Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return fraction of calls that threw, between 0 and 1
+         */
+        public double getErrorRate() {
+            return count == 0 ? 0 : (double) errors / count;
+        }
+
+        public double getMeanNanos() {
+            return meanNanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP90Nanos() {
+            return p90Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+    }
+}
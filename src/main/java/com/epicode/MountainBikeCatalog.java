@@ -13,6 +13,10 @@ public class MountainBikeCatalog extends BikeCatalog {
         super(bikes);
     }
 
+    public MountainBikeCatalog(FleetStore store) {
+        super(store);
+    }
+
     @Override
     public String toString() {
         return "Mountain Bike Catalog";
@@ -28,7 +28,7 @@ public class MountainBikeFactory extends BikeFactory {
             return new MountainBike(bikeBuilder);
         } catch (RuntimeException e) {
             logger.severe("Failed to create mountain bike: " + e.getMessage());
-            throw new RentalException("Unable to create mountain bike");
+            throw new RentalException("Unable to create mountain bike", e);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.epicode;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Catalog storage holding bike objects in a {@link VersionedList}, with a {@link BikeIndex} for queries.
+ * Listing and iterating work on an immutable snapshot obtained without copying.
+ */
+final class ObjectCatalogStorage implements CatalogStorage {
+    private final VersionedList<Bike> bikes;
+    private final BikeIndex index = new BikeIndex();
+
+    ObjectCatalogStorage(Collection<Bike> initial) {
+        this.bikes = new VersionedList<>(initial);
+        for (Bike bike : initial) {
+            index.add(bike);
+        }
+    }
+
+    @Override
+    public void add(Bike bike) {
+        bikes.add(bike);
+        index.add(bike);
+    }
+
+    @Override
+    public void addAll(Collection<Bike> added) {
+        bikes.addAll(added);
+        for (Bike bike : added) {
+            index.add(bike);
+        }
+    }
+
+    @Override
+    public boolean remove(Bike bike) {
+        if (!bikes.remove(bike)) {
+            return false;
+        }
+        index.remove(bike);
+        return true;
+    }
+
+    @Override
+    public Bike get(int position) {
+        return bikes.snapshot().get(position);
+    }
+
+    @Override
+    public int size() {
+        return bikes.snapshot().size();
+    }
+
+    @Override
+    public List<Bike> snapshot() {
+        return bikes.snapshot();
+    }
+
+    @Override
+    public Iterator<Bike> iterator() {
+        return new BikeIterator(bikes.snapshot());
+    }
+
+    @Override
+    public List<Bike> find(BikeQuery query) {
+        return index.find(query);
+    }
+
+    @Override
+    public int count(BikeQuery query) {
+        return index.count(query);
+    }
+
+    @Override
+    public boolean isBackedBy(FleetStore store) {
+        return store == null;
+    }
+}
@@ -0,0 +1,36 @@
+package com.epicode;
+
+/**
+ * Summary of a state recovery run.
+ */
+@Secured("Read-only recovery summary")
+@RoleType("Recovery Result")
+public class RecoveryResult {
+    private final boolean fromSnapshot;
+    private final int bikesRestored;
+    private final long eventsReplayed;
+    private final long eventsSkipped;
+    private final long elapsedNanos;
+
+    public RecoveryResult(boolean fromSnapshot, int bikesRestored, long eventsReplayed,
+                          long eventsSkipped, long elapsedNanos) {
+        this.fromSnapshot = fromSnapshot;
+        this.bikesRestored = bikesRestored;
+        this.eventsReplayed = eventsReplayed;
+        this.eventsSkipped = eventsSkipped;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public boolean isFromSnapshot() { return fromSnapshot; }
+    public int getBikesRestored() { return bikesRestored; }
+    public long getEventsReplayed() { return eventsReplayed; }
+    public long getEventsSkipped() { return eventsSkipped; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    @Override
+    public String toString() {
+        return "Recovered " + bikesRestored + " bikes from " + (fromSnapshot ? "snapshot + " : "")
+                + eventsReplayed + " events (" + eventsSkipped + " skipped) in "
+                + (elapsedNanos / 1_000_000) + " ms";
+    }
+}
@@ -1,7 +1,15 @@
 package com.epicode;
 
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 /**
  * Main application class to interact with users for bike rentals and returns.
@@ -10,10 +18,13 @@ import java.util.Scanner;
 @Secured("RentalApp shielding, input validation, and logging verified")
 @RoleType("Application")
 public class RentalApp {
-    private final BikeRentalService bikeRentalService;
+    private static final Logger logger = Logger.getLogger(RentalApp.class.getName());
+    private static final int LEDGER_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private final RentalService bikeRentalService;
     private final BikeInventory bikeInventory;
 
-    public RentalApp(BikeRentalService bikeRentalService, BikeInventory bikeInventory) {
+    public RentalApp(RentalService bikeRentalService, BikeInventory bikeInventory) {
         this.bikeRentalService = bikeRentalService;
         this.bikeInventory = bikeInventory;
     }
@@ -150,7 +161,7 @@ public class RentalApp {
         String safeFirstName = readValidName("Enter your first name: ", scanner);
         String safeLastName = readValidName("Enter your last name: ", scanner);
 
-        ArrayList<BikeCatalog> catalogs = bikeInventory.getCatalogs();
+        List<BikeCatalog> catalogs = bikeInventory.getCatalogs();
 
         if (catalogs.isEmpty()) {
             System.out.println("No catalogs available.");
@@ -169,7 +180,7 @@ public class RentalApp {
                     int catalogChoice = readSafeInteger(scanner, catalogs.size() - 1);
                     chosenCatalog = catalogs.get(catalogChoice);
 
-                    if (chosenCatalog.getBikes().isEmpty()) {
+                    if (chosenCatalog.getSize() == 0) {
                         System.out.println("Selected catalog has no bikes.");
                         if (askGoBackToMenu(scanner)) return;
                         chosenCatalog = null;
@@ -181,7 +192,7 @@ public class RentalApp {
                 }
             }
 
-            ArrayList<Bike> bikes = chosenCatalog.getBikes();
+            List<Bike> bikes = chosenCatalog.getBikes();
 
             Bike chosenBike = null;
 
@@ -263,7 +274,10 @@ public class RentalApp {
     }
 
     public static void main(String[] args) {
-        BikeRentalService bikeRentalService = new BikeRentalService();
+        // Every rental and return must reach the ledger before it counts; the audit logs copy it
+        RentalLedger ledger = new RentalLedger(Paths.get("data/ledger"), LEDGER_SEGMENT_SIZE);
+        BikeRentalService bikeRentalService = new BikeRentalService(new BikeAuditRepository("data/bikes.log"),
+                new BikeAuditRepository("data/rentals.log"), new BikeRentalService.Options().setLedger(ledger));
 
         ArrayList<BikeCatalog> catalogs = new ArrayList<>();
         BikeInventory bikeInventory = new BikeInventory(catalogs);
@@ -283,6 +297,19 @@ public class RentalApp {
         bikeInventory.addCatalog(foldingBikeCatalog);
 
 
+        // Rebuild bikes and availability from the ledger before seeding anything. A first run
+        // with an empty ledger starts from the audit logs and records what they held in the ledger
+        RentalStateRecovery recovery = new RentalStateRecovery(
+                Paths.get("data/bikes.log"), Paths.get("data/rentals.log"), Paths.get("data/state.snapshot"));
+        if (ledger.size() > 0) {
+            RentalStateRecovery.recoverFromBinary(bikeRentalService, bikeInventory, Paths.get("data/ledger"));
+        } else {
+            recovery.recover(bikeRentalService, bikeInventory);
+            for (BikeCatalog catalog : bikeRentalService.getBikeInventory().getCatalogs()) {
+                ledger.recordCreations(catalog.getBikes(), catalog);
+            }
+        }
+
         BikeBuilder bikeBuilder1 = new BikeBuilder("123abc", "GT3", true)
                 .setLights(true)
                 .setGPS(true);
@@ -298,12 +325,72 @@ public class RentalApp {
         BikeBuilder bikeBuilder4 = new BikeBuilder("1011jkl", "ZV10", false);
 
 
-        bikeRentalService.bikeCreation(bikeBuilder1, mountainBikeCatalog, BikeType.mountain);
-        bikeRentalService.bikeCreation(bikeBuilder2, electricBikeCatalog, BikeType.electric);
-        bikeRentalService.bikeCreation(bikeBuilder3, electricBikeCatalog, BikeType.electric);
-        bikeRentalService.bikeCreation(bikeBuilder4, roadBikeCatalog, BikeType.road);
+        seedBike(bikeRentalService, bikeBuilder1, mountainBikeCatalog, BikeType.mountain);
+        seedBike(bikeRentalService, bikeBuilder2, electricBikeCatalog, BikeType.electric);
+        seedBike(bikeRentalService, bikeBuilder3, electricBikeCatalog, BikeType.electric);
+        seedBike(bikeRentalService, bikeBuilder4, roadBikeCatalog, BikeType.road);
+
+        ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "state-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        recovery.scheduleSnapshots(bikeRentalService, snapshots, 5, TimeUnit.MINUTES);
+        bikeRentalService.scheduleReservationExpiry(snapshots);
+
+        // Time every @Logged service method and report latency percentiles periodically
+        MetricsRegistry metrics = new MetricsRegistry();
+        RentalService instrumentedService = Instrumentation.instrument(RentalService.class, bikeRentalService, metrics);
+        snapshots.scheduleAtFixedRate(() -> logger.info("Service metrics:\n" + metrics.snapshot()),
+                1, 1, TimeUnit.MINUTES);
+
+        if (args.length > 0 && args[0].equals("--http")) {
+            // Live counters follow the audit logs, so a dashboard poll never rescans them
+            LiveCounters live = new LiveCounters();
+            AuditLogTailer tailer = new AuditLogTailer(
+                    Paths.get("data/bikes.log"), Paths.get("data/rentals.log"), live);
+            tailer.scheduleTailing(snapshots, 1, TimeUnit.SECONDS);
+            serveHttp(instrumentedService, metrics, live, args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+            tailer.close();
+        } else {
+            RentalApp app = new RentalApp(instrumentedService, bikeInventory);
+            app.start();
+        }
+        recovery.writeSnapshot(bikeRentalService);
+        snapshots.shutdown();
+        ledger.close();
+        logger.info("Service metrics:\n" + metrics.snapshot());
+    }
+
+    /**
+     * Serves the HTTP API instead of the console menu until the process is told to stop.
+     */
+    private static void serveHttp(RentalService service, MetricsRegistry metrics, LiveCounters live, int port) {
+        RentalHttpServer server = new RentalHttpServer(service, metrics, live, new InetSocketAddress(port));
+        CountDownLatch stopped = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopped.countDown();
+            try {
+                // Let main write the final snapshot before the JVM exits
+                finished.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "http-shutdown"));
+        server.start();
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.close();
+        finished.countDown();
+    }
 
-        RentalApp app = new RentalApp(bikeRentalService, bikeInventory);
-        app.start();
+    private static void seedBike(BikeRentalService service, BikeBuilder builder, BikeCatalog catalog, BikeType type) {
+        if (service.getBikeById(builder.getId()) == null) {
+            service.bikeCreation(builder, catalog, type);
+        }
     }
 }
\ No newline at end of file
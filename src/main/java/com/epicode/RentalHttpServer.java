@@ -0,0 +1,526 @@
+package com.epicode;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+
+/**
+ * Embedded HTTP front end of a {@link RentalService}, answering in JSON.
+ *
+ * <pre>
+ * GET  /bikes/{id}                      one bike
+ * GET  /bikes?type=&amp;available=&amp;lights=&amp;basket=&amp;gps=&amp;lowBattery=&amp;limit=   bikes matching a {@link BikeQuery}
+ * POST /bikes/{id}/rent                 rents the bike, with firstName and lastName
+ * POST /bikes/{id}/return               returns the bike, with firstName, lastName and an optional station
+ * POST /bikes/{id}/reserve              holds the bike for its customer, with firstName and lastName
+ * POST /bikes/{id}/cancel               ends the customer's hold, with firstName and lastName
+ * GET  /nearby?lat=&amp;lon=&amp;radius=&amp;type=&amp;lights=&amp;basket=&amp;gps=&amp;lowBattery=&amp;limit=   available bikes
+ *                                       closest to a point, within radius meters if given
+ * GET  /customers?firstName=&amp;lastName=   the customer's ID, counters and bikes out
+ * GET  /catalogs                        catalogs with their size and available bikes
+ * GET  /catalogs/{index}/bikes?offset=&amp;limit=   bikes of one catalog
+ * GET  /metrics                         latency statistics, if a {@link MetricsRegistry} was given
+ * GET  /live                            live rental counters, if {@link LiveCounters} were given
+ * </pre>
+ *
+ * <p>Rent and return take an optional requestId, as a parameter or an {@code Idempotency-Key}
+ * header: a retry with the same ID is answered with the first attempt's outcome. IDs of up to
+ * 128 letters, digits, '-' and '_' are used as sent; any other ID is rejected.</p>
+ *
+ * <p>Parameters come from the query string or a form-encoded body. IDs and names go through
+ * {@link InputValidator}. Errors are answered as {@code {"error":"..."}} with 400 for invalid
+ * input, 404 for unknown paths, bikes, catalogs, stations or customers, 405 with an {@code Allow}
+ * header for a method the path does not take, 409 for rentals the bike's state does not allow
+ * and 500 for anything else.</p>
+ *
+ * <p>Each request runs on its own virtual thread when the JDK has them (Java 21+), so
+ * requests blocked on the audit log cost no platform thread. Older JDKs get a fixed pool.</p>
+ */
+@Secured("HTTP input validation, shielding and logging applied")
+@RoleType("Application")
+public class RentalHttpServer implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(RentalHttpServer.class.getName());
+    private static final int MAX_BODY_BYTES = 4096;
+    private static final int DEFAULT_PAGE = 100;
+    private static final Set<String> BIKE_ACTIONS = Set.of("rent", "return", "reserve", "cancel");
+    private static final int MAX_PAGE = 10_000;
+    private static final int DEFAULT_NEARBY = 10;
+
+    private final RentalService rentalService;
+    private final MetricsRegistry metrics;
+    private final LiveCounters live;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+
+    /**
+     * Binds the server; requests are served once {@link #start()} is called.
+     * @param rentalService service behind the API
+     * @param metrics registry served under {@code /metrics}, or null
+     * @param address address to listen on; port 0 picks a free port
+     * @throws RentalException if the service or address is null
+     * @throws StorageException if the address cannot be bound
+     */
+    public RentalHttpServer(RentalService rentalService, MetricsRegistry metrics, InetSocketAddress address) {
+        this(rentalService, metrics, null, address);
+    }
+
+    /**
+     * Binds the server; requests are served once {@link #start()} is called.
+     * @param rentalService service behind the API
+     * @param metrics registry served under {@code /metrics}, or null
+     * @param live counters served under {@code /live}, or null
+     * @param address address to listen on; port 0 picks a free port
+     * @throws RentalException if the service or address is null
+     * @throws StorageException if the address cannot be bound
+     */
+    @Sanitized
+    public RentalHttpServer(RentalService rentalService, MetricsRegistry metrics, LiveCounters live,
+                            InetSocketAddress address) {
+        if (rentalService == null || address == null) {
+            throw new RentalException("Rental service and address cannot be null");
+        }
+        this.rentalService = rentalService;
+        this.metrics = metrics;
+        this.live = live;
+        try {
+            this.server = HttpServer.create(address, 4096);
+        } catch (IOException e) {
+            logger.severe("Failed to bind HTTP server to " + address + ": " + e.getMessage());
+            throw new StorageException("Unable to bind HTTP server", e);
+        }
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/bikes", exchange -> handle(exchange, this::bikes));
+        server.createContext("/nearby", exchange -> handle(exchange, this::nearby));
+        server.createContext("/customers", exchange -> handle(exchange, this::customers));
+        server.createContext("/catalogs", exchange -> handle(exchange, this::catalogs));
+        server.createContext("/metrics", exchange -> handle(exchange, this::metrics));
+        server.createContext("/live", exchange -> handle(exchange, this::live));
+    }
+
+    public void start() {
+        server.start();
+        logger.info("HTTP API listening on port " + getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting connections, gives running requests a second to finish and stops the threads.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("HTTP API stopped");
+    }
+
+    /**
+     * @return one virtual thread per task where supported, a fixed pool of platform threads otherwise
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Math.max(8, Runtime.getRuntime().availableProcessors() * 8);
+            logger.info("Virtual threads unavailable, serving HTTP requests with " + threads + " threads");
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory factory = runnable -> {
+                Thread thread = new Thread(runnable, "rental-http-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newFixedThreadPool(threads, factory);
+        }
+    }
+
+    /**
+     * The path names no resource of the server; answered with 404.
+     */
+    private static final class UnknownRouteException extends RuntimeException {
+        private UnknownRouteException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The resource exists but does not take the request's method; answered with 405
+     * and an {@code Allow} header.
+     */
+    private static final class MethodNotAllowedException extends RuntimeException {
+        private final String allowed;
+
+        private MethodNotAllowedException(String method, String allowed) {
+            super("Method " + method + " not allowed, use " + allowed);
+            this.allowed = allowed;
+        }
+    }
+
+    private interface Route {
+        /**
+         * @param segments path segments after the context name
+         * @return JSON body of a 200 response
+         */
+        String answer(String method, String[] segments, Map<String, String> params);
+    }
+
+    private void handle(HttpExchange exchange, Route route) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            String method = exchange.getRequestMethod();
+            Map<String, String> params = new HashMap<>();
+            parseParams(exchange.getRequestURI().getRawQuery(), params);
+            if (method.equals("POST")) {
+                parseParams(readBody(exchange.getRequestBody()), params);
+                String requestId = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+                if (requestId != null) {
+                    params.putIfAbsent("requestId", requestId);
+                }
+            }
+            String path = exchange.getRequestURI().getRawPath();
+            String context = exchange.getHttpContext().getPath();
+            if (path.length() > context.length() && path.charAt(context.length()) != '/') {
+                throw new UnknownRouteException("Unknown resource");
+            }
+            String rest = path.length() > context.length() ? path.substring(context.length() + 1) : "";
+            body = route.answer(method, rest.isEmpty() ? new String[0] : rest.split("/"), params);
+        } catch (UnknownRouteException | BikeNotFoundException | CatalogNotFoundException
+                 | StationNotFoundException | CustomerNotFoundException e) {
+            status = 404;
+            body = error(e.getMessage());
+        } catch (InputValidationException | InvalidSelectionException | InvalidBikeTypeException e) {
+            status = 400;
+            body = error(e.getMessage());
+        } catch (MethodNotAllowedException e) {
+            status = 405;
+            body = error(e.getMessage());
+            exchange.getResponseHeaders().set("Allow", e.allowed);
+        } catch (RentalException e) {
+            status = 409;
+            body = error(e.getMessage());
+        } catch (RuntimeException e) {
+            logger.severe("Unexpected error serving " + exchange.getRequestURI() + ": " + e.getMessage());
+            status = 500;
+            body = error("Internal error");
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private String bikes(String method, String[] segments, Map<String, String> params) {
+        if (segments.length == 0) {
+            requireMethod(method, "GET");
+            return bikesJson(rentalService.findBikes(queryOf(params)));
+        }
+        String id = InputValidator.sanitizeId(decode(segments[0]));
+        if (segments.length == 1) {
+            requireMethod(method, "GET");
+            return bikeJson(find(id));
+        }
+        if (segments.length == 2) {
+            if (!BIKE_ACTIONS.contains(segments[1])) {
+                throw new UnknownRouteException("Unknown resource");
+            }
+            requireMethod(method, "POST");
+            String firstName = InputValidator.sanitizeName(params.get("firstName"));
+            String lastName = InputValidator.sanitizeName(params.get("lastName"));
+            String requestId = params.get("requestId");
+            if (requestId != null) {
+                // Validated, never rewritten: two different keys must stay two different requests
+                InputValidator.validateRequestId(requestId);
+            }
+            switch (segments[1]) {
+                case "rent" -> {
+                    if (requestId == null) {
+                        rentalService.rentingBike(id, firstName, lastName);
+                    } else {
+                        rentalService.rentingBikeOnce(requestId, id, firstName, lastName);
+                    }
+                }
+                case "return" -> {
+                    String station = params.get("station");
+                    String stationId = station == null || station.isBlank() ? null : InputValidator.sanitizeId(station);
+                    if (requestId == null) {
+                        rentalService.returningBike(id, firstName, lastName, stationId);
+                    } else {
+                        rentalService.returningBikeOnce(requestId, id, firstName, lastName, stationId);
+                    }
+                }
+                case "reserve" -> {
+                    Reservation reservation = rentalService.reservingBike(id, firstName, lastName);
+                    return "{\"bike\":" + bikeJson(find(id))
+                            + ",\"expiresAt\":" + quote(reservation.getExpiresAt().toString()) + "}";
+                }
+                case "cancel" -> rentalService.cancellingReservation(id, firstName, lastName);
+                default -> throw new UnknownRouteException("Unknown resource");
+            }
+            return bikeJson(find(id));
+        }
+        throw new UnknownRouteException("Unknown resource");
+    }
+
+    private String nearby(String method, String[] segments, Map<String, String> params) {
+        if (segments.length > 0) {
+            throw new UnknownRouteException("Unknown resource");
+        }
+        requireMethod(method, "GET");
+        double latitude = doubleParam(params, "lat");
+        double longitude = doubleParam(params, "lon");
+        BikeQuery query = queryOf(params);
+        if (!params.containsKey("limit")) {
+            query.setLimit(DEFAULT_NEARBY);
+        }
+        List<StationIndex.NearbyBike> found = params.containsKey("radius")
+                ? rentalService.findBikesWithin(latitude, longitude, doubleParam(params, "radius"), query)
+                : rentalService.findNearestBikes(latitude, longitude, query);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < found.size(); i++) {
+            StationIndex.NearbyBike nearby = found.get(i);
+            appendBike(json.append(i > 0 ? "," : "").append("{\"bike\":"), nearby.getBike())
+                    .append(",\"station\":").append(quote(nearby.getStation().getId()))
+                    .append(",\"distance\":").append(Math.round(nearby.getDistanceMeters())).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private String customers(String method, String[] segments, Map<String, String> params) {
+        if (segments.length > 0) {
+            throw new UnknownRouteException("Unknown resource");
+        }
+        requireMethod(method, "GET");
+        String firstName = InputValidator.sanitizeName(params.get("firstName"));
+        String lastName = InputValidator.sanitizeName(params.get("lastName"));
+        Customer customer = rentalService.findCustomer(firstName, lastName);
+        if (customer == null) {
+            throw new CustomerNotFoundException("Customer not found: " + firstName + " " + lastName);
+        }
+        return new StringBuilder("{\"id\":").append(customer.getId())
+                .append(",\"firstName\":").append(quote(customer.getFirstName()))
+                .append(",\"lastName\":").append(quote(customer.getLastName()))
+                .append(",\"rentals\":").append(customer.getTotalRentals())
+                .append(",\"returns\":").append(customer.getTotalReturns())
+                .append(",\"active\":").append(bikesJson(rentalService.getActiveRentals(firstName, lastName)))
+                .append('}').toString();
+    }
+
+    private String catalogs(String method, String[] segments, Map<String, String> params) {
+        if (segments.length != 0 && (segments.length != 2 || !segments[1].equals("bikes"))) {
+            throw new UnknownRouteException("Unknown resource");
+        }
+        requireMethod(method, "GET");
+        List<BikeCatalog> catalogs = rentalService.getBikeInventory().getCatalogs();
+        if (segments.length == 0) {
+            BikeQuery available = new BikeQuery().setAvailable(true);
+            StringBuilder json = new StringBuilder("[");
+            for (int i = 0; i < catalogs.size(); i++) {
+                BikeCatalog catalog = catalogs.get(i);
+                json.append(i > 0 ? "," : "").append("{\"index\":").append(i)
+                        .append(",\"name\":").append(quote(catalog.toString()))
+                        .append(",\"size\":").append(catalog.getSize())
+                        .append(",\"available\":").append(catalog.countBikes(available)).append('}');
+            }
+            return json.append(']').toString();
+        }
+        int index = intParam(segments[0], -1);
+        if (index < 0 || index >= catalogs.size()) {
+            throw new CatalogNotFoundException("Catalog not found: " + segments[0]);
+        }
+        int offset = intParam(params.get("offset"), 0);
+        int limit = Math.min(MAX_PAGE, intParam(params.get("limit"), DEFAULT_PAGE));
+        StringBuilder json = new StringBuilder("[");
+        Iterator<Bike> bikes = catalogs.get(index).createIterator();
+        for (int skipped = 0; skipped < offset && bikes.hasNext(); skipped++) {
+            bikes.next();
+        }
+        for (int written = 0; written < limit && bikes.hasNext(); written++) {
+            appendBike(json.append(written > 0 ? "," : ""), bikes.next());
+        }
+        return json.append(']').toString();
+    }
+
+    private String metrics(String method, String[] segments, Map<String, String> params) {
+        if (metrics == null || segments.length > 0) {
+            throw new UnknownRouteException("Metrics are not enabled");
+        }
+        requireMethod(method, "GET");
+        return metrics.snapshot().toJson();
+    }
+
+    private String live(String method, String[] segments, Map<String, String> params) {
+        if (live == null || segments.length > 0) {
+            throw new UnknownRouteException("Live counters are not enabled");
+        }
+        requireMethod(method, "GET");
+        return live.toJson(LocalDateTime.now());
+    }
+
+    private Bike find(String id) {
+        Bike bike = rentalService.getBikeById(id);
+        if (bike == null) {
+            throw new BikeNotFoundException("Bike ID not found: " + id);
+        }
+        return bike;
+    }
+
+    private static BikeQuery queryOf(Map<String, String> params) {
+        BikeQuery query = new BikeQuery().setLimit(Math.min(MAX_PAGE, intParam(params.get("limit"), DEFAULT_PAGE)));
+        String type = params.get("type");
+        if (type != null) {
+            try {
+                query.setType(BikeType.valueOf(type.trim().toLowerCase()));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidBikeTypeException("Unknown bike type: " + type);
+            }
+        }
+        if (params.containsKey("available")) query.setAvailable(booleanParam(params, "available"));
+        if (params.containsKey("lights")) query.setLights(booleanParam(params, "lights"));
+        if (params.containsKey("basket")) query.setBasket(booleanParam(params, "basket"));
+        if (params.containsKey("gps")) query.setGPS(booleanParam(params, "gps"));
+        if (params.containsKey("lowBattery")) query.setLowBattery(booleanParam(params, "lowBattery"));
+        return query;
+    }
+
+    private static boolean booleanParam(Map<String, String> params, String name) {
+        String value = params.get(name).trim();
+        if (value.equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new InputValidationException(name + " must be true or false");
+    }
+
+    private static double doubleParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) {
+            throw new InputValidationException(name + " is required");
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new InputValidationException("Expected a number for " + name + " but found " + value);
+        }
+    }
+
+    private static int intParam(String value, int defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed < 0) {
+                throw new InputValidationException("Expected a non-negative number but found " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new InputValidationException("Expected a number but found " + value);
+        }
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!method.equals(expected)) {
+            throw new MethodNotAllowedException(method, expected);
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new InputValidationException("Request body is too large");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void parseParams(String encoded, Map<String, String> params) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+            }
+        }
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InputValidationException("Malformed URL encoding");
+        }
+    }
+
+    private static String bikesJson(List<Bike> bikes) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < bikes.size(); i++) {
+            appendBike(json.append(i > 0 ? "," : ""), bikes.get(i));
+        }
+        return json.append(']').toString();
+    }
+
+    private static String bikeJson(Bike bike) {
+        return appendBike(new StringBuilder(), bike).toString();
+    }
+
+    private static StringBuilder appendBike(StringBuilder json, Bike bike) {
+        return json.append("{\"id\":").append(quote(bike.getId()))
+                .append(",\"type\":\"").append(bike.getType()).append('"')
+                .append(",\"model\":").append(quote(bike.getModel()))
+                .append(",\"available\":").append(bike.isAvailable())
+                .append(",\"lights\":").append(bike.hasLights())
+                .append(",\"basket\":").append(bike.hasBasket())
+                .append(",\"gps\":").append(bike.hasGPS()).append('}');
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message == null ? "Unknown error" : message) + "}";
+    }
+
+    private static String quote(String value) {
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+}
@@ -0,0 +1,302 @@
+package com.epicode;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+
+/**
+ * Append-only ledger of fleet events (bike created, rented, returned, removed): the record a
+ * rent or return must reach before it counts. The service flips a bike's availability
+ * and appends the event in one step (see {@link #commit}), and flips it back if the
+ * append fails, so the flags never hold a change the ledger does not, and the ledger
+ * orders each bike's events as its flag changed.
+ *
+ * <p>Events are kept in memory in fixed-size chunks and, for a journaled ledger, first
+ * written to a {@link MappedAuditLog}; an event is only published once its journal write
+ * succeeded. Appends are serialized and hand each event to the subscribed
+ * {@link LedgerProjection}s in order; reads take no lock.</p>
+ *
+ * <p>{@link #rebuild(Supplier, int)} builds a fresh projection from the ledger on several
+ * threads, splitting events by bike in one pass over the ledger. A journaled ledger reopened
+ * on startup holds the full history, and {@link RentalStateRecovery#recoverFromBinary}
+ * restores the service from the same directory.</p>
+ */
+@Secured("Append-only ledger with serialized appends")
+@RoleType("Ledger")
+public class RentalLedger implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(RentalLedger.class.getName());
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final MappedAuditLog journal;
+    private final List<LedgerProjection<?>> projections = new CopyOnWriteArrayList<>();
+    private volatile LedgerEvent[][] chunks = new LedgerEvent[16][];
+    private volatile int size = 0;
+
+
+    /**
+     * Creates a ledger kept in memory only.
+     */
+    public RentalLedger() {
+        this.journal = null;
+    }
+
+    /**
+     * Opens a journaled ledger: loads the events already in the directory, then appends after them.
+     * @param directory journal segment directory
+     * @param segmentSize maximum size of one segment in bytes
+     * @throws StorageException if the journal cannot be read or opened
+     */
+    @Sanitized
+    public RentalLedger(Path directory, int segmentSize) {
+        if (directory == null) {
+            throw new StorageException("Ledger directory cannot be null", null);
+        }
+        if (Files.isDirectory(directory)) {
+            MappedAuditLog.read(directory, record -> store(new LedgerEvent(size, record.getEventType(),
+                    record.getEpochNanos(), record.getBikeId(), record.getBikeType(), record.getFirstSubject(),
+                    record.getSecondSubject(), record.getFlags())));
+        }
+        this.journal = new MappedAuditLog(directory, segmentSize);
+        logger.info("Ledger opened in " + directory + " with " + size + " events");
+    }
+
+    public void recordCreation(Bike bike, BikeCatalog catalog) {
+        append(AuditEventType.CREATED, epochNanos(), bike.getId(), bike.getType(),
+                String.valueOf(catalog), bike.getModel(), MappedAuditLog.flagsOf(bike));
+    }
+
+    /**
+     * Records the creation of several bikes. The events are appended together, with no other event between them.
+     * @param bikes created bikes
+     * @param catalog catalog they were placed in
+     * @throws StorageException if the journal cannot be written; events written before the failure are kept
+     */
+    public synchronized void recordCreations(List<Bike> bikes, BikeCatalog catalog) {
+        long now = epochNanos();
+        String catalogName = String.valueOf(catalog);
+        for (Bike bike : bikes) {
+            append(AuditEventType.CREATED, now, bike.getId(), bike.getType(),
+                    catalogName, bike.getModel(), MappedAuditLog.flagsOf(bike));
+        }
+    }
+
+    /**
+     * Records that a bike left the fleet; projections drop it.
+     * @param bike removed bike
+     * @param catalog catalog it was taken out of
+     * @throws StorageException if the journal cannot be written
+     */
+    public void recordRemoval(Bike bike, BikeCatalog catalog) {
+        append(AuditEventType.REMOVED, epochNanos(), bike.getId(), bike.getType(), String.valueOf(catalog), null, 0);
+    }
+
+    public void recordRental(Bike bike, String firstName, String lastName) {
+        append(AuditEventType.RENTED, epochNanos(), bike.getId(), bike.getType(), firstName, lastName, 0);
+    }
+
+    public void recordReturn(Bike bike, String firstName, String lastName) {
+        append(AuditEventType.RETURNED, epochNanos(), bike.getId(), bike.getType(), firstName, lastName, 0);
+    }
+
+    /**
+     * Applies a state change and records its event as one step: no other event is appended
+     * in between, and if the event cannot be journaled the change is undone.
+     * @param eventType RENTED or RETURNED
+     * @param bike bike whose state changes
+     * @param firstName customer's first name
+     * @param lastName customer's last name
+     * @param change applies the change; an exception thrown here vetoes the event
+     * @param undo reverts the change
+     * @throws StorageException if the journal cannot be written
+     */
+    synchronized void commit(AuditEventType eventType, Bike bike, String firstName, String lastName,
+                             Runnable change, Runnable undo) {
+        change.run();
+        try {
+            append(eventType, epochNanos(), bike.getId(), bike.getType(), firstName, lastName, 0);
+        } catch (RuntimeException e) {
+            undo.run();
+            throw e;
+        }
+    }
+
+    /**
+     * Journals, publishes and projects one event.
+     * @throws StorageException if the journal cannot be written; nothing is published then
+     */
+    private synchronized void append(AuditEventType eventType, long epochNanos, String bikeId, BikeType bikeType,
+                                     String firstSubject, String secondSubject, int flags) {
+        if (journal != null) {
+            journal.append(eventType, epochNanos, bikeId, bikeType, firstSubject, secondSubject, flags);
+        }
+        LedgerEvent event = new LedgerEvent(size, eventType, epochNanos, bikeId, bikeType,
+                firstSubject, secondSubject, flags);
+        store(event);
+        for (LedgerProjection<?> projection : projections) {
+            project(projection, event);
+        }
+    }
+
+    private void store(LedgerEvent event) {
+        int sequence = event.getSequence();
+        LedgerEvent[][] current = chunks;
+        int chunk = sequence >>> CHUNK_BITS;
+        if (chunk >= current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        if (current[chunk] == null) {
+            current[chunk] = new LedgerEvent[CHUNK_SIZE];
+        }
+        current[chunk][sequence & (CHUNK_SIZE - 1)] = event;
+        chunks = current;
+        // Publishing the size last makes the event and its chunk visible to readers
+        size = sequence + 1;
+    }
+
+    private static void project(LedgerProjection<?> projection, LedgerEvent event) {
+        try {
+            projection.apply(event);
+        } catch (RuntimeException e) {
+            // The event is recorded; a broken projection can be rebuilt from the ledger
+            logger.severe("Projection " + projection.getClass().getSimpleName() + " failed on " + event
+                    + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return number of events recorded
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param sequence event position
+     * @return the event
+     * @throws InvalidSelectionException if no event has this sequence number
+     */
+    public LedgerEvent get(int sequence) {
+        int published = size;
+        if (sequence < 0 || sequence >= published) {
+            throw new InvalidSelectionException("No ledger event #" + sequence + " (size " + published + ")");
+        }
+        return chunks[sequence >>> CHUNK_BITS][sequence & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Subscribes a projection that has seen the events before {@code fromSequence}: it first
+     * receives the rest of the ledger, then every new event.
+     * @param projection projection to keep up to date
+     * @param fromSequence first event the projection has not seen
+     * @return the projection
+     * @throws InvalidSelectionException if fromSequence lies outside the ledger
+     */
+    public synchronized <P extends LedgerProjection<P>> P subscribe(P projection, int fromSequence) {
+        if (fromSequence < 0 || fromSequence > size) {
+            throw new InvalidSelectionException("Invalid ledger position: " + fromSequence);
+        }
+        for (int i = fromSequence; i < size; i++) {
+            project(projection, get(i));
+        }
+        projections.add(projection);
+        return projection;
+    }
+
+    /**
+     * @param projection subscribed projection
+     * @return true if it was subscribed
+     */
+    public boolean unsubscribe(LedgerProjection<?> projection) {
+        return projections.remove(projection);
+    }
+
+    /**
+     * Builds a fresh projection from the events recorded so far, on up to {@code parallelism}
+     * threads. Appends carry on meanwhile and are not included.
+     * @param factory creates empty projections, one per partition
+     * @param parallelism number of partitions
+     * @return the merged projection
+     * @throws InvalidSelectionException if factory is null or parallelism is not positive
+     */
+    @Logged
+    public <P extends LedgerProjection<P>> P rebuild(Supplier<P> factory, int parallelism) {
+        return rebuild(factory, parallelism, size);
+    }
+
+    /**
+     * Rebuilds a projection in parallel, then subscribes it without missing an event appended during the rebuild.
+     * @param factory creates empty projections, one per partition
+     * @param parallelism number of partitions
+     * @return the subscribed projection
+     * @throws InvalidSelectionException if factory is null or parallelism is not positive
+     */
+    @Logged
+    public <P extends LedgerProjection<P>> P rebuildAndSubscribe(Supplier<P> factory, int parallelism) {
+        int end = size;
+        return subscribe(rebuild(factory, parallelism, end), end);
+    }
+
+    private <P extends LedgerProjection<P>> P rebuild(Supplier<P> factory, int parallelism, int end) {
+        if (factory == null || parallelism <= 0) {
+            throw new InvalidSelectionException("Invalid rebuild: factory " + factory + ", parallelism " + parallelism);
+        }
+        long start = System.nanoTime();
+        // Partitioned by bike in one pass, so every partition sees each of its bikes' events in order
+        List<List<LedgerEvent>> buckets = new ArrayList<>(parallelism);
+        for (int partition = 0; partition < parallelism; partition++) {
+            buckets.add(new ArrayList<>(end / parallelism + 1));
+        }
+        for (int i = 0; i < end; i++) {
+            LedgerEvent event = get(i);
+            buckets.get(Math.floorMod(event.getBikeId().hashCode(), parallelism)).add(event);
+        }
+        List<P> partitions = buckets.parallelStream().map(bucket -> {
+            P projection = factory.get();
+            for (LedgerEvent event : bucket) {
+                projection.apply(event);
+            }
+            return projection;
+        }).collect(Collectors.toList());
+        P merged = partitions.get(0);
+        for (P partition : partitions.subList(1, partitions.size())) {
+            merged.merge(partition);
+        }
+        logger.info("Rebuilt " + merged.getClass().getSimpleName() + " from " + end + " events on "
+                + parallelism + " partitions in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return merged;
+    }
+
+    /**
+     * Forces journaled events to disk. No-op for an in-memory ledger.
+     */
+    public void flush() {
+        if (journal != null) {
+            journal.force();
+        }
+    }
+
+    /**
+     * Closes the journal; later appends fail with a {@link StorageException}.
+     * An in-memory ledger stays open.
+     */
+    @Override
+    public void close() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private static long epochNanos() {
+        Instant instant = Instant.now();
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+}
@@ -0,0 +1,51 @@
+package com.epicode;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Operations of the rental service, as seen by its clients.
+ * Lets {@link Instrumentation} put a proxy in front of {@link BikeRentalService}.
+ */
+public interface RentalService {
+    Bike bikeCreation(BikeBuilder bikeBuilder, BikeCatalog bikeCatalog, BikeType bikeType);
+
+    ImportReport bikeCreationBatch(Stream<BikeBuilder> bikeBuilders, BikeCatalog bikeCatalog, BikeType bikeType);
+
+    void rentingBike(String id, String safeFirstName, String safeLastName);
+
+    void returningBike(String id, String safeFirstName, String safeLastName);
+
+    void returningBike(String id, String safeFirstName, String safeLastName, String stationId);
+
+    void rentingBikeOnce(String requestId, String id, String safeFirstName, String safeLastName);
+
+    void returningBikeOnce(String requestId, String id, String safeFirstName, String safeLastName, String stationId);
+
+    Reservation reservingBike(String id, String safeFirstName, String safeLastName);
+
+    void cancellingReservation(String id, String safeFirstName, String safeLastName);
+
+    Bike getBikeById(String id);
+
+    Customer findCustomer(String safeFirstName, String safeLastName);
+
+    List<Bike> getActiveRentals(String safeFirstName, String safeLastName);
+
+    List<Bike> findBikes(BikeQuery query);
+
+    List<StationIndex.NearbyBike> findNearestBikes(double latitude, double longitude, BikeQuery query);
+
+    List<StationIndex.NearbyBike> findBikesWithin(double latitude, double longitude, double radiusMeters,
+                                                  BikeQuery query);
+
+    int ingestTelemetry(BatteryTelemetry.Batch batch);
+
+    void addStation(Station station);
+
+    void dockingBike(String id, String stationId);
+
+    BikeInventory getBikeInventory();
+
+    BikeCatalog newCatalog(BikeType bikeType);
+}
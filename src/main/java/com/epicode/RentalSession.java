@@ -0,0 +1,87 @@
+package com.epicode;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * One rental of one bike by one customer, from rent to return.
+ * An open session has no end; {@link #close(Instant, Tariff)} produces the billed, closed copy.
+ */
+@Secured("Immutable rental session")
+@RoleType("Session")
+public final class RentalSession {
+    private final long sessionId;
+    private final String bikeId;
+    private final BikeType bikeType;
+    private final String firstName;
+    private final String lastName;
+    private final Instant start;
+    private final Instant end;
+    private final long chargeCents;
+
+    public RentalSession(long sessionId, String bikeId, BikeType bikeType, String firstName, String lastName,
+                         Instant start) {
+        this(sessionId, bikeId, bikeType, firstName, lastName, start, null, 0);
+    }
+
+    private RentalSession(long sessionId, String bikeId, BikeType bikeType, String firstName, String lastName,
+                          Instant start, Instant end, long chargeCents) {
+        this.sessionId = sessionId;
+        this.bikeId = bikeId;
+        this.bikeType = bikeType;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.start = start;
+        this.end = end;
+        this.chargeCents = chargeCents;
+    }
+
+    public long getSessionId() { return sessionId; }
+    public String getBikeId() { return bikeId; }
+    public BikeType getBikeType() { return bikeType; }
+    public String getFirstName() { return firstName; }
+    public String getLastName() { return lastName; }
+    public Instant getStart() { return start; }
+
+    /**
+     * @return when the bike was returned, or null while the session is open
+     */
+    public Instant getEnd() { return end; }
+
+    /**
+     * @return price of the ride in cents, 0 while the session is open
+     */
+    public long getChargeCents() { return chargeCents; }
+
+    public boolean isOpen() {
+        return end == null;
+    }
+
+    /**
+     * @return ride length so far for an open session, or the full length of a closed one
+     */
+    public Duration getDuration() {
+        return Duration.between(start, end == null ? Instant.now() : end);
+    }
+
+    /**
+     * Ends the session and bills it.
+     * @param end return time
+     * @param tariff tariff of the bike type
+     * @return closed copy of the session
+     * @throws RentalException if the session is already closed
+     */
+    public RentalSession close(Instant end, Tariff tariff) {
+        if (!isOpen()) {
+            throw new RentalException("Session " + sessionId + " is already closed");
+        }
+        return new RentalSession(sessionId, bikeId, bikeType, firstName, lastName, start, end,
+                tariff.charge(Duration.between(start, end)));
+    }
+
+    @Override
+    public String toString() {
+        return "RentalSession{id=" + sessionId + ", bike=" + bikeId + ", customer=" + firstName + " " + lastName
+                + ", start=" + start + (isOpen() ? "" : ", end=" + end + ", charge=" + chargeCents + "c") + "}";
+    }
+}
@@ -0,0 +1,513 @@
+package com.epicode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+
+/**
+ * Rebuilds rental state on startup from the audit logs written by {@link BikeAuditRepository}.
+ *
+ * <p>CREATED entries recreate bikes in their catalogs, REMOVED entries drop them again
+ * (a bike moved to another shard), RENTED and RETURNED entries set availability. Replay is idempotent (events set state rather than toggle it), which lets
+ * a compact snapshot record the log offsets it was taken at: recovery loads the snapshot
+ * and only replays the log tail written after those offsets.</p>
+ *
+ * <p>Logs rotated by an {@link AuditRotation} are replayed from their segments too. The
+ * snapshot keeps the first entry of each log next to its offset, so that once the file it
+ * was taken on has been rotated away the offset is applied to the matching segment
+ * instead. If retention has already deleted that segment, recovery fails rather than
+ * restore a state with a hole in it.</p>
+ */
+@Secured("Recovery shielding and logging verified")
+@RoleType("Recovery")
+public class RentalStateRecovery {
+    private static final Logger logger = Logger.getLogger(RentalStateRecovery.class.getName());
+    private static final int SNAPSHOT_MAGIC = 0x424B534E;
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final int LEGACY_SNAPSHOT_VERSION = 1;
+    // Enough of the first entry to tell two files of the same log apart by its timestamp and bike
+    private static final int IDENTITY_LENGTH = 512;
+    private static final String LEGACY_MODEL = "Unknown";
+
+    private final Path bikesLog;
+    private final Path rentalsLog;
+    private final Path snapshotFile;
+
+
+    /**
+     * @param bikesLog creation audit log
+     * @param rentalsLog rental audit log
+     * @param snapshotFile where state snapshots are written and read
+     * @throws StorageException if a path is null
+     */
+    @Sanitized
+    public RentalStateRecovery(Path bikesLog, Path rentalsLog, Path snapshotFile) {
+        if (bikesLog == null || rentalsLog == null || snapshotFile == null) {
+            throw new StorageException("Recovery paths cannot be null", null);
+        }
+        this.bikesLog = bikesLog;
+        this.rentalsLog = rentalsLog;
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Restores bikes, catalogs and availability into the service.
+     * Catalogs are matched by name against the given inventory; missing ones are created and added to it.
+     * @param service service to restore into
+     * @param inventory inventory used to resolve and register catalogs
+     * @return summary of the run
+     * @throws StorageException if the snapshot or a log cannot be read
+     */
+    @Logged
+    public RecoveryResult recover(BikeRentalService service, BikeInventory inventory) {
+        long start = System.nanoTime();
+        Replay replay = new Replay(service, inventory);
+        LogPosition[] positions = {LogPosition.START, LogPosition.START};
+        boolean fromSnapshot = Files.exists(snapshotFile);
+        if (fromSnapshot) {
+            positions = readSnapshot(replay);
+        }
+        replayLog(bikesLog, positions[0], replay);
+        replayLog(rentalsLog, positions[1], replay);
+        RecoveryResult result = new RecoveryResult(fromSnapshot, replay.bikesRestored,
+                replay.eventsReplayed, replay.eventsSkipped, System.nanoTime() - start);
+        logger.info(result.toString());
+        return result;
+    }
+
+    /**
+     * Restores state from a binary audit log written by {@link MappedBikeAuditRepository}.
+     * @param service service to restore into
+     * @param inventory inventory used to resolve and register catalogs
+     * @param directory segment directory
+     * @return summary of the run
+     * @throws StorageException if the log cannot be read
+     */
+    @Logged
+    public static RecoveryResult recoverFromBinary(BikeRentalService service, BikeInventory inventory, Path directory) {
+        long start = System.nanoTime();
+        Replay replay = new Replay(service, inventory);
+        MappedAuditLog.read(directory, record -> {
+            if (record.getEventType() == AuditEventType.CREATED) {
+                replay.created(record.getBikeId(), record.getBikeType(), record.getFirstSubject(),
+                        record.getSecondSubject(), record.getFlags());
+            } else if (record.getEventType() == AuditEventType.EXPIRED) {
+                replay.expired();
+            } else if (record.getEventType() == AuditEventType.REMOVED) {
+                replay.removed(record.getBikeId(), record.getFirstSubject());
+            } else {
+                replay.availability(record.getBikeId(), record.getEventType() == AuditEventType.RETURNED);
+            }
+        });
+        return new RecoveryResult(false, replay.bikesRestored, replay.eventsReplayed,
+                replay.eventsSkipped, System.nanoTime() - start);
+    }
+
+    /**
+     * Writes a compact snapshot of the service state together with the current log offsets.
+     * The offsets are captured before the state, so anything written meanwhile is simply replayed again.
+     * Open holds are not journaled, so held bikes are saved as available, as a log replay would leave them.
+     * @param service service whose bikes are captured
+     * @throws StorageException if the snapshot cannot be written
+     */
+    @Logged
+    public void writeSnapshot(BikeRentalService service) {
+        LogPosition bikesPosition = positionOf(bikesLog);
+        LogPosition rentalsPosition = positionOf(rentalsLog);
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        int written = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temp), 64 * 1024))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            bikesPosition.write(out);
+            rentalsPosition.write(out);
+
+            IdentityHashMap<BikeCatalog, Boolean> seen = new IdentityHashMap<>();
+            Iterator<BikeCatalog> catalogs = service.getBikeInventory().createIterator();
+            while (catalogs.hasNext()) {
+                BikeCatalog catalog = catalogs.next();
+                if (seen.put(catalog, Boolean.TRUE) != null) {
+                    continue;
+                }
+                Iterator<Bike> bikes = catalog.createIterator();
+                while (bikes.hasNext()) {
+                    Bike bike = bikes.next();
+                    out.writeBoolean(true);
+                    out.writeUTF(bike.getId());
+                    out.writeUTF(bike.getModel());
+                    out.writeByte(bike.getType().ordinal());
+                    out.writeUTF(catalog.toString());
+                    int flags = MappedAuditLog.flagsOf(bike);
+                    if (service.getReservation(bike.getId()) != null) {
+                        // Holds are not journaled, so a held bike comes back available after a restart
+                        flags |= MappedAuditLog.FLAG_AVAILABLE;
+                    }
+                    out.writeByte(flags);
+                    written++;
+                }
+            }
+            out.writeBoolean(false);
+        } catch (IOException e) {
+            logger.severe("Failed to write state snapshot: " + e.getMessage());
+            throw new StorageException("Unable to write state snapshot", e);
+        }
+        try {
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.severe("Failed to publish state snapshot: " + e.getMessage());
+            throw new StorageException("Unable to write state snapshot", e);
+        }
+        logger.info("State snapshot written with " + written + " bikes");
+    }
+
+    /**
+     * Writes snapshots periodically on the given scheduler. Failures are logged and retried next period.
+     * @param service service whose bikes are captured
+     * @param scheduler scheduler owned by the caller
+     * @param period time between snapshots
+     * @param unit unit of period
+     * @return handle to cancel the schedule
+     */
+    public ScheduledFuture<?> scheduleSnapshots(BikeRentalService service, ScheduledExecutorService scheduler,
+                                                long period, TimeUnit unit) {
+        return scheduler.scheduleAtFixedRate(() -> {
+            try {
+                writeSnapshot(service);
+            } catch (RuntimeException e) {
+                logger.severe("Periodic snapshot failed: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    private LogPosition[] readSnapshot(Replay replay) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(snapshotFile), 64 * 1024))) {
+            int version = in.readInt() == SNAPSHOT_MAGIC ? in.readInt() : -1;
+            if (version != SNAPSHOT_VERSION && version != LEGACY_SNAPSHOT_VERSION) {
+                throw new StorageException("Unsupported state snapshot: " + snapshotFile, null);
+            }
+            LogPosition[] positions = {LogPosition.read(in, version), LogPosition.read(in, version)};
+            BikeType[] types = BikeType.values();
+            while (in.readBoolean()) {
+                String id = in.readUTF();
+                String model = in.readUTF();
+                BikeType type = types[in.readByte()];
+                String catalog = in.readUTF();
+                replay.created(id, type, catalog, model, in.readByte());
+            }
+            return positions;
+        } catch (IOException e) {
+            logger.severe("Failed to read state snapshot: " + e.getMessage());
+            throw new StorageException("Unable to read state snapshot", e);
+        }
+    }
+
+    /**
+     * Replays what a log received after a position: the tail of the file the position was
+     * taken on, whether that is still the active file or has been rotated into a segment,
+     * followed by every later segment and the active file.
+     */
+    private void replayLog(Path log, LogPosition position, Replay replay) {
+        if (position.identity == null || (position.offset > 0 && position.identity.equals(identityOf(log)))) {
+            // Still the file the position was taken on (or a legacy snapshot that cannot tell)
+            replayText(log, position.offset, replay);
+            return;
+        }
+        List<Path> segments = AuditSegments.segmentFiles(log);
+        int from = 0;
+        long offset = 0;
+        if (!position.identity.isEmpty()) {
+            from = -1;
+            for (int i = 0; i < segments.size() && from < 0; i++) {
+                if (position.identity.equals(identityOf(segments.get(i)))) {
+                    from = i;
+                    offset = position.offset;
+                }
+            }
+            if (from < 0) {
+                logger.severe("Audit log " + log + " was rotated past the snapshot and its segment is gone");
+                throw new StorageException("Audit log " + log + " no longer holds the entries after the snapshot "
+                        + "(rotated and expired); delete " + snapshotFile + " to recover from what is left", null);
+            }
+        }
+        for (int i = from; i < segments.size(); i++) {
+            replayText(segments.get(i), i == from ? offset : 0, replay);
+        }
+        replayText(log, 0, replay);
+    }
+
+    private void replayText(Path file, long offset, Replay replay) {
+        if (!Files.exists(file)) {
+            return;
+        }
+        boolean shorter = false;
+        try (InputStream in = AuditSegments.openStream(file)) {
+            boolean midLine = false;
+            if (offset > 0) {
+                try {
+                    in.skipNBytes(offset - 1);
+                    midLine = in.read() != '\n';
+                } catch (EOFException e) {
+                    shorter = true;
+                }
+            }
+            if (shorter) {
+                logger.warning("Log " + file + " is shorter than the snapshot offset, replaying it fully");
+            } else {
+                replayLines(in, midLine, replay);
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to replay audit log " + file + ": " + e.getMessage());
+            throw new StorageException("Unable to read audit log", e);
+        }
+        if (shorter) {
+            // Opened again from the start once the first stream is closed
+            replayText(file, 0, replay);
+        }
+    }
+
+    private static void replayLines(InputStream in, boolean midLine, Replay replay) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+        if (midLine) {
+            // The entry cut by the snapshot was already applied to the snapshotted state
+            reader.readLine();
+        }
+        String line;
+        while ((line = reader.readLine()) != null) {
+            replay.line(line);
+        }
+    }
+
+    /**
+     * Reads the size and first entry of a log from one open file, so a rotation in between
+     * cannot pair the size of one file with the entry of the next.
+     */
+    private static LogPosition positionOf(Path log) {
+        if (!Files.exists(log)) {
+            return new LogPosition(0, "");
+        }
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            long size = channel.size();
+            return new LogPosition(size, firstLine(Channels.newInputStream(channel)));
+        } catch (IOException e) {
+            throw new StorageException("System storage unavailable", e);
+        }
+    }
+
+    /**
+     * @return the start of the first entry of a log file or segment, or "" if it is empty or missing
+     */
+    private static String identityOf(Path file) {
+        if (!Files.exists(file)) {
+            return "";
+        }
+        try (InputStream in = AuditSegments.openStream(file)) {
+            return firstLine(in);
+        } catch (IOException e) {
+            throw new StorageException("Unable to read audit log", e);
+        }
+    }
+
+    private static String firstLine(InputStream in) throws IOException {
+        String line = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)).readLine();
+        if (line == null) {
+            return "";
+        }
+        return line.length() > IDENTITY_LENGTH ? line.substring(0, IDENTITY_LENGTH) : line;
+    }
+
+    /**
+     * Where a snapshot left a log: the byte offset, and the first entry of the file the
+     * offset belongs to ("" for an empty log, null when a legacy snapshot did not record it).
+     */
+    private static final class LogPosition {
+        private static final LogPosition START = new LogPosition(0, "");
+
+        private final long offset;
+        private final String identity;
+
+        private LogPosition(long offset, String identity) {
+            this.offset = offset;
+            this.identity = identity;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeLong(offset);
+            out.writeUTF(identity);
+        }
+
+        private static LogPosition read(DataInputStream in, int version) throws IOException {
+            long offset = in.readLong();
+            return new LogPosition(offset, version == LEGACY_SNAPSHOT_VERSION ? null : in.readUTF());
+        }
+    }
+
+    /**
+     * Applies recovered events to a service.
+     */
+    private static final class Replay {
+        private final BikeRentalService service;
+        private final BikeInventory inventory;
+        private final Map<String, BikeCatalog> catalogsByName = new HashMap<>();
+        private int bikesRestored = 0;
+        private long eventsReplayed = 0;
+        private long eventsSkipped = 0;
+
+        private Replay(BikeRentalService service, BikeInventory inventory) {
+            this.service = service;
+            this.inventory = inventory;
+            Iterator<BikeCatalog> catalogs = inventory.createIterator();
+            while (catalogs.hasNext()) {
+                BikeCatalog catalog = catalogs.next();
+                catalogsByName.putIfAbsent(catalog.toString(), catalog);
+            }
+        }
+
+        private void line(String line) {
+            int close = line.indexOf("] ");
+            if (!line.startsWith("[") || close < 0) {
+                eventsSkipped++;
+                return;
+            }
+            String[] parts = line.substring(close + 2).split(" \\| ");
+            String bikeId = field(parts, "Bike=");
+            if (bikeId == null) {
+                eventsSkipped++;
+                return;
+            }
+            switch (parts[0]) {
+                case "CREATED" -> createdLine(parts, bikeId);
+                case "RENTED" -> availability(bikeId, false);
+                case "RETURNED" -> availability(bikeId, true);
+                case "EXPIRED" -> expired();
+                case "REMOVED" -> removed(bikeId, field(parts, "Catalog="));
+                default -> eventsSkipped++;
+            }
+        }
+
+        private void createdLine(String[] parts, String bikeId) {
+            String type = field(parts, "Type=");
+            String model = field(parts, "Model=");
+            String available = field(parts, "Available=");
+            int flags = 0;
+            if (available == null || Boolean.parseBoolean(available)) flags |= MappedAuditLog.FLAG_AVAILABLE;
+            if (Boolean.parseBoolean(field(parts, "Lights="))) flags |= MappedAuditLog.FLAG_LIGHTS;
+            if (Boolean.parseBoolean(field(parts, "Basket="))) flags |= MappedAuditLog.FLAG_BASKET;
+            if (Boolean.parseBoolean(field(parts, "GPS="))) flags |= MappedAuditLog.FLAG_GPS;
+            try {
+                created(bikeId, BikeType.valueOf(type), field(parts, "Catalog="),
+                        model == null ? LEGACY_MODEL : model, flags);
+            } catch (IllegalArgumentException | NullPointerException e) {
+                eventsSkipped++;
+            }
+        }
+
+        private static String field(String[] parts, String key) {
+            for (int i = 1; i < parts.length; i++) {
+                if (parts[i].startsWith(key)) {
+                    return parts[i].substring(key.length());
+                }
+            }
+            return null;
+        }
+
+        private void created(String bikeId, BikeType type, String catalogName, String model, int flags) {
+            eventsReplayed++;
+            Bike existing = service.getBikeById(bikeId);
+            if (existing instanceof StoredBike) {
+                // A loaded fleet store already holds the bike: replay its state and catalog only
+                existing.setAvailable((flags & MappedAuditLog.FLAG_AVAILABLE) != 0);
+                existing.setLights((flags & MappedAuditLog.FLAG_LIGHTS) != 0);
+                existing.setBasket((flags & MappedAuditLog.FLAG_BASKET) != 0);
+                existing.setGPS((flags & MappedAuditLog.FLAG_GPS) != 0);
+                service.restoreBike(existing, catalogFor(catalogName, type));
+                bikesRestored++;
+                return;
+            }
+            if (existing != null) {
+                return;
+            }
+            BikeBuilder builder = new BikeBuilder(bikeId, model, (flags & MappedAuditLog.FLAG_AVAILABLE) != 0)
+                    .setLights((flags & MappedAuditLog.FLAG_LIGHTS) != 0)
+                    .setBasket((flags & MappedAuditLog.FLAG_BASKET) != 0)
+                    .setGPS((flags & MappedAuditLog.FLAG_GPS) != 0);
+            Bike bike = BikeRentalService.factoryFor(type).createBike(builder);
+            service.restoreBike(bike, catalogFor(catalogName, type));
+            bikesRestored++;
+        }
+
+        private void availability(String bikeId, boolean available) {
+            Bike bike = service.getBikeById(bikeId);
+            if (bike == null) {
+                eventsSkipped++;
+                return;
+            }
+            bike.setAvailable(available);
+            eventsReplayed++;
+        }
+
+        /**
+         * Drops a bike that left the service. Its creation is replayed before it, and any
+         * rental events the other log holds for it are skipped as events of an unknown bike.
+         */
+        private void removed(String bikeId, String catalogName) {
+            if (service.dropBike(bikeId, catalogsByName.get(catalogName)) == null) {
+                eventsSkipped++;
+                return;
+            }
+            bikesRestored--;
+            eventsReplayed++;
+        }
+
+        /**
+         * Holds are not logged and expiries are written in batches, possibly after a later
+         * rental of the same bike, so an expiry never changes the replayed state.
+         */
+        private void expired() {
+            eventsReplayed++;
+        }
+
+        private BikeCatalog catalogFor(String name, BikeType type) {
+            BikeCatalog catalog = catalogsByName.get(name);
+            if (catalog != null) {
+                return catalog;
+            }
+            for (BikeType candidateType : BikeType.values()) {
+                BikeCatalog candidate = service.newCatalog(candidateType);
+                if (candidate.toString().equals(name)) {
+                    catalog = candidate;
+                    break;
+                }
+            }
+            if (catalog == null) {
+                catalog = service.newCatalog(type);
+            }
+            inventory.addCatalog(catalog);
+            catalogsByName.put(name == null ? catalog.toString() : name, catalog);
+            return catalog;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.epicode;
+
+import java.util.Objects;
+
+/**
+ * What a rent or return request asks for, kept by {@link IdempotencyCache} next to the
+ * request ID so that an ID reused for a different request is told apart from a retry.
+ * Compared field by field, never by hash alone.
+ */
+@Secured("Request identity compared by value")
+@RoleType("Value")
+public final class RequestKey {
+    private final AuditEventType eventType;
+    private final String bikeId;
+    private final String firstName;
+    private final String lastName;
+    private final String stationId;
+
+    /**
+     * @param eventType RENTED or RETURNED
+     * @param bikeId bike ID
+     * @param firstName customer's first name
+     * @param lastName customer's last name
+     * @param stationId station a return docks at, or null
+     */
+    public RequestKey(AuditEventType eventType, String bikeId, String firstName, String lastName, String stationId) {
+        this.eventType = eventType;
+        this.bikeId = bikeId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.stationId = stationId;
+    }
+
+    public AuditEventType getEventType() { return eventType; }
+    public String getBikeId() { return bikeId; }
+    public String getFirstName() { return firstName; }
+    public String getLastName() { return lastName; }
+    public String getStationId() { return stationId; }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof RequestKey)) {
+            return false;
+        }
+        RequestKey key = (RequestKey) other;
+        return eventType == key.eventType && Objects.equals(bikeId, key.bikeId)
+                && Objects.equals(firstName, key.firstName) && Objects.equals(lastName, key.lastName)
+                && Objects.equals(stationId, key.stationId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(eventType, bikeId, firstName, lastName, stationId);
+    }
+
+    @Override
+    public String toString() {
+        return eventType + " " + bikeId + " by " + firstName + " " + lastName
+                + (stationId == null ? "" : " at " + stationId);
+    }
+}
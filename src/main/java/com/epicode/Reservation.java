@@ -0,0 +1,66 @@
+package com.epicode;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A bike held for one customer until they rent it, cancel, or the hold expires.
+ * Exactly one of the three ends it: whichever calls {@link #close()} first.
+ */
+@Secured("Reservation ends exactly once")
+@RoleType("Reservation")
+public class Reservation {
+    private final String bikeId;
+    private final String firstName;
+    private final String lastName;
+    private final Instant expiresAt;
+    private final AtomicBoolean open = new AtomicBoolean(true);
+    private volatile TimingWheel.Timeout<Reservation> timeout;
+
+    public Reservation(String bikeId, String firstName, String lastName, Instant expiresAt) {
+        this.bikeId = bikeId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getBikeId() { return bikeId; }
+    public String getFirstName() { return firstName; }
+    public String getLastName() { return lastName; }
+    public Instant getExpiresAt() { return expiresAt; }
+
+    /**
+     * @return true if the reservation was made by this customer
+     */
+    public boolean isHeldBy(String firstName, String lastName) {
+        return this.firstName.equals(firstName) && this.lastName.equals(lastName);
+    }
+
+    public boolean isOpen() {
+        return open.get();
+    }
+
+    /**
+     * Ends the reservation and drops its expiry timeout, if still scheduled.
+     * @return true if the reservation was open and the caller now owns its ending
+     */
+    boolean close() {
+        if (!open.compareAndSet(true, false)) {
+            return false;
+        }
+        TimingWheel.Timeout<Reservation> scheduled = timeout;
+        if (scheduled != null) {
+            scheduled.cancel();
+        }
+        return true;
+    }
+
+    void setTimeout(TimingWheel.Timeout<Reservation> timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public String toString() {
+        return "Reservation{bike=" + bikeId + ", holder=" + firstName + " " + lastName + ", expiresAt=" + expiresAt + "}";
+    }
+}
@@ -0,0 +1,177 @@
+package com.epicode;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Streaming revenue totals per {@link BikeType} and per minute. Each billed return is
+ * added once to the bucket of its minute, so reading a minute never rescans history.
+ *
+ * <p>Buckets form a ring covering the retained minutes. A bucket is reset when its
+ * slot is first reused for a newer minute; returns older than the retained window
+ * only count toward the lifetime totals. Adding takes no lock (counters are
+ * {@link LongAdder}s), so many threads can bill returns at once.</p>
+ */
+@Secured("Lock-free revenue aggregation")
+@RoleType("Billing")
+public class RevenueAggregator {
+    private static final int TYPES = BikeType.values().length;
+
+    private final Bucket[] ring;
+    private final LongAdder[] totalCents = newAdders();
+    private final LongAdder[] totalReturns = newAdders();
+
+    private static final class Bucket {
+        private volatile long minute = Long.MIN_VALUE;
+        private final LongAdder[] cents = newAdders();
+        private final LongAdder[] returns = newAdders();
+    }
+
+    /**
+     * Revenue of one minute, as read at one point in time.
+     */
+    public static final class MinuteRevenue {
+        private final Instant minute;
+        private final long[] cents;
+        private final long[] returns;
+
+        private MinuteRevenue(Instant minute, long[] cents, long[] returns) {
+            this.minute = minute;
+            this.cents = cents;
+            this.returns = returns;
+        }
+
+        /**
+         * @return start of the minute
+         */
+        public Instant getMinute() { return minute; }
+
+        public long getCents(BikeType type) { return cents[type.ordinal()]; }
+
+        public long getReturns(BikeType type) { return returns[type.ordinal()]; }
+
+        public long getTotalCents() {
+            long sum = 0;
+            for (long value : cents) sum += value;
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            return "MinuteRevenue{minute=" + minute + ", cents=" + getTotalCents() + "}";
+        }
+    }
+
+    /**
+     * @param retainedMinutes how many of the most recent minutes keep their own totals
+     * @throws InvalidSelectionException if retainedMinutes is not positive
+     */
+    public RevenueAggregator(int retainedMinutes) {
+        if (retainedMinutes <= 0) {
+            throw new InvalidSelectionException("Retained minutes must be positive");
+        }
+        ring = new Bucket[retainedMinutes];
+        for (int i = 0; i < retainedMinutes; i++) {
+            ring[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Adds a closed session's charge to its bike type and return minute.
+     * @param session closed session
+     */
+    public void record(RentalSession session) {
+        record(session.getBikeType(), session.getChargeCents(), session.getEnd());
+    }
+
+    /**
+     * @param type bike type
+     * @param cents amount billed
+     * @param at when it was billed
+     */
+    public void record(BikeType type, long cents, Instant at) {
+        int t = type.ordinal();
+        totalCents[t].add(cents);
+        totalReturns[t].increment();
+        long minute = Math.floorDiv(at.getEpochSecond(), 60);
+        Bucket bucket = ring[(int) Math.floorMod(minute, (long) ring.length)];
+        if (bucket.minute != minute && !claim(bucket, minute)) {
+            return;
+        }
+        bucket.cents[t].add(cents);
+        bucket.returns[t].increment();
+    }
+
+    /**
+     * Resets a bucket for a newer minute.
+     * @return false if the bucket already holds a newer minute, i.e. {@code minute} fell out of the window
+     */
+    private static boolean claim(Bucket bucket, long minute) {
+        synchronized (bucket) {
+            if (bucket.minute > minute) {
+                return false;
+            }
+            if (bucket.minute < minute) {
+                for (int t = 0; t < TYPES; t++) {
+                    bucket.cents[t].reset();
+                    bucket.returns[t].reset();
+                }
+                bucket.minute = minute;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @param from first instant of interest, inclusive
+     * @param to last instant of interest, exclusive
+     * @return retained minutes in the range that saw at least one return, oldest first
+     */
+    public List<MinuteRevenue> minutes(Instant from, Instant to) {
+        long first = Math.floorDiv(from.getEpochSecond(), 60);
+        long last = Math.floorDiv(to.getEpochSecond() - 1, 60);
+        first = Math.max(first, last - ring.length + 1);
+        List<MinuteRevenue> minutes = new ArrayList<>();
+        for (long minute = first; minute <= last; minute++) {
+            Bucket bucket = ring[(int) Math.floorMod(minute, (long) ring.length)];
+            if (bucket.minute != minute) {
+                continue;
+            }
+            long[] cents = new long[TYPES];
+            long[] returns = new long[TYPES];
+            for (int t = 0; t < TYPES; t++) {
+                cents[t] = bucket.cents[t].sum();
+                returns[t] = bucket.returns[t].sum();
+            }
+            minutes.add(new MinuteRevenue(Instant.ofEpochSecond(minute * 60), cents, returns));
+        }
+        return minutes;
+    }
+
+    /**
+     * @param type bike type
+     * @return cents billed for the type since the aggregator was created
+     */
+    public long getTotalCents(BikeType type) {
+        return totalCents[type.ordinal()].sum();
+    }
+
+    /**
+     * @param type bike type
+     * @return billed returns of the type since the aggregator was created
+     */
+    public long getTotalReturns(BikeType type) {
+        return totalReturns[type.ordinal()].sum();
+    }
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[TYPES];
+        for (int i = 0; i < TYPES; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
@@ -13,6 +13,10 @@ public class RoadBikeCatalog extends BikeCatalog {
         super(bikes);
     }
 
+    public RoadBikeCatalog(FleetStore store) {
+        super(store);
+    }
+
     @Override
     public String toString() {
         return "Road Bike Catalog";
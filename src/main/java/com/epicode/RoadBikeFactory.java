@@ -28,7 +28,7 @@ public class RoadBikeFactory extends BikeFactory {
             return new RoadBike(bikeBuilder);
         } catch (RuntimeException e) {
             logger.severe("Failed to create road bike: " + e.getMessage());
-            throw new RentalException("Unable to create road bike");
+            throw new RentalException("Unable to create road bike", e);
         }
     }
 }
\ No newline at end of file
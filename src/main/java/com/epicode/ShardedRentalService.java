@@ -0,0 +1,745 @@
+package com.epicode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * Fleet split across several {@link BikeRentalService} shards by bike ID. A
+ * {@link ConsistentHashRing} names the shard owning each bike, and every call about a
+ * bike goes to that shard only, so shards share no bike map, audit log or ledger and
+ * run in parallel.
+ *
+ * <p>{@link #addShard(String, BikeRentalService)} gives the new shard its part of the
+ * ring at once. The bikes it now owns are moved to it in steps by {@link #rebalance(int)};
+ * until a bike has moved, calls about it still reach its previous shard. Only idle bikes
+ * move: a rented or reserved bike waits for its next rebalance step after it is back.
+ * A moved bike's creation is recorded again in its new shard, so each shard's logs are
+ * enough to rebuild it; the old entry stays in the previous shard's logs.</p>
+ *
+ * <p>The shards share one {@link CustomerRegistry}, so customers keep one ID. Stations
+ * and idempotent request IDs are kept here, in front of the shards, since a station holds
+ * bikes of every shard and a retried request must find its outcome after a move. Shards
+ * must be empty when added, keep bike objects rather than a {@link FleetStore}, and be
+ * called only through this service.</p>
+ */
+@Secured("Routing by bike ID, shards validated")
+@RoleType("Service System")
+public class ShardedRentalService implements RentalService {
+    private static final Logger logger = Logger.getLogger(ShardedRentalService.class.getName());
+    private static final int LOCK_STRIPES = 1024;
+
+    private final CustomerRegistry customers;
+    private final StationIndex stations = new StationIndex();
+    private final IdempotencyCache requests = new IdempotencyCache();
+    // Calls about a bike hold its stripe's read lock; moving the bike takes the write lock
+    private final ReentrantReadWriteLock[] stripes = new ReentrantReadWriteLock[LOCK_STRIPES];
+    private final Set<BikeCatalog> handles =
+            Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    private volatile ConsistentHashRing<Shard> ring;
+    private volatile Migration migration;
+
+    private static final class Shard {
+        private final String name;
+        private final BikeRentalService service;
+        private final Map<BikeType, BikeCatalog> catalogs = new EnumMap<>(BikeType.class);
+
+        private Shard(String name, BikeRentalService service) {
+            this.name = name;
+            this.service = service;
+        }
+
+        /**
+         * @return the shard's one catalog of the type, created on first use
+         */
+        private synchronized BikeCatalog catalog(BikeType bikeType) {
+            return catalogs.computeIfAbsent(bikeType, service::newCatalog);
+        }
+
+        private synchronized List<BikeCatalog> catalogs() {
+            return new ArrayList<>(catalogs.values());
+        }
+    }
+
+    /**
+     * Bikes still to move after a shard was added, and the ring that placed them.
+     */
+    private static final class Migration {
+        private final ConsistentHashRing<Shard> previous;
+        private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+
+        private Migration(ConsistentHashRing<Shard> previous) {
+            this.previous = previous;
+        }
+    }
+
+
+    /**
+     * Creates a service without shards; add at least one before use.
+     * @param customers registry every shard must share
+     * @throws StorageException if customers is null
+     */
+    public ShardedRentalService(CustomerRegistry customers) {
+        this(customers, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param customers registry every shard must share
+     * @param virtualNodes ring points per shard
+     * @throws StorageException if customers is null
+     * @throws InvalidSelectionException if virtualNodes is not positive
+     */
+    @Sanitized
+    public ShardedRentalService(CustomerRegistry customers, int virtualNodes) {
+        if (customers == null) {
+            throw new StorageException("Customer registry cannot be null", null);
+        }
+        this.customers = customers;
+        this.ring = new ConsistentHashRing<>(virtualNodes);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Adds a shard and hands it its part of the ring. The bikes it takes over are queued
+     * for {@link #rebalance(int)}; the calls in flight are waited for before the switch.
+     * @param name unique shard name, which places the shard on the ring
+     * @param shard empty service sharing this service's customer registry
+     * @throws InvalidSelectionException if the name is taken, the shard is not empty, keeps a
+     * fleet store or another customer registry, or the previous rebalancing is not finished
+     */
+    @Logged
+    public synchronized void addShard(String name, BikeRentalService shard) {
+        if (shard == null || shard.getCustomers() != customers || shard.usesFleetStore()
+                || shard.getBikeInventory().getSize() > 0) {
+            throw new InvalidSelectionException("Shard " + name
+                    + " must be empty, keep bike objects and share the customer registry");
+        }
+        if (migration != null) {
+            throw new InvalidSelectionException("Rebalancing to the last shard is not finished");
+        }
+        ConsistentHashRing<Shard> previous = ring;
+        ConsistentHashRing<Shard> next = previous.withNode(name, new Shard(name, shard));
+        Migration started = new Migration(previous);
+        lockAll();
+        try {
+            ring = next;
+            migration = previous.size() == 0 ? null : started;
+        } finally {
+            unlockAll();
+        }
+        if (previous.size() == 0) {
+            logger.info("Shard added: " + name);
+            return;
+        }
+        for (Shard owner : previous.getNodes()) {
+            for (BikeCatalog catalog : owner.catalogs()) {
+                for (Bike bike : catalog.getBikes()) {
+                    if (next.ownerOf(bike.getId()) != owner) {
+                        started.pending.add(bike.getId());
+                    }
+                }
+            }
+        }
+        logger.info("Shard added: " + name + ", " + started.pending.size() + " bikes to move");
+        finishIfDone(started);
+    }
+
+    /**
+     * Moves up to {@code maxBikes} bikes to the shard that owns them since the last
+     * {@link #addShard}. Each bike moves under its own lock, so other bikes stay available
+     * meanwhile; bikes that are out are tried again on a later call.
+     * @param maxBikes most bikes to move in this step
+     * @return bikes moved
+     * @throws InvalidSelectionException if maxBikes is not positive
+     */
+    @Logged
+    public int rebalance(int maxBikes) {
+        if (maxBikes <= 0) {
+            throw new InvalidSelectionException("Bikes per rebalancing step must be positive: " + maxBikes);
+        }
+        Migration current = migration;
+        if (current == null) {
+            return 0;
+        }
+        int moved = 0;
+        // Each queued bike is tried at most once per step, so busy bikes cannot keep it spinning
+        for (int tries = current.pending.size(); tries > 0 && moved < maxBikes; tries--) {
+            String id = current.pending.poll();
+            if (id == null) {
+                break;
+            }
+            Lock lock = stripe(id).writeLock();
+            lock.lock();
+            try {
+                if (move(id, current.previous.ownerOf(id), ring.ownerOf(id))) {
+                    moved++;
+                } else if (current.previous.ownerOf(id).service.getBikeById(id) != null) {
+                    current.pending.add(id);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        finishIfDone(current);
+        return moved;
+    }
+
+    private boolean move(String id, Shard from, Shard to) {
+        Bike bike = from.service.getBikeById(id);
+        if (bike == null) {
+            return false;
+        }
+        BikeType bikeType = bike.getType();
+        Bike released;
+        try {
+            released = from.service.releaseBike(id, from.catalog(bikeType));
+        } catch (StorageException e) {
+            logger.severe("Bike " + id + " not released by shard " + from.name + ": " + e.getMessage());
+            return false;
+        }
+        if (released == null) {
+            return false;
+        }
+        try {
+            to.service.adoptBike(released, to.catalog(bikeType));
+        } catch (RuntimeException e) {
+            // Put it back where it was, recording it again since its removal is logged; the next step tries again
+            logger.severe("Bike " + id + " not moved to shard " + to.name + ": " + e.getMessage());
+            putBack(released, from);
+            return false;
+        }
+        return true;
+    }
+
+    private void putBack(Bike bike, Shard shard) {
+        BikeCatalog catalog = shard.catalog(bike.getType());
+        try {
+            shard.service.adoptBike(bike, catalog);
+        } catch (RuntimeException e) {
+            // Still serve it; only its creation is missing from the logs until it moves again
+            shard.service.restoreBike(bike, catalog);
+            logger.severe("Bike " + bike.getId() + " back in shard " + shard.name + " but not recorded: "
+                    + e.getMessage());
+        }
+    }
+
+    private synchronized void finishIfDone(Migration current) {
+        if (migration == current && current.pending.isEmpty()) {
+            migration = null;
+            logger.info("Rebalancing finished across " + ring.size() + " shards");
+        }
+    }
+
+    /**
+     * @return bikes still to move to the shard added last
+     */
+    public int getPendingMoves() {
+        Migration current = migration;
+        return current == null ? 0 : current.pending.size();
+    }
+
+    /**
+     * @return the shards by name, in the order they were added
+     */
+    public Map<String, BikeRentalService> getShards() {
+        ConsistentHashRing<Shard> current = ring;
+        Map<String, BikeRentalService> shards = new LinkedHashMap<>();
+        for (Shard shard : current.getNodes()) {
+            shards.put(shard.name, shard.service);
+        }
+        return shards;
+    }
+
+    /**
+     * @return name of the shard owning the ID on the ring, where the bike is or will be moved
+     * @throws InvalidSelectionException if there are no shards
+     */
+    public String ownerOf(String id) {
+        Shard owner = ring.ownerOf(id);
+        if (owner == null) {
+            throw new InvalidSelectionException("No shards to route to");
+        }
+        return owner.name;
+    }
+
+    /**
+     * @return name of the shard that holds the bike now, or null if none does
+     */
+    public String shardOf(String id) {
+        Shard shard = locate(id);
+        return shard == null || shard.service.getBikeById(id) == null ? null : shard.name;
+    }
+
+    /**
+     * @return the shard holding the bike, or its owner on the ring if no shard does
+     * @throws InvalidSelectionException if there are no shards
+     */
+    private Shard locate(String id) {
+        Shard owner = ring.ownerOf(id);
+        if (owner == null) {
+            throw new InvalidSelectionException("No shards to route to");
+        }
+        Migration current = migration;
+        if (current != null && owner.service.getBikeById(id) == null) {
+            Shard previous = current.previous.ownerOf(id);
+            if (previous.service.getBikeById(id) != null) {
+                return previous;
+            }
+        }
+        return owner;
+    }
+
+    private ReentrantReadWriteLock stripe(String id) {
+        return stripes[stripeIndex(id)];
+    }
+
+    private static int stripeIndex(String id) {
+        int hash = id == null ? 0 : id.hashCode();
+        return (hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1);
+    }
+
+    /**
+     * Read-locks the stripes of several bikes, in stripe order so that two callers
+     * and {@link #addShard} cannot deadlock.
+     * @return the locks taken, for {@link #unlock(List)}
+     */
+    private List<Lock> readLock(List<String> ids) {
+        BitSet used = new BitSet(LOCK_STRIPES);
+        for (String id : ids) {
+            used.set(stripeIndex(id));
+        }
+        List<Lock> locked = new ArrayList<>(used.cardinality());
+        for (int i = used.nextSetBit(0); i >= 0; i = used.nextSetBit(i + 1)) {
+            Lock lock = stripes[i].readLock();
+            lock.lock();
+            locked.add(lock);
+        }
+        return locked;
+    }
+
+    private static void unlock(List<Lock> locked) {
+        for (Lock lock : locked) {
+            lock.unlock();
+        }
+    }
+
+    private void lockAll() {
+        for (ReentrantReadWriteLock lock : stripes) {
+            lock.writeLock().lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (ReentrantReadWriteLock lock : stripes) {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Creates a bike in the shard that owns its ID, in that shard's catalog of the type.
+     * @param bikeBuilder builder for bike
+     * @param bikeCatalog catalog returned by {@link #newCatalog(BikeType)}
+     * @param bikeType type of bike
+     * @return created bike
+     * @throws CatalogNotFoundException if catalog is null or not from this service
+     * @throws InvalidBikeException if the ID is already in use
+     */
+    @Sanitized
+    @Logged
+    @Override
+    public Bike bikeCreation(BikeBuilder bikeBuilder, BikeCatalog bikeCatalog, BikeType bikeType) {
+        checkHandle(bikeCatalog);
+        if (bikeBuilder == null) {
+            throw new InvalidBuilderException("Bike builder cannot be null");
+        }
+        if (bikeType == null) {
+            throw new InvalidBikeTypeException("Bike type cannot be null");
+        }
+        String id = bikeBuilder.getId();
+        Lock lock = stripe(id).readLock();
+        lock.lock();
+        try {
+            Shard shard = locate(id);
+            if (shard.service.getBikeById(id) != null) {
+                throw new InvalidBikeException("Bike ID already exists: " + id);
+            }
+            return shard.service.bikeCreation(bikeBuilder, shard.catalog(bikeType), bikeType);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates many bikes, one batch per shard. Failures are reported at their position in
+     * the input, as {@link BikeRentalService#bikeCreationBatch} does.
+     * @throws CatalogNotFoundException if catalog is null or not from this service
+     */
+    @Sanitized
+    @Logged
+    @Override
+    public ImportReport bikeCreationBatch(Stream<BikeBuilder> bikeBuilders, BikeCatalog bikeCatalog,
+                                          BikeType bikeType) {
+        checkHandle(bikeCatalog);
+        if (bikeBuilders == null) {
+            throw new InvalidBuilderException("Bike builders cannot be null");
+        }
+        if (bikeType == null) {
+            throw new InvalidBikeTypeException("Bike type cannot be null");
+        }
+        long start = System.nanoTime();
+        List<BikeBuilder> rows = bikeBuilders.collect(Collectors.toList());
+        List<String> ids = new ArrayList<>(rows.size());
+        for (BikeBuilder row : rows) {
+            ids.add(row == null ? null : row.getId());
+        }
+        // Routing and creating under the rows' stripes keeps the batch apart from addShard and moves
+        List<Lock> locked = readLock(ids);
+        try {
+            return createBatch(rows, bikeType, start);
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    private ImportReport createBatch(List<BikeBuilder> rows, BikeType bikeType, long start) {
+        Map<Shard, List<Integer>> positions = new IdentityHashMap<>();
+        List<ImportReport.RowFailure> failures = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            BikeBuilder row = rows.get(i);
+            String id = row == null ? null : row.getId();
+            Shard shard = id == null ? ring.ownerOf("") : locate(id);
+            if (shard == null) {
+                throw new InvalidSelectionException("No shards to route to");
+            }
+            if (id != null && shard != ring.ownerOf(id)) {
+                failures.add(new ImportReport.RowFailure(i, id, "Bike ID already exists"));
+            } else {
+                positions.computeIfAbsent(shard, s -> new ArrayList<>()).add(i);
+            }
+        }
+        List<Bike> created = new ArrayList<>(rows.size());
+        for (Map.Entry<Shard, List<Integer>> entry : positions.entrySet()) {
+            Shard shard = entry.getKey();
+            List<Integer> rowsOfShard = entry.getValue();
+            ImportReport report = shard.service.bikeCreationBatch(rowsOfShard.stream().map(rows::get),
+                    shard.catalog(bikeType), bikeType);
+            created.addAll(report.getCreated());
+            for (ImportReport.RowFailure failure : report.getFailures()) {
+                failures.add(new ImportReport.RowFailure(rowsOfShard.get(failure.getRow()),
+                        failure.getBikeId(), failure.getMessage()));
+            }
+        }
+        failures.sort((a, b) -> Integer.compare(a.getRow(), b.getRow()));
+        ImportReport report = new ImportReport(created, failures, System.nanoTime() - start);
+        logger.info(report + " across " + positions.size() + " shards");
+        return report;
+    }
+
+    /**
+     * @param bikeType bike type
+     * @return a catalog to create bikes of the type with; the bikes go to their shard's catalog of the type
+     * @throws InvalidBikeTypeException if bikeType is null
+     * @throws InvalidSelectionException if there are no shards
+     */
+    @Override
+    public BikeCatalog newCatalog(BikeType bikeType) {
+        ConsistentHashRing<Shard> current = ring;
+        if (current.size() == 0) {
+            throw new InvalidSelectionException("No shards to route to");
+        }
+        BikeCatalog handle = current.getNodes().get(0).service.newCatalog(bikeType);
+        handles.add(handle);
+        return handle;
+    }
+
+    private void checkHandle(BikeCatalog bikeCatalog) {
+        if (bikeCatalog == null || !handles.contains(bikeCatalog)) {
+            throw new CatalogNotFoundException("Catalog not found");
+        }
+    }
+
+    /**
+     * @return an inventory of every shard's catalogs
+     */
+    @Override
+    public BikeInventory getBikeInventory() {
+        ArrayList<BikeCatalog> catalogs = new ArrayList<>();
+        for (Shard shard : ring.getNodes()) {
+            catalogs.addAll(shard.service.getBikeInventory().getCatalogs());
+        }
+        return new BikeInventory(catalogs);
+    }
+
+
+    /**
+     * Rents a bike from the shard holding it.
+     * @throws RentalException if rental fails
+     */
+    @Sanitized
+    @Logged
+    @Override
+    public void rentingBike(String id, String safeFirstName, String safeLastName) {
+        Lock lock = stripe(id).readLock();
+        lock.lock();
+        try {
+            BikeRentalService shard = locate(id).service;
+            shard.rentingBike(id, safeFirstName, safeLastName);
+            stations.undock(shard.getBikeById(id));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Sanitized
+    @Logged
+    @Override
+    public void returningBike(String id, String safeFirstName, String safeLastName) {
+        returningBike(id, safeFirstName, safeLastName, null);
+    }
+
+    /**
+     * Returns a bike to the shard holding it, docking it at a station. As in
+     * {@link BikeRentalService}, the dock is taken first and given back if the return fails.
+     * @throws StationNotFoundException if the station is unknown
+     * @throws StationFullException if the station has no free dock
+     * @throws RentalException if return fails
+     */
+    @Sanitized
+    @Logged
+    @Override
+    public void returningBike(String id, String safeFirstName, String safeLastName, String stationId) {
+        Lock lock = stripe(id).readLock();
+        lock.lock();
+        try {
+            BikeRentalService shard = locate(id).service;
+            Bike bike = shard.getBikeById(id);
+            if (bike == null) {
+                throw new BikeNotFoundException("Bike ID " + id + " not found");
+            }
+            boolean wasAvailable = bike.isAvailable();
+            Station previous = stationId == null ? null : stations.dock(bike, stationId);
+            try {
+                shard.returningBike(id, safeFirstName, safeLastName);
+            } catch (RuntimeException e) {
+                if (stationId != null && (wasAvailable || !bike.isAvailable())) {
+                    stations.restore(bike, previous);
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rents a bike at most once per request ID; see {@link BikeRentalService#rentingBikeOnce}.
+     */
+    @Sanitized
+    @Logged
+    @Override
+    public void rentingBikeOnce(String requestId, String id, String safeFirstName, String safeLastName) {
+        requests.execute(requestId, new RequestKey(AuditEventType.RENTED, id, safeFirstName, safeLastName, null),
+                () -> rentingBike(id, safeFirstName, safeLastName));
+    }
+
+    /**
+     * Returns a bike at most once per request ID; see {@link BikeRentalService#returningBikeOnce}.
+     */
+    @Sanitized
+    @Logged
+    @Override
+    public void returningBikeOnce(String requestId, String id, String safeFirstName, String safeLastName,
+                                  String stationId) {
+        requests.execute(requestId,
+                new RequestKey(AuditEventType.RETURNED, id, safeFirstName, safeLastName, stationId),
+                () -> returningBike(id, safeFirstName, safeLastName, stationId));
+    }
+
+    @Sanitized
+    @Logged
+    @Override
+    public Reservation reservingBike(String id, String safeFirstName, String safeLastName) {
+        Lock lock = stripe(id).readLock();
+        lock.lock();
+        try {
+            return locate(id).service.reservingBike(id, safeFirstName, safeLastName);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Sanitized
+    @Logged
+    @Override
+    public void cancellingReservation(String id, String safeFirstName, String safeLastName) {
+        Lock lock = stripe(id).readLock();
+        lock.lock();
+        try {
+            locate(id).service.cancellingReservation(id, safeFirstName, safeLastName);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Sanitized
+    @Override
+    public Bike getBikeById(String id) {
+        if (id == null || id.isBlank() || ring.size() == 0) {
+            return null;
+        }
+        String trimmed = id.trim();
+        Lock lock = stripe(trimmed).readLock();
+        lock.lock();
+        try {
+            return locate(trimmed).service.getBikeById(trimmed);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public Customer findCustomer(String safeFirstName, String safeLastName) {
+        return customers.find(safeFirstName, safeLastName);
+    }
+
+    @Override
+    public List<Bike> getActiveRentals(String safeFirstName, String safeLastName) {
+        Customer customer = customers.find(safeFirstName, safeLastName);
+        List<Bike> rented = new ArrayList<>();
+        if (customer != null) {
+            for (String bikeId : customer.getActiveRentals()) {
+                Bike bike = getBikeById(bikeId);
+                if (bike != null) {
+                    rented.add(bike);
+                }
+            }
+        }
+        return rented;
+    }
+
+    /**
+     * Asks every shard; at most the query limit of bikes, grouped by shard.
+     */
+    @Override
+    public List<Bike> findBikes(BikeQuery query) {
+        if (query == null) {
+            throw new InvalidSelectionException("Query cannot be null");
+        }
+        List<Bike> found = new ArrayList<>();
+        for (Shard shard : ring.getNodes()) {
+            if (found.size() >= query.getLimit()) {
+                break;
+            }
+            List<Bike> bikes = shard.service.findBikes(query);
+            found.addAll(bikes.subList(0, Math.min(bikes.size(), query.getLimit() - found.size())));
+        }
+        return found;
+    }
+
+    @Override
+    public List<StationIndex.NearbyBike> findNearestBikes(double latitude, double longitude, BikeQuery query) {
+        return stations.nearest(latitude, longitude, query);
+    }
+
+    @Override
+    public List<StationIndex.NearbyBike> findBikesWithin(double latitude, double longitude, double radiusMeters,
+                                                         BikeQuery query) {
+        return stations.within(latitude, longitude, radiusMeters, query);
+    }
+
+    /**
+     * Splits the readings by shard.
+     * @return number of readings stored
+     */
+    @Override
+    public int ingestTelemetry(BatteryTelemetry.Batch batch) {
+        if (batch == null) {
+            throw new InvalidSelectionException("Batch cannot be null");
+        }
+        List<String> ids = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            ids.add(batch.bikeIdAt(i));
+        }
+        // Held until the readings are stored, so that none reaches a shard a bike just left
+        List<Lock> locked = readLock(ids);
+        try {
+            Map<Shard, BatteryTelemetry.Batch> perShard = new IdentityHashMap<>();
+            for (int i = 0; i < batch.size(); i++) {
+                Shard shard = locate(batch.bikeIdAt(i));
+                perShard.computeIfAbsent(shard, s -> new BatteryTelemetry.Batch(batch.size())).addFrom(batch, i);
+            }
+            int stored = 0;
+            for (Map.Entry<Shard, BatteryTelemetry.Batch> entry : perShard.entrySet()) {
+                stored += entry.getKey().service.ingestTelemetry(entry.getValue());
+            }
+            return stored;
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    @Logged
+    @Override
+    public void addStation(Station station) {
+        stations.addStation(station);
+        logger.info("Station added: " + station);
+    }
+
+    /**
+     * Places a bike that is not rented at a station.
+     * @throws BikeNotFoundException if the bike is unknown
+     * @throws BikeUnavailableException if the bike is rented
+     */
+    @Sanitized
+    @Logged
+    @Override
+    public void dockingBike(String id, String stationId) {
+        Lock lock = stripe(id).readLock();
+        lock.lock();
+        try {
+            BikeRentalService shard = locate(id).service;
+            Bike bike = shard.getBikeById(id);
+            if (bike == null) {
+                throw new BikeNotFoundException("Bike ID " + id + " not found");
+            }
+            if (shard.getOpenSession(bike.getId()) != null) {
+                throw new BikeUnavailableException("Bike " + id + " is rented; return it to a station instead");
+            }
+            stations.dock(bike, stationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the docking stations, shared by all shards
+     */
+    public StationIndex getStations() {
+        return stations;
+    }
+
+    /**
+     * @return outcomes of recent rent and return requests, by request ID
+     */
+    public IdempotencyCache getRequests() {
+        return requests;
+    }
+}
@@ -0,0 +1,69 @@
+package com.epicode;
+
+/**
+ * Docking station: where bikes are picked up and returned.
+ */
+@Secured("Station coordinates validated")
+@RoleType("Station")
+public final class Station {
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    private final String id;
+    private final String name;
+    private final double latitude;
+    private final double longitude;
+    private final int capacity;
+
+    /**
+     * @param id station ID
+     * @param name display name
+     * @param latitude degrees north, -90 to 90
+     * @param longitude degrees east, -180 to 180
+     * @param capacity number of docks
+     * @throws InputValidationException if the ID is invalid, a coordinate is out of range or capacity is not positive
+     */
+    @Sanitized
+    public Station(String id, String name, double latitude, double longitude, int capacity) {
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new InputValidationException("Invalid station coordinates: " + latitude + ", " + longitude);
+        }
+        if (capacity <= 0) {
+            throw new InputValidationException("Station capacity must be positive");
+        }
+        this.id = InputValidator.sanitizeId(id);
+        this.name = name == null ? this.id : name;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.capacity = capacity;
+    }
+
+    public String getId() { return id; }
+    public String getName() { return name; }
+    public double getLatitude() { return latitude; }
+    public double getLongitude() { return longitude; }
+    public int getCapacity() { return capacity; }
+
+    /**
+     * @return great-circle distance from this station to a point, in meters
+     */
+    public double distanceTo(double latitude, double longitude) {
+        return distance(this.latitude, this.longitude, latitude, longitude);
+    }
+
+    /**
+     * Haversine distance between two points, in meters.
+     */
+    static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double sinLat = Math.sin(dLat / 2);
+        double sinLon = Math.sin(dLon / 2);
+        double a = sinLat * sinLat + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLon * sinLon;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + id + ")";
+    }
+}
@@ -0,0 +1,7 @@
+package com.epicode;
+
+public class StationFullException extends RentalException {
+    public StationFullException(String message) {
+        super(message);
+    }
+}
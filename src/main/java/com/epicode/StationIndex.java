@@ -0,0 +1,387 @@
+package com.epicode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Docking stations on a uniform latitude/longitude grid, and the bikes docked at each.
+ * A query looks at the grid cells around a point, measures the distance to each of
+ * their stations once and checks only the bikes of stations that can still make the
+ * answer, so it touches a neighbourhood of the fleet, not all of it.
+ *
+ * <p>{@link #nearest} searches rings of cells outwards from the point and stops once
+ * no unvisited cell can hold anything closer than the k-th bike found; {@link #within}
+ * visits the cells covering the radius. When the cells to visit outnumber the occupied
+ * ones (a sparse fleet or a huge radius), the occupied cells are scanned instead.</p>
+ *
+ * <p>A rented bike is off its station; a reserved one stays docked but is not available.
+ * Availability and features are read from the bikes themselves when a query runs, so
+ * only docking and undocking change the index. Changes are serialized and copy their
+ * station's bike array; queries take no lock.</p>
+ */
+@Secured("Lock-free geospatial queries, serialized docking")
+@RoleType("Index")
+public class StationIndex {
+    /** About 1.1 km north to south: a few city blocks per cell. */
+    public static final double DEFAULT_CELL_DEGREES = 0.01;
+    private static final double METERS_PER_DEGREE = Math.PI * 6_371_008.8 / 180;
+    private static final Bike[] NO_BIKES = new Bike[0];
+    private static final Dock[] NO_DOCKS = new Dock[0];
+
+    private final double cellDegrees;
+    private final int rows;
+    private final int columns;
+    private final Map<String, Dock> docksById = new ConcurrentHashMap<>();
+    private final Map<String, Dock> dockOfBike = new ConcurrentHashMap<>();
+    private final Map<Long, Dock[]> cells = new ConcurrentHashMap<>();
+
+
+    /**
+     * A station and the bikes docked at it.
+     */
+    private static final class Dock {
+        private final Station station;
+        private final long cell;
+        private volatile Bike[] bikes = NO_BIKES;
+
+        private Dock(Station station, long cell) {
+            this.station = station;
+            this.cell = cell;
+        }
+    }
+
+    /**
+     * A bike found by a query, with its station and distance.
+     */
+    public static final class NearbyBike {
+        private final Bike bike;
+        private final Station station;
+        private final double distanceMeters;
+
+        private NearbyBike(Bike bike, Station station, double distanceMeters) {
+            this.bike = bike;
+            this.station = station;
+            this.distanceMeters = distanceMeters;
+        }
+
+        public Bike getBike() { return bike; }
+        public Station getStation() { return station; }
+        public double getDistanceMeters() { return distanceMeters; }
+
+        @Override
+        public String toString() {
+            return bike.getId() + " at " + station + ", " + Math.round(distanceMeters) + " m";
+        }
+    }
+
+    private static final Comparator<NearbyBike> CLOSEST_FIRST = Comparator
+            .comparingDouble(NearbyBike::getDistanceMeters)
+            .thenComparing(nearby -> nearby.station.getId())
+            .thenComparing(nearby -> nearby.bike.getId());
+
+    public StationIndex() {
+        this(DEFAULT_CELL_DEGREES);
+    }
+
+    /**
+     * @param cellDegrees side of a grid cell in degrees; about the typical distance between stations works best
+     * @throws InvalidSelectionException if cellDegrees is not between 0.0001 and 10
+     */
+    public StationIndex(double cellDegrees) {
+        if (!(cellDegrees >= 0.0001 && cellDegrees <= 10)) {
+            throw new InvalidSelectionException("Invalid grid cell size: " + cellDegrees);
+        }
+        this.cellDegrees = cellDegrees;
+        this.rows = (int) Math.ceil(180 / cellDegrees) + 1;
+        this.columns = (int) Math.ceil(360 / cellDegrees);
+    }
+
+    /**
+     * @param station station to add
+     * @throws InvalidSelectionException if the station is null or its ID is taken
+     */
+    @Logged
+    public synchronized void addStation(Station station) {
+        if (station == null || docksById.containsKey(station.getId())) {
+            throw new InvalidSelectionException("Station is null or already exists: " + station);
+        }
+        long cell = cellOf(rowOf(station.getLatitude()), columnOf(station.getLongitude()));
+        Dock dock = new Dock(station, cell);
+        Dock[] current = cells.getOrDefault(cell, NO_DOCKS);
+        Dock[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = dock;
+        cells.put(cell, updated);
+        docksById.put(station.getId(), dock);
+    }
+
+    /**
+     * @return the station, or null if unknown
+     */
+    public Station getStation(String stationId) {
+        Dock dock = stationId == null ? null : docksById.get(stationId);
+        return dock == null ? null : dock.station;
+    }
+
+    public int getStationCount() {
+        return docksById.size();
+    }
+
+    /**
+     * @return the station the bike is docked at, or null if it is not docked
+     */
+    public Station stationOf(String bikeId) {
+        Dock dock = bikeId == null ? null : dockOfBike.get(bikeId);
+        return dock == null ? null : dock.station;
+    }
+
+    /**
+     * @return the bikes docked at a station, reserved ones included
+     * @throws StationNotFoundException if the station is unknown
+     */
+    public List<Bike> bikesAt(String stationId) {
+        return List.of(dockOf(stationId).bikes);
+    }
+
+    /**
+     * Docks a bike at a station, taking it off the station it was at.
+     * @param bike bike to dock
+     * @param stationId station to dock it at
+     * @return the station the bike was at before, or null
+     * @throws InvalidBikeException if bike is null
+     * @throws StationNotFoundException if the station is unknown
+     * @throws StationFullException if every dock of the station is taken
+     */
+    @Logged
+    public synchronized Station dock(Bike bike, String stationId) {
+        if (bike == null) {
+            throw new InvalidBikeException("Cannot dock null bike");
+        }
+        Dock target = dockOf(stationId);
+        Dock previous = dockOfBike.get(bike.getId());
+        if (previous == target) {
+            return target.station;
+        }
+        if (target.bikes.length >= target.station.getCapacity()) {
+            throw new StationFullException("Station " + target.station + " is full");
+        }
+        move(bike, previous, target);
+        return previous == null ? null : previous.station;
+    }
+
+    /**
+     * Puts a bike back where it was before a {@link #dock} that has to be undone. Capacity is not checked.
+     * @param bike bike to move
+     * @param station station returned by {@link #dock}, or null to undock the bike
+     */
+    synchronized void restore(Bike bike, Station station) {
+        Dock target = station == null ? null : docksById.get(station.getId());
+        move(bike, dockOfBike.get(bike.getId()), target);
+    }
+
+    /**
+     * @param bike bike to take off its station
+     * @return the station it was docked at, or null
+     */
+    @Logged
+    public synchronized Station undock(Bike bike) {
+        Dock previous = bike == null ? null : dockOfBike.get(bike.getId());
+        if (previous == null) {
+            return null;
+        }
+        move(bike, previous, null);
+        return previous.station;
+    }
+
+    private void move(Bike bike, Dock from, Dock to) {
+        if (from != null) {
+            Bike[] current = from.bikes;
+            Bike[] updated = new Bike[current.length - 1];
+            int next = 0;
+            for (Bike docked : current) {
+                if (!docked.getId().equals(bike.getId()) && next < updated.length) {
+                    updated[next++] = docked;
+                }
+            }
+            from.bikes = updated;
+            dockOfBike.remove(bike.getId());
+        }
+        if (to != null) {
+            Bike[] current = to.bikes;
+            Bike[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = bike;
+            to.bikes = updated;
+            dockOfBike.put(bike.getId(), to);
+        }
+    }
+
+    private Dock dockOf(String stationId) {
+        Dock dock = stationId == null ? null : docksById.get(stationId);
+        if (dock == null) {
+            throw new StationNotFoundException("Station not found: " + stationId);
+        }
+        return dock;
+    }
+
+    /**
+     * Finds the available bikes closest to a point.
+     * @param latitude degrees north
+     * @param longitude degrees east
+     * @param query type and feature criteria; its limit is the number of bikes wanted. Availability is implied.
+     * @return up to {@code query.getLimit()} matching bikes, closest first
+     * @throws InvalidSelectionException if the query is null or the point is invalid
+     */
+    public List<NearbyBike> nearest(double latitude, double longitude, BikeQuery query) {
+        checkPoint(latitude, longitude, query);
+        int limit = query.getLimit();
+        PriorityQueue<NearbyBike> best = new PriorityQueue<>(Math.min(limit, 1024), CLOSEST_FIRST.reversed());
+        int row = rowOf(latitude);
+        int column = columnOf(longitude);
+        for (int ring = 0; ; ring++) {
+            if (best.size() == limit && best.peek().distanceMeters <= ringDistance(latitude, ring)) {
+                break;
+            }
+            long side = 2L * ring + 1;
+            if (side >= columns || side * side > 4L * cells.size()) {
+                // Cheaper to look at every occupied cell than at the rings still ahead
+                best.clear();
+                for (Dock[] docks : cells.values()) {
+                    collect(docks, latitude, longitude, query, Double.MAX_VALUE, limit, best);
+                }
+                break;
+            }
+            for (int r = row - ring; r <= row + ring; r++) {
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                int step = r == row - ring || r == row + ring ? 1 : 2 * ring;
+                for (int c = column - ring; c <= column + ring; c += Math.max(1, step)) {
+                    Dock[] docks = cells.get(cellOf(r, Math.floorMod(c, columns)));
+                    if (docks != null) {
+                        collect(docks, latitude, longitude, query, Double.MAX_VALUE, limit, best);
+                    }
+                }
+            }
+        }
+        return sorted(best);
+    }
+
+    /**
+     * Finds the available bikes within a distance of a point.
+     * @param latitude degrees north
+     * @param longitude degrees east
+     * @param radiusMeters maximum distance
+     * @param query type and feature criteria, and the maximum number of bikes. Availability is implied.
+     * @return matching bikes, closest first
+     * @throws InvalidSelectionException if the query is null, the point is invalid or the radius negative
+     */
+    public List<NearbyBike> within(double latitude, double longitude, double radiusMeters, BikeQuery query) {
+        checkPoint(latitude, longitude, query);
+        if (!(radiusMeters >= 0)) {
+            throw new InvalidSelectionException("Invalid radius: " + radiusMeters);
+        }
+        int limit = query.getLimit();
+        PriorityQueue<NearbyBike> best = new PriorityQueue<>(Math.min(limit, 1024), CLOSEST_FIRST.reversed());
+        double latitudeSpan = radiusMeters / METERS_PER_DEGREE;
+        double widest = Math.min(90, Math.abs(latitude) + latitudeSpan);
+        double longitudeSpan = latitudeSpan / Math.max(Math.cos(Math.toRadians(widest)), 1e-9);
+        int firstRow = Math.max(0, rowOf(Math.max(-90, latitude - latitudeSpan)));
+        int lastRow = Math.min(rows - 1, rowOf(Math.min(90, latitude + latitudeSpan)));
+        long spannedColumns = (long) Math.ceil(2 * longitudeSpan / cellDegrees) + 2;
+        if (spannedColumns >= columns || (lastRow - firstRow + 1) * spannedColumns > 4L * cells.size()) {
+            for (Dock[] docks : cells.values()) {
+                collect(docks, latitude, longitude, query, radiusMeters, limit, best);
+            }
+            return sorted(best);
+        }
+        int firstColumn = (int) Math.floor((longitude - longitudeSpan + 180) / cellDegrees);
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c < firstColumn + spannedColumns; c++) {
+                Dock[] docks = cells.get(cellOf(r, Math.floorMod(c, columns)));
+                if (docks != null) {
+                    collect(docks, latitude, longitude, query, radiusMeters, limit, best);
+                }
+            }
+        }
+        return sorted(best);
+    }
+
+    /**
+     * Adds the matching bikes of some stations to the best ones found so far.
+     */
+    private static void collect(Dock[] docks, double latitude, double longitude, BikeQuery query,
+                                double maxMeters, int limit, PriorityQueue<NearbyBike> best) {
+        for (Dock dock : docks) {
+            double distance = dock.station.distanceTo(latitude, longitude);
+            if (distance > maxMeters || (best.size() == limit && distance > best.peek().distanceMeters)) {
+                continue;
+            }
+            for (Bike bike : dock.bikes) {
+                if (!matches(bike, query)) {
+                    continue;
+                }
+                NearbyBike candidate = new NearbyBike(bike, dock.station, distance);
+                if (best.size() < limit) {
+                    best.add(candidate);
+                } else if (CLOSEST_FIRST.compare(candidate, best.peek()) < 0) {
+                    best.poll();
+                    best.add(candidate);
+                }
+            }
+        }
+    }
+
+    private static boolean matches(Bike bike, BikeQuery query) {
+        return bike.isAvailable()
+                && (query.getType() == null || bike.getType() == query.getType())
+                && (query.getLights() == null || bike.hasLights() == query.getLights())
+                && (query.getBasket() == null || bike.hasBasket() == query.getBasket())
+                && (query.getGPS() == null || bike.hasGPS() == query.getGPS())
+                && (query.getLowBattery() == null || bike.isLowBattery() == query.getLowBattery());
+    }
+
+    private static List<NearbyBike> sorted(Collection<NearbyBike> found) {
+        List<NearbyBike> result = new ArrayList<>(found);
+        result.sort(CLOSEST_FIRST);
+        return result;
+    }
+
+    /**
+     * @return a lower bound of the distance from the point to any cell of the given ring or beyond
+     */
+    private double ringDistance(double latitude, int ring) {
+        if (ring <= 1) {
+            return 0;
+        }
+        double widest = Math.min(90, Math.abs(latitude) + ring * cellDegrees);
+        // Slightly below the planar bound, to stay a lower bound on the sphere
+        return 0.99 * (ring - 1) * cellDegrees * METERS_PER_DEGREE * Math.cos(Math.toRadians(widest));
+    }
+
+    private static void checkPoint(double latitude, double longitude, BikeQuery query) {
+        if (query == null) {
+            throw new InvalidSelectionException("Query cannot be null");
+        }
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new InvalidSelectionException("Invalid coordinates: " + latitude + ", " + longitude);
+        }
+    }
+
+    private int rowOf(double latitude) {
+        return (int) Math.floor((latitude + 90) / cellDegrees);
+    }
+
+    private int columnOf(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180) / cellDegrees), columns);
+    }
+
+    private static long cellOf(int row, int column) {
+        return ((long) row << 32) | column;
+    }
+}
@@ -0,0 +1,7 @@
+package com.epicode;
+
+public class StationNotFoundException extends RentalException {
+    public StationNotFoundException(String message) {
+        super(message);
+    }
+}
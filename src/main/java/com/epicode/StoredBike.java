@@ -0,0 +1,148 @@
+package com.epicode;
+
+import java.util.logging.Logger;
+
+/**
+ * Lightweight {@link Bike} view of one {@link FleetStore} slot.
+ * Every getter and setter goes to the store's columns, so all views of a slot
+ * agree and can be dropped at any time. Listeners are not supported: stores
+ * answer queries from their own bit sets.
+ */
+@Secured("Shielding, logging, validation verified")
+@RoleType("Bike")
+final class StoredBike extends Bike {
+    private static final Logger logger = Logger.getLogger(StoredBike.class.getName());
+    private final FleetStore store;
+    private final int slot;
+
+    StoredBike(FleetStore store, int slot) {
+        super(new BikeBuilder(store.getId(slot), store.getModel(slot), false));
+        this.store = store;
+        this.slot = slot;
+    }
+
+    FleetStore getStore() {
+        return store;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public BikeType getType() {
+        return store.getType(slot);
+    }
+
+    @Override
+    public void setId(String id) {
+        throw new InvalidBikeException("Stored bikes cannot change ID");
+    }
+
+    @Override
+    public void setModel(String model) {
+        throw new InvalidBikeException("Stored bikes cannot change model");
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return store.isAvailable(slot);
+    }
+
+    @Override
+    public void setAvailable(boolean available) {
+        store.setAvailable(slot, available);
+    }
+
+    @Override
+    public boolean hasLights() {
+        return store.hasLights(slot);
+    }
+
+    @Override
+    public void setLights(boolean lights) {
+        store.setLights(slot, lights);
+    }
+
+    @Override
+    public boolean hasBasket() {
+        return store.hasBasket(slot);
+    }
+
+    @Override
+    public void setBasket(boolean basket) {
+        store.setBasket(slot, basket);
+    }
+
+    @Override
+    public boolean hasGPS() {
+        return store.hasGPS(slot);
+    }
+
+    @Override
+    public boolean isLowBattery() {
+        return store.isLowBattery(slot);
+    }
+
+    @Override
+    void setLowBattery(boolean lowBattery) {
+        if (getType() != BikeType.electric) {
+            super.setLowBattery(lowBattery);
+        }
+        store.setLowBattery(slot, lowBattery);
+    }
+
+    @Override
+    public void setGPS(boolean GPS) {
+        store.setGPS(slot, GPS);
+    }
+
+    @Logged
+    @Override
+    public void rentBike() {
+        if (!store.compareAndSetAvailable(slot, true, false)) {
+            logger.warning("Attempt to rent unavailable bike: " + getId());
+            throw new BikeUnavailableException("Bike " + getId() + " is not available for rent");
+        }
+    }
+
+    @Logged
+    @Override
+    public void returnBike() {
+        if (!store.compareAndSetAvailable(slot, false, true)) {
+            logger.warning("Bike is already available: " + getId());
+            throw new BikeNotRentedException("Bike " + getId() + " is not currently rented");
+        }
+    }
+
+    @Override
+    public void addListener(BikeListener listener) {
+        throw new InvalidBikeException("Stored bikes do not support listeners");
+    }
+
+    @Override
+    public void showDetails() {
+        System.out.println("-------Bike details------");
+        System.out.println("Type: " + getType());
+        System.out.println("ID: " + getId());
+        System.out.println("Model: " + getModel());
+        System.out.println("Available: " + isAvailable());
+        System.out.println("Lights: " + hasLights());
+        System.out.println("Basket: " + hasBasket());
+        System.out.println("GPS: " + hasGPS());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof StoredBike)) {
+            return false;
+        }
+        StoredBike that = (StoredBike) other;
+        return store == that.store && slot == that.slot;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(store) * 31 + slot;
+    }
+}
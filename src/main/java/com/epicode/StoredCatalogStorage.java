@@ -0,0 +1,132 @@
+package com.epicode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Catalog storage holding no bike objects at all: membership is one bit per
+ * {@link FleetStore} slot, bikes come back as views in slot order, and queries
+ * run on the store's bit sets restricted to the members.
+ *
+ * <p>Positional access walks the membership words, so it costs O(slots / 64).</p>
+ */
+final class StoredCatalogStorage implements CatalogStorage {
+    private final FleetStore store;
+    private final AtomicBitSet members = new AtomicBitSet();
+    private final AtomicInteger size = new AtomicInteger();
+
+    StoredCatalogStorage(FleetStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void add(Bike bike) {
+        if (members.compareAndSet(slotOf(bike), false, true)) {
+            size.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void addAll(Collection<Bike> bikes) {
+        // Check every bike first so a foreign one leaves the catalog unchanged
+        for (Bike bike : bikes) {
+            slotOf(bike);
+        }
+        for (Bike bike : bikes) {
+            add(bike);
+        }
+    }
+
+    @Override
+    public boolean remove(Bike bike) {
+        if (!(bike instanceof StoredBike) || ((StoredBike) bike).getStore() != store) {
+            return false;
+        }
+        if (!members.compareAndSet(((StoredBike) bike).getSlot(), true, false)) {
+            return false;
+        }
+        size.decrementAndGet();
+        return true;
+    }
+
+    @Override
+    public Bike get(int position) {
+        if (position >= 0) {
+            int seen = 0;
+            int words = members.wordsInUse();
+            for (int word = 0; word < words; word++) {
+                long bits = members.word(word);
+                int count = Long.bitCount(bits);
+                if (seen + count > position) {
+                    for (int skip = position - seen; skip > 0; skip--) {
+                        bits &= bits - 1;
+                    }
+                    return store.view((word << 6) + Long.numberOfTrailingZeros(bits));
+                }
+                seen += count;
+            }
+        }
+        throw new IndexOutOfBoundsException("Index " + position + " out of bounds");
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public List<Bike> snapshot() {
+        List<Bike> bikes = new ArrayList<>(size());
+        for (int slot = members.nextSetBit(0); slot >= 0; slot = members.nextSetBit(slot + 1)) {
+            bikes.add(store.view(slot));
+        }
+        return bikes;
+    }
+
+    @Override
+    public Iterator<Bike> iterator() {
+        return new Iterator<>() {
+            private int next = members.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Bike next() {
+                if (next < 0) {
+                    throw new NoSuchElementException("No more bikes in iterator");
+                }
+                Bike bike = store.view(next);
+                next = members.nextSetBit(next + 1);
+                return bike;
+            }
+        };
+    }
+
+    @Override
+    public List<Bike> find(BikeQuery query) {
+        return store.find(query, members);
+    }
+
+    @Override
+    public int count(BikeQuery query) {
+        return store.count(query, members);
+    }
+
+    @Override
+    public boolean isBackedBy(FleetStore fleetStore) {
+        return store == fleetStore;
+    }
+
+    private int slotOf(Bike bike) {
+        if (!(bike instanceof StoredBike) || ((StoredBike) bike).getStore() != store) {
+            throw new InvalidBikeException("Bike " + bike.getId() + " is not held by this catalog's fleet store");
+        }
+        return ((StoredBike) bike).getSlot();
+    }
+}
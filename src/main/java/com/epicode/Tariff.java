@@ -0,0 +1,59 @@
+package com.epicode;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Price of a rental: an unlock fee plus a rate for every started minute, in cents.
+ * A ride is billed for at least one minute.
+ */
+@Secured("Tariff amounts validated")
+@RoleType("Billing")
+public final class Tariff {
+    private final long unlockCents;
+    private final long centsPerMinute;
+
+    /**
+     * @param unlockCents fee charged once per rental
+     * @param centsPerMinute rate per started minute
+     * @throws InputValidationException if an amount is negative
+     */
+    public Tariff(long unlockCents, long centsPerMinute) {
+        if (unlockCents < 0 || centsPerMinute < 0) {
+            throw new InputValidationException("Tariff amounts cannot be negative");
+        }
+        this.unlockCents = unlockCents;
+        this.centsPerMinute = centsPerMinute;
+    }
+
+    public long getUnlockCents() { return unlockCents; }
+    public long getCentsPerMinute() { return centsPerMinute; }
+
+    /**
+     * @param duration length of the ride; negative durations (clock steps) count as zero
+     * @return price of the ride in cents
+     */
+    public long charge(Duration duration) {
+        long nanos = Math.max(0, duration.toNanos());
+        long minutes = Math.max(1, (nanos + 59_999_999_999L) / 60_000_000_000L);
+        return unlockCents + minutes * centsPerMinute;
+    }
+
+    /**
+     * @return the tariffs a service starts with, one per bike type
+     */
+    static Map<BikeType, Tariff> defaults() {
+        Map<BikeType, Tariff> tariffs = new EnumMap<>(BikeType.class);
+        tariffs.put(BikeType.mountain, new Tariff(100, 20));
+        tariffs.put(BikeType.electric, new Tariff(100, 35));
+        tariffs.put(BikeType.folding, new Tariff(50, 15));
+        tariffs.put(BikeType.road, new Tariff(100, 25));
+        return tariffs;
+    }
+
+    @Override
+    public String toString() {
+        return "Tariff{unlock=" + unlockCents + "c, perMinute=" + centsPerMinute + "c}";
+    }
+}
@@ -0,0 +1,174 @@
+package com.epicode;
+
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: a ring of buckets, one per tick, in which every pending
+ * timeout waits for its deadline. Scheduling and cancelling cost O(1) and take no
+ * lock, and a single caller drives expiry with {@link #advance(long, Consumer)},
+ * which only visits the buckets of the ticks that went by.
+ *
+ * <p>A deadline further away than one turn of the wheel stays in its bucket for
+ * as many extra turns as needed. Timeouts fire at most one tick late. Cancelled
+ * timeouts are dropped the next time their bucket is visited.</p>
+ *
+ * @param <T> payload handed back when a timeout expires
+ */
+@Secured("Lock-free timeout scheduling")
+@RoleType("Scheduler")
+public class TimingWheel<T> {
+    private final long tickNanos;
+    private final long startNanos;
+    private final ArrayList<Timeout<T>>[] buckets;
+    private final int mask;
+    private final Queue<Timeout<T>> scheduled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private long tick = 0;
+
+    /**
+     * Handle of one scheduled payload. Expires or is cancelled exactly once.
+     */
+    public static final class Timeout<T> {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final T payload;
+        private final long deadlineNanos;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private final TimingWheel<T> wheel;
+        private long rounds;
+
+        private Timeout(TimingWheel<T> wheel, T payload, long deadlineNanos) {
+            this.wheel = wheel;
+            this.payload = payload;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+
+        public long getDeadlineNanos() {
+            return deadlineNanos;
+        }
+
+        /**
+         * @return true if the timeout was pending and will now never expire
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            wheel.pending.decrementAndGet();
+            return true;
+        }
+
+        public boolean isPending() {
+            return state.get() == PENDING;
+        }
+
+        private boolean expire() {
+            if (!state.compareAndSet(PENDING, EXPIRED)) {
+                return false;
+            }
+            wheel.pending.decrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * @param tickNanos duration of one tick, the expiry resolution
+     * @param wheelSize number of buckets, rounded up to a power of two
+     * @param startNanos {@link System#nanoTime()} reading the first tick starts at
+     * @throws InvalidSelectionException if tick or size is not positive
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(long tickNanos, int wheelSize, long startNanos) {
+        if (tickNanos <= 0 || wheelSize <= 0 || wheelSize > 1 << 20) {
+            throw new InvalidSelectionException("Invalid timing wheel: tick " + tickNanos + "ns, size " + wheelSize);
+        }
+        int size = Integer.highestOneBit(wheelSize * 2 - 1);
+        this.tickNanos = tickNanos;
+        this.startNanos = startNanos;
+        this.buckets = new ArrayList[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Schedules a payload; safe to call from any thread.
+     * @param payload value handed to the expiry callback
+     * @param deadlineNanos {@link System#nanoTime()} reading after which it expires
+     * @return handle to cancel the timeout
+     */
+    public Timeout<T> schedule(T payload, long deadlineNanos) {
+        Timeout<T> timeout = new Timeout<>(this, payload, deadlineNanos);
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Expires every pending timeout whose deadline lies in a tick that has fully elapsed.
+     * Only one thread advances at a time.
+     * @param nowNanos current {@link System#nanoTime()} reading
+     * @param onExpire called once per expired payload, on the calling thread
+     * @return number of expired timeouts
+     */
+    public synchronized int advance(long nowNanos, Consumer<? super T> onExpire) {
+        long lastTick = Math.floorDiv(nowNanos - startNanos, tickNanos) - 1;
+        int expired = 0;
+        while (tick <= lastTick) {
+            transferScheduled();
+            expired += expireBucket(buckets[(int) (tick & mask)], onExpire);
+            tick++;
+        }
+        return expired;
+    }
+
+    /**
+     * @return number of timeouts neither expired nor cancelled yet
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    private void transferScheduled() {
+        Timeout<T> timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (!timeout.isPending()) {
+                continue;
+            }
+            long deadlineTick = Math.max(tick, Math.floorDiv(timeout.deadlineNanos - startNanos, tickNanos));
+            timeout.rounds = (deadlineTick - tick) >>> Integer.numberOfTrailingZeros(buckets.length);
+            buckets[(int) (deadlineTick & mask)].add(timeout);
+        }
+    }
+
+    private int expireBucket(ArrayList<Timeout<T>> bucket, Consumer<? super T> onExpire) {
+        int expired = 0;
+        int kept = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            Timeout<T> timeout = bucket.get(i);
+            if (!timeout.isPending()) {
+                continue;
+            }
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                bucket.set(kept++, timeout);
+            } else if (timeout.expire()) {
+                onExpire.accept(timeout.payload);
+                expired++;
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+        return expired;
+    }
+}
@@ -0,0 +1,140 @@
+package com.epicode;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+
+/**
+ * List storage that hands out immutable, point-in-time snapshots in O(1).
+ *
+ * <p>Appends write into spare capacity past the end of every published snapshot
+ * and then publish a new version, so readers never see a change and never need
+ * a lock; only removals copy the backing array. Writers are serialized.</p>
+ *
+ * @param <T> element type
+ */
+@Secured("Snapshot-consistent storage")
+@RoleType("Collection")
+public class VersionedList<T> {
+    private volatile Snapshot<T> current;
+
+    /**
+     * @param initial elements to start with, copied
+     */
+    public VersionedList(Collection<? extends T> initial) {
+        Object[] items = initial.toArray();
+        this.current = new Snapshot<>(Arrays.copyOf(items, Math.max(8, items.length)), items.length);
+    }
+
+    /**
+     * @return the current contents; later changes to this list are not visible through it
+     */
+    public Snapshot<T> snapshot() {
+        return current;
+    }
+
+    public synchronized void add(T item) {
+        Snapshot<T> snapshot = current;
+        Object[] items = ensureCapacity(snapshot, 1);
+        items[snapshot.size] = item;
+        current = new Snapshot<>(items, snapshot.size + 1);
+    }
+
+    public synchronized void addAll(Collection<? extends T> added) {
+        Snapshot<T> snapshot = current;
+        Object[] items = ensureCapacity(snapshot, added.size());
+        int size = snapshot.size;
+        for (T item : added) {
+            items[size++] = item;
+        }
+        current = new Snapshot<>(items, size);
+    }
+
+    /**
+     * Appends an element unless an equal one is already present.
+     * @return true if the element was added
+     */
+    public synchronized boolean addIfAbsent(T item) {
+        if (current.contains(item)) {
+            return false;
+        }
+        add(item);
+        return true;
+    }
+
+    /**
+     * Removes the first element equal to the given one.
+     * @return true if an element was removed
+     */
+    public synchronized boolean remove(T item) {
+        Snapshot<T> snapshot = current;
+        for (int i = 0; i < snapshot.size; i++) {
+            if (Objects.equals(snapshot.items[i], item)) {
+                removeAt(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the removed element
+     * @throws IndexOutOfBoundsException if index is invalid
+     */
+    public synchronized T removeAt(int index) {
+        Snapshot<T> snapshot = current;
+        T removed = snapshot.get(index);
+        // Copy: published snapshots share the old array and must not change
+        Object[] items = new Object[Math.max(8, snapshot.items.length)];
+        System.arraycopy(snapshot.items, 0, items, 0, index);
+        System.arraycopy(snapshot.items, index + 1, items, index, snapshot.size - index - 1);
+        current = new Snapshot<>(items, snapshot.size - 1);
+        return removed;
+    }
+
+    private static Object[] ensureCapacity(Snapshot<?> snapshot, int extra) {
+        int needed = snapshot.size + extra;
+        if (needed <= snapshot.items.length) {
+            return snapshot.items;
+        }
+        return Arrays.copyOf(snapshot.items, Math.max(needed, snapshot.items.length * 2));
+    }
+
+    /**
+     * Immutable view of the list at one version.
+     * @param <T> element type
+     */
+    public static final class Snapshot<T> extends AbstractList<T> implements RandomAccess {
+        private final Object[] items;
+        private final int size;
+
+        private Snapshot(Object[] items, int size) {
+            this.items = items;
+            this.size = size;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T get(int index) {
+            Objects.checkIndex(index, size);
+            return (T) items[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Spliterator<T> spliterator() {
+            return (Spliterator<T>) Spliterators.spliterator(items, 0, size,
+                    Spliterator.ORDERED | Spliterator.IMMUTABLE);
+        }
+    }
+}
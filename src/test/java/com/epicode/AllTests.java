@@ -5,15 +5,38 @@ import org.junit.platform.suite.api.Suite;
 
 @Suite
 @SelectClasses({
+        AuditAnalyticsTest.class,
+        AuditEncoderTest.class,
+        AuditLogTailerTest.class,
+        AuditSegmentsTest.class,
+        BatteryTelemetryTest.class,
+        BikeAuditRepositoryTest.class,
         BikeBuilderTest.class,
         BikeCatalogTest.class,
         BikeFactoryTest.class,
+        BikeIdIndexTest.class,
+        BikeIndexTest.class,
         BikeInventoryTest.class,
         BikeRentalServiceTest.class,
         BikeTest.class,
+        CustomerRegistryTest.class,
+        FleetImporterTest.class,
+        FleetStoreTest.class,
+        IdempotencyCacheTest.class,
         InputValidatorTest.class,
+        InstrumentationTest.class,
         IteratorsTest.class,
-        RentalAppTest.class
+        MappedAuditLogTest.class,
+        RentalAppTest.class,
+        RentalHttpServerTest.class,
+        RentalLedgerTest.class,
+        RentalSessionTest.class,
+        RentalStateRecoveryTest.class,
+        ReservationTest.class,
+        RevenueAggregatorTest.class,
+        ShardedRentalServiceTest.class,
+        StationIndexTest.class,
+        TimingWheelTest.class
 })
 public class AllTests {
 }
@@ -0,0 +1,158 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditAnalyticsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 5, 1, 10, 0);
+
+    private Path writeLogs(int rentals) throws IOException {
+        List<String> bikes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            BikeType type = i < 4 ? BikeType.electric : BikeType.road;
+            bikes.add(BikeAuditRepository.creationLine(T0, "b" + i, type, "Catalog", "M", true, false, false, false));
+        }
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < rentals; i++) {
+            // Bike b0 is rented most, then b1, and so on; one rental per minute
+            String bike = "b" + Integer.numberOfTrailingZeros(i + 1) % 10;
+            LocalDateTime time = T0.plusMinutes(i);
+            lines.add(BikeAuditRepository.rentalLine(time, bike, "John", "Doe"));
+            lines.add(BikeAuditRepository.returnLine(time.plusSeconds(30), bike, "John", "Doe"));
+        }
+        lines.add(BikeAuditRepository.rentalLine(T0, "ghost", "John", "Doe"));
+        lines.add("garbage line");
+        Files.write(tempDir.resolve("bikes.log"), bikes, StandardCharsets.UTF_8);
+        Files.write(tempDir.resolve("rentals.log"), lines, StandardCharsets.UTF_8);
+        return tempDir;
+    }
+
+    @Test
+    public void testCountsPerHourAndType() throws IOException {
+        writeLogs(150);
+        AuditStats stats = AuditAnalytics.analyze(tempDir.resolve("bikes.log"), tempDir.resolve("rentals.log"));
+
+        assertEquals(10, stats.getEventCount(AuditEventType.CREATED));
+        assertEquals(151, stats.getEventCount(AuditEventType.RENTED));
+        assertEquals(150, stats.getEventCount(AuditEventType.RETURNED));
+        assertEquals(1, stats.getSkippedLines());
+        assertEquals(10, stats.getBikeCount());
+
+        List<AuditStats.HourlyRentals> hours = stats.rentalsByHour(LocalDateTime.MIN, LocalDateTime.MAX);
+        assertEquals(3, hours.size());
+        assertEquals(T0, hours.get(0).getHour());
+        assertEquals(61, hours.get(0).getTotal());
+        assertEquals(1, hours.get(0).getUnknownType());
+        assertEquals(30, hours.get(2).getTotal());
+        long electric = hours.stream().mapToLong(hour -> hour.getRentals(BikeType.electric)).sum();
+        long road = hours.stream().mapToLong(hour -> hour.getRentals(BikeType.road)).sum();
+        assertEquals(150, electric + road);
+        assertTrue(electric > road);
+
+        assertEquals(1, stats.rentalsByHour(T0.plusHours(1), T0.plusHours(2)).size());
+    }
+
+    @Test
+    public void testTopBikes() throws IOException {
+        writeLogs(150);
+        AuditStats stats = AuditAnalytics.analyze(tempDir.resolve("bikes.log"), tempDir.resolve("rentals.log"));
+
+        List<AuditStats.BikeRentals> top = stats.topBikes(3);
+        assertEquals(3, top.size());
+        assertEquals("b0", top.get(0).getBikeId());
+        assertEquals(75, top.get(0).getRentals());
+        assertEquals(BikeType.electric, top.get(0).getType());
+        assertEquals("b1", top.get(1).getBikeId());
+        assertEquals("b2", top.get(2).getBikeId());
+        assertEquals(8, stats.topBikes(100).size());
+    }
+
+    @Test
+    public void testSmallChunksGiveTheSameResult() throws IOException {
+        writeLogs(5_000);
+        AuditStats whole = AuditAnalytics.analyze(tempDir.resolve("bikes.log"), tempDir.resolve("rentals.log"));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AuditStats chunked = AuditAnalytics.analyze(tempDir.resolve("bikes.log"),
+                    tempDir.resolve("rentals.log"), pool, 4096);
+            assertEquals(whole.getEventCount(AuditEventType.RENTED), chunked.getEventCount(AuditEventType.RENTED));
+            assertEquals(whole.getSkippedLines(), chunked.getSkippedLines());
+            assertEquals(whole.topBikes(10).toString(), chunked.topBikes(10).toString());
+            List<AuditStats.HourlyRentals> a = whole.rentalsByHour(LocalDateTime.MIN, LocalDateTime.MAX);
+            List<AuditStats.HourlyRentals> b = chunked.rentalsByHour(LocalDateTime.MIN, LocalDateTime.MAX);
+            assertEquals(a.size(), b.size());
+            for (int i = 0; i < a.size(); i++) {
+                assertEquals(a.get(i).getTotal(), b.get(i).getTotal());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testChunksEndOnLineBoundaries() throws IOException {
+        writeLogs(2_000);
+        Path log = tempDir.resolve("rentals.log");
+        byte[] bytes = Files.readAllBytes(log);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            long[] bounds = AuditAnalytics.chunkBounds(channel, 16, 1000);
+            assertTrue(bounds.length > 10);
+            assertEquals(0, bounds[0]);
+            assertEquals(bytes.length, bounds[bounds.length - 1]);
+            for (int i = 1; i < bounds.length - 1; i++) {
+                assertEquals('\n', bytes[(int) bounds[i] - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void testFindsLineBreaksWordByWord() {
+        // 0x0B next to a line break is what a naive zero-byte test would mistake for one
+        java.nio.ByteBuffer text = ByteBuffer.wrap("ab\u000b\u000b\ncdefghijklmnop\nq".getBytes(StandardCharsets.ISO_8859_1))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(4, AuditAnalytics.nextLineBreak(text, 0, text.limit()));
+        assertEquals(19, AuditAnalytics.nextLineBreak(text, 5, text.limit()));
+        assertEquals(text.limit(), AuditAnalytics.nextLineBreak(text, 20, text.limit()));
+    }
+
+    @Test
+    public void testPrintsReports() throws IOException {
+        writeLogs(150);
+        AuditStats stats = AuditAnalytics.analyze(tempDir.resolve("bikes.log"), tempDir.resolve("rentals.log"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream print = new PrintStream(out, true, StandardCharsets.UTF_8);
+
+        AuditAnalytics.printReport(stats, new String[]{"top", "1"}, print);
+        assertEquals("1\tb0\telectric\t75", out.toString(StandardCharsets.UTF_8).trim());
+        out.reset();
+        AuditAnalytics.printReport(stats, new String[]{"hourly", "2024-05-01T11:00", "2024-05-01T12:00"}, print);
+        String[] rows = out.toString(StandardCharsets.UTF_8).trim().split("\n");
+        assertEquals(2, rows.length);
+        assertTrue(rows[1].startsWith("2024-05-01T11:00\t"));
+        assertThrows(InputValidationException.class,
+                () -> AuditAnalytics.printReport(stats, new String[]{"weekly"}, print));
+        assertThrows(InputValidationException.class,
+                () -> AuditAnalytics.printReport(stats, new String[]{"top", "-1"}, print));
+    }
+}
@@ -0,0 +1,110 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditEncoderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Rome");
+
+    private static long millisOf(LocalDateTime time) {
+        return time.atZone(ZONE).toInstant().toEpochMilli();
+    }
+
+    @Test
+    public void testTextMatchesTheFormattedLayout() {
+        AtomicLong clock = new AtomicLong();
+        AuditEncoder encoder = new AuditEncoder(AuditEncoder.Layout.TEXT, ZONE, clock::get);
+        List<LocalDateTime> times = List.of(LocalDateTime.of(2024, 3, 31, 1, 59),
+                LocalDateTime.of(2024, 3, 31, 3, 0, 7), LocalDateTime.of(2024, 12, 31, 23, 59, 59, 120_000_000),
+                LocalDateTime.of(2024, 12, 31, 23, 59, 0, 5_000_000));
+        for (LocalDateTime time : times) {
+            clock.set(millisOf(time));
+            encoder.clear().event(AuditEventType.RENTED, "123abc", "Maryam", "Abou El Lif");
+            assertEquals(BikeAuditRepository.rentalLine(time, "123abc", "Maryam", "Abou El Lif")
+                    + System.lineSeparator(), encoder.toString());
+        }
+
+        LocalDateTime time = times.get(2);
+        clock.set(millisOf(time));
+        encoder.clear().creation("b1", BikeType.road, "Road Bike Catalog", "Aero", true, false, true, false)
+                .event(AuditEventType.EXPIRED, "b1", "Zoë", null);
+        assertEquals(BikeAuditRepository.creationLine(time, "b1", BikeType.road, "Road Bike Catalog", "Aero",
+                true, false, true, false) + System.lineSeparator()
+                + BikeAuditRepository.expiryLine(time, "b1", "Zoë", null) + System.lineSeparator(), encoder.toString());
+    }
+
+    @Test
+    public void testJsonLines() {
+        LocalDateTime time = LocalDateTime.of(2024, 5, 1, 10, 0, 30, 250_000_000);
+        AuditEncoder encoder = new AuditEncoder(AuditEncoder.Layout.JSON_LINES, ZoneOffset.UTC,
+                () -> time.toInstant(ZoneOffset.UTC).toEpochMilli());
+        encoder.event(AuditEventType.RETURNED, "b1", "Jo \"JJ\" \\ é🚲", "Doe\n");
+        encoder.creation("b2", null, null, "GT", false, true, false, true);
+
+        String[] lines = encoder.toString().split(System.lineSeparator());
+        assertEquals("{\"time\":\"2024-05-01T10:00:30.250\",\"event\":\"RETURNED\",\"bike\":\"b1\","
+                + "\"firstName\":\"Jo \\\"JJ\\\" \\\\ é🚲\",\"lastName\":\"Doe\\u000a\"}", lines[0]);
+        assertEquals("{\"time\":\"2024-05-01T10:00:30.250\",\"event\":\"CREATED\",\"bike\":\"b2\",\"type\":null,"
+                + "\"catalog\":null,\"model\":\"GT\",\"available\":false,\"lights\":true,\"basket\":false,"
+                + "\"gps\":true}", lines[1]);
+        assertThrows(InvalidSelectionException.class,
+                () -> encoder.event(AuditEventType.CREATED, "b1", "John", "Doe"));
+    }
+
+    @Test
+    public void testBufferIsReused() {
+        AuditEncoder encoder = new AuditEncoder(AuditEncoder.Layout.TEXT);
+        for (int i = 0; i < 100; i++) {
+            encoder.event(AuditEventType.RENTED, "b" + i, "John", "Doe");
+        }
+        int grown = encoder.length();
+        ByteBuffer buffer = encoder.buffer();
+        assertEquals(grown, buffer.remaining());
+
+        encoder.clear().event(AuditEventType.RETURNED, "b1", "John", "Doe");
+        assertSame(buffer, encoder.buffer());
+        assertTrue(encoder.toString().contains("] RETURNED | Bike=b1 | First Name=John | Last Name=Doe"));
+    }
+
+    @Test
+    public void testEncodedRepositoryCanBeRecovered() throws IOException {
+        Path bikesLog = tempDir.resolve("bikes.log");
+        Path rentalsLog = tempDir.resolve("rentals.log");
+        BikeAuditRepository creations = new BikeAuditRepository(bikesLog.toString(), AuditEncoder.Layout.TEXT);
+        BikeAuditRepository rentals = new BikeAuditRepository(rentalsLog.toString(), AuditEncoder.Layout.TEXT);
+        BikeRentalService service = new BikeRentalService(creations, rentals);
+        BikeCatalog catalog = service.newCatalog(BikeType.electric);
+        service.bikeCreation(new BikeBuilder("e1", "Volt", true).setGPS(true), catalog, BikeType.electric);
+        service.bikeCreation(new BikeBuilder("e2", "Spark", true), catalog, BikeType.electric);
+        service.rentingBike("e1", "John", "Doe");
+        creations.close();
+        rentals.close();
+
+        assertEquals(2, Files.readAllLines(bikesLog).size());
+        BikeRentalService restored = new BikeRentalService(
+                new BikeAuditRepository(tempDir.resolve("b.log").toString()),
+                new BikeAuditRepository(tempDir.resolve("r.log").toString()));
+        BikeInventory inventory = new BikeInventory(new ArrayList<>());
+        new RentalStateRecovery(bikesLog, rentalsLog, tempDir.resolve("state.snapshot")).recover(restored, inventory);
+        assertFalse(restored.getBikeById("e1").isAvailable());
+        assertTrue(restored.getBikeById("e1").hasGPS());
+        assertTrue(restored.getBikeById("e2").isAvailable());
+    }
+}
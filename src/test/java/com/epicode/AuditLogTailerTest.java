@@ -0,0 +1,148 @@
+package com.epicode;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditLogTailerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 5, 1, 10, 0);
+
+    private Path bikesLog;
+    private Path rentalsLog;
+    private LiveCounters counters;
+    private AuditLogTailer tailer;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        bikesLog = tempDir.resolve("bikes.log");
+        rentalsLog = tempDir.resolve("rentals.log");
+        Files.write(bikesLog, List.of(
+                BikeAuditRepository.creationLine(T0, "e1", BikeType.electric, "Electric", "Volt", true, false, false, false),
+                BikeAuditRepository.creationLine(T0, "r1", BikeType.road, "Road", "Aero", true, false, false, false)),
+                StandardCharsets.UTF_8);
+        counters = new LiveCounters();
+        tailer = new AuditLogTailer(bikesLog, rentalsLog, counters);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        tailer.close();
+    }
+
+    private void append(Path log, String text) throws IOException {
+        Files.write(log, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static String rented(LocalDateTime time, String bikeId) {
+        return BikeAuditRepository.rentalLine(time, bikeId, "John", "Doe") + "\n";
+    }
+
+    private static String returned(LocalDateTime time, String bikeId) {
+        return BikeAuditRepository.returnLine(time, bikeId, "John", "Doe") + "\n";
+    }
+
+    @Test
+    public void testReadsOnlyNewEntries() throws IOException {
+        assertEquals(2, tailer.poll());
+        assertEquals(0, tailer.poll());
+
+        append(rentalsLog, rented(T0.plusSeconds(5), "e1") + rented(T0.plusSeconds(10), "r1"));
+        assertEquals(2, tailer.poll());
+        append(rentalsLog, returned(T0.plusMinutes(1), "e1"));
+        assertEquals(1, tailer.poll());
+        assertEquals(0, tailer.poll());
+
+        assertEquals(1, counters.getActiveRentals());
+        assertEquals(2, counters.getTotalRentals());
+        assertEquals(1, counters.getTotalReturns());
+        assertEquals(1, counters.getRentals(T0, BikeType.electric));
+        assertEquals(1, counters.getRentals(T0.plusSeconds(59), BikeType.road));
+        assertEquals(0, counters.getReturns(T0));
+        assertEquals(1, counters.getReturns(T0.plusMinutes(1)));
+        assertEquals(Files.size(rentalsLog), tailer.getRentalsOffset());
+    }
+
+    @Test
+    public void testHoldsBackPartialEntries() throws IOException {
+        String line = rented(T0, "e1");
+        append(rentalsLog, line.substring(0, 20));
+        tailer.poll();
+        assertEquals(0, counters.getTotalRentals());
+
+        append(rentalsLog, line.substring(20) + "garbage\n" + rented(T0, "ghost"));
+        tailer.poll();
+        assertEquals(2, counters.getTotalRentals());
+        assertEquals(1, counters.getRentals(T0, BikeType.electric));
+        assertEquals(1, counters.getRentals(T0, null));
+        assertEquals(1, tailer.getEntriesSkipped());
+    }
+
+    @Test
+    public void testFollowsRotation() throws IOException {
+        append(rentalsLog, rented(T0, "e1"));
+        tailer.poll();
+
+        // The last entry of the old file lands after the tailer's poll and without a line break
+        String last = returned(T0.plusMinutes(1), "e1");
+        append(rentalsLog, last.substring(0, last.length() - 1));
+        Files.move(rentalsLog, tempDir.resolve("rentals.log.1"));
+        tailer.poll();
+        assertEquals(0, counters.getTotalReturns());
+
+        append(rentalsLog, rented(T0.plusMinutes(2), "r1"));
+        tailer.poll();
+        assertEquals(1, counters.getTotalReturns());
+        assertEquals(2, counters.getTotalRentals());
+        assertEquals(1, counters.getActiveRentals());
+        assertEquals(Files.size(rentalsLog), tailer.getRentalsOffset());
+    }
+
+    @Test
+    public void testRestartsAfterTruncation() throws IOException {
+        append(rentalsLog, rented(T0, "e1") + rented(T0, "r1"));
+        tailer.poll();
+        assertEquals(2, counters.getActiveRentals());
+
+        Files.write(rentalsLog, rented(T0.plusMinutes(1), "r1").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.TRUNCATE_EXISTING);
+        tailer.poll();
+        assertEquals(1, counters.getActiveRentals());
+        assertEquals(3, counters.getTotalRentals());
+    }
+
+    @Test
+    public void testKeepsTheLastHour() {
+        for (int minute = 0; minute < 90; minute++) {
+            counters.rented("e1", BikeType.electric, T0.plusMinutes(minute));
+        }
+        assertEquals(0, counters.getRentals(T0.plusMinutes(29), BikeType.electric));
+        assertEquals(1, counters.getRentals(T0.plusMinutes(30), BikeType.electric));
+        assertEquals(1, counters.getRentals(T0.plusMinutes(89), BikeType.electric));
+
+        // Too old for the window: only the totals see it
+        counters.rented("r1", BikeType.road, T0);
+        assertEquals(91, counters.getTotalRentals());
+        assertEquals(0, counters.getRentals(T0, BikeType.road));
+
+        String json = counters.toJson(T0.plusMinutes(90).plusSeconds(15));
+        assertTrue(json.startsWith("{\"activeRentals\":2,\"rentals\":91,\"returns\":0,"
+                + "\"lastMinute\":{\"minute\":\"2024-05-01T11:29\",\"rentals\":{\"mountain\":0,\"electric\":1,"));
+        assertTrue(json.endsWith("\"currentMinute\":{\"minute\":\"2024-05-01T11:30\",\"rentals\":{\"mountain\":0,"
+                + "\"electric\":0,\"folding\":0,\"road\":0,\"unknown\":0},\"returns\":0}}"));
+    }
+}
@@ -0,0 +1,142 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditSegmentsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 5, 1, 10, 0);
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Writes ten entries an hour, rotating after every batch, so no segment spans two hours.
+     */
+    private Path writeHours(int hours, AuditRotation rotation) {
+        Path log = tempDir.resolve("rentals.log");
+        AsyncAuditWriter writer = new AsyncAuditWriter(log.toFile(), 64, AsyncAuditWriter.FsyncPolicy.NONE, 0,
+                rotation.setMaxBytes(1));
+        for (int hour = 0; hour < hours; hour++) {
+            for (int i = 0; i < 10; i++) {
+                writer.append(BikeAuditRepository.rentalLine(T0.plusHours(hour).plusMinutes(i), "b" + i, "John", "Doe"));
+            }
+            writer.flush();
+        }
+        writer.getSegments().awaitPending();
+        writer.close();
+        return log;
+    }
+
+    @Test
+    public void testRotatesBySizeAndCompresses() throws IOException {
+        Path log = tempDir.resolve("rentals.log");
+        BikeAuditRepository repo = new BikeAuditRepository(log.toString(), 64, AsyncAuditWriter.FsyncPolicy.PER_BATCH,
+                0, new AuditRotation().setMaxBytes(2048));
+        Bike bike = new MountainBike(new BikeBuilder("b1", "GT", true));
+        for (int i = 0; i < 200; i++) {
+            repo.recordRental(bike, "John", "Doe");
+            if (i % 10 == 9) {
+                repo.flush();
+            }
+        }
+        repo.flush();
+        repo.getSegments().awaitPending();
+
+        List<AuditSegments.Segment> segments = AuditSegments.segments(log);
+        assertTrue(segments.size() >= 5, segments.toString());
+        long entries = Files.readAllLines(log).size();
+        for (AuditSegments.Segment segment : segments) {
+            assertTrue(segment.getPath().toString().endsWith(".gz"));
+            assertTrue(Files.size(segment.getPath()) < 2048);
+            assertFalse(segment.getFirst().isAfter(segment.getLast()));
+            entries += segment.getEntries();
+        }
+        assertEquals(200, entries);
+        assertTrue(files().stream().noneMatch(name -> name.matches("rentals\\.log\\.\\d+")));
+
+        List<String> all = new ArrayList<>();
+        AuditSegments.read(log, LocalDateTime.MIN, LocalDateTime.MAX, all::add);
+        assertEquals(200, all.size());
+        repo.close();
+    }
+
+    @Test
+    public void testReadSkipsSegmentsOutsideTheRange() {
+        Path log = writeHours(6, new AuditRotation());
+        List<AuditSegments.Segment> segments = AuditSegments.segments(log);
+        assertTrue(segments.size() >= 6);
+        LocalDateTime from = T0.plusHours(2);
+        LocalDateTime to = T0.plusHours(3).plusMinutes(5);
+        long inRange = segments.stream()
+                .filter(segment -> segment.getFirst().isBefore(to) && !segment.getLast().isBefore(from)).count();
+
+        List<String> lines = new ArrayList<>();
+        int opened = AuditSegments.read(log, from, to, lines::add);
+        // Only the segments of hours 2 and 3 are opened, plus the active file
+        assertEquals(inRange + 1, opened);
+        assertTrue(opened < segments.size());
+        assertEquals(15, lines.size());
+        assertTrue(lines.get(0).startsWith("[" + T0.plusHours(2) + "]"));
+    }
+
+    @Test
+    public void testRetentionKeepsTheNewestSegments() throws IOException {
+        Path log = writeHours(6, new AuditRotation().setRetainedSegments(2).setCompress(false));
+
+        List<AuditSegments.Segment> segments = AuditSegments.segments(log);
+        assertEquals(2, segments.size());
+        int newest = segments.get(1).getNumber();
+        assertTrue(newest >= 6);
+        assertEquals(newest - 1, segments.get(0).getNumber());
+        assertEquals(List.of("rentals.log", "rentals.log." + (newest - 1), "rentals.log." + newest,
+                "rentals.log.index").stream().sorted().collect(Collectors.toList()), files());
+    }
+
+    @Test
+    public void testRetentionByAge() throws IOException {
+        Path log = writeHours(2, new AuditRotation());
+        LocalDateTime now = LocalDateTime.now();
+        Files.write(tempDir.resolve("rentals.log.99"), List.of(
+                BikeAuditRepository.rentalLine(now, "b1", "John", "Doe")), StandardCharsets.UTF_8);
+
+        // Reopening seals the segment left behind and drops the ones older than a day
+        try (AuditSegments segments = new AuditSegments(log, new AuditRotation().setRetention(Duration.ofDays(1)))) {
+            segments.awaitPending();
+        }
+        List<AuditSegments.Segment> kept = AuditSegments.segments(log);
+        assertEquals(1, kept.size());
+        assertEquals(99, kept.get(0).getNumber());
+        assertEquals(now, kept.get(0).getFirst());
+        assertEquals(List.of("rentals.log", "rentals.log.99.gz", "rentals.log.index"), files());
+    }
+
+    @Test
+    public void testInvalidRotationIsRejected() {
+        assertThrows(InvalidSelectionException.class, () -> new AuditRotation().setMaxBytes(0));
+        assertThrows(InvalidSelectionException.class, () -> new AuditRotation().setMaxAge(Duration.ZERO));
+        assertThrows(InvalidSelectionException.class, () -> new AuditRotation().setRetainedSegments(-1));
+        assertThrows(StorageException.class, () -> new AuditSegments(null, new AuditRotation()));
+        assertTrue(new AuditRotation().setMaxAge(Duration.ofMinutes(1)).isDue(1, Duration.ofMinutes(2).toNanos()));
+        assertFalse(new AuditRotation().setMaxAge(Duration.ofMinutes(1)).isDue(0, Duration.ofMinutes(2).toNanos()));
+    }
+}
@@ -0,0 +1,126 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatteryTelemetryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final long MINUTE = 60_000L;
+
+    @Test
+    public void testLatestReadingsAndRing() {
+        Map<String, Bike> bikes = new HashMap<>();
+        bikes.put("e1", new ElectricBike(new BikeBuilder("e1", "Volt", true)));
+        bikes.put("m1", new MountainBike(new BikeBuilder("m1", "GT", true)));
+        BatteryTelemetry telemetry = new BatteryTelemetry(bikes::get, 4, Duration.ofMinutes(15), 8);
+
+        BatteryTelemetry.Batch batch = new BatteryTelemetry.Batch(2);
+        for (int i = 0; i < 6; i++) {
+            batch.add("e1", i * 5_000L, 90 - i, 1000 + i * 10);
+        }
+        batch.add("m1", 0, 50, 0).add("x9", 0, 50, 0).add("e1", 1_000L, 99, 0);
+        assertEquals(6, telemetry.ingest(batch));
+        assertEquals(3, telemetry.getReadingsDropped());
+        assertEquals(85, telemetry.getCharge("e1"));
+        assertEquals(1050, telemetry.getOdometer("e1"));
+        assertEquals(BatteryTelemetry.UNKNOWN, telemetry.getCharge("m1"));
+        assertEquals(1, telemetry.getTrackedBikes());
+
+        long[] times = new long[10];
+        int[] charges = new int[10];
+        int[] odometers = new int[10];
+        assertEquals(4, telemetry.copyRecentReadings("e1", times, charges, odometers));
+        assertArrayEquals(new int[]{88, 87, 86, 85}, Arrays.copyOf(charges, 4));
+        assertEquals(25_000L, times[3]);
+
+        assertEquals(0, batch.clear().size());
+        assertThrows(InputValidationException.class, () -> batch.add("e1", 0, 101, 0));
+        assertThrows(InputValidationException.class, () -> batch.add(null, 0, 50, 0));
+    }
+
+    @Test
+    public void testOlderReadingsAreRolledUp() {
+        Map<String, Bike> bikes = Map.of("e1", new ElectricBike(new BikeBuilder("e1", "Volt", true)));
+        BatteryTelemetry telemetry = new BatteryTelemetry(bikes::get, 2, Duration.ofMinutes(15), 3);
+        BatteryTelemetry.Batch batch = new BatteryTelemetry.Batch(64);
+        // Five intervals of 15 minutes, one reading a minute, 100 m a minute
+        for (int minute = 0; minute < 75; minute++) {
+            batch.add("e1", minute * MINUTE, 100 - minute, minute * 100);
+        }
+        telemetry.ingest(batch);
+
+        List<BatteryTelemetry.Rollup> rollups = telemetry.getRollups("e1");
+        assertEquals(4, rollups.size());
+        BatteryTelemetry.Rollup oldest = rollups.get(0);
+        assertEquals(15 * MINUTE, oldest.getStartMillis());
+        assertEquals(71, oldest.getMinCharge());
+        assertEquals(85, oldest.getMaxCharge());
+        assertEquals(78, oldest.getMeanCharge());
+        assertEquals(1500, oldest.getMeters());
+        BatteryTelemetry.Rollup current = rollups.get(3);
+        assertEquals(60 * MINUTE, current.getStartMillis());
+        assertEquals(26, current.getMinCharge());
+        assertEquals(1500, current.getMeters());
+        assertTrue(telemetry.getRollups("nope").isEmpty());
+    }
+
+    @Test
+    public void testLowBatteryIsIndexedAndBlocksRentals() {
+        BikeRentalService service = new BikeRentalService(
+                new BikeAuditRepository(tempDir.resolve("bikes.log").toString()),
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()));
+        BikeCatalog catalog = service.newCatalog(BikeType.electric);
+        service.bikeCreation(new BikeBuilder("e1", "Volt", true), catalog, BikeType.electric);
+        service.bikeCreation(new BikeBuilder("e2", "Volt", true), catalog, BikeType.electric);
+        BikeQuery charged = new BikeQuery().setAvailable(true).setLowBattery(false);
+
+        service.ingestTelemetry(new BatteryTelemetry.Batch(2).add("e1", 0, 15, 0).add("e2", 0, 80, 0));
+        assertTrue(service.getBikeById("e1").isLowBattery());
+        assertEquals(List.of(service.getBikeById("e2")), service.findBikes(charged));
+        assertThrows(BikeUnavailableException.class, () -> service.rentingBike("e1", "John", "Doe"));
+
+        service.getTelemetry().setLowChargePercent(10);
+        assertFalse(service.getBikeById("e1").isLowBattery());
+        assertEquals(2, service.findBikes(charged).size());
+        service.getTelemetry().setLowChargePercent(20);
+        service.ingestTelemetry(new BatteryTelemetry.Batch(1).add("e1", MINUTE, 95, 10));
+        service.rentingBike("e1", "John", "Doe");
+        assertFalse(service.getBikeById("e1").isAvailable());
+    }
+
+    @Test
+    public void testFleetStoreBikes() {
+        FleetStore store = new FleetStore(16);
+        BikeRentalService service = new BikeRentalService(
+                new BikeAuditRepository(tempDir.resolve("bikes.log").toString()),
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()),
+                new BikeRentalService.Options().setFleetStore(store));
+        BikeCatalog electric = service.newCatalog(BikeType.electric);
+        BikeCatalog road = service.newCatalog(BikeType.road);
+        service.bikeCreation(new BikeBuilder("e1", "Volt", true), electric, BikeType.electric);
+        service.bikeCreation(new BikeBuilder("r1", "TT", true), road, BikeType.road);
+
+        BatteryTelemetry.Batch batch = new BatteryTelemetry.Batch(2).add("e1", 0, 5, 0).add("r1", 0, 5, 0);
+        assertEquals(1, service.ingestTelemetry(batch));
+        assertTrue(service.getBikeById("e1").isLowBattery());
+        List<String> ids = new ArrayList<>();
+        for (Bike bike : service.findBikes(new BikeQuery().setLowBattery(false))) {
+            ids.add(bike.getId());
+        }
+        assertEquals(List.of("r1"), ids);
+        assertThrows(InvalidBikeException.class, () -> service.getBikeById("r1").setLowBattery(true));
+    }
+}
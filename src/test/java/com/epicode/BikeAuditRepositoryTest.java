@@ -0,0 +1,107 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BikeAuditRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testAsyncRecordsAreWrittenOnFlush() throws IOException {
+        Path log = tempDir.resolve("rentals.log");
+        BikeAuditRepository repo = new BikeAuditRepository(log.toString(), 16,
+                AsyncAuditWriter.FsyncPolicy.PER_BATCH, 0);
+        Bike bike = new MountainBike(new BikeBuilder("b1", "GT", true));
+
+        for (int i = 0; i < 100; i++) {
+            repo.recordRental(bike, "John", "Doe");
+            repo.recordReturn(bike, "John", "Doe");
+        }
+        repo.flush();
+
+        List<String> lines = Files.readAllLines(log);
+        assertEquals(200, lines.size());
+        assertTrue(lines.get(0).contains("RENTED | Bike=b1"));
+        assertTrue(lines.get(1).contains("RETURNED | Bike=b1"));
+        repo.close();
+    }
+
+    @Test
+    public void testClosedAsyncRepositoryRejectsWrites() {
+        Path log = tempDir.resolve("bikes.log");
+        BikeAuditRepository repo = new BikeAuditRepository(log.toString(), 16,
+                AsyncAuditWriter.FsyncPolicy.INTERVAL, 50);
+        Bike bike = new MountainBike(new BikeBuilder("b2", "GT", true));
+        repo.recordRental(bike, "Jane", "Doe");
+        repo.close();
+        repo.close();
+
+        assertThrows(StorageException.class, () -> repo.recordRental(bike, "Jane", "Doe"));
+    }
+
+    @Test
+    public void testAppendsRacingCloseAreWrittenOrRejected() throws Exception {
+        Path log = tempDir.resolve("racing.log");
+        AsyncAuditWriter writer = new AsyncAuditWriter(log.toFile(), 4, AsyncAuditWriter.FsyncPolicy.NONE, 0);
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> appenders = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread appender = new Thread(() -> {
+                try {
+                    while (true) {
+                        writer.append("entry");
+                        accepted.incrementAndGet();
+                    }
+                } catch (StorageException e) {
+                    // Closed
+                }
+            });
+            appenders.add(appender);
+            appender.start();
+        }
+        while (accepted.get() < 1000) {
+            Thread.onSpinWait();
+        }
+        writer.close();
+        for (Thread appender : appenders) {
+            appender.join();
+        }
+
+        assertEquals(accepted.get(), Files.readAllLines(log).size());
+    }
+
+    @Test
+    public void testFlushFailsOnceTheWriterThreadIsGone() {
+        AsyncAuditWriter writer = new AsyncAuditWriter(tempDir.resolve("dead.log").toFile(), 4,
+                AsyncAuditWriter.FsyncPolicy.NONE, 0);
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("audit-writer-dead.log")) {
+                thread.interrupt();
+            }
+        }
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < 8; i++) {
+                try {
+                    writer.append("entry");
+                } catch (StorageException e) {
+                    // The queue filled up behind the dead thread
+                }
+            }
+            assertThrows(StorageException.class, writer::flush);
+            assertThrows(StorageException.class, writer::close);
+        });
+    }
+}
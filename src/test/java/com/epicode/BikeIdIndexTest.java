@@ -0,0 +1,75 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BikeIdIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testAddAndLookup() {
+        BikeIdIndex index = new BikeIdIndex(4);
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, index.add("B" + i));
+        }
+
+        assertEquals(10_000, index.size());
+        assertEquals(1234, index.slotOf("B1234"));
+        assertEquals(1234, index.slotOf(new StringBuilder("B1234")));
+        assertEquals("B9999", index.idOf(9999));
+        assertEquals(-1, index.slotOf("B10000"));
+        assertEquals(-1, index.slotOf(null));
+        assertEquals(-1, index.add("B42"));
+        assertEquals(10_000, index.size());
+    }
+
+    @Test
+    public void testRejectsInvalidIds() {
+        BikeIdIndex index = new BikeIdIndex(4);
+
+        assertThrows(InvalidBikeException.class, () -> index.add(null));
+        assertThrows(InvalidBikeException.class, () -> index.add(""));
+        assertThrows(InvalidBikeException.class, () -> index.add("Bé"));
+        assertThrows(InvalidSelectionException.class, () -> index.idOf(0));
+        assertEquals(-1, index.slotOf("Bé"));
+    }
+
+    @Test
+    public void testWrittenIndexIsMappedBack() {
+        BikeIdIndex index = new BikeIdIndex(16);
+        for (int i = 0; i < 1000; i++) {
+            index.add("B" + i);
+        }
+        Path file = tempDir.resolve("ids.idx");
+        index.writeTo(file);
+
+        BikeIdIndex mapped = BikeIdIndex.open(file);
+        assertEquals(1000, mapped.size());
+        assertEquals(500, mapped.slotOf("B500"));
+        assertEquals("B999", mapped.idOf(999));
+
+        // Growing past the mapped regions moves them to memory without touching the file
+        for (int i = 1000; i < 5000; i++) {
+            assertEquals(i, mapped.add("B" + i));
+        }
+        assertEquals(4321, mapped.slotOf("B4321"));
+        assertEquals(1000, BikeIdIndex.open(file).size());
+    }
+
+    @Test
+    public void testRejectsForeignFiles() throws IOException {
+        Path file = tempDir.resolve("ids.idx");
+        Files.write(file, new byte[64]);
+
+        assertThrows(StorageException.class, () -> BikeIdIndex.open(file));
+        assertThrows(StorageException.class, () -> BikeIdIndex.open(tempDir.resolve("missing.idx")));
+    }
+}
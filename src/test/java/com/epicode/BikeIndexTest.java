@@ -0,0 +1,63 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BikeIndexTest {
+
+    @Test
+    public void testQueryIntersectsTypeAvailabilityAndFeatures() {
+        BikeCatalog catalog = new ElectricBikeCatalog(new ArrayList<>());
+        Bike plain = new ElectricBike(new BikeBuilder("e1", "ZX", true));
+        Bike equipped = new ElectricBike(new BikeBuilder("e2", "ZX", true).setGPS(true).setBasket(true));
+        Bike rented = new ElectricBike(new BikeBuilder("e3", "ZX", false).setGPS(true).setBasket(true));
+        Bike mountain = new MountainBike(new BikeBuilder("m1", "GT", true).setGPS(true).setBasket(true));
+        catalog.addBike(plain);
+        catalog.addBike(equipped);
+        catalog.addBike(rented);
+        catalog.addBike(mountain);
+
+        BikeQuery query = new BikeQuery().setType(BikeType.electric).setAvailable(true).setGPS(true).setBasket(true);
+
+        assertEquals(List.of(equipped), catalog.findBikes(query));
+        assertEquals(2, catalog.countBikes(new BikeQuery().setType(BikeType.electric).setGPS(true)));
+        assertEquals(1, catalog.countBikes(new BikeQuery().setAvailable(false)));
+    }
+
+    @Test
+    public void testIndexFollowsRentReturnAndRemoval() {
+        BikeCatalog catalog = new RoadBikeCatalog(new ArrayList<>());
+        Bike bike = new RoadBike(new BikeBuilder("r1", "TT", true).setLights(true));
+        catalog.addBike(bike);
+        BikeQuery availableWithLights = new BikeQuery().setAvailable(true).setLights(true);
+
+        bike.rentBike();
+        assertTrue(catalog.findBikes(availableWithLights).isEmpty());
+
+        bike.returnBike();
+        assertEquals(List.of(bike), catalog.findBikes(availableWithLights));
+
+        catalog.removeBike(bike);
+        assertTrue(catalog.findBikes(new BikeQuery()).isEmpty());
+        bike.rentBike();
+        assertEquals(0, catalog.countBikes(new BikeQuery()));
+    }
+
+    @Test
+    public void testLimitAndLargeFleet() {
+        BikeCatalog catalog = new FoldingBikeCatalog(new ArrayList<>());
+        for (int i = 0; i < 100_000; i++) {
+            catalog.addBike(new FoldingBike(new BikeBuilder("f" + i, "FD", true).setGPS(i % 1000 == 0)));
+        }
+
+        assertEquals(100, catalog.countBikes(new BikeQuery().setGPS(true)));
+        List<Bike> found = catalog.findBikes(new BikeQuery().setGPS(true).setLimit(5));
+        assertEquals(5, found.size());
+        assertEquals("f0", found.get(0).getId());
+        assertThrows(InvalidSelectionException.class, () -> new BikeQuery().setLimit(0));
+    }
+}
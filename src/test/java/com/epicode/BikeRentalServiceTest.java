@@ -4,6 +4,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
+import java.util.stream.Stream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -16,6 +22,7 @@ public class BikeRentalServiceTest {
         boolean creationCalled = false;
         boolean rentalCalled = false;
         boolean returnCalled = false;
+        boolean failing = false;
 
         public TestAuditRepository() {
             super("data/test.log");
@@ -28,11 +35,17 @@ public class BikeRentalServiceTest {
 
         @Override
         public void recordRental(Bike bike, String firstName, String lastName) {
+            if (failing) {
+                throw new StorageException("Disk full", null);
+            }
             rentalCalled = true;
         }
 
         @Override
         public void recordReturn(Bike bike, String firstName, String lastName) {
+            if (failing) {
+                throw new StorageException("Disk full", null);
+            }
             returnCalled = true;
         }
     }
@@ -85,4 +98,100 @@ public class BikeRentalServiceTest {
         // Bike is available, so returning should throw
         assertThrows(RentalException.class, () -> service.returningBike(bike.getId(), "Jane", "Doe"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConcurrentRentOnlyOneWins() throws InterruptedException {
+        BikeBuilder builder = new BikeBuilder("b5", "GT", true);
+        Bike bike = service.bikeCreation(builder, catalog, BikeType.mountain);
+
+        int threads = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger wins = new AtomicInteger();
+        AtomicInteger losses = new AtomicInteger();
+
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    service.rentingBike(bike.getId(), "John", "Doe");
+                    wins.incrementAndGet();
+                } catch (RentalException e) {
+                    losses.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1, wins.get());
+        assertEquals(threads - 1, losses.get());
+        assertFalse(bike.isAvailable());
+    }
+
+    @Test
+    public void testCatalogAddedToInventoryOnce() {
+        service.bikeCreation(new BikeBuilder("b6", "GT", true), catalog, BikeType.mountain);
+        service.bikeCreation(new BikeBuilder("b7", "GT", true), catalog, BikeType.mountain);
+
+        assertEquals(1, service.getBikeInventory().getSize());
+    }
+
+    @Test
+    public void testBatchCreationReportsFailedRows() {
+        service.bikeCreation(new BikeBuilder("taken", "GT", true), catalog, BikeType.mountain);
+        Stream<BikeBuilder> rows = Stream.of(
+                new BikeBuilder("m1", "GT", true),
+                null,
+                new BikeBuilder("m-2", "GT", true),
+                new BikeBuilder("taken", "GT", true),
+                new BikeBuilder("m1", "XC", true),
+                new BikeBuilder("m3", "GT", false).setGPS(true));
+
+        ImportReport report = service.bikeCreationBatch(rows, catalog, BikeType.mountain);
+
+        assertEquals(2, report.getCreatedCount());
+        assertEquals(4, report.getFailedCount());
+        assertEquals(1, report.getFailures().get(0).getRow());
+        assertEquals("m-2", report.getFailures().get(1).getBikeId());
+        assertEquals("taken", report.getFailures().get(2).getBikeId());
+        assertEquals(4, report.getFailures().get(3).getRow());
+        assertEquals("GT", service.getBikeById("m1").getModel());
+        assertTrue(service.getBikeById("m3").hasGPS());
+        assertEquals(3, catalog.getSize());
+        assertEquals(1, service.getBikeInventory().getSize());
+    }
+
+    @Test
+    public void testSingleAndBatchCreationShareTheIdRule() {
+        InputValidationException single = assertThrows(InputValidationException.class,
+                () -> service.bikeCreation(new BikeBuilder("m-2", "GT", true), catalog, BikeType.mountain));
+        ImportReport report = service.bikeCreationBatch(Stream.of(new BikeBuilder("m-2", "GT", true)),
+                catalog, BikeType.mountain);
+
+        assertEquals(single.getMessage(), report.getFailures().get(0).getMessage());
+        assertNull(service.getBikeById("m-2"));
+        assertEquals(0, catalog.getSize());
+    }
+
+    @Test
+    public void testUnrecordedRentAndReturnAreRolledBack() {
+        BikeRentalService audited = new BikeRentalService(new BikeAuditRepository("data/test.log"), auditRepo);
+        Bike bike = audited.bikeCreation(new BikeBuilder("b9", "GT", true), catalog, BikeType.mountain);
+
+        auditRepo.failing = true;
+        assertThrows(RentalException.class, () -> audited.rentingBike("b9", "John", "Doe"));
+        assertTrue(bike.isAvailable());
+        assertTrue(audited.getActiveRentals("John", "Doe").isEmpty());
+
+        auditRepo.failing = false;
+        audited.rentingBike("b9", "John", "Doe");
+        auditRepo.failing = true;
+        assertThrows(RentalException.class, () -> audited.returningBike("b9", "John", "Doe"));
+        assertFalse(bike.isAvailable());
+        assertEquals(1, audited.getActiveRentals("John", "Doe").size());
+    }
+}
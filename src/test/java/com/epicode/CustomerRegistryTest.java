@@ -0,0 +1,148 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomerRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private BikeRentalService newService(BikeAuditRepository rentals, CustomerRegistry customers) {
+        BikeRentalService service = new BikeRentalService(
+                new BikeAuditRepository(tempDir.resolve("bikes.log").toString()), rentals,
+                new BikeRentalService.Options().setCustomers(customers));
+        BikeCatalog catalog = service.newCatalog(BikeType.road);
+        service.bikeCreation(new BikeBuilder("r1", "TT", true), catalog, BikeType.road);
+        service.bikeCreation(new BikeBuilder("r2", "TT", true), catalog, BikeType.road);
+        service.bikeCreation(new BikeBuilder("r3", "TT", true), catalog, BikeType.road);
+        return service;
+    }
+
+    @Test
+    public void testRegistryInternsNamesAndAssignsCompactIds() {
+        CustomerRegistry registry = new CustomerRegistry();
+        Customer john = registry.register(new String("John"), "Doe");
+        Customer jane = registry.register("Jane", "Doe");
+
+        assertSame(john, registry.register("John", new String("Doe")));
+        assertEquals(1, john.getId());
+        assertEquals(2, jane.getId());
+        assertSame(jane, registry.get(2));
+        assertSame(john, registry.find("John", "Doe"));
+        assertNull(registry.find("John", "Smith"));
+        assertNull(registry.get(0));
+        assertNull(registry.get(3));
+        assertEquals(2, registry.size());
+        assertFalse(registry.isDurable());
+        assertThrows(InputValidationException.class, () -> registry.register(null, "Doe"));
+    }
+
+    @Test
+    public void testActiveRentalsFollowRentAndReturn() {
+        BikeRentalService service = newService(
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()), new CustomerRegistry());
+        service.rentingBike("r1", "John", "Doe");
+        service.rentingBike("r2", "John", "Doe");
+        service.reservingBike("r3", "Jane", "Doe");
+        service.rentingBike("r3", "Jane", "Doe");
+
+        Customer john = service.findCustomer("John", "Doe");
+        assertEquals(Set.of("r1", "r2"), john.getActiveRentals());
+        assertEquals(2, service.getActiveRentals("John", "Doe").size());
+        assertSame(john, service.getCustomers().holderOf("r1"));
+        assertSame(john.getFirstName(), service.getOpenSession("r1").getFirstName());
+
+        assertThrows(BikeNotRentedException.class, () -> service.returningBike("r1", "Jane", "Doe"));
+        assertThrows(BikeNotRentedException.class, () -> service.returningBike("r1", "Nobody", "Here"));
+        assertNull(service.findCustomer("Nobody", "Here"));
+        assertSame(john, service.getCustomers().holderOf("r1"));
+        assertFalse(service.getBikeById("r1").isAvailable());
+
+        service.returningBike("r1", "John", "Doe");
+        assertEquals(Set.of("r2"), john.getActiveRentals());
+        assertEquals(2, john.getTotalRentals());
+        assertEquals(1, john.getTotalReturns());
+        assertNull(service.getCustomers().holderOf("r1"));
+        assertEquals(List.of(service.getBikeById("r3")), service.getActiveRentals("Jane", "Doe"));
+        assertTrue(service.getActiveRentals("Nobody", "Here").isEmpty());
+    }
+
+    @Test
+    public void testFailedRequestsRegisterNobody() {
+        BikeRentalService service = newService(
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()), new CustomerRegistry());
+        service.rentingBike("r1", "John", "Doe");
+        service.reservingBike("r2", "John", "Doe");
+        int registered = service.getCustomers().size();
+
+        assertThrows(RentalException.class, () -> service.rentingBike("r1", "Jane", "Doe"));
+        assertThrows(RentalException.class, () -> service.rentingBike("r2", "Jane", "Doe"));
+        assertThrows(RentalException.class, () -> service.reservingBike("r1", "Jane", "Doe"));
+        assertThrows(BikeNotFoundException.class, () -> service.rentingBike("nope", "Jane", "Doe"));
+        assertEquals(registered, service.getCustomers().size());
+        assertNull(service.findCustomer("Jane", "Doe"));
+
+        service.rentingBike("r3", "Jane", "Doe");
+        assertEquals(registered + 1, service.getCustomers().size());
+    }
+
+    @Test
+    public void testDurableRegistryWritesCustomerIdsToTheAudit() throws IOException {
+        Path customersLog = tempDir.resolve("customers.log");
+        Path rentalsLog = tempDir.resolve("rentals.log");
+        BikeAuditRepository rentals = new BikeAuditRepository(rentalsLog.toString());
+        BikeRentalService service = newService(rentals, new CustomerRegistry(customersLog));
+        service.rentingBike("r1", "Jane", "Doe");
+        service.rentingBike("r2", "John", "Doe");
+        service.returningBike("r1", "Jane", "Doe");
+
+        List<String> lines = Files.readAllLines(rentalsLog);
+        assertTrue(lines.get(0).endsWith("] RENTED | Bike=r1 | Customer=1"));
+        assertTrue(lines.get(1).endsWith("] RENTED | Bike=r2 | Customer=2"));
+        assertTrue(lines.get(2).endsWith("] RETURNED | Bike=r1 | Customer=1"));
+        assertEquals(2, Files.readAllLines(customersLog).size());
+
+        CustomerRegistry reloaded = new CustomerRegistry(customersLog);
+        assertEquals("John", reloaded.get(2).getFirstName());
+        assertEquals(3, reloaded.register("Ann", "Lee").getId());
+        assertEquals(3, Files.readAllLines(customersLog).size());
+
+        // Lines with customer IDs replay like the named ones
+        BikeRentalService restored = new BikeRentalService(
+                new BikeAuditRepository(tempDir.resolve("b.log").toString()),
+                new BikeAuditRepository(tempDir.resolve("r.log").toString()));
+        RecoveryResult result = new RentalStateRecovery(tempDir.resolve("bikes.log"), rentalsLog,
+                tempDir.resolve("state.snapshot")).recover(restored, new BikeInventory(new ArrayList<>()));
+        assertEquals(6, result.getEventsReplayed());
+        assertTrue(restored.getBikeById("r1").isAvailable());
+        assertFalse(restored.getBikeById("r2").isAvailable());
+    }
+
+    @Test
+    public void testEncodedCustomerEvents() throws IOException {
+        Path rentalsLog = tempDir.resolve("encoded.log");
+        BikeAuditRepository rentals = new BikeAuditRepository(rentalsLog.toString(), AuditEncoder.Layout.TEXT);
+        BikeRentalService service = newService(rentals, new CustomerRegistry(tempDir.resolve("customers.log")));
+        service.rentingBike("r1", "Jane", "Doe");
+        rentals.close();
+        assertTrue(Files.readAllLines(rentalsLog).get(0).endsWith("] RENTED | Bike=r1 | Customer=1"));
+
+        AuditEncoder json = new AuditEncoder(AuditEncoder.Layout.JSON_LINES);
+        json.event(AuditEventType.RETURNED, "r1", 1234567);
+        assertTrue(json.toString().trim().endsWith(",\"event\":\"RETURNED\",\"bike\":\"r1\",\"customer\":1234567}"));
+        AuditEncoder text = new AuditEncoder(AuditEncoder.Layout.TEXT);
+        text.event(AuditEventType.EXPIRED, "r1", 0);
+        assertTrue(text.toString().trim().endsWith("] EXPIRED | Bike=r1 | Customer=0"));
+        assertThrows(InvalidSelectionException.class, () -> text.event(AuditEventType.CREATED, "r1", 1));
+    }
+}
@@ -0,0 +1,47 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FleetImporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testImportCsvReportsLineNumbers() throws IOException {
+        Path bikesLog = tempDir.resolve("bikes.log");
+        BikeRentalService service = new BikeRentalService(new BikeAuditRepository(bikesLog.toString()),
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()));
+        Path csv = tempDir.resolve("fleet.csv");
+        Files.write(csv, List.of(
+                "id,model,type,available,lights,basket,gps",
+                "e1,Volt,electric,true,true,false,true",
+                "m1,GT,mountain",
+                "",
+                "x1,Foo,tandem",
+                "e2,Volt,electric,maybe",
+                "m1,GT,mountain",
+                "r1,Fast,road,false"));
+
+        ImportReport report = new FleetImporter(service).importCsv(csv);
+
+        assertEquals(3, report.getCreatedCount());
+        assertEquals(3, report.getFailedCount());
+        assertEquals(5, report.getFailures().get(0).getRow());
+        assertEquals(6, report.getFailures().get(1).getRow());
+        assertEquals(7, report.getFailures().get(2).getRow());
+        assertEquals("m1", report.getFailures().get(2).getBikeId());
+        assertTrue(service.getBikeById("e1").hasGPS());
+        assertFalse(service.getBikeById("r1").isAvailable());
+        assertEquals(3, service.getBikeInventory().getSize());
+        assertEquals(3, Files.readAllLines(bikesLog).size());
+    }
+}
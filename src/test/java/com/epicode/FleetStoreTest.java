@@ -0,0 +1,163 @@
+package com.epicode;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FleetStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FleetStore store;
+    private BikeRentalService service;
+    private BikeCatalog catalog;
+
+    @BeforeEach
+    public void setup() {
+        store = new FleetStore(4);
+        service = newService(store);
+        catalog = service.newCatalog(BikeType.electric);
+    }
+
+    private BikeRentalService newService(FleetStore fleetStore) {
+        return new BikeRentalService(new BikeAuditRepository(tempDir.resolve("bikes.log").toString()),
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()),
+                new BikeRentalService.Options().setFleetStore(fleetStore));
+    }
+
+    @Test
+    public void testBikesLiveInColumns() {
+        for (int i = 0; i < 40; i++) {
+            service.bikeCreation(new BikeBuilder("e" + i, "Volt" + (i % 2), true).setGPS(i % 4 == 0),
+                    catalog, BikeType.electric);
+        }
+
+        assertEquals(40, store.size());
+        Bike bike = service.getBikeById("e8");
+        assertEquals(service.getBikeById("e8"), bike);
+        assertNotSame(service.getBikeById("e8"), bike);
+        assertEquals("Volt0", bike.getModel());
+        assertEquals(BikeType.electric, bike.getType());
+        assertTrue(bike.hasGPS());
+        assertNull(service.getBikeById("missing"));
+
+        assertEquals(40, catalog.getSize());
+        assertEquals("e17", catalog.getElementAt(17).getId());
+        assertEquals(10, catalog.countBikes(new BikeQuery().setGPS(true)));
+        assertThrows(InvalidSelectionException.class, () -> catalog.getElementAt(40));
+        assertThrows(RentalException.class,
+                () -> service.bikeCreation(new BikeBuilder("e1", "Volt", true), catalog, BikeType.electric));
+    }
+
+    @Test
+    public void testRentAndReturnWriteThrough() {
+        service.bikeCreation(new BikeBuilder("e1", "Volt", true), catalog, BikeType.electric);
+
+        service.rentingBike("e1", "John", "Doe");
+        assertFalse(store.isAvailable(store.slotOf("e1")));
+        assertThrows(RentalException.class, () -> service.rentingBike("e1", "Jane", "Doe"));
+        assertTrue(service.findBikes(new BikeQuery().setAvailable(true)).isEmpty());
+
+        service.returningBike("e1", "John", "Doe");
+        List<Bike> available = service.findBikes(new BikeQuery().setType(BikeType.electric).setAvailable(true));
+        assertEquals(1, available.size());
+        assertEquals("e1", available.get(0).getId());
+    }
+
+    @Test
+    public void testConcurrentRentOnlyOneWins() throws InterruptedException {
+        service.bikeCreation(new BikeBuilder("e1", "Volt", true), catalog, BikeType.electric);
+        int threads = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger wins = new AtomicInteger();
+
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    service.rentingBike("e1", "John", "Doe");
+                    wins.incrementAndGet();
+                } catch (RentalException e) {
+                    // lost the race
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1, wins.get());
+    }
+
+    @Test
+    public void testCatalogsMustMatchTheService() {
+        BikeCatalog objectCatalog = new ElectricBikeCatalog(new ArrayList<>());
+        assertThrows(InvalidCatalogException.class,
+                () -> service.bikeCreation(new BikeBuilder("e1", "Volt", true), objectCatalog, BikeType.electric));
+
+        BikeRentalService objectService = new BikeRentalService(
+                new BikeAuditRepository(tempDir.resolve("bikes.log").toString()),
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()));
+        assertThrows(InvalidCatalogException.class,
+                () -> objectService.bikeCreation(new BikeBuilder("e1", "Volt", true), catalog, BikeType.electric));
+        assertThrows(InvalidBikeException.class,
+                () -> catalog.addBike(new ElectricBike(new BikeBuilder("e2", "Volt", true))));
+    }
+
+    @Test
+    public void testRecoveryIntoStore() {
+        service.bikeCreation(new BikeBuilder("e1", "Volt", true), catalog, BikeType.electric);
+        service.bikeCreation(new BikeBuilder("e2", "Volt", true), catalog, BikeType.electric);
+        service.rentingBike("e2", "John", "Doe");
+
+        FleetStore recovered = new FleetStore(4);
+        BikeRentalService after = newService(recovered);
+        new RentalStateRecovery(tempDir.resolve("bikes.log"), tempDir.resolve("rentals.log"),
+                tempDir.resolve("state.snapshot")).recover(after, new BikeInventory(new ArrayList<>()));
+
+        assertEquals(2, recovered.size());
+        assertTrue(after.getBikeById("e1").isAvailable());
+        assertFalse(after.getBikeById("e2").isAvailable());
+        assertTrue(after.getBikeInventory().getElementAt(0).isBackedBy(recovered));
+    }
+
+    @Test
+    public void testWrittenStoreIsLoadedAndRelinked() {
+        service.bikeCreation(new BikeBuilder("e1", "Volt", true).setGPS(true), catalog, BikeType.electric);
+        service.bikeCreation(new BikeBuilder("e2", "Spark", true), catalog, BikeType.electric);
+        service.rentingBike("e2", "John", "Doe");
+        store.writeTo(tempDir.resolve("store"));
+
+        FleetStore loaded = FleetStore.open(tempDir.resolve("store"));
+        assertEquals(2, loaded.size());
+        assertEquals("Spark", loaded.getModel(loaded.slotOf("e2")));
+        assertFalse(loaded.isAvailable(loaded.slotOf("e2")));
+        assertTrue(loaded.hasGPS(loaded.slotOf("e1")));
+        assertEquals(1, loaded.count(new BikeQuery().setType(BikeType.electric).setAvailable(true), null));
+
+        BikeRentalService after = newService(loaded);
+        RecoveryResult result = new RentalStateRecovery(tempDir.resolve("bikes.log"), tempDir.resolve("rentals.log"),
+                tempDir.resolve("state.snapshot")).recover(after, new BikeInventory(new ArrayList<>()));
+        assertEquals(2, result.getBikesRestored());
+        assertEquals(2, loaded.size());
+        assertEquals(2, after.getBikeInventory().getElementAt(0).getSize());
+        assertFalse(after.getBikeById("e2").isAvailable());
+        after.returningBike("e2", "John", "Doe");
+        assertTrue(loaded.isAvailable(loaded.slotOf("e2")));
+    }
+}
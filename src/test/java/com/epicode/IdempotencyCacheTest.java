@@ -0,0 +1,160 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyCacheTest {
+    private static final RequestKey RENT = new RequestKey(AuditEventType.RENTED, "b1", "John", "Doe", null);
+    private static final RequestKey RETURN = new RequestKey(AuditEventType.RETURNED, "b1", "John", "Doe", null);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testDuplicatesReplayTheFirstOutcome() {
+        IdempotencyCache cache = new IdempotencyCache(16, Duration.ofMinutes(5));
+        AtomicInteger runs = new AtomicInteger();
+        cache.execute("a", RENT, runs::incrementAndGet);
+        cache.execute("a", RENT, runs::incrementAndGet);
+        assertEquals(1, runs.get());
+
+        RentalException failure = new BikeUnavailableException("Bike already rented");
+        assertSame(failure, assertThrows(RentalException.class, () -> cache.execute("b", RENT, () -> {
+            runs.incrementAndGet();
+            throw failure;
+        })));
+        RentalException replayed = assertThrows(RentalException.class,
+                () -> cache.execute("b", RENT, runs::incrementAndGet));
+        // A fresh exception of the same kind: the cache keeps no exception or stack trace
+        assertNotSame(failure, replayed);
+        assertEquals(BikeUnavailableException.class, replayed.getClass());
+        assertEquals("Bike already rented", replayed.getMessage());
+        assertThrows(StorageException.class, () -> cache.execute("c", RENT, () -> {
+            throw new StorageException("Disk full", new IOException("ENOSPC"));
+        }));
+        StorageException storage = assertThrows(StorageException.class,
+                () -> cache.execute("c", RENT, runs::incrementAndGet));
+        assertEquals("Disk full", storage.getMessage());
+        assertNull(storage.getCause());
+        assertEquals(2, runs.get());
+        assertEquals(3, cache.getDuplicates());
+
+        assertThrows(InputValidationException.class, () -> cache.execute("a", RETURN, runs::incrementAndGet));
+        assertThrows(InputValidationException.class, () -> cache.execute(" ", RENT, runs::incrementAndGet));
+        assertThrows(InputValidationException.class, () -> cache.execute("x".repeat(129), RENT, runs::incrementAndGet));
+        assertThrows(InvalidSelectionException.class, () -> new IdempotencyCache(0, Duration.ofMinutes(1)));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void testRequestsWithEqualHashesAreToldApart() {
+        IdempotencyCache cache = new IdempotencyCache(16, Duration.ofMinutes(5));
+        // "Aa" and "BB" have the same hash code, and so do the two keys
+        RequestKey first = new RequestKey(AuditEventType.RENTED, "b1", "Aa", "Doe", null);
+        RequestKey second = new RequestKey(AuditEventType.RENTED, "b1", "BB", "Doe", null);
+        assertEquals(first.hashCode(), second.hashCode());
+        AtomicInteger runs = new AtomicInteger();
+
+        cache.execute("a", first, runs::incrementAndGet);
+        cache.execute("a", new RequestKey(AuditEventType.RENTED, "b1", "Aa", "Doe", null), runs::incrementAndGet);
+        assertThrows(InputValidationException.class, () -> cache.execute("a", second, runs::incrementAndGet));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void testOutcomesExpireAndCapacityIsBounded() {
+        AtomicLong now = new AtomicLong();
+        IdempotencyCache cache = new IdempotencyCache(3, Duration.ofNanos(100), now::get);
+        AtomicInteger runs = new AtomicInteger();
+        cache.execute("a", RENT, runs::incrementAndGet);
+        now.set(50);
+        cache.execute("b", RENT, runs::incrementAndGet);
+        cache.execute("c", RENT, runs::incrementAndGet);
+        // "a" expires and makes room for "d"
+        now.set(100);
+        cache.execute("d", RENT, runs::incrementAndGet);
+        assertEquals(3, cache.size());
+        assertEquals(0, cache.getEvictedEarly());
+        assertEquals(4, runs.get());
+
+        // Full: the new "a" pushes "b" out before its time
+        cache.execute("a", RENT, runs::incrementAndGet);
+        assertEquals(1, cache.getEvictedEarly());
+        assertEquals(3, cache.size());
+        cache.execute("c", RENT, runs::incrementAndGet);
+        assertEquals(5, runs.get());
+        cache.execute("b", RENT, runs::incrementAndGet);
+        assertEquals(6, runs.get());
+        assertEquals(2, cache.getEvictedEarly());
+    }
+
+    @Test
+    public void testDuplicateWaitsForTheRequestInFlight() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(16, Duration.ofMinutes(5));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executor.submit(() -> cache.execute("a", RENT, () -> {
+                runs.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new BikeUnavailableException("Bike already rented");
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<?> retry = executor.submit(() -> cache.execute("a", RENT, runs::incrementAndGet));
+            Thread.sleep(50);
+            assertFalse(retry.isDone());
+            release.countDown();
+
+            for (Future<?> attempt : new Future<?>[]{first, retry}) {
+                Exception e = assertThrows(Exception.class, () -> attempt.get(5, TimeUnit.SECONDS));
+                assertTrue(e.getCause() instanceof BikeUnavailableException);
+            }
+            assertEquals(1, runs.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRetriedRentAndReturnAreAuditedOnce() throws IOException {
+        Path rentals = tempDir.resolve("rentals.log");
+        BikeRentalService service = new BikeRentalService(
+                new BikeAuditRepository(tempDir.resolve("bikes.log").toString()),
+                new BikeAuditRepository(rentals.toString()));
+        BikeCatalog catalog = service.newCatalog(BikeType.road);
+        service.bikeCreation(new BikeBuilder("r1", "TT", true), catalog, BikeType.road);
+
+        service.rentingBikeOnce("k1", "r1", "John", "Doe");
+        service.rentingBikeOnce("k1", "r1", "John", "Doe");
+        service.returningBikeOnce("k2", "r1", "John", "Doe", null);
+        service.returningBikeOnce("k2", "r1", "John", "Doe", null);
+        assertThrows(RentalException.class, () -> service.returningBikeOnce("k3", "r1", "John", "Doe", null));
+
+        assertTrue(service.getBikeById("r1").isAvailable());
+        assertEquals(2, Files.readAllLines(rentals).size());
+        assertEquals(1, service.findCustomer("John", "Doe").getTotalRentals());
+        assertEquals(2, service.getRequests().getDuplicates());
+        assertThrows(InputValidationException.class, () -> service.rentingBikeOnce("k2", "r1", "John", "Doe"));
+    }
+}
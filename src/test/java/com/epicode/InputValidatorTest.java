@@ -1,6 +1,10 @@
 package com.epicode;
 
 import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class InputValidatorTest {
@@ -27,4 +31,59 @@ public class InputValidatorTest {
         assertThrows(InputValidationException.class, () -> InputValidator.sanitizeId(null));
         assertThrows(InputValidationException.class, () -> InputValidator.sanitizeId("   "));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRequestIdsAreValidatedNotRewritten() {
+        String uuid = "3f2b8c1e-9a4d-4e7b-8f10-2c6d5e7a9b01";
+        assertSame(uuid, InputValidator.validateRequestId(uuid));
+        assertEquals("a_1-b", InputValidator.validateRequestId("a_1-b"));
+        assertThrows(InputValidationException.class, () -> InputValidator.validateRequestId(null));
+        assertThrows(InputValidationException.class, () -> InputValidator.validateRequestId(""));
+        assertThrows(InputValidationException.class, () -> InputValidator.validateRequestId(" k1"));
+        assertThrows(InputValidationException.class, () -> InputValidator.validateRequestId("k/1"));
+        assertThrows(InputValidationException.class, () -> InputValidator.validateRequestId("k\u00e9"));
+        assertThrows(InputValidationException.class,
+                () -> InputValidator.validateRequestId("k".repeat(IdempotencyCache.MAX_REQUEST_ID_LENGTH + 1)));
+    }
+
+    @Test
+    public void testCleanInputIsReturnedUnchanged() {
+        String name = "Mary Ann";
+        String id = "ABC123";
+        assertSame(name, InputValidator.sanitizeName(name));
+        assertSame(id, InputValidator.sanitizeId(id));
+    }
+
+    @Test
+    public void testMatchesLegacyRules() {
+        String[] inputs = {"", " ", "ab", " a ", "A b", "\tJo\n", "Jo3", "José", "x-y", "---", "12 ab\u00e9", "\u2003"};
+        for (String input : inputs) {
+            boolean validName = input.trim().matches("[a-zA-Z ]{2,}");
+            if (validName) {
+                assertEquals(input.trim(), InputValidator.sanitizeName(input));
+            } else {
+                assertThrows(InputValidationException.class, () -> InputValidator.sanitizeName(input));
+            }
+            if (input.isBlank()) {
+                assertThrows(InputValidationException.class, () -> InputValidator.sanitizeId(input));
+            } else {
+                assertEquals(input.replaceAll("[^a-zA-Z0-9]", ""), InputValidator.sanitizeId(input));
+            }
+        }
+    }
+
+    @Test
+    public void testCharSequenceAndBytes() {
+        assertEquals("John", InputValidator.sanitizeName(new StringBuilder(" John ")));
+        assertEquals("AB12", InputValidator.sanitizeId(new StringBuilder("AB-12")));
+
+        ByteBuffer name = ByteBuffer.wrap("xx  Jane Doe \n".getBytes(StandardCharsets.UTF_8));
+        name.position(2);
+        assertEquals("Jane Doe", InputValidator.sanitizeNameBytes(name));
+        assertEquals(2, name.position());
+        assertThrows(InputValidationException.class,
+                () -> InputValidator.sanitizeNameBytes(ByteBuffer.wrap("Zoë".getBytes(StandardCharsets.UTF_8))));
+        assertEquals("ab12", InputValidator.sanitizeIdBytes(ByteBuffer.wrap("ab-12é".getBytes(StandardCharsets.UTF_8))));
+        assertThrows(InputValidationException.class, () -> InputValidator.sanitizeIdBytes(null));
+    }
+}
@@ -0,0 +1,88 @@
+package com.epicode;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InstrumentationTest {
+
+    @TempDir
+    Path tempDir;
+
+    private MetricsRegistry registry;
+    private BikeRentalService service;
+    private RentalService instrumented;
+
+    @BeforeEach
+    public void setup() {
+        registry = new MetricsRegistry();
+        service = new BikeRentalService(new BikeAuditRepository(tempDir.resolve("bikes.log").toString()),
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()));
+        instrumented = Instrumentation.instrument(RentalService.class, service, registry);
+        instrumented.bikeCreation(new BikeBuilder("b1", "GT", true),
+                new MountainBikeCatalog(new ArrayList<>()), BikeType.mountain);
+    }
+
+    @Test
+    public void testLoggedMethodsAreTimed() {
+        instrumented.rentingBike("b1", "John", "Doe");
+        assertThrows(RentalException.class, () -> instrumented.rentingBike("b1", "John", "Doe"));
+        instrumented.getBikeById("b1");
+
+        MetricsSnapshot snapshot = registry.snapshot();
+        MetricsSnapshot.MethodStats renting = snapshot.get("BikeRentalService.rentingBike");
+        assertEquals(2, renting.getCount());
+        assertEquals(1, renting.getErrors());
+        assertEquals(0.5, renting.getErrorRate());
+        assertTrue(renting.getP99Nanos() >= renting.getP50Nanos());
+        assertTrue(renting.getP50Nanos() > 0);
+        // getBikeById is not @Logged
+        assertNull(snapshot.get("BikeRentalService.getBikeById"));
+        assertTrue(snapshot.toJson().contains("\"method\":\"BikeRentalService.rentingBike\",\"count\":2,\"errors\":1"));
+    }
+
+    @Test
+    public void testSanitizedMethodsShieldUnexpectedErrors() {
+        BikeCreator failing = new BikeCreator() {
+            @Sanitized
+            @Override
+            public Bike createBike(BikeBuilder bikeBuilder) {
+                throw new IllegalStateException("secret internal detail");
+            }
+        };
+        BikeCreator creator = Instrumentation.instrument(BikeCreator.class, failing, registry);
+
+        RentalException e = assertThrows(RentalException.class, () -> creator.createBike(null));
+        assertFalse(e.getMessage().contains("secret"));
+        // Business exceptions pass through untouched
+        BikeCreator factory = Instrumentation.instrument(BikeCreator.class, new MountainBikeFactory(), registry);
+        assertEquals("b2", factory.createBike(new BikeBuilder("b2", "GT", true)).getId());
+        assertEquals(1, registry.snapshot().get("MountainBikeFactory.createBike").getCount());
+    }
+
+    @Test
+    public void testOnlyInterfacesCanBeInstrumented() {
+        assertThrows(RentalException.class,
+                () -> Instrumentation.instrument(BikeRentalService.class, service, registry));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000_000, histogram.getMax());
+        assertEquals(50_000_000, histogram.getValueAtPercentile(50), 50_000_000 / 64.0);
+        assertEquals(99_000_000, histogram.getValueAtPercentile(99), 99_000_000 / 64.0);
+        assertEquals(100_000_000, histogram.getValueAtPercentile(100));
+        assertThrows(InvalidSelectionException.class, () -> histogram.getValueAtPercentile(101));
+    }
+}
@@ -3,7 +3,9 @@ package com.epicode;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
 
 public class IteratorsTest {
 
@@ -32,4 +34,39 @@ public class IteratorsTest {
         assertFalse(iterator.hasNext());
         assertThrows(NoSuchElementException.class, iterator::next);
     }
+
+    @Test
+    public void testCatalogIteratorIgnoresLaterChanges() {
+        Bike first = new MountainBike(new BikeBuilder("b1", "GT", true));
+        Bike second = new MountainBike(new BikeBuilder("b2", "GT", true));
+        BikeCatalog catalog = new MountainBikeCatalog(new ArrayList<>());
+        catalog.addBike(first);
+        Iterator<Bike> iterator = catalog.createIterator();
+        List<Bike> snapshot = catalog.getBikes();
+
+        catalog.addBike(second);
+        catalog.removeBike(first);
+
+        assertEquals(first, iterator.next());
+        assertFalse(iterator.hasNext());
+        assertEquals(List.of(first), snapshot);
+        assertEquals(List.of(second), catalog.getBikes());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(second));
+    }
+
+    @Test
+    public void testIteratorStream() {
+        BikeCatalog catalog = new MountainBikeCatalog(new ArrayList<>());
+        for (int i = 0; i < 5; i++) {
+            catalog.addBike(new MountainBike(new BikeBuilder("b" + i, "GT", i % 2 == 0)));
+        }
+        Iterator<Bike> iterator = catalog.createIterator();
+        iterator.next();
+
+        List<String> ids = iterator.stream().map(Bike::getId).collect(Collectors.toList());
+
+        assertEquals(List.of("b1", "b2", "b3", "b4"), ids);
+        assertFalse(iterator.hasNext());
+        assertEquals(3, catalog.createIterator().stream().parallel().filter(Bike::isAvailable).count());
+    }
 }
@@ -0,0 +1,96 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedAuditLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRecordsSurviveSegmentRollover() {
+        MappedBikeAuditRepository repo = new MappedBikeAuditRepository(tempDir.toString(), 1024);
+        BikeCatalog catalog = new ElectricBikeCatalog(new ArrayList<>());
+        Bike bike = new ElectricBike(new BikeBuilder("e1", "ZX", true).setGPS(true));
+
+        repo.recordCreation(bike, catalog);
+        for (int i = 0; i < 200; i++) {
+            repo.recordRental(bike, "John", "Doe");
+            repo.recordReturn(bike, "John", "Doe");
+        }
+        repo.close();
+
+        assertTrue(MappedAuditLog.listSegments(tempDir).size() > 1);
+        List<AuditRecord> records = new ArrayList<>();
+        MappedAuditLog.read(tempDir, records::add);
+
+        assertEquals(401, records.size());
+        AuditRecord created = records.get(0);
+        assertEquals(AuditEventType.CREATED, created.getEventType());
+        assertEquals(BikeType.electric, created.getBikeType());
+        assertEquals("Electric Bike Catalog", created.getFirstSubject());
+        assertEquals("ZX", created.getSecondSubject());
+        assertEquals(MappedAuditLog.FLAG_AVAILABLE | MappedAuditLog.FLAG_GPS, created.getFlags());
+        assertEquals(AuditEventType.RETURNED, records.get(400).getEventType());
+        assertEquals("Doe", records.get(400).getSecondSubject());
+    }
+
+    @Test
+    public void testCompactionKeepsHistory() {
+        MappedBikeAuditRepository repo = new MappedBikeAuditRepository(tempDir.toString(), 512);
+        Bike bike = new RoadBike(new BikeBuilder("r1", "TT", true));
+        for (int i = 0; i < 100; i++) {
+            repo.recordRental(bike, "Jane", "Doe");
+        }
+        int before = MappedAuditLog.listSegments(tempDir).size();
+
+        int merged = repo.compact();
+        repo.close();
+
+        assertEquals(before - 1, merged);
+        assertEquals(2, MappedAuditLog.listSegments(tempDir).size());
+        List<AuditRecord> records = new ArrayList<>();
+        MappedAuditLog.read(tempDir, records::add);
+        assertEquals(100, records.size());
+    }
+
+    @Test
+    public void testExportProducesTextLayout() {
+        MappedBikeAuditRepository repo = new MappedBikeAuditRepository(tempDir.toString(), 4096);
+        Bike bike = new MountainBike(new BikeBuilder("m1", "GT", true));
+        repo.recordRental(bike, "John", "Doe");
+        repo.close();
+
+        StringWriter out = new StringWriter();
+        assertEquals(1, AuditLogExporter.export(tempDir, out));
+        assertTrue(out.toString().contains("] RENTED | Bike=m1 | First Name=John | Last Name=Doe"));
+    }
+
+    @Test
+    public void testExpiriesSkipTheDictionaryTag() {
+        MappedBikeAuditRepository repo = new MappedBikeAuditRepository(tempDir.toString(), 4096);
+        Bike bike = new MountainBike(new BikeBuilder("m1", "GT", true));
+        repo.recordRental(bike, "John", "Doe");
+        repo.recordExpirations(List.of(new Reservation("m1", "Jane", "Doe", Instant.now())));
+        repo.close();
+
+        List<AuditRecord> records = new ArrayList<>();
+        MappedAuditLog.read(tempDir, records::add);
+        assertEquals(AuditEventType.RENTED, records.get(0).getEventType());
+        assertEquals(AuditEventType.EXPIRED, records.get(1).getEventType());
+        assertEquals("Jane", records.get(1).getFirstSubject());
+
+        StringWriter out = new StringWriter();
+        AuditLogExporter.export(tempDir, out);
+        assertTrue(out.toString().contains("] EXPIRED | Bike=m1 | First Name=Jane | Last Name=Doe"));
+    }
+}
@@ -0,0 +1,200 @@
+package com.epicode;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RentalHttpServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private RentalHttpServer server;
+    private AuditLogTailer tailer;
+    private HttpClient client;
+
+    @BeforeEach
+    public void setup() {
+        BikeRentalService service = new BikeRentalService(
+                new BikeAuditRepository(tempDir.resolve("bikes.log").toString()),
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()));
+        BikeCatalog catalog = service.newCatalog(BikeType.electric);
+        service.bikeCreation(new BikeBuilder("e1", "Volt", true).setGPS(true), catalog, BikeType.electric);
+        service.bikeCreation(new BikeBuilder("e2", "Spark", false), catalog, BikeType.electric);
+        service.addStation(new Station("s1", "Duomo", 45.4642, 9.1900, 2));
+        service.addStation(new Station("s2", "Navigli", 45.4520, 9.1760, 1));
+        service.dockingBike("e1", "s1");
+
+        LiveCounters live = new LiveCounters();
+        tailer = new AuditLogTailer(tempDir.resolve("bikes.log"), tempDir.resolve("rentals.log"), live);
+        server = new RentalHttpServer(service, new MetricsRegistry(), live, new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+        tailer.close();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String form) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getPort() + path);
+    }
+
+    @Test
+    public void testLookupAndQuery() throws IOException, InterruptedException {
+        HttpResponse<String> bike = get("/bikes/e1");
+        assertEquals(200, bike.statusCode());
+        assertEquals("{\"id\":\"e1\",\"type\":\"electric\",\"model\":\"Volt\",\"available\":true,"
+                + "\"lights\":false,\"basket\":false,\"gps\":true}", bike.body());
+        assertEquals(404, get("/bikes/nope").statusCode());
+
+        HttpResponse<String> available = get("/bikes?type=electric&available=true");
+        assertEquals(200, available.statusCode());
+        assertTrue(available.body().contains("\"e1\""));
+        assertFalse(available.body().contains("\"e2\""));
+        assertEquals(400, get("/bikes?type=unicycle").statusCode());
+        assertEquals(400, get("/bikes?gps=maybe").statusCode());
+    }
+
+    @Test
+    public void testRentAndReturn() throws IOException, InterruptedException {
+        HttpResponse<String> rented = post("/bikes/e1/rent", "firstName=John&lastName=Doe");
+        assertEquals(200, rented.statusCode());
+        assertTrue(rented.body().contains("\"available\":false"));
+
+        assertEquals(409, post("/bikes/e1/rent", "firstName=Jane&lastName=Doe").statusCode());
+        assertEquals(400, post("/bikes/e1/return", "firstName=J0hn&lastName=Doe").statusCode());
+        HttpResponse<String> wrongMethod = get("/bikes/e1/return");
+        assertEquals(405, wrongMethod.statusCode());
+        assertEquals("POST", wrongMethod.headers().firstValue("Allow").orElse(null));
+        assertEquals("GET", post("/bikes/e1", "").headers().firstValue("Allow").orElse(null));
+        assertEquals(404, get("/bikes/e1/fly").statusCode());
+        assertEquals(404, post("/bikes/e1/rent/now", "firstName=John&lastName=Doe").statusCode());
+        assertEquals(404, post("/bikes/nope/rent", "firstName=John&lastName=Doe").statusCode());
+
+        HttpResponse<String> returned = post("/bikes/e1/return?firstName=John", "lastName=Doe");
+        assertEquals(200, returned.statusCode());
+        assertTrue(returned.body().contains("\"available\":true"));
+    }
+
+    @Test
+    public void testRetriedRequestsWithRequestId() throws IOException, InterruptedException {
+        assertEquals(200, post("/bikes/e1/rent", "firstName=John&lastName=Doe&requestId=k1").statusCode());
+        assertEquals(200, post("/bikes/e1/return", "firstName=John&lastName=Doe&requestId=k2").statusCode());
+        assertEquals(200, post("/bikes/e1/return", "firstName=John&lastName=Doe&requestId=k2").statusCode());
+        assertEquals(400, post("/bikes/e1/rent", "firstName=Jane&lastName=Doe&requestId=k1").statusCode());
+
+        HttpResponse<String> rented = client.send(HttpRequest.newBuilder(uri("/bikes/e1/rent"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("Idempotency-Key", "k3")
+                .POST(HttpRequest.BodyPublishers.ofString("firstName=Jane&lastName=Doe")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, rented.statusCode());
+        assertEquals(200, post("/bikes/e1/rent", "firstName=Jane&lastName=Doe&requestId=k3").statusCode());
+        assertEquals(409, post("/bikes/e1/rent", "firstName=Jane&lastName=Doe&requestId=k4").statusCode());
+
+        // Keys are taken as they are: these two stay two different requests
+        assertEquals(200, post("/bikes/e1/return", "firstName=Jane&lastName=Doe&requestId=a-1b").statusCode());
+        assertEquals(200, post("/bikes/e1/rent", "firstName=Jane&lastName=Doe&requestId=a1-b").statusCode());
+        assertEquals(200, post("/bikes/e1/return",
+                "firstName=Jane&lastName=Doe&requestId=" + UUID.randomUUID()).statusCode());
+        assertEquals(400, post("/bikes/e1/rent", "firstName=Jane&lastName=Doe&requestId=k%215").statusCode());
+        assertEquals(400, post("/bikes/e1/rent",
+                "firstName=Jane&lastName=Doe&requestId=" + "k".repeat(129)).statusCode());
+        assertTrue(get("/bikes/e1").body().contains("\"available\":true"));
+    }
+
+    @Test
+    public void testReserveAndCancel() throws IOException, InterruptedException {
+        HttpResponse<String> reserved = post("/bikes/e1/reserve", "firstName=John&lastName=Doe");
+        assertEquals(200, reserved.statusCode());
+        assertTrue(reserved.body().contains("\"expiresAt\":"));
+        assertEquals(409, post("/bikes/e1/rent", "firstName=Jane&lastName=Doe").statusCode());
+
+        assertEquals(200, post("/bikes/e1/cancel", "firstName=John&lastName=Doe").statusCode());
+        assertEquals(200, post("/bikes/e1/rent", "firstName=Jane&lastName=Doe").statusCode());
+    }
+
+    @Test
+    public void testNearbyAndReturnToStation() throws IOException, InterruptedException {
+        HttpResponse<String> nearby = get("/nearby?lat=45.4530&lon=9.1770&gps=true");
+        assertEquals(200, nearby.statusCode());
+        assertTrue(nearby.body().startsWith("[{\"bike\":{\"id\":\"e1\""));
+        assertTrue(nearby.body().contains("\"station\":\"s1\""));
+        assertEquals("[]", get("/nearby?lat=45.4530&lon=9.1770&radius=100").body());
+        assertEquals(400, get("/nearby?lat=45.4530").statusCode());
+        assertEquals(400, get("/nearby?lat=north&lon=9").statusCode());
+
+        post("/bikes/e1/rent", "firstName=John&lastName=Doe");
+        assertEquals("[]", get("/nearby?lat=45.4530&lon=9.1770").body());
+        assertEquals(404, post("/bikes/e1/return", "firstName=John&lastName=Doe&station=s9").statusCode());
+        assertEquals(200, post("/bikes/e1/return", "firstName=John&lastName=Doe&station=s2").statusCode());
+        assertTrue(get("/nearby?lat=45.4530&lon=9.1770&radius=500").body().contains("\"station\":\"s2\""));
+    }
+
+    @Test
+    public void testCatalogsAndMetrics() throws IOException, InterruptedException {
+        HttpResponse<String> catalogs = get("/catalogs");
+        assertEquals(200, catalogs.statusCode());
+        assertEquals("[{\"index\":0,\"name\":\"Electric Bike Catalog\",\"size\":2,\"available\":1}]", catalogs.body());
+
+        HttpResponse<String> page = get("/catalogs/0/bikes?offset=1&limit=5");
+        assertEquals(200, page.statusCode());
+        assertTrue(page.body().startsWith("[{\"id\":\"e2\""));
+        assertEquals(404, get("/catalogs/3/bikes").statusCode());
+        assertEquals(404, get("/catalogsx").statusCode());
+        assertEquals(404, post("/catalogs/0/cars", "").statusCode());
+        assertEquals(405, post("/catalogs/0/bikes", "").statusCode());
+
+        assertEquals(200, get("/metrics").statusCode());
+    }
+
+    @Test
+    public void testLiveCounters() throws IOException, InterruptedException {
+        assertEquals(200, post("/bikes/e1/rent", "firstName=John&lastName=Doe").statusCode());
+        tailer.poll();
+
+        HttpResponse<String> live = get("/live");
+        assertEquals(200, live.statusCode());
+        assertTrue(live.body().startsWith("{\"activeRentals\":1,\"rentals\":1,\"returns\":0,"));
+        assertTrue(live.body().contains("\"electric\":1"));
+        assertEquals(404, get("/live/x").statusCode());
+    }
+
+    @Test
+    public void testRequestExecutorRunsTasks() throws Exception {
+        ExecutorService executor = RentalHttpServer.newRequestExecutor();
+        try {
+            Future<String> result = executor.submit(() -> "done");
+            assertEquals("done", result.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
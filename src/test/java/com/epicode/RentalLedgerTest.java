@@ -0,0 +1,167 @@
+package com.epicode;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RentalLedgerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private RentalLedger ledger;
+    private BikeRentalService service;
+    private BikeCatalog road;
+    private BikeCatalog electric;
+
+    @BeforeEach
+    public void setup() {
+        ledger = new RentalLedger(tempDir.resolve("ledger"), 64 * 1024);
+        service = newService(ledger);
+        road = service.newCatalog(BikeType.road);
+        electric = service.newCatalog(BikeType.electric);
+    }
+
+    private BikeRentalService newService(RentalLedger ledger) {
+        return new BikeRentalService(new BikeAuditRepository(tempDir.resolve("bikes.log").toString()),
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()),
+                new BikeRentalService.Options().setLedger(ledger));
+    }
+
+    private void createFleet() {
+        service.bikeCreationBatch(Stream.of(new BikeBuilder("r1", "TT", true), new BikeBuilder("r2", "TT", true)),
+                road, BikeType.road);
+        service.bikeCreation(new BikeBuilder("e1", "Volt", true), electric, BikeType.electric);
+    }
+
+    @Test
+    public void testServiceChangesAreAppendedInOrder() {
+        createFleet();
+        service.rentingBike("r1", "John", "Doe");
+        service.returningBike("r1", "John", "Doe");
+
+        assertEquals(5, ledger.size());
+        assertEquals(AuditEventType.CREATED, ledger.get(0).getEventType());
+        assertEquals("Road Bike Catalog", ledger.get(0).getFirstSubject());
+        assertEquals(AuditEventType.RENTED, ledger.get(3).getEventType());
+        assertEquals("John", ledger.get(3).getFirstSubject());
+        assertEquals(AuditEventType.RETURNED, ledger.get(4).getEventType());
+        assertEquals(4, ledger.get(4).getSequence());
+        assertThrows(InvalidSelectionException.class, () -> ledger.get(5));
+    }
+
+    @Test
+    public void testProjectionsFollowTheLedger() {
+        AvailabilityProjection availability = ledger.subscribe(new AvailabilityProjection(), 0);
+        CatalogCountsProjection catalogs = ledger.subscribe(new CatalogCountsProjection(), 0);
+        CustomerActivityProjection customers = ledger.subscribe(new CustomerActivityProjection(), 0);
+        createFleet();
+        service.rentingBike("r1", "John", "Doe");
+        service.rentingBike("e1", "John", "Doe");
+        service.returningBike("e1", "John", "Doe");
+
+        assertFalse(availability.isAvailable("r1"));
+        assertTrue(availability.isAvailable("e1"));
+        assertEquals(2, availability.getAvailableCount());
+        assertEquals(2, catalogs.getBikeCount("Road Bike Catalog"));
+        assertEquals(1, catalogs.getAvailableCount("Road Bike Catalog"));
+        assertEquals(1, catalogs.getAvailableCount("Electric Bike Catalog"));
+        assertEquals(2, customers.getActivity("John", "Doe").getRentals());
+        assertEquals(1, customers.getActivity("John", "Doe").getReturns());
+        assertNull(customers.getActivity("Jane", "Doe"));
+    }
+
+    @Test
+    public void testReleasedBikesLeaveTheProjections() {
+        AvailabilityProjection availability = ledger.subscribe(new AvailabilityProjection(), 0);
+        CatalogCountsProjection catalogs = ledger.subscribe(new CatalogCountsProjection(), 0);
+        createFleet();
+        assertNotNull(service.releaseBike("r2", road));
+
+        assertEquals(AuditEventType.REMOVED, ledger.get(ledger.size() - 1).getEventType());
+        assertFalse(availability.contains("r2"));
+        assertEquals(2, availability.getAvailableCount());
+        assertEquals(1, catalogs.getBikeCount("Road Bike Catalog"));
+        assertEquals(1, catalogs.getAvailableCount("Road Bike Catalog"));
+        AvailabilityProjection rebuilt = ledger.rebuild(AvailabilityProjection::new, 2);
+        assertEquals(2, rebuilt.getBikeCount());
+
+        BikeRentalService restarted = newService(new RentalLedger());
+        RentalStateRecovery.recoverFromBinary(restarted, restarted.getBikeInventory(), tempDir.resolve("ledger"));
+        assertNull(restarted.getBikeById("r2"));
+        assertNotNull(restarted.getBikeById("r1"));
+    }
+
+    @Test
+    public void testParallelRebuildMatchesLiveProjection() {
+        CatalogCountsProjection live = ledger.subscribe(new CatalogCountsProjection(), 0);
+        for (int i = 0; i < 200; i++) {
+            service.bikeCreation(new BikeBuilder("b" + i, "TT", true), i % 2 == 0 ? road : electric,
+                    i % 2 == 0 ? BikeType.road : BikeType.electric);
+        }
+        for (int i = 0; i < 200; i += 3) {
+            service.rentingBike("b" + i, "C" + (i % 7), "Doe");
+        }
+        for (int i = 0; i < 200; i += 9) {
+            service.returningBike("b" + i, "C" + (i % 7), "Doe");
+        }
+
+        CatalogCountsProjection rebuilt = ledger.rebuild(CatalogCountsProjection::new, 4);
+        assertEquals(live.availableByCatalog(), rebuilt.availableByCatalog());
+        AvailabilityProjection availability = ledger.rebuild(AvailabilityProjection::new, 3);
+        for (int i = 0; i < 200; i++) {
+            assertEquals(service.getBikeById("b" + i).isAvailable(), availability.isAvailable("b" + i));
+        }
+        CustomerActivityProjection customers = ledger.rebuildAndSubscribe(CustomerActivityProjection::new, 4);
+        long rentals = 0;
+        for (int c = 0; c < 7; c++) {
+            CustomerActivityProjection.Activity activity = customers.getActivity("C" + c, "Doe");
+            rentals += activity == null ? 0 : activity.getRentals();
+        }
+        assertEquals(67, rentals);
+        long before = customers.getActivity("C1", "Doe").getRentals();
+        service.rentingBike("b1", "C1", "Doe");
+        assertEquals(before + 1, customers.getActivity("C1", "Doe").getRentals());
+    }
+
+    @Test
+    public void testFailedAppendUndoesTheChange() {
+        createFleet();
+        service.rentingBike("r2", "Jane", "Doe");
+        ledger.close();
+
+        assertThrows(RentalException.class, () -> service.rentingBike("r1", "John", "Doe"));
+        assertTrue(service.getBikeById("r1").isAvailable());
+        assertThrows(RentalException.class, () -> service.returningBike("r2", "Jane", "Doe"));
+        assertFalse(service.getBikeById("r2").isAvailable());
+        assertThrows(RentalException.class, () -> service.bikeCreation(new BikeBuilder("r3", "TT", true),
+                road, BikeType.road));
+        assertNull(service.getBikeById("r3"));
+        assertEquals(4, ledger.size());
+    }
+
+    @Test
+    public void testReopenedLedgerRestoresTheService() {
+        createFleet();
+        service.rentingBike("e1", "John", "Doe");
+        ledger.close();
+
+        RentalLedger reopened = new RentalLedger(tempDir.resolve("ledger"), 64 * 1024);
+        assertEquals(4, reopened.size());
+        BikeRentalService restored = newService(reopened);
+        RentalStateRecovery.recoverFromBinary(restored, new BikeInventory(new ArrayList<>()), tempDir.resolve("ledger"));
+        assertFalse(restored.getBikeById("e1").isAvailable());
+        assertTrue(restored.getBikeById("r1").isAvailable());
+
+        restored.returningBike("e1", "John", "Doe");
+        assertEquals(5, reopened.size());
+        assertTrue(reopened.rebuild(AvailabilityProjection::new, 2).isAvailable("e1"));
+        reopened.close();
+    }
+}
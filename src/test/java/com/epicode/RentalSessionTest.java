@@ -0,0 +1,134 @@
+package com.epicode;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RentalSessionTest {
+
+    @TempDir
+    Path tempDir;
+
+    private BikeRentalService service;
+
+    @BeforeEach
+    public void setup() {
+        service = new BikeRentalService(new BikeAuditRepository(tempDir.resolve("bikes.log").toString()),
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()));
+        BikeCatalog electric = service.newCatalog(BikeType.electric);
+        BikeCatalog road = service.newCatalog(BikeType.road);
+        service.bikeCreation(new BikeBuilder("e1", "Volt", true), electric, BikeType.electric);
+        service.bikeCreation(new BikeBuilder("r1", "TT", true), road, BikeType.road);
+    }
+
+    @Test
+    public void testTariffBillsEveryStartedMinute() {
+        Tariff tariff = new Tariff(100, 25);
+
+        assertEquals(125, tariff.charge(Duration.ZERO));
+        assertEquals(125, tariff.charge(Duration.ofSeconds(60)));
+        assertEquals(150, tariff.charge(Duration.ofSeconds(61)));
+        assertEquals(100 + 90 * 25, tariff.charge(Duration.ofMinutes(90)));
+        assertEquals(125, tariff.charge(Duration.ofSeconds(-5)));
+        assertThrows(InputValidationException.class, () -> new Tariff(-1, 10));
+    }
+
+    @Test
+    public void testCloseBillsTheSessionOnce() {
+        Instant start = Instant.parse("2024-05-01T10:00:00Z");
+        RentalSession open = new RentalSession(7, "e1", BikeType.electric, "John", "Doe", start);
+        assertTrue(open.isOpen());
+
+        RentalSession closed = open.close(start.plus(Duration.ofMinutes(12).plusSeconds(3)), new Tariff(100, 35));
+        assertFalse(closed.isOpen());
+        assertEquals(7, closed.getSessionId());
+        assertEquals(Duration.ofMinutes(12).plusSeconds(3), closed.getDuration());
+        assertEquals(100 + 13 * 35, closed.getChargeCents());
+        assertThrows(RentalException.class, () -> closed.close(Instant.now(), new Tariff(0, 0)));
+    }
+
+    @Test
+    public void testReturnClosesTheSessionAndRecordsRevenue() {
+        service.setTariff(BikeType.electric, new Tariff(200, 10));
+        service.rentingBike("e1", "John", "Doe");
+        service.rentingBike("r1", "Jane", "Doe");
+
+        RentalSession session = service.getOpenSession("e1");
+        assertNotNull(session);
+        assertEquals("John", session.getFirstName());
+        assertEquals(BikeType.electric, session.getBikeType());
+        assertNotEquals(session.getSessionId(), service.getOpenSession("r1").getSessionId());
+        assertEquals(2, service.getOpenSessionCount());
+
+        service.returningBike("e1", "John", "Doe");
+        assertNull(service.getOpenSession("e1"));
+        assertEquals(1, service.getOpenSessionCount());
+
+        RevenueAggregator revenue = service.getRevenue();
+        assertEquals(210, revenue.getTotalCents(BikeType.electric));
+        assertEquals(1, revenue.getTotalReturns(BikeType.electric));
+        assertEquals(0, revenue.getTotalCents(BikeType.road));
+        long minuteCents = revenue.minutes(Instant.now().minusSeconds(120), Instant.now().plusSeconds(60)).stream()
+                .mapToLong(minute -> minute.getCents(BikeType.electric)).sum();
+        assertEquals(210, minuteCents);
+    }
+
+    @Test
+    public void testReservedRentalOpensASessionOnlyWhenRented() {
+        service.reservingBike("e1", "John", "Doe");
+        assertNull(service.getOpenSession("e1"));
+
+        service.rentingBike("e1", "John", "Doe");
+        assertNotNull(service.getOpenSession("e1"));
+        service.returningBike("e1", "John", "Doe");
+        assertEquals(service.getTariff(BikeType.electric).charge(Duration.ZERO),
+                service.getRevenue().getTotalCents(BikeType.electric));
+    }
+
+    @Test
+    public void testReturnWithoutSessionIsNotBilled() {
+        // Rented before a restart: the state is recovered but the session is not
+        service.getBikeById("r1").setAvailable(false);
+        service.returningBike("r1", "Jane", "Doe");
+
+        assertTrue(service.getBikeById("r1").isAvailable());
+        assertEquals(0, service.getRevenue().getTotalReturns(BikeType.road));
+    }
+
+    @Test
+    public void testRacingRentAndReturnKeepTheSessionInStep() throws InterruptedException {
+        AtomicInteger returns = new AtomicInteger();
+        Thread returner = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                try {
+                    service.returningBike("r1", "John", "Doe");
+                    returns.incrementAndGet();
+                } catch (RentalException e) {
+                    // Not rented at the moment
+                }
+            }
+        });
+        returner.start();
+        for (int i = 0; i < 2000; i++) {
+            try {
+                service.rentingBike("r1", "John", "Doe");
+            } catch (RentalException e) {
+                // Not returned yet
+            }
+        }
+        returner.join();
+
+        // Every return found the session its rental opened
+        assertEquals(returns.get(), service.getRevenue().getTotalReturns(BikeType.road));
+        boolean available = service.getBikeById("r1").isAvailable();
+        assertEquals(available, service.getOpenSession("r1") == null);
+        assertEquals(available, service.getCustomers().holderOf("r1") == null);
+    }
+}
@@ -0,0 +1,172 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RentalStateRecoveryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private BikeRentalService newService() {
+        return new BikeRentalService(new BikeAuditRepository(tempDir.resolve("bikes.log").toString()),
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()));
+    }
+
+    private BikeRentalService newRotatingService(BikeAuditRepository rentals) {
+        BikeRentalService service = new BikeRentalService(
+                new BikeAuditRepository(tempDir.resolve("bikes.log").toString()), rentals);
+        BikeCatalog catalog = new RoadBikeCatalog(new ArrayList<>());
+        for (int i = 0; i < 10; i++) {
+            service.bikeCreation(new BikeBuilder("r" + i, "TT", true), catalog, BikeType.road);
+        }
+        return service;
+    }
+
+    private static void rentAndReturn(BikeRentalService service, BikeAuditRepository rentals, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            service.rentingBike("r9", "John", "Doe");
+            service.returningBike("r9", "John", "Doe");
+            rentals.flush();
+        }
+    }
+
+    private RentalStateRecovery newRecovery() {
+        return new RentalStateRecovery(tempDir.resolve("bikes.log"), tempDir.resolve("rentals.log"),
+                tempDir.resolve("state.snapshot"));
+    }
+
+    @Test
+    public void testReplayRestoresBikesAndAvailability() {
+        BikeRentalService before = newService();
+        BikeCatalog catalog = new ElectricBikeCatalog(new ArrayList<>());
+        before.bikeCreation(new BikeBuilder("e1", "ZX", true).setGPS(true), catalog, BikeType.electric);
+        before.bikeCreation(new BikeBuilder("e2", "ZY", true), catalog, BikeType.electric);
+        before.rentingBike("e1", "John", "Doe");
+        before.rentingBike("e2", "John", "Doe");
+        before.returningBike("e2", "John", "Doe");
+
+        BikeRentalService after = newService();
+        BikeInventory inventory = new BikeInventory(new ArrayList<>());
+        RecoveryResult result = newRecovery().recover(after, inventory);
+
+        assertFalse(result.isFromSnapshot());
+        assertEquals(2, result.getBikesRestored());
+        Bike e1 = after.getBikeById("e1");
+        assertEquals("ZX", e1.getModel());
+        assertTrue(e1.hasGPS());
+        assertFalse(e1.isAvailable());
+        assertTrue(after.getBikeById("e2").isAvailable());
+        assertEquals("Electric Bike Catalog", inventory.getElementAt(0).toString());
+        assertEquals(2, inventory.getElementAt(0).getSize());
+    }
+
+    @Test
+    public void testSnapshotPlusTail() {
+        BikeRentalService before = newService();
+        BikeCatalog catalog = new RoadBikeCatalog(new ArrayList<>());
+        before.bikeCreation(new BikeBuilder("r1", "TT", true), catalog, BikeType.road);
+        before.bikeCreation(new BikeBuilder("r2", "TT", true), catalog, BikeType.road);
+        newRecovery().writeSnapshot(before);
+        before.rentingBike("r2", "Jane", "Doe");
+
+        BikeRentalService after = newService();
+        RecoveryResult result = newRecovery().recover(after, new BikeInventory(new ArrayList<>()));
+
+        assertTrue(result.isFromSnapshot());
+        assertEquals(2, result.getBikesRestored());
+        assertEquals(3, result.getEventsReplayed());
+        assertTrue(after.getBikeById("r1").isAvailable());
+        assertFalse(after.getBikeById("r2").isAvailable());
+    }
+
+    @Test
+    public void testLogShorterThanTheSnapshotIsReplayedFully() throws IOException {
+        BikeRentalService before = newService();
+        BikeCatalog catalog = new RoadBikeCatalog(new ArrayList<>());
+        before.bikeCreation(new BikeBuilder("r1", "TT", true), catalog, BikeType.road);
+        before.rentingBike("r1", "John", "Doe");
+        before.returningBike("r1", "John", "Doe");
+        newRecovery().writeSnapshot(before);
+        // Cut back to its first entry: same file by its identity, but shorter than the offset
+        Path rentals = tempDir.resolve("rentals.log");
+        Files.write(rentals, Files.readAllLines(rentals).subList(0, 1));
+
+        BikeRentalService after = newService();
+        RecoveryResult result = newRecovery().recover(after, new BikeInventory(new ArrayList<>()));
+
+        assertTrue(result.isFromSnapshot());
+        assertFalse(after.getBikeById("r1").isAvailable());
+    }
+
+    @Test
+    public void testSnapshotReleasesOpenHolds() {
+        BikeRentalService before = newService();
+        BikeCatalog catalog = new RoadBikeCatalog(new ArrayList<>());
+        before.bikeCreation(new BikeBuilder("r1", "TT", true), catalog, BikeType.road);
+        before.bikeCreation(new BikeBuilder("r2", "TT", true), catalog, BikeType.road);
+        before.reservingBike("r1", "Jane", "Doe");
+        before.rentingBike("r2", "John", "Doe");
+        newRecovery().writeSnapshot(before);
+
+        BikeRentalService after = newService();
+        RecoveryResult result = newRecovery().recover(after, new BikeInventory(new ArrayList<>()));
+
+        assertTrue(result.isFromSnapshot());
+        assertNull(after.getReservation("r1"));
+        assertTrue(after.getBikeById("r1").isAvailable());
+        assertFalse(after.getBikeById("r2").isAvailable());
+        after.rentingBike("r1", "John", "Doe");
+        assertFalse(after.getBikeById("r1").isAvailable());
+    }
+
+    @Test
+    public void testSnapshotTailIsReplayedFromRotatedSegments() {
+        BikeAuditRepository rentals = new BikeAuditRepository(tempDir.resolve("rentals.log").toString(), 64,
+                AsyncAuditWriter.FsyncPolicy.NONE, 0, new AuditRotation().setMaxBytes(1024));
+        BikeRentalService before = newRotatingService(rentals);
+        before.rentingBike("r1", "John", "Doe");
+        rentals.flush();
+        newRecovery().writeSnapshot(before);
+        before.rentingBike("r2", "John", "Doe");
+        before.returningBike("r1", "John", "Doe");
+        rentAndReturn(before, rentals, 30);
+        before.rentingBike("r3", "John", "Doe");
+        rentals.flush();
+        rentals.getSegments().awaitPending();
+        assertTrue(AuditSegments.segments(tempDir.resolve("rentals.log")).size() >= 2);
+
+        BikeRentalService after = newService();
+        RecoveryResult result = newRecovery().recover(after, new BikeInventory(new ArrayList<>()));
+
+        assertTrue(result.isFromSnapshot());
+        assertTrue(after.getBikeById("r1").isAvailable());
+        assertFalse(after.getBikeById("r2").isAvailable());
+        assertFalse(after.getBikeById("r3").isAvailable());
+        assertTrue(after.getBikeById("r9").isAvailable());
+        rentals.close();
+    }
+
+    @Test
+    public void testRecoveryFailsWhenTheSnapshotSegmentExpired() {
+        BikeAuditRepository rentals = new BikeAuditRepository(tempDir.resolve("rentals.log").toString(), 64,
+                AsyncAuditWriter.FsyncPolicy.NONE, 0, new AuditRotation().setMaxBytes(1024).setRetainedSegments(1));
+        BikeRentalService before = newRotatingService(rentals);
+        before.rentingBike("r1", "John", "Doe");
+        rentals.flush();
+        newRecovery().writeSnapshot(before);
+        rentAndReturn(before, rentals, 30);
+        rentals.getSegments().awaitPending();
+        rentals.close();
+
+        assertThrows(StorageException.class,
+                () -> newRecovery().recover(newService(), new BikeInventory(new ArrayList<>())));
+    }
+}
@@ -0,0 +1,107 @@
+package com.epicode;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReservationTest {
+
+    @TempDir
+    Path tempDir;
+
+    private BikeRentalService service;
+
+    @BeforeEach
+    public void setup() {
+        service = new BikeRentalService(new BikeAuditRepository(tempDir.resolve("bikes.log").toString()),
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()));
+        BikeCatalog catalog = service.newCatalog(BikeType.road);
+        for (int i = 0; i < 3; i++) {
+            service.bikeCreation(new BikeBuilder("r" + i, "TT", true), catalog, BikeType.road);
+        }
+    }
+
+    private static long afterHold(Duration hold) {
+        // Expiry runs on whole wheel ticks, so go two ticks past the deadline
+        return System.nanoTime() + hold.toNanos() + TimeUnit.SECONDS.toNanos(2);
+    }
+
+    @Test
+    public void testOnlyTheHolderCanRent() {
+        Reservation reservation = service.reservingBike("r0", "John", "Doe");
+
+        assertFalse(service.getBikeById("r0").isAvailable());
+        assertSame(reservation, service.getReservation("r0"));
+        assertThrows(RentalException.class, () -> service.rentingBike("r0", "Jane", "Doe"));
+        assertThrows(RentalException.class, () -> service.reservingBike("r0", "Jane", "Doe"));
+        assertThrows(RentalException.class, () -> service.returningBike("r0", "John", "Doe"));
+
+        service.rentingBike("r0", "John", "Doe");
+        assertNull(service.getReservation("r0"));
+        assertFalse(service.getBikeById("r0").isAvailable());
+        assertEquals(0, service.expireReservations(afterHold(BikeRentalService.DEFAULT_HOLD)));
+        assertFalse(service.getBikeById("r0").isAvailable());
+        service.returningBike("r0", "John", "Doe");
+        assertTrue(service.getBikeById("r0").isAvailable());
+    }
+
+    @Test
+    public void testCancelReleasesTheBike() {
+        service.reservingBike("r1", "John", "Doe");
+
+        assertThrows(RentalException.class, () -> service.cancellingReservation("r1", "Jane", "Doe"));
+        service.cancellingReservation("r1", "John", "Doe");
+        assertTrue(service.getBikeById("r1").isAvailable());
+        assertThrows(RentalException.class, () -> service.cancellingReservation("r1", "John", "Doe"));
+        service.rentingBike("r1", "Jane", "Doe");
+    }
+
+    @Test
+    public void testExpiredHoldsAreReleasedAndAuditedInOneBatch() throws IOException {
+        Duration hold = Duration.ofSeconds(5);
+        service.reservingBike("r0", "John", "Doe", hold);
+        service.reservingBike("r1", "Jane", "Doe", hold);
+        service.reservingBike("r2", "Jim", "Doe", Duration.ofMinutes(30));
+
+        assertEquals(0, service.expireReservations(System.nanoTime()));
+        assertEquals(2, service.expireReservations(afterHold(hold)));
+        assertTrue(service.getBikeById("r0").isAvailable());
+        assertTrue(service.getBikeById("r1").isAvailable());
+        assertFalse(service.getBikeById("r2").isAvailable());
+        assertNull(service.getReservation("r0"));
+
+        List<String> lines = Files.readAllLines(tempDir.resolve("rentals.log"));
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).contains("] EXPIRED | Bike=r0 | First Name=John | Last Name=Doe"));
+        assertTrue(lines.get(1).contains("] EXPIRED | Bike=r1 | First Name=Jane | Last Name=Doe"));
+    }
+
+    @Test
+    public void testRecoveryIgnoresExpiries() {
+        Duration hold = Duration.ofSeconds(1);
+        service.reservingBike("r0", "John", "Doe", hold);
+        service.rentingBike("r1", "Jane", "Doe");
+        service.expireReservations(afterHold(hold));
+
+        BikeRentalService after = new BikeRentalService(
+                new BikeAuditRepository(tempDir.resolve("bikes.log").toString()),
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()));
+        RecoveryResult result = new RentalStateRecovery(tempDir.resolve("bikes.log"),
+                tempDir.resolve("rentals.log"), tempDir.resolve("state.snapshot"))
+                .recover(after, new BikeInventory(new ArrayList<>()));
+
+        assertEquals(0, result.getEventsSkipped());
+        assertTrue(after.getBikeById("r0").isAvailable());
+        assertFalse(after.getBikeById("r1").isAvailable());
+    }
+}
@@ -0,0 +1,83 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RevenueAggregatorTest {
+
+    private static final Instant T0 = Instant.parse("2024-05-01T10:00:00Z");
+
+    @Test
+    public void testGroupsByMinuteAndType() {
+        RevenueAggregator revenue = new RevenueAggregator(60);
+        revenue.record(BikeType.road, 150, T0.plusSeconds(5));
+        revenue.record(BikeType.road, 100, T0.plusSeconds(59));
+        revenue.record(BikeType.electric, 300, T0.plusSeconds(59));
+        revenue.record(BikeType.road, 50, T0.plusSeconds(125));
+
+        List<RevenueAggregator.MinuteRevenue> minutes = revenue.minutes(T0, T0.plusSeconds(180));
+        assertEquals(2, minutes.size());
+        assertEquals(T0, minutes.get(0).getMinute());
+        assertEquals(250, minutes.get(0).getCents(BikeType.road));
+        assertEquals(2, minutes.get(0).getReturns(BikeType.road));
+        assertEquals(550, minutes.get(0).getTotalCents());
+        assertEquals(T0.plusSeconds(120), minutes.get(1).getMinute());
+        assertEquals(50, minutes.get(1).getTotalCents());
+
+        assertEquals(1, revenue.minutes(T0.plusSeconds(60), T0.plusSeconds(180)).size());
+        assertEquals(300, revenue.getTotalCents(BikeType.road));
+        assertEquals(3, revenue.getTotalReturns(BikeType.road));
+    }
+
+    @Test
+    public void testOldMinutesLeaveTheWindowButStayInTotals() {
+        RevenueAggregator revenue = new RevenueAggregator(10);
+        revenue.record(BikeType.folding, 100, T0);
+        revenue.record(BikeType.folding, 200, T0.plusSeconds(10 * 60));
+        // Older than the retained window by now: counted only in the totals
+        revenue.record(BikeType.folding, 400, T0.plusSeconds(30));
+
+        List<RevenueAggregator.MinuteRevenue> minutes = revenue.minutes(T0, T0.plusSeconds(11 * 60));
+        assertEquals(1, minutes.size());
+        assertEquals(200, minutes.get(0).getTotalCents());
+        assertEquals(700, revenue.getTotalCents(BikeType.folding));
+    }
+
+    @Test
+    public void testConcurrentRecordsAreNotLost() throws Exception {
+        RevenueAggregator revenue = new RevenueAggregator(60);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        revenue.record(BikeType.mountain, 1, T0.plusSeconds(i % 300));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        long perMinute = revenue.minutes(T0, T0.plusSeconds(300)).stream()
+                .mapToLong(minute -> minute.getCents(BikeType.mountain)).sum();
+        assertEquals(40_000, perMinute);
+        assertEquals(40_000, revenue.getTotalCents(BikeType.mountain));
+    }
+
+    @Test
+    public void testRejectsEmptyWindow() {
+        assertThrows(InvalidSelectionException.class, () -> new RevenueAggregator(0));
+    }
+}
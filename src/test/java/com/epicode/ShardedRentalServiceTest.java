@@ -0,0 +1,246 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedRentalServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final CustomerRegistry customers = new CustomerRegistry();
+
+    private BikeRentalService newShard(String name) {
+        return new BikeRentalService(new BikeAuditRepository(tempDir.resolve(name + "-bikes.log").toString()),
+                new BikeAuditRepository(tempDir.resolve(name + "-rentals.log").toString()),
+                new BikeRentalService.Options().setCustomers(customers));
+    }
+
+    private ShardedRentalService newSharded(int shards, int bikes) {
+        ShardedRentalService sharded = new ShardedRentalService(customers);
+        for (int i = 0; i < shards; i++) {
+            sharded.addShard("s" + i, newShard("s" + i));
+        }
+        BikeCatalog catalog = sharded.newCatalog(BikeType.road);
+        ImportReport report = sharded.bikeCreationBatch(
+                IntStream.range(0, bikes).mapToObj(i -> new BikeBuilder("b" + i, "TT", true)), catalog, BikeType.road);
+        assertEquals(bikes, report.getCreatedCount());
+        return sharded;
+    }
+
+    @Test
+    public void testRingSpreadsKeysAndAddingANodeOnlyTakesKeys() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        for (int i = 0; i < 4; i++) {
+            ring = ring.withNode("s" + i, "s" + i);
+        }
+        Map<String, String> before = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 40_000; i++) {
+            String owner = ring.ownerOf("bike" + i);
+            before.put("bike" + i, owner);
+            counts.merge(owner, 1, Integer::sum);
+        }
+        for (int count : counts.values()) {
+            assertTrue(count > 8_000 && count < 12_000, "uneven share: " + counts);
+        }
+
+        ConsistentHashRing<String> grown = ring.withNode("s4", "s4");
+        int moved = 0;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            String owner = grown.ownerOf(entry.getKey());
+            if (!owner.equals(entry.getValue())) {
+                assertEquals("s4", owner);
+                moved++;
+            }
+        }
+        assertTrue(moved > 6_000 && moved < 10_000, "moved " + moved);
+        assertNull(new ConsistentHashRing<String>(8).ownerOf("bike1"));
+        assertThrows(InvalidSelectionException.class, () -> grown.withNode("s1", "again"));
+    }
+
+    @Test
+    public void testCallsGoToTheOwningShard() throws IOException {
+        ShardedRentalService sharded = newSharded(3, 300);
+        Map<String, BikeRentalService> shards = sharded.getShards();
+        int total = 0;
+        for (BikeRentalService shard : shards.values()) {
+            int size = shard.getBikeInventory().getCatalogs().get(0).getSize();
+            assertTrue(size > 50, "shard holds " + size);
+            total += size;
+        }
+        assertEquals(300, total);
+
+        String id = "b42";
+        BikeRentalService owner = shards.get(sharded.shardOf(id));
+        sharded.rentingBike(id, "John", "Doe");
+        sharded.rentingBike("b7", "John", "Doe");
+        assertFalse(owner.getBikeById(id).isAvailable());
+        assertEquals(2, sharded.getActiveRentals("John", "Doe").size());
+        assertEquals(298, sharded.findBikes(new BikeQuery().setAvailable(true)).size());
+        sharded.returningBikeOnce("r1", id, "John", "Doe", null);
+        sharded.returningBikeOnce("r1", id, "John", "Doe", null);
+        assertTrue(sharded.getBikeById(id).isAvailable());
+
+        List<String> lines = Files.readAllLines(tempDir.resolve(sharded.shardOf(id) + "-rentals.log"));
+        assertEquals(2, lines.stream().filter(line -> line.contains("Bike=" + id + " ")).count());
+        assertThrows(InvalidBikeException.class,
+                () -> sharded.bikeCreation(new BikeBuilder(id, "TT", true), sharded.newCatalog(BikeType.road),
+                        BikeType.road));
+        assertThrows(CatalogNotFoundException.class,
+                () -> sharded.bikeCreation(new BikeBuilder("x1", "TT", true), owner.newCatalog(BikeType.road),
+                        BikeType.road));
+        assertThrows(BikeNotFoundException.class, () -> sharded.rentingBike("nope", "John", "Doe"));
+    }
+
+    @Test
+    public void testAddedShardTakesOverItsBikesStepByStep() throws IOException {
+        ShardedRentalService sharded = newSharded(2, 400);
+        sharded.addStation(new Station("st1", "Duomo", 45.4642, 9.1900, 10));
+        Map<String, String> before = IntStream.range(0, 400).mapToObj(i -> "b" + i)
+                .collect(Collectors.toMap(id -> id, sharded::shardOf));
+
+        sharded.addShard("s2", newShard("s2"));
+        int pending = sharded.getPendingMoves();
+        assertTrue(pending > 80 && pending < 200, "pending " + pending);
+        List<String> moving = before.keySet().stream()
+                .filter(id -> sharded.ownerOf(id).equals("s2"))
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(pending, moving.size());
+        // Owned by s2 now, but still served by the old shard until moved
+        String rented = moving.get(0);
+        assertEquals(before.get(rented), sharded.shardOf(rented));
+        sharded.dockingBike(rented, "st1");
+        sharded.rentingBike(rented, "Jane", "Doe");
+
+        assertEquals(10, sharded.rebalance(10));
+        assertEquals(pending - 10, sharded.getPendingMoves());
+        while (sharded.rebalance(50) > 0) {
+            // keep going
+        }
+        assertEquals(1, sharded.getPendingMoves());
+        assertEquals(before.get(rented), sharded.shardOf(rented));
+
+        sharded.returningBike(rented, "Jane", "Doe", "st1");
+        assertEquals(1, sharded.rebalance(50));
+        assertEquals(0, sharded.getPendingMoves());
+        assertEquals("s2", sharded.shardOf(rented));
+        assertTrue(sharded.getBikeById(rented).isAvailable());
+        assertEquals("st1", sharded.getStations().stationOf(rented).getId());
+
+        int onNewShard = 0;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            String now = sharded.shardOf(entry.getKey());
+            assertTrue(now.equals(entry.getValue()) || now.equals("s2"));
+            onNewShard += now.equals("s2") ? 1 : 0;
+        }
+        assertEquals(pending, onNewShard);
+        assertEquals(pending, Files.readAllLines(tempDir.resolve("s2-bikes.log")).size());
+        assertEquals(400, sharded.findBikes(new BikeQuery()).size());
+    }
+
+    @Test
+    public void testMovedBikesAreRecoveredOnlyByTheirNewShard() {
+        ShardedRentalService sharded = newSharded(2, 200);
+        sharded.addShard("s2", newShard("s2"));
+        List<String> moving = IntStream.range(0, 200).mapToObj(i -> "b" + i)
+                .filter(id -> sharded.ownerOf(id).equals("s2"))
+                .collect(Collectors.toList());
+        String returned = moving.get(0);
+        String rented = moving.get(1);
+        // The old shard's rental log mentions a bike its creation log later drops
+        sharded.rentingBike(returned, "Jane", "Doe");
+        sharded.returningBike(returned, "Jane", "Doe");
+        while (sharded.rebalance(50) > 0) {
+            // keep going
+        }
+        assertEquals(0, sharded.getPendingMoves());
+        sharded.rentingBike(rented, "John", "Doe");
+
+        Map<String, BikeRentalService> restarted = new HashMap<>();
+        for (String name : List.of("s0", "s1", "s2")) {
+            BikeRentalService shard = new BikeRentalService(
+                    new BikeAuditRepository(tempDir.resolve(name + "-bikes-after.log").toString()),
+                    new BikeAuditRepository(tempDir.resolve(name + "-rentals-after.log").toString()));
+            new RentalStateRecovery(tempDir.resolve(name + "-bikes.log"), tempDir.resolve(name + "-rentals.log"),
+                    tempDir.resolve(name + ".snapshot")).recover(shard, shard.getBikeInventory());
+            restarted.put(name, shard);
+        }
+        for (int i = 0; i < 200; i++) {
+            String id = "b" + i;
+            List<String> holders = restarted.entrySet().stream()
+                    .filter(entry -> entry.getValue().getBikeById(id) != null)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+            assertEquals(List.of(sharded.shardOf(id)), holders, id);
+        }
+        int catalogued = restarted.values().stream()
+                .mapToInt(shard -> shard.findBikes(new BikeQuery()).size())
+                .sum();
+        assertEquals(200, catalogued);
+        assertTrue(restarted.get("s2").getBikeById(returned).isAvailable());
+        assertFalse(restarted.get("s2").getBikeById(rented).isAvailable());
+    }
+
+    @Test
+    public void testBatchesRacingAddShardStayReachable() throws Exception {
+        ShardedRentalService sharded = newSharded(1, 0);
+        BikeCatalog catalog = sharded.newCatalog(BikeType.electric);
+        Thread creator = new Thread(() -> {
+            for (int batch = 0; batch < 20; batch++) {
+                int first = batch * 100;
+                sharded.bikeCreationBatch(IntStream.range(first, first + 100)
+                        .mapToObj(i -> new BikeBuilder("e" + i, "Volt", true)), catalog, BikeType.electric);
+            }
+        });
+        creator.start();
+        for (int i = 1; i < 4; i++) {
+            sharded.addShard("s" + i, newShard("s" + i));
+            while (sharded.getPendingMoves() > 0) {
+                sharded.rebalance(100);
+            }
+        }
+        creator.join();
+        while (sharded.getPendingMoves() > 0) {
+            sharded.rebalance(100);
+        }
+
+        BatteryTelemetry.Batch readings = new BatteryTelemetry.Batch(2000);
+        for (int i = 0; i < 2000; i++) {
+            String id = "e" + i;
+            assertNotNull(sharded.getBikeById(id), id);
+            assertEquals(sharded.ownerOf(id), sharded.shardOf(id));
+            readings.add(id, 0, 50, 0);
+        }
+        assertEquals(2000, sharded.ingestTelemetry(readings));
+    }
+
+    @Test
+    public void testShardsMustBeEmptyAndShareTheCustomers() {
+        ShardedRentalService sharded = new ShardedRentalService(customers);
+        assertNull(sharded.getBikeById("b1"));
+        assertThrows(InvalidSelectionException.class, () -> sharded.newCatalog(BikeType.road));
+        assertThrows(InvalidSelectionException.class, () -> sharded.addShard("s0",
+                new BikeRentalService(new BikeAuditRepository(tempDir.resolve("b.log").toString()),
+                        new BikeAuditRepository(tempDir.resolve("r.log").toString()))));
+        assertThrows(InvalidSelectionException.class, () -> new BikeRentalService.Options().setCustomers(null));
+        sharded.addShard("s0", newShard("s0"));
+        assertThrows(InvalidSelectionException.class, () -> sharded.addShard("s0", newShard("s1")));
+
+        BikeRentalService used = newShard("s1");
+        used.bikeCreation(new BikeBuilder("b1", "TT", true), used.newCatalog(BikeType.road), BikeType.road);
+        assertThrows(InvalidSelectionException.class, () -> sharded.addShard("s1", used));
+    }
+}
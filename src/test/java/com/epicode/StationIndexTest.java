@@ -0,0 +1,158 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StationIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<String> ids(List<StationIndex.NearbyBike> found) {
+        return found.stream().map(nearby -> nearby.getBike().getId()).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testNearestFiltersByAvailabilityTypeAndFeatures() {
+        StationIndex index = new StationIndex();
+        index.addStation(new Station("s1", "Duomo", 45.4642, 9.1900, 10));
+        index.addStation(new Station("s2", "Navigli", 45.4520, 9.1760, 10));
+        index.addStation(new Station("s3", "Monza", 45.5845, 9.2744, 10));
+        Bike near = new ElectricBike(new BikeBuilder("e1", "Volt", true).setGPS(true));
+        Bike plain = new ElectricBike(new BikeBuilder("e2", "Volt", true));
+        Bike rented = new ElectricBike(new BikeBuilder("e3", "Volt", false).setGPS(true));
+        Bike far = new ElectricBike(new BikeBuilder("e4", "Volt", true).setGPS(true));
+        Bike mountain = new MountainBike(new BikeBuilder("m1", "GT", true).setGPS(true));
+        index.dock(near, "s2");
+        index.dock(plain, "s2");
+        index.dock(rented, "s2");
+        index.dock(far, "s3");
+        index.dock(mountain, "s1");
+
+        List<StationIndex.NearbyBike> found = index.nearest(45.4530, 9.1770,
+                new BikeQuery().setType(BikeType.electric).setGPS(true).setLimit(5));
+        assertEquals(List.of("e1", "e4"), ids(found));
+        assertEquals("s2", found.get(0).getStation().getId());
+        assertTrue(found.get(0).getDistanceMeters() < 200);
+        assertTrue(found.get(1).getDistanceMeters() > 10_000);
+
+        assertEquals(List.of("e1", "e2", "m1"), ids(index.nearest(45.4530, 9.1770, new BikeQuery().setLimit(3))));
+        assertEquals(List.of("e1", "e2"), ids(index.within(45.4530, 9.1770, 500, new BikeQuery())));
+        assertEquals(List.of("e1", "e2", "m1"), ids(index.within(45.4530, 9.1770, 3000, new BikeQuery())));
+        assertThrows(InvalidSelectionException.class, () -> index.nearest(91, 0, new BikeQuery()));
+        assertThrows(InvalidSelectionException.class, () -> index.within(0, 0, -1, new BikeQuery()));
+    }
+
+    @Test
+    public void testQueriesMatchAFullScan() {
+        Random random = new Random(42);
+        StationIndex index = new StationIndex(0.005);
+        Map<Station, List<Bike>> docked = new HashMap<>();
+        int bikes = 0;
+        for (int s = 0; s < 500; s++) {
+            // A city, plus a few stations across the antimeridian and near the pole
+            double latitude = s < 480 ? 45.40 + random.nextDouble() * 0.15 : (s % 2 == 0 ? -16.5 : 84.0);
+            double longitude = s < 480 ? 9.10 + random.nextDouble() * 0.20 : (s % 4 < 2 ? 179.99 : -179.99);
+            Station station = new Station("s" + s, null, latitude, longitude, 20);
+            index.addStation(station);
+            docked.put(station, new ArrayList<>());
+            for (int b = random.nextInt(6); b > 0; b--) {
+                Bike bike = new ElectricBike(new BikeBuilder("b" + bikes++, "Volt", random.nextInt(4) > 0)
+                        .setGPS(random.nextBoolean()));
+                index.dock(bike, station.getId());
+                docked.get(station).add(bike);
+            }
+        }
+
+        double[][] points = {{45.47, 9.19}, {45.30, 9.00}, {-16.5, -179.995}, {84.0, 180}, {0, 0}};
+        for (double[] point : points) {
+            BikeQuery query = new BikeQuery().setGPS(true).setLimit(7);
+            List<String> expected = bruteForce(docked, point, Double.MAX_VALUE, query);
+            assertEquals(expected.subList(0, 7), ids(index.nearest(point[0], point[1], query)));
+
+            BikeQuery all = new BikeQuery().setLimit(10_000);
+            assertEquals(bruteForce(docked, point, 1500, all), ids(index.within(point[0], point[1], 1500, all)));
+        }
+    }
+
+    private static List<String> bruteForce(Map<Station, List<Bike>> docked, double[] point, double radius,
+                                           BikeQuery query) {
+        List<Station> stations = new ArrayList<>(docked.keySet());
+        stations.sort(Comparator.comparingDouble((Station station) -> station.distanceTo(point[0], point[1]))
+                .thenComparing(Station::getId));
+        List<String> found = new ArrayList<>();
+        for (Station station : stations) {
+            if (station.distanceTo(point[0], point[1]) > radius) {
+                break;
+            }
+            docked.get(station).stream()
+                    .filter(bike -> bike.isAvailable() && (query.getGPS() == null || bike.hasGPS() == query.getGPS()))
+                    .map(Bike::getId).sorted().forEach(found::add);
+        }
+        return found;
+    }
+
+    @Test
+    public void testDockingRespectsCapacity() {
+        StationIndex index = new StationIndex();
+        index.addStation(new Station("s1", "Duomo", 45.4642, 9.1900, 1));
+        index.addStation(new Station("s2", "Navigli", 45.4520, 9.1760, 1));
+        Bike first = new RoadBike(new BikeBuilder("r1", "TT", true));
+        Bike second = new RoadBike(new BikeBuilder("r2", "TT", true));
+
+        assertNull(index.dock(first, "s1"));
+        assertThrows(StationFullException.class, () -> index.dock(second, "s1"));
+        assertThrows(StationNotFoundException.class, () -> index.dock(second, "s9"));
+        assertThrows(InvalidSelectionException.class,
+                () -> index.addStation(new Station("s1", "Again", 0, 0, 5)));
+        assertThrows(InputValidationException.class, () -> new Station("s3", "Nowhere", 95, 0, 5));
+
+        assertEquals("s1", index.dock(first, "s2").getId());
+        assertTrue(index.bikesAt("s1").isEmpty());
+        assertEquals(List.of(first), index.bikesAt("s2"));
+        index.dock(second, "s1");
+        assertEquals("s1", index.undock(second).getId());
+        assertNull(index.stationOf("r2"));
+        assertEquals(2, index.getStationCount());
+    }
+
+    @Test
+    public void testServiceKeepsDocksInSyncWithRentals() {
+        BikeRentalService service = new BikeRentalService(
+                new BikeAuditRepository(tempDir.resolve("bikes.log").toString()),
+                new BikeAuditRepository(tempDir.resolve("rentals.log").toString()));
+        BikeCatalog catalog = service.newCatalog(BikeType.folding);
+        service.bikeCreation(new BikeBuilder("f1", "Brompton", true), catalog, BikeType.folding);
+        service.bikeCreation(new BikeBuilder("f2", "Brompton", true), catalog, BikeType.folding);
+        service.addStation(new Station("s1", "Duomo", 45.4642, 9.1900, 1));
+        service.addStation(new Station("s2", "Navigli", 45.4520, 9.1760, 1));
+        service.dockingBike("f1", "s1");
+        service.dockingBike("f2", "s2");
+        StationIndex stations = service.getStations();
+
+        service.rentingBike("f1", "John", "Doe");
+        assertNull(stations.stationOf("f1"));
+        assertEquals(List.of("f2"), ids(service.findNearestBikes(45.4642, 9.1900, new BikeQuery())));
+        assertThrows(BikeUnavailableException.class, () -> service.dockingBike("f1", "s1"));
+
+        assertThrows(StationFullException.class, () -> service.returningBike("f1", "John", "Doe", "s2"));
+        assertFalse(service.getBikeById("f1").isAvailable());
+        assertThrows(RentalException.class, () -> service.returningBike("f2", "John", "Doe", "s1"));
+        assertEquals("s2", stations.stationOf("f2").getId());
+
+        service.returningBike("f1", "John", "Doe", "s1");
+        assertEquals("s1", stations.stationOf("f1").getId());
+        assertEquals(List.of("f1", "f2"), ids(service.findBikesWithin(45.4642, 9.1900, 5000, new BikeQuery())));
+    }
+}
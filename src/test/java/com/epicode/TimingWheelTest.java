@@ -0,0 +1,78 @@
+package com.epicode;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+
+    private static final long TICK = 1_000;
+
+    @Test
+    public void testExpiresWithinOneTickOfTheDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 8, 0);
+        wheel.schedule("a", 2_500);
+        wheel.schedule("b", 5_000);
+        List<String> expired = new ArrayList<>();
+
+        assertEquals(0, wheel.advance(2_999, expired::add));
+        assertEquals(1, wheel.advance(3_000, expired::add));
+        assertEquals(List.of("a"), expired);
+        assertEquals(1, wheel.pending());
+        assertEquals(1, wheel.advance(6_000, expired::add));
+        assertEquals(List.of("a", "b"), expired);
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void testDeadlinesBeyondOneTurnWaitExtraRounds() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK, 4, 0);
+        for (int i = 0; i < 100; i++) {
+            wheel.schedule(i, i * TICK);
+        }
+        List<Integer> expired = new ArrayList<>();
+
+        wheel.advance(50 * TICK, expired::add);
+        assertEquals(50, expired.size());
+        assertTrue(expired.stream().allMatch(i -> i < 50));
+        wheel.advance(100 * TICK, expired::add);
+        assertEquals(100, expired.size());
+    }
+
+    @Test
+    public void testCancelledTimeoutsNeverExpire() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 8, 0);
+        TimingWheel.Timeout<String> cancelled = wheel.schedule("a", 1_000);
+        TimingWheel.Timeout<String> kept = wheel.schedule("b", 1_000);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertEquals(1, wheel.pending());
+        List<String> expired = new ArrayList<>();
+        wheel.advance(10_000, expired::add);
+
+        assertEquals(List.of("b"), expired);
+        assertFalse(kept.cancel());
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void testPastDeadlinesExpireOnNextAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 8, 0);
+        wheel.advance(5_000, value -> fail("Nothing is scheduled"));
+        wheel.schedule("late", 1_000);
+
+        List<String> expired = new ArrayList<>();
+        wheel.advance(6_000, expired::add);
+        assertEquals(List.of("late"), expired);
+    }
+
+    @Test
+    public void testRejectsInvalidConfiguration() {
+        assertThrows(InvalidSelectionException.class, () -> new TimingWheel<String>(0, 8, 0));
+        assertThrows(InvalidSelectionException.class, () -> new TimingWheel<String>(TICK, 0, 0));
+    }
+}